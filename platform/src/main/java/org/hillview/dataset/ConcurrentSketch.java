@@ -49,6 +49,16 @@ public class ConcurrentSketch<T, R1, R2> implements ISketch<T, Pair<R1, R2>> {
         return new Pair<R1, R2>(first, second);
     }
 
+    @Nullable
+    @Override
+    public Pair<R1, R2> addInPlace(@Nullable Pair<R1, R2> left, @Nullable Pair<R1, R2> right) {
+        left = Converters.checkNull(left);
+        right = Converters.checkNull(right);
+        R1 first = this.first.addInPlace(left.first, right.first);
+        R2 second = this.second.addInPlace(left.second, right.second);
+        return new Pair<R1, R2>(first, second);
+    }
+
     @Override
     public Pair<R1, R2> create(T data) {
         R1 first = this.first.create(data);
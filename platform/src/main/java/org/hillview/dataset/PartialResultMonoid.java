@@ -52,4 +52,13 @@ public class PartialResultMonoid<T> implements IMonoid<PartialResult<T>> {
         return new PartialResult<T>(left.deltaDone + right.deltaDone,
                 this.monoid.add(left.deltaValue, right.deltaValue));
     }
+
+    @Override @Nullable
+    public PartialResult<T> addInPlace(@Nullable PartialResult<T> left,
+                                       @Nullable PartialResult<T> right) {
+        left = Converters.checkNull(left);
+        right = Converters.checkNull(right);
+        return new PartialResult<T>(left.deltaDone + right.deltaDone,
+                this.monoid.addInPlace(left.deltaValue, right.deltaValue));
+    }
 }
@@ -53,6 +53,17 @@ public class TripleSketch<T, R1, R2, R3> implements ISketch<T, Triple<R1, R2, R3
         return new Triple<R1, R2, R3>(first, second, third);
     }
 
+    @Nullable
+    @Override
+    public Triple<R1, R2, R3> addInPlace(@Nullable Triple<R1, R2, R3> left, @Nullable Triple<R1, R2, R3> right) {
+        left = Converters.checkNull(left);
+        right = Converters.checkNull(right);
+        R1 first = this.first.addInPlace(left.first, right.first);
+        R2 second = this.second.addInPlace(left.second, right.second);
+        R3 third = this.third.addInPlace(left.third, right.third);
+        return new Triple<R1, R2, R3>(first, second, third);
+    }
+
     @Override
     public Triple<R1, R2, R3> create(T data) {
         R1 first = this.first.create(data);
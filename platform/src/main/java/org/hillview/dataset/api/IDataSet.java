@@ -92,7 +92,8 @@ public interface IDataSet<T> {
     static <R> Observable<R> reduce(
             final Observable<R> data,
             final IMonoid<R> monoid) {
-        return data.reduce(monoid.zero(), monoid::add);
+        // The accumulator is created anew for each subscription, so it can be updated in place.
+        return Observable.defer(() -> data.reduce(monoid.zero(), monoid::addInPlace));
     }
 
     static <S> Observable<IDataSet<S>> reduce(
@@ -21,6 +21,11 @@ package org.hillview.dataset.api;
 import com.google.common.net.HostAndPort;
 import com.google.gson.*;
 import org.hillview.remoting.ClusterDescription;
+import org.hillview.sketches.AdaptiveHeatMap;
+import org.hillview.sketches.AdaptiveHistogram;
+import org.hillview.sketches.DistinctStrings;
+import org.hillview.sketches.HeatMap;
+import org.hillview.sketches.HeatMap3D;
 import org.hillview.sketches.NextKList;
 import org.hillview.table.Schema;
 import org.hillview.utils.Converters;
@@ -54,11 +59,51 @@ public interface IJson extends Serializable {
         }
     }
 
+    class DistinctStringsSerializer
+            implements JsonSerializer<DistinctStrings> {
+        public JsonElement serialize(DistinctStrings data, Type typeOfSchema, JsonSerializationContext unused) {
+            return data.toJsonTree();
+        }
+    }
+
+    class AdaptiveHistogramSerializer
+            implements JsonSerializer<AdaptiveHistogram> {
+        public JsonElement serialize(AdaptiveHistogram data, Type typeOfSchema, JsonSerializationContext unused) {
+            return data.toJsonTree();
+        }
+    }
+
+    class AdaptiveHeatMapSerializer
+            implements JsonSerializer<AdaptiveHeatMap> {
+        public JsonElement serialize(AdaptiveHeatMap data, Type typeOfSchema, JsonSerializationContext unused) {
+            return data.toJsonTree();
+        }
+    }
+
+    class HeatMapSerializer
+            implements JsonSerializer<HeatMap> {
+        public JsonElement serialize(HeatMap data, Type typeOfSchema, JsonSerializationContext unused) {
+            return data.toJsonTree();
+        }
+    }
+
+    class HeatMap3DSerializer
+            implements JsonSerializer<HeatMap3D> {
+        public JsonElement serialize(HeatMap3D data, Type typeOfSchema, JsonSerializationContext unused) {
+            return data.toJsonTree();
+        }
+    }
+
     // Use these instances for all your json serialization needs
     GsonBuilder builder = new GsonBuilder()
             .registerTypeAdapter(Schema.class, new Schema.Serializer())
             .registerTypeAdapter(Schema.class, new Schema.Deserializer())
             .registerTypeAdapter(NextKList.class, new NextKSerializer())
+            .registerTypeAdapter(DistinctStrings.class, new DistinctStringsSerializer())
+            .registerTypeAdapter(AdaptiveHistogram.class, new AdaptiveHistogramSerializer())
+            .registerTypeAdapter(AdaptiveHeatMap.class, new AdaptiveHeatMapSerializer())
+            .registerTypeAdapter(HeatMap.class, new HeatMapSerializer())
+            .registerTypeAdapter(HeatMap3D.class, new HeatMap3DSerializer())
             .registerTypeAdapter(LocalDateTime.class, new DateSerializer())
             .registerTypeAdapter(HostAndPort.class, new ClusterDescription.HostAndPortSerializer())
             .registerTypeAdapter(HostAndPort.class, new ClusterDescription.HostAndPortDeserializer());
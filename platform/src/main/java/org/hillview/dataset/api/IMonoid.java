@@ -29,19 +29,39 @@ import java.util.List;
  */
 public interface IMonoid<R> extends Serializable {
     @Nullable R zero();
+    /**
+     * @return The sum of left and right, as a new value which shares no mutable state
+     * with left or right.
+     */
     @Nullable R add(@Nullable R left, @Nullable R right);
 
+    /**
+     * Adds right to left, possibly by mutating left and returning it.  The caller must
+     * own left: it has to be a value returned by zero(), add() or by a previous addInPlace
+     * call in the same accumulation, and nobody else may hold a reference to it.  right is never
+     * modified.  Monoids whose values are large arrays should override this method to
+     * avoid allocating a new value for each addition; the default simply calls add.
+     * @return The sum of left and right; this may be left itself.
+     */
+    @Nullable
+    default R addInPlace(@Nullable R left, @Nullable R right) {
+        return this.add(left, right);
+    }
+
     @Nullable
     default R reduce(List<R> data) {
         // This implementation avoids allocating a zero
-        // if the list is non-empty.
+        // if the list has a single element.
         if (data.isEmpty())
             return this.zero();
+        if (data.size() == 1)
+            return data.get(0);
 
-        R result = data.get(0);
-        // add the rest of the elements
-        for (int i = 1; i < data.size(); i++)
-            result = this.add(result, data.get(i));
+        // The elements of the list are not ours, but add returns a fresh value,
+        // which the remaining elements are accumulated into.
+        R result = this.add(data.get(0), data.get(1));
+        for (int i = 2; i < data.size(); i++)
+            result = this.addInPlace(result, data.get(i));
         return result;
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.maps;
+
+import org.hillview.dataset.api.IMap;
+import org.hillview.sketches.ClusterCenters;
+import org.hillview.table.*;
+import org.hillview.table.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This map adds to a table an integer column holding the index of the closest of a set of
+ * cluster centers to each row.  Rows with missing values in the columns that define the
+ * clusters have a missing cluster.
+ */
+public class ClusterMap implements IMap<ITable, ITable> {
+    private final ClusterCenters centers;
+    private final String newColName;
+
+    /**
+     * @param centers    The cluster centers.
+     * @param newColName Name of the new column. The table cannot have a column with this name already.
+     */
+    public ClusterMap(ClusterCenters centers, String newColName) {
+        this.centers = centers;
+        this.newColName = newColName;
+    }
+
+    @Override
+    public ITable apply(ITable table) {
+        if (table.getSchema().getColumnNames().contains(this.newColName))
+            throw new IllegalArgumentException("Column " + this.newColName + " already exists in table.");
+        List<IColumn> columns = new ArrayList<IColumn>();
+        table.getColumns().forEach(columns::add);
+
+        ColumnDescription desc = new ColumnDescription(this.newColName, ContentsKind.Integer, true);
+        IMembershipSet set = table.getMembershipSet();
+        int colSize = set.getMax();
+        IMutableColumn column;
+        if (set.useSparseColumn())
+            column = new SparseColumn(desc, colSize);
+        else
+            column = new IntArrayColumn(desc, colSize);
+
+        NumericBlock block = new NumericBlock(table, this.centers.columnNames);
+        int[] closest = new int[block.stride];
+        double[] score = new double[block.stride];
+        double[] scratch = new double[block.stride];
+        while (block.next() > 0) {
+            this.centers.closest(block.values, block.stride, block.count, closest, score, scratch);
+            for (int r = 0; r < block.count; r++) {
+                if (block.missing[r] || closest[r] < 0)
+                    column.setMissing(block.rows[r]);
+                else
+                    column.set(block.rows[r], closest[r]);
+            }
+        }
+        columns.add(column);
+        return new Table(columns, set);
+    }
+}
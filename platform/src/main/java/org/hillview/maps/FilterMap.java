@@ -21,6 +21,7 @@ package org.hillview.maps;
 import org.hillview.dataset.api.IMap;
 import org.hillview.table.FalseTableFilter;
 import org.hillview.table.TableFilter;
+import org.hillview.table.api.ICompiledFilter;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.ITable;
 
@@ -45,8 +46,8 @@ public class FilterMap implements IMap<ITable, ITable> {
 
     @Override
     public ITable apply(ITable data) {
-        this.rowFilterPredicate.setTable(data);
-        IMembershipSet result = data.getMembershipSet().filter(this.rowFilterPredicate::test);
+        ICompiledFilter filter = this.rowFilterPredicate.compile(data);
+        IMembershipSet result = filter.filter(data.getMembershipSet());
         return data.selectRowsFromFullTable(result);
     }
 }
@@ -3,7 +3,6 @@ package org.hillview.maps;
 import org.hillview.dataset.api.IMap;
 import org.hillview.table.*;
 import org.hillview.table.api.*;
-import org.hillview.utils.BlasConversions;
 import org.jblas.DoubleMatrix;
 
 import java.util.ArrayList;
@@ -14,6 +13,7 @@ import java.util.logging.Logger;
  * This map takes a list of column names and a projection matrix and applies the projection matrix to the matrix that is
  * constructed from the table by horizontally stacking the specified columns. The resulting table is a copy of the old
  * table, with the additional projected columns added to it. The new columns are named '{newColName}{i}'.
+ * The projected columns are LinearProjectionColumns, so the map does not copy any data.
  */
 public class LinearProjectionMap implements IMap<ITable, ITable> {
     private static final Logger LOG = Logger.getLogger(LinearProjectionMap.class.getName());
@@ -26,8 +26,6 @@ public class LinearProjectionMap implements IMap<ITable, ITable> {
     private final List<String> colNames;
     private final List<String> newColNames;
     private final int numProjections;
-    private static final double threshold = .3;
-    // For columns sparser than this use sparse storage.
 
     public LinearProjectionMap(List<String> colNames, DoubleMatrix projectionMatrix, String projectionName) {
         if (colNames.size() != projectionMatrix.columns)
@@ -61,34 +59,16 @@ public class LinearProjectionMap implements IMap<ITable, ITable> {
             columns.add(inputColumn);
         }
 
-        // Compute the projection with BLAS
-        DoubleMatrix mat = BlasConversions.toDoubleMatrixMissing(table, this.colNames, Double.NaN);
-        DoubleMatrix resultMat = mat.mmul(this.projectionMatrix.transpose());
-
-        // Copy the result to new columns with the same membershipSet size. (Can't use
-        // BlasConversions here.)
+        IColumn[] sources = new IColumn[this.colNames.size()];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = table.getColumn(this.colNames.get(i));
+        int colSize = table.getMembershipSet().getMax();
+        // The projected columns only keep references to the source columns and the weights;
+        // values are computed when they are read.
         for (int j = 0; j < this.numProjections; j++) {
             ColumnDescription colDesc = new ColumnDescription(this.newColNames.get(j), ContentsKind.Double, true);
-            IMembershipSet set = table.getMembershipSet();
-            int colSize = table.getMembershipSet().getMax();
-            IMutableColumn column;
-            if (set.useSparseColumn(set.getSize()))
-                column = new SparseColumn(colDesc, colSize);
-            else
-                column = new DoubleArrayColumn(colDesc, colSize);
-            IRowIterator it = table.getMembershipSet().getIterator();
-            int row = it.getNextRow();
-            int i = 0;
-            while (row >= 0) {
-                if (Double.isNaN(resultMat.get(i, j))) {
-                    column.setMissing(row);
-                } else {
-                    column.set(row, resultMat.get(i, j));
-                }
-                row = it.getNextRow();
-                i++;
-            }
-            columns.add(column);
+            double[] weights = this.projectionMatrix.getRow(j).toArray();
+            columns.add(new LinearProjectionColumn(colDesc, sources, weights, colSize));
         }
 
         return new Table(columns, table.getMembershipSet());
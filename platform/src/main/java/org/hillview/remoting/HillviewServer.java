@@ -220,7 +220,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
 
                 @Override
                 public void onNext(final PartialResult pr) {
-                    this.sketchResultAccumulator = sketchOp.sketch.add(this.sketchResultAccumulator, pr.deltaValue);
+                    this.sketchResultAccumulator = sketchOp.sketch.addInPlace(
+                            this.sketchResultAccumulator, pr.deltaValue);
                     final OperationResponse<PartialResult> res =
                             new OperationResponse<PartialResult>(pr);
                     final byte[] bytes = SerializationUtils.serialize(res);
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import java.io.Serializable;
+
+/**
+ * One axis of a streaming histogram whose range is not known in advance.  The axis has a
+ * fixed number of fine buckets of width 2^exponent; bucket i holds the values v with
+ * floor(v / 2^exponent) == origin + i.  When a value falls outside the buckets the axis is
+ * moved, and if needed the width is doubled until all values fit, so that the values
+ * always span more than half of the buckets.  Since the bucket boundaries are aligned on
+ * multiples of the width, each bucket of a narrower axis falls within a single bucket of
+ * a wider one, which makes histograms over such axes mergeable.
+ */
+final class AdaptiveAxis implements Serializable {
+    // Bounds of the exponent, which keep 2^-exponent finite and non-zero.
+    private static final int MIN_EXPONENT = -1000;
+    private static final int MAX_EXPONENT = 1023;
+
+    final int size;
+    private int exponent;
+    /**
+     * 2^-exponent.
+     */
+    private double scale;
+    private long origin;
+    /**
+     * Range of the values placed on the axis; only meaningful when not empty.
+     */
+    private double min;
+    private double max;
+    private boolean empty;
+
+    AdaptiveAxis(final int size) {
+        if (size < 4)
+            throw new IllegalArgumentException("Axis needs at least 4 buckets");
+        this.size = size;
+        this.empty = true;
+    }
+
+    AdaptiveAxis(final AdaptiveAxis other) {
+        this.size = other.size;
+        this.exponent = other.exponent;
+        this.scale = other.scale;
+        this.origin = other.origin;
+        this.min = other.min;
+        this.max = other.max;
+        this.empty = other.empty;
+    }
+
+    boolean isEmpty() { return this.empty; }
+
+    double getMin() { return this.min; }
+
+    double getMax() { return this.max; }
+
+    /**
+     * @return The index of the bucket of a finite value that is in the range of the axis.
+     */
+    int indexOf(final double value) {
+        return (int)(floor(value * this.scale) - this.origin);
+    }
+
+    /**
+     * Computes indexOf for the first count values.
+     */
+    void indexOf(final double[] values, final int count, final int[] indexes) {
+        final double scale = this.scale;
+        final long origin = this.origin;
+        for (int i = 0; i < count; i++)
+            indexes[i] = (int)(floor(values[i] * scale) - origin);
+    }
+
+    /**
+     * Same as (long)Math.floor(value) for values that fit in a long, but faster,
+     * since Math.floor is not an intrinsic on all JVMs.
+     */
+    private static long floor(final double value) {
+        final long truncated = (long)value;
+        return truncated - ((value < truncated) ? 1 : 0);
+    }
+
+    /**
+     * @return The smallest value that falls in the specified bucket.
+     */
+    double getLeftEdge(final int index) {
+        return Math.scalb((double)(this.origin + index), this.exponent);
+    }
+
+    /**
+     * Extends the axis to cover the values in [lo, hi], which must be finite, with a width
+     * of at least 2^minExponent.
+     * @return null if the buckets did not change, otherwise an array that maps each old
+     * bucket index to its new index.
+     */
+    int[] extend(double lo, double hi, final int minExponent) {
+        final boolean wasEmpty = this.empty;
+        if (!wasEmpty) {
+            lo = Math.min(lo, this.min);
+            hi = Math.max(hi, this.max);
+            if (lo == this.min && hi == this.max && minExponent <= this.exponent)
+                return null;
+        }
+        this.empty = false;
+        this.min = lo;
+        this.max = hi;
+
+        // The smallest exponent such that the values fit; a new axis starts with
+        // values spanning at most half of the buckets.
+        final double magnitude = Math.max(Math.abs(lo), Math.abs(hi));
+        int exp = Math.max(minExponent, Math.getExponent(Math.ulp(magnitude)));
+        if (wasEmpty) {
+            if (hi > lo)
+                exp = Math.max(exp, Math.getExponent((hi - lo) / (this.size / 2)) + 1);
+        } else {
+            exp = Math.max(exp, this.exponent);
+            if (hi > lo)
+                exp = Math.max(exp, Math.getExponent((hi - lo) / this.size) - 1);
+        }
+        exp = Math.max(MIN_EXPONENT, Math.min(MAX_EXPONENT, exp));
+        while (exp < MAX_EXPONENT && index(hi, exp) - index(lo, exp) >= this.size)
+            exp++;
+
+        final long loIndex = index(lo, exp);
+        final long hiIndex = index(hi, exp);
+        if (wasEmpty) {
+            this.setExponent(exp);
+            this.center(loIndex, hiIndex);
+            return null;
+        }
+        final int shift = exp - this.exponent;
+        if (shift == 0 && loIndex >= this.origin && hiIndex < this.origin + this.size)
+            return null;
+        final long oldOrigin = this.origin;
+        this.setExponent(exp);
+        this.center(loIndex, hiIndex);
+        int[] map = new int[this.size];
+        for (int i = 0; i < map.length; i++)
+            map[i] = (int)(shiftRight(oldOrigin + i, shift) - this.origin);
+        return map;
+    }
+
+    /**
+     * Extends this axis so that it covers the other axis, and it is at least as wide.
+     * @return The same as extend.
+     */
+    int[] extend(final AdaptiveAxis other) {
+        if (other.empty)
+            return null;
+        return this.extend(other.min, other.max, other.exponent);
+    }
+
+    /**
+     * @return An array that maps each bucket of the other axis to the bucket of this axis
+     * that contains it; this axis must have been extended to cover the other one.
+     */
+    int[] mapFrom(final AdaptiveAxis other) {
+        int shift = this.exponent - other.exponent;
+        assert shift >= 0;
+        int[] map = new int[other.size];
+        for (int i = 0; i < map.length; i++)
+            map[i] = (int)(shiftRight(other.origin + i, shift) - this.origin);
+        return map;
+    }
+
+    /**
+     * @return floor(index / 2^shift) for a non-negative shift; unlike index >> shift,
+     * this is also correct when shift is 64 or more.
+     */
+    private static long shiftRight(final long index, final int shift) {
+        if (shift >= Long.SIZE)
+            return index < 0 ? -1 : 0;
+        return index >> shift;
+    }
+
+    /**
+     * @return floor(value / 2^exponent).
+     */
+    private static long index(final double value, final int exponent) {
+        return floor(Math.scalb(value, -exponent));
+    }
+
+    private void setExponent(final int exponent) {
+        this.exponent = exponent;
+        this.scale = Math.scalb(1.0, -exponent);
+    }
+
+    /**
+     * Places the buckets so that the indexes loIndex to hiIndex are in the middle.
+     */
+    private void center(final long loIndex, final long hiIndex) {
+        long free = this.size - 1 - (hiIndex - loIndex);
+        this.origin = loIndex - free / 2;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.hillview.dataset.api.IJson;
+import org.hillview.table.api.ColumnAndConverter;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+
+import java.io.Serializable;
+
+/**
+ * A two-dimensional histogram computed in a single pass over data whose ranges are not
+ * known in advance; the two-dimensional counterpart of AdaptiveHistogram.  The rows where
+ * only one of the columns is missing are counted in one-dimensional adaptive histograms of
+ * the other column.  Rows where either value is infinite or NaN are counted as out of range.
+ */
+public class AdaptiveHeatMap implements Serializable, IJson {
+    private final int xBucketCount;
+    private final int yBucketCount;
+    private final AdaptiveAxis xAxis;
+    private final AdaptiveAxis yAxis;
+    /**
+     * The count of fine bucket (x, y) is counts[x * yAxis.size + y].
+     */
+    private final long[] counts;
+    /**
+     * Values of the X column in rows where the Y column is missing; its missing
+     * count is the number of rows where both are missing.
+     */
+    private final AdaptiveHistogram xOnly;
+    /**
+     * Values of the Y column in rows where only the X column is missing.
+     */
+    private final AdaptiveHistogram yOnly;
+    private long rowCount;
+    private long xMissingCount;
+    private long yMissingCount;
+    private long nonFinite;
+
+    /**
+     * @param xBucketCount Number of buckets on the X axis.
+     * @param yBucketCount Number of buckets on the Y axis.
+     * @param xResolution  Number of fine buckets on the X axis.
+     * @param yResolution  Number of fine buckets on the Y axis.
+     */
+    public AdaptiveHeatMap(final int xBucketCount, final int yBucketCount,
+                           final int xResolution, final int yResolution) {
+        this.xBucketCount = xBucketCount;
+        this.yBucketCount = yBucketCount;
+        this.xAxis = new AdaptiveAxis(xResolution);
+        this.yAxis = new AdaptiveAxis(yResolution);
+        this.counts = new long[xResolution * yResolution];
+        this.xOnly = new AdaptiveHistogram(xBucketCount, 1, xResolution);
+        this.yOnly = new AdaptiveHistogram(yBucketCount, 1, yResolution);
+    }
+
+    private AdaptiveHeatMap(final AdaptiveHeatMap other, final AdaptiveHistogram xOnly,
+                            final AdaptiveHistogram yOnly) {
+        this.xBucketCount = other.xBucketCount;
+        this.yBucketCount = other.yBucketCount;
+        this.xAxis = new AdaptiveAxis(other.xAxis);
+        this.yAxis = new AdaptiveAxis(other.yAxis);
+        this.counts = other.counts.clone();
+        this.xOnly = xOnly;
+        this.yOnly = yOnly;
+        this.rowCount = other.rowCount;
+        this.xMissingCount = other.xMissingCount;
+        this.yMissingCount = other.yMissingCount;
+        this.nonFinite = other.nonFinite;
+    }
+
+    public void create(final ColumnAndConverter xColumn, final ColumnAndConverter yColumn,
+                       final IMembershipSet membershipSet) {
+        final IRowIterator myIter = membershipSet.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final double[] xValues = new double[rows.length];
+        final double[] yValues = new double[rows.length];
+        final boolean[] xMissing = new boolean[rows.length];
+        final boolean[] yMissing = new boolean[rows.length];
+        final double[] values = new double[rows.length];
+        final boolean[] missing = new boolean[rows.length];
+        final int[] xIndexes = new int[rows.length];
+        final int[] yIndexes = new int[rows.length];
+        int count = myIter.getNextRows(rows);
+        while (count > 0) {
+            xColumn.asDoubles(rows, count, xValues, xMissing);
+            yColumn.asDoubles(rows, count, yValues, yMissing);
+            this.rowCount += count;
+
+            // Rows where Y is missing go to xOnly, rows where only X is missing to yOnly.
+            int n = 0;
+            int yMissingCount = 0;
+            for (int i = 0; i < count; i++) {
+                values[n] = xValues[i];
+                missing[n] = xMissing[i];
+                n += yMissing[i] ? 1 : 0;
+                yMissingCount += yMissing[i] ? 1 : 0;
+            }
+            this.yMissingCount += yMissingCount;
+            if (n > 0)
+                this.xOnly.add(values, missing, n, xIndexes);
+            n = 0;
+            int xMissingCount = 0;
+            for (int i = 0; i < count; i++) {
+                values[n] = yValues[i];
+                missing[n] = false;
+                n += (xMissing[i] & !yMissing[i]) ? 1 : 0;
+                xMissingCount += xMissing[i] ? 1 : 0;
+            }
+            this.xMissingCount += xMissingCount;
+            if (n > 0)
+                this.yOnly.add(values, missing, n, yIndexes);
+
+            // The rows where both values are present and finite.
+            n = 0;
+            int present = 0;
+            for (int i = 0; i < count; i++) {
+                final double x = xValues[i];
+                final double y = yValues[i];
+                final boolean both = !xMissing[i] & !yMissing[i];
+                xValues[n] = x;
+                yValues[n] = y;
+                present += both ? 1 : 0;
+                n += (both & (x - x == 0) & (y - y == 0)) ? 1 : 0;
+            }
+            this.nonFinite += present - n;
+            if (n > 0)
+                this.addPresent(xValues, yValues, n, xIndexes, yIndexes);
+            count = myIter.getNextRows(rows);
+        }
+    }
+
+    private void addPresent(final double[] xValues, final double[] yValues, final int count,
+                            final int[] xIndexes, final int[] yIndexes) {
+        double xLo = xValues[0], xHi = xValues[0];
+        double yLo = yValues[0], yHi = yValues[0];
+        for (int i = 1; i < count; i++) {
+            final double x = xValues[i];
+            final double y = yValues[i];
+            xLo = (x < xLo) ? x : xLo;
+            xHi = (x > xHi) ? x : xHi;
+            yLo = (y < yLo) ? y : yLo;
+            yHi = (y > yHi) ? y : yHi;
+        }
+        final int ySize = this.yAxis.size;
+        AdaptiveHistogram.rebin(this.counts, this.xAxis.extend(xLo, xHi, Integer.MIN_VALUE), ySize);
+        AdaptiveHistogram.rebin(this.counts, this.yAxis.extend(yLo, yHi, Integer.MIN_VALUE), 1);
+        this.xAxis.indexOf(xValues, count, xIndexes);
+        this.yAxis.indexOf(yValues, count, yIndexes);
+        final long[] counts = this.counts;
+        for (int i = 0; i < count; i++)
+            counts[xIndexes[i] * ySize + yIndexes[i]]++;
+    }
+
+    public AdaptiveHeatMap union(final AdaptiveHeatMap other) {
+        AdaptiveHeatMap result = new AdaptiveHeatMap(
+                this, this.xOnly.union(other.xOnly), this.yOnly.union(other.yOnly));
+        final int ySize = result.yAxis.size;
+        AdaptiveHistogram.rebin(result.counts, result.xAxis.extend(other.xAxis), ySize);
+        AdaptiveHistogram.rebin(result.counts, result.yAxis.extend(other.yAxis), 1);
+        if (!other.xAxis.isEmpty()) {
+            int[] xMap = result.xAxis.mapFrom(other.xAxis);
+            int[] yMap = result.yAxis.mapFrom(other.yAxis);
+            for (int i = 0; i < xMap.length; i++) {
+                int start = xMap[i] * ySize;
+                int otherStart = i * yMap.length;
+                for (int j = 0; j < yMap.length; j++) {
+                    long c = other.counts[otherStart + j];
+                    if (c != 0)
+                        result.counts[start + yMap[j]] += c;
+                }
+            }
+        }
+        result.rowCount += other.rowCount;
+        result.xMissingCount += other.xMissingCount;
+        result.yMissingCount += other.yMissingCount;
+        result.nonFinite += other.nonFinite;
+        return result;
+    }
+
+    public double getXMin() { return min(this.xAxis, this.xOnly.axis); }
+
+    public double getXMax() { return max(this.xAxis, this.xOnly.axis); }
+
+    public double getYMin() { return min(this.yAxis, this.yOnly.axis); }
+
+    public double getYMax() { return max(this.yAxis, this.yOnly.axis); }
+
+    public long getXPresentCount() { return this.rowCount - this.xMissingCount; }
+
+    public long getYPresentCount() { return this.rowCount - this.yMissingCount; }
+
+    private static double min(final AdaptiveAxis axis, final AdaptiveAxis other) {
+        if (axis.isEmpty())
+            return other.isEmpty() ? 0 : other.getMin();
+        return other.isEmpty() ? axis.getMin() : Math.min(axis.getMin(), other.getMin());
+    }
+
+    private static double max(final AdaptiveAxis axis, final AdaptiveAxis other) {
+        if (axis.isEmpty())
+            return other.isEmpty() ? 0 : other.getMax();
+        return other.isEmpty() ? axis.getMax() : Math.max(axis.getMax(), other.getMax());
+    }
+
+    /**
+     * @return The coarse bucket of each fine bucket of an axis, or -1 if it is out of range.
+     */
+    private static int[] coarseIndexes(final AdaptiveAxis axis, final IBucketsDescription buckets) {
+        int[] result = new int[axis.size];
+        if (axis.isEmpty())
+            return result;
+        for (int i = 0; i < result.length; i++)
+            result[i] = buckets.indexOf(Math.max(axis.getMin(), axis.getLeftEdge(i)));
+        return result;
+    }
+
+    /**
+     * @return A heat map of the data with the specified buckets.
+     */
+    public HeatMap getHeatMap(final IBucketsDescription xBuckets,
+                              final IBucketsDescription yBuckets) {
+        final int width = yBuckets.getNumOfBuckets();
+        long[] buckets = new long[xBuckets.getNumOfBuckets() * width];
+        long outOfRange = this.nonFinite;
+        if (!this.xAxis.isEmpty()) {
+            int[] xIndexes = coarseIndexes(this.xAxis, xBuckets);
+            int[] yIndexes = coarseIndexes(this.yAxis, yBuckets);
+            final int ySize = this.yAxis.size;
+            for (int i = 0; i < xIndexes.length; i++)
+                for (int j = 0; j < ySize; j++) {
+                    long c = this.counts[i * ySize + j];
+                    if (c == 0)
+                        continue;
+                    if (xIndexes[i] < 0 || yIndexes[j] < 0)
+                        outOfRange += c;
+                    else
+                        buckets[xIndexes[i] * width + yIndexes[j]] += c;
+                }
+        }
+        Histogram xMissing = new Histogram(xBuckets, this.xOnly.coarsen(xBuckets), 0);
+        Histogram yMissing = new Histogram(yBuckets, this.yOnly.coarsen(yBuckets), 0);
+        return new HeatMap(xBuckets, yBuckets, buckets, this.xOnly.getMissingCount(),
+                outOfRange, xMissing, yMissing);
+    }
+
+    /**
+     * @return A heat map with the requested numbers of equal-width buckets over
+     * the ranges of the data.
+     */
+    public HeatMap getHeatMap() {
+        return this.getHeatMap(
+                new BucketsDescriptionEqSize(this.getXMin(), this.getXMax(), this.xBucketCount),
+                new BucketsDescriptionEqSize(this.getYMin(), this.getYMax(), this.yBucketCount));
+    }
+
+    @Override
+    public JsonElement toJsonTree() {
+        JsonObject result = new JsonObject();
+        result.add("xRange", AdaptiveHistogram.rangeJson(this.getXMin(), this.getXMax(),
+                this.getXPresentCount(), this.xMissingCount));
+        result.add("yRange", AdaptiveHistogram.rangeJson(this.getYMin(), this.getYMax(),
+                this.getYPresentCount(), this.yMissingCount));
+        result.add("heatMap", this.getHeatMap().toJsonTree());
+        return result;
+    }
+}
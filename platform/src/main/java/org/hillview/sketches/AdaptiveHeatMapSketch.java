@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.api.ColumnNameAndConverter;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+
+/**
+ * Computes the ranges of two columns and their heat map in a single pass,
+ * without knowing the ranges in advance.
+ */
+public class AdaptiveHeatMapSketch implements ISketch<ITable, AdaptiveHeatMap> {
+    static final int MIN_RESOLUTION = 128;
+
+    private final ColumnNameAndConverter col1;
+    private final ColumnNameAndConverter col2;
+    private final int bucketCount1;
+    private final int bucketCount2;
+
+    public AdaptiveHeatMapSketch(final ColumnNameAndConverter col1,
+                                 final ColumnNameAndConverter col2,
+                                 final int bucketCount1, final int bucketCount2) {
+        this.col1 = col1;
+        this.col2 = col2;
+        this.bucketCount1 = bucketCount1;
+        this.bucketCount2 = bucketCount2;
+    }
+
+    /**
+     * Fewer fine buckets per bucket than in AdaptiveHistogramSketch, since
+     * their number is squared.
+     */
+    private static int resolution(final int bucketCount) {
+        return Math.max(MIN_RESOLUTION, 4 * bucketCount);
+    }
+
+    @Override
+    public AdaptiveHeatMap create(final ITable data) {
+        AdaptiveHeatMap result = this.getZero();
+        result.create(data.getColumn(this.col1), data.getColumn(this.col2),
+                data.getMembershipSet());
+        return result;
+    }
+
+    @Override
+    public AdaptiveHeatMap add(@Nullable final AdaptiveHeatMap left,
+                               @Nullable final AdaptiveHeatMap right) {
+        return Converters.checkNull(left).union(Converters.checkNull(right));
+    }
+
+    @Override
+    public AdaptiveHeatMap zero() {
+        return new AdaptiveHeatMap(this.bucketCount1, this.bucketCount2,
+                resolution(this.bucketCount1), resolution(this.bucketCount2));
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.hillview.dataset.api.IJson;
+import org.hillview.table.api.ColumnAndConverter;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A one-dimensional histogram computed in a single pass over data whose range is not known
+ * in advance.  The values are counted in the fine buckets of an AdaptiveAxis; these are
+ * coarsened into histograms with equal-width buckets over the exact range of the data
+ * when the result is needed.  Each fine bucket is counted in the coarse bucket that
+ * holds its left edge, so the coarse counts are exact when each value is the left edge of
+ * its fine bucket (e.g., integers spanning fewer than half the fine buckets); otherwise
+ * only the values in the fine buckets that straddle coarse boundaries may be misplaced.
+ * Infinite and NaN values are counted as out of range.
+ */
+public class AdaptiveHistogram implements Serializable, IJson {
+    private final int bucketCount;
+    private final int cdfBucketCount;
+    final AdaptiveAxis axis;
+    private final long[] counts;
+    private long presentCount;  // finite values
+    private long missingCount;
+    private long nonFinite;
+
+    /**
+     * @param bucketCount    Number of buckets of the histogram.
+     * @param cdfBucketCount Number of buckets of the histogram used to draw the CDF.
+     * @param resolution     Number of fine buckets.
+     */
+    public AdaptiveHistogram(final int bucketCount, final int cdfBucketCount,
+                             final int resolution) {
+        this.bucketCount = bucketCount;
+        this.cdfBucketCount = cdfBucketCount;
+        this.axis = new AdaptiveAxis(resolution);
+        this.counts = new long[resolution];
+    }
+
+    private AdaptiveHistogram(final AdaptiveHistogram other) {
+        this.bucketCount = other.bucketCount;
+        this.cdfBucketCount = other.cdfBucketCount;
+        this.axis = new AdaptiveAxis(other.axis);
+        this.counts = other.counts.clone();
+        this.presentCount = other.presentCount;
+        this.missingCount = other.missingCount;
+        this.nonFinite = other.nonFinite;
+    }
+
+    public void create(final ColumnAndConverter column, final IMembershipSet membershipSet) {
+        final IRowIterator myIter = membershipSet.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final double[] values = new double[rows.length];
+        final boolean[] missing = new boolean[rows.length];
+        final int[] indexes = new int[rows.length];
+        int count = myIter.getNextRows(rows);
+        while (count > 0) {
+            column.asDoubles(rows, count, values, missing);
+            this.add(values, missing, count, indexes);
+            count = myIter.getNextRows(rows);
+        }
+    }
+
+    /**
+     * Adds the first count values, except the missing ones.  Overwrites values and indexes.
+     */
+    void add(final double[] values, final boolean[] missing, final int count,
+             final int[] indexes) {
+        int n = 0;
+        int missingCount = 0;
+        for (int i = 0; i < count; i++) {
+            final double v = values[i];
+            final boolean m = missing[i];
+            // v - v is 0 exactly when v is finite.
+            final boolean keep = !m & (v - v == 0);
+            values[n] = v;
+            n += keep ? 1 : 0;
+            missingCount += m ? 1 : 0;
+        }
+        this.missingCount += missingCount;
+        this.nonFinite += count - n - missingCount;
+        if (n == 0)
+            return;
+        double lo = values[0];
+        double hi = values[0];
+        for (int i = 1; i < n; i++) {
+            final double v = values[i];
+            lo = (v < lo) ? v : lo;
+            hi = (v > hi) ? v : hi;
+        }
+        rebin(this.counts, this.axis.extend(lo, hi, Integer.MIN_VALUE), 1);
+        this.axis.indexOf(values, n, indexes);
+        final long[] counts = this.counts;
+        for (int i = 0; i < n; i++)
+            counts[indexes[i]]++;
+        this.presentCount += n;
+    }
+
+    /**
+     * Moves the counts of an adaptive grid after an axis changed.
+     * @param counts The counts of a grid, with the changed axis varying
+     *               with the specified stride.
+     * @param map    The result of AdaptiveAxis.extend; nothing changes if null.
+     * @param stride The distance between consecutive buckets of the axis in counts.
+     */
+    static void rebin(final long[] counts, final int[] map, final int stride) {
+        if (map == null)
+            return;
+        final long[] old = counts.clone();
+        Arrays.fill(counts, 0);
+        final int rowLength = map.length * stride;
+        for (int start = 0; start < counts.length; start += rowLength)
+            for (int i = 0; i < map.length; i++)
+                for (int j = 0; j < stride; j++) {
+                    final long c = old[start + i * stride + j];
+                    if (c != 0)
+                        counts[start + map[i] * stride + j] += c;
+                }
+    }
+
+    public AdaptiveHistogram union(final AdaptiveHistogram other) {
+        AdaptiveHistogram result = new AdaptiveHistogram(this);
+        rebin(result.counts, result.axis.extend(other.axis), 1);
+        if (!other.axis.isEmpty()) {
+            int[] map = result.axis.mapFrom(other.axis);
+            for (int i = 0; i < map.length; i++)
+                if (other.counts[i] != 0)
+                    result.counts[map[i]] += other.counts[i];
+        }
+        result.presentCount += other.presentCount;
+        result.missingCount += other.missingCount;
+        result.nonFinite += other.nonFinite;
+        return result;
+    }
+
+    /**
+     * @return The smallest finite value, or 0 if there is none.
+     */
+    public double getMin() { return this.axis.isEmpty() ? 0 : this.axis.getMin(); }
+
+    /**
+     * @return The largest finite value, or 0 if there is none.
+     */
+    public double getMax() { return this.axis.isEmpty() ? 0 : this.axis.getMax(); }
+
+    /**
+     * @return The number of values that are not missing, including the infinite and NaN ones.
+     */
+    public long getPresentCount() { return this.presentCount + this.nonFinite; }
+
+    public long getMissingCount() { return this.missingCount; }
+
+    /**
+     * @return The count of each fine bucket in the coarse buckets; the last element
+     * counts the values that are out of range.
+     */
+    long[] coarsen(final IBucketsDescription buckets) {
+        final int count = buckets.getNumOfBuckets();
+        final long[] result = new long[count + 1];
+        result[count] = this.nonFinite;
+        if (this.axis.isEmpty())
+            return result;
+        final double min = this.axis.getMin();
+        for (int i = 0; i < this.counts.length; i++) {
+            if (this.counts[i] == 0)
+                continue;
+            int index = buckets.indexOf(Math.max(min, this.axis.getLeftEdge(i)));
+            result[index < 0 ? count : index] += this.counts[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return A histogram of the data with the specified buckets.
+     */
+    public Histogram getHistogram(final IBucketsDescription buckets) {
+        long[] counts = this.coarsen(buckets);
+        return new Histogram(buckets, counts, this.missingCount);
+    }
+
+    /**
+     * @return A histogram with the specified number of equal-width buckets
+     * over the range of the data.
+     */
+    public Histogram getHistogram(final int bucketCount) {
+        return this.getHistogram(
+                new BucketsDescriptionEqSize(this.getMin(), this.getMax(), bucketCount));
+    }
+
+    /**
+     * @return The range of a column in the JSON format of BasicColStats.
+     */
+    static JsonObject rangeJson(final double min, final double max, final long presentCount,
+                                final long missingCount) {
+        JsonObject result = new JsonObject();
+        result.addProperty("min", min);
+        result.addProperty("max", max);
+        result.addProperty("presentCount", presentCount);
+        result.addProperty("missingCount", missingCount);
+        return result;
+    }
+
+    @Override
+    public JsonElement toJsonTree() {
+        JsonObject result = new JsonObject();
+        result.add("range", rangeJson(
+                this.getMin(), this.getMax(), this.getPresentCount(), this.missingCount));
+        result.add("histogram", IJson.gsonInstance.toJsonTree(this.getHistogram(this.bucketCount)));
+        result.add("cdf", IJson.gsonInstance.toJsonTree(this.getHistogram(this.cdfBucketCount)));
+        return result;
+    }
+}
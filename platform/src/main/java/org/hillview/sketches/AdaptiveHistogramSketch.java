@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.api.ColumnNameAndConverter;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+
+/**
+ * Computes the range and the histogram of a column in a single pass,
+ * without knowing the range in advance.
+ */
+public class AdaptiveHistogramSketch implements ISketch<ITable, AdaptiveHistogram> {
+    /**
+     * Number of fine buckets per requested bucket.
+     */
+    static final int OVERSAMPLING = 16;
+    static final int MIN_RESOLUTION = 1024;
+
+    private final ColumnNameAndConverter col;
+    private final int bucketCount;
+    private final int cdfBucketCount;
+    private final int resolution;
+
+    public AdaptiveHistogramSketch(final ColumnNameAndConverter col, final int bucketCount,
+                                   final int cdfBucketCount) {
+        this.col = col;
+        this.bucketCount = bucketCount;
+        this.cdfBucketCount = cdfBucketCount;
+        this.resolution = Math.max(MIN_RESOLUTION,
+                OVERSAMPLING * Math.max(bucketCount, cdfBucketCount));
+    }
+
+    @Override
+    public AdaptiveHistogram create(final ITable data) {
+        AdaptiveHistogram result = this.getZero();
+        result.create(data.getColumn(this.col), data.getMembershipSet());
+        return result;
+    }
+
+    @Override
+    public AdaptiveHistogram add(@Nullable final AdaptiveHistogram left,
+                                 @Nullable final AdaptiveHistogram right) {
+        return Converters.checkNull(left).union(Converters.checkNull(right));
+    }
+
+    @Override
+    public AdaptiveHistogram zero() {
+        return new AdaptiveHistogram(this.bucketCount, this.cdfBucketCount, this.resolution);
+    }
+}
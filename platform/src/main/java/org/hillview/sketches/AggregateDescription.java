@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+
+/**
+ * Describes an aggregate computed for each group by a GroupBySketch.
+ */
+public class AggregateDescription implements Serializable {
+    public enum AggregateKind {
+        /**
+         * Number of rows; does not use a column.
+         */
+        Count,
+        Sum,
+        Min,
+        Max,
+        Mean,
+        /**
+         * Population variance.
+         */
+        Variance,
+        /**
+         * Approximate number of distinct values, computed with a HyperLogLog sketch.
+         */
+        Distinct;
+
+        /**
+         * @return True if the aggregate is computed from the numeric values of a column.
+         */
+        public boolean isNumeric() {
+            return this != Count && this != Distinct;
+        }
+    }
+
+    public final AggregateKind kind;
+    /**
+     * Column that is aggregated; null for Count.
+     */
+    @Nullable
+    public final String columnName;
+
+    public AggregateDescription(AggregateKind kind, @Nullable String columnName) {
+        this.kind = kind;
+        this.columnName = columnName;
+    }
+
+    @Override
+    public String toString() {
+        if (this.columnName == null)
+            return this.kind.toString();
+        return this.kind + "(" + this.columnName + ")";
+    }
+}
@@ -35,6 +35,18 @@ public class BasicColStatSketch implements ISketch<ITable, BasicColStats> {
 
     @Override
     public BasicColStats add(@Nullable final BasicColStats left, @Nullable final BasicColStats right) {
-        return Converters.checkNull(left).union(Converters.checkNull(right));
+        // union may return one of its arguments, but the result of add must be fresh.
+        BasicColStats result = this.zero();
+        result.accumulate(Converters.checkNull(left));
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
+
+    @Override
+    public BasicColStats addInPlace(@Nullable final BasicColStats left,
+                                    @Nullable final BasicColStats right) {
+        BasicColStats result = Converters.checkNull(left);
+        result.accumulate(Converters.checkNull(right));
+        return result;
     }
 }
@@ -56,38 +56,86 @@ public class BasicColStats implements IJson {
 
     public void createStats(final ColumnAndConverter column, final IMembershipSet membershipSet) {
         final IRowIterator myIter = membershipSet.getIterator();
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            if (!column.column.isMissing(currRow)) {
-                double val = column.asDouble(currRow);
-                if (this.presentCount == 0) {
-                    this.min = val;
-                    this.max = val;
-                    this.minObject = column.getObject(currRow);
-                    this.maxObject = this.minObject;
-                } else if (val < this.min) {
-                    this.min = val;
-                    this.minObject = column.getObject(currRow);
-                } else if (val > this.max) {
-                    this.max = val;
-                    this.maxObject = column.getObject(currRow);
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final double[] values = new double[rows.length];
+        final boolean[] missing = new boolean[rows.length];
+        // Row index of each value after the missing values are squeezed out
+        final int[] present = new int[rows.length];
+        final double[] powers = new double[rows.length];
+        // The min and max objects are only materialized at the end.
+        int minRow = -1;
+        int maxRow = -1;
+        int count = myIter.getNextRows(rows);
+        while (count > 0) {
+            column.asDoubles(rows, count, values, missing);
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                values[n] = values[i];
+                present[n] = rows[i];
+                n += missing[i] ? 0 : 1;
+            }
+            this.missingCount += count - n;
+            if (n == 0) {
+                count = myIter.getNextRows(rows);
+                continue;
+            }
+
+            double batchMin = values[0];
+            double batchMax = values[0];
+            for (int i = 1; i < n; i++) {
+                final double val = values[i];
+                batchMin = (val < batchMin) ? val : batchMin;
+                batchMax = (val > batchMax) ? val : batchMax;
+            }
+            if (this.presentCount == 0) {
+                this.min = batchMin;
+                this.max = batchMax;
+                minRow = present[firstIndexOf(values, n, batchMin)];
+                maxRow = present[firstIndexOf(values, n, batchMax)];
+            } else {
+                if (batchMin < this.min) {
+                    this.min = batchMin;
+                    minRow = present[firstIndexOf(values, n, batchMin)];
                 }
-                if (this.momentCount > 0) {
-                    double tmpMoment = val;
-                    double alpha = (double) this.presentCount / (double) (this.presentCount + 1);
-                    double beta = 1.0 - alpha;
-                    this.moments[0] = (alpha * this.moments[0]) + (beta * val);
-                    for (int i = 1; i < this.momentCount; i++) {
-                        tmpMoment = tmpMoment * val;
-                        this.moments[i] = (alpha * this.moments[i]) + (beta * tmpMoment);
-                    }
+                if (batchMax > this.max) {
+                    this.max = batchMax;
+                    maxRow = present[firstIndexOf(values, n, batchMax)];
                 }
-                this.presentCount++;
-            } else {
-                this.missingCount++;
             }
-            currRow = myIter.getNextRow();
+
+            if (this.momentCount > 0) {
+                // The moments of the batch are merged like in union.
+                final double alpha = (double) this.presentCount / (double) (this.presentCount + n);
+                final double beta = 1.0 - alpha;
+                System.arraycopy(values, 0, powers, 0, n);
+                for (int k = 0; k < this.momentCount; k++) {
+                    double sum = 0;
+                    for (int i = 0; i < n; i++)
+                        sum += powers[i];
+                    this.moments[k] = (alpha * this.moments[k]) + (beta * sum / n);
+                    if (k < this.momentCount - 1)
+                        for (int i = 0; i < n; i++)
+                            powers[i] *= values[i];
+                }
+            }
+            this.presentCount += n;
+            count = myIter.getNextRows(rows);
         }
+        if (minRow >= 0)
+            this.minObject = column.getObject(minRow);
+        if (maxRow >= 0)
+            this.maxObject = column.getObject(maxRow);
+    }
+
+    /**
+     * @return The index of the first occurrence of value in the first count elements
+     * of values, or 0 if there is none (e.g., when value is NaN).
+     */
+    private static int firstIndexOf(final double[] values, final int count, final double value) {
+        for (int i = 0; i < count; i++)
+            if (values[i] == value)
+                return i;
+        return 0;
     }
 
     /**
@@ -126,4 +174,28 @@ public class BasicColStats implements IJson {
         }
         return result;
     }
+
+    /**
+     * Merges otherStat into this structure, without allocating.
+     * @param otherStat The other BasicColStats structure; it is not modified.
+     */
+    public void accumulate(final BasicColStats otherStat) {
+        this.missingCount += otherStat.missingCount;
+        if (otherStat.presentCount == 0)
+            return;
+        if (this.presentCount == 0 || otherStat.min <= this.min) {
+            this.min = otherStat.min;
+            this.minObject = otherStat.minObject;
+        }
+        if (this.presentCount == 0 || otherStat.max >= this.max) {
+            this.max = otherStat.max;
+            this.maxObject = otherStat.maxObject;
+        }
+        long presentCount = this.presentCount + otherStat.presentCount;
+        double alpha = (double) this.presentCount / ((double) presentCount);
+        double beta = 1.0 - alpha;
+        for (int i = 0; i < this.momentCount; i++)
+            this.moments[i] = (alpha * this.moments[i]) + (beta * otherStat.moments[i]);
+        this.presentCount = presentCount;
+    }
 }
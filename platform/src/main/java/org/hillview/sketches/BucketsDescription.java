@@ -18,6 +18,8 @@
 
 package org.hillview.sketches;
 
+import java.util.Arrays;
+
 /**
  * MetaData for one dimensional buckets held by a histogram
  */
@@ -43,6 +45,30 @@ public class BucketsDescription implements IBucketsDescription {
         this.maxValue = this.boundaries[this.numOfBuckets];
     }
 
+    /**
+     * Creates equi-depth buckets, which each hold about the same number of values.
+     * @param min        The minimum value of the data.
+     * @param max        The maximum value of the data.
+     * @param boundaries Sorted values at equally spaced ranks of the data, as computed
+     *                   by KllQuantiles.getBucketBoundaries.  Repeated boundaries are
+     *                   merged, so that a value that is a large fraction of the data gets
+     *                   a single bucket; thus there may be fewer than boundaries.length + 1
+     *                   buckets.
+     */
+    public static BucketsDescription equiDepth(final double min, final double max,
+                                               final double[] boundaries) {
+        if (max < min)
+            throw new IllegalArgumentException("Negative range");
+        double[] result = new double[boundaries.length + 2];
+        int size = 0;
+        result[size++] = min;
+        for (double b : boundaries)
+            if (b > result[size - 1] && b < max)
+                result[size++] = b;
+        result[size++] = max;
+        return new BucketsDescription(Arrays.copyOf(result, size));
+    }
+
     /**
      * Checks that an array is strongly sorted
      */
@@ -70,6 +96,31 @@ public class BucketsDescription implements IBucketsDescription {
         throw new IllegalStateException("bug in the indexOf function");
     }
 
+    /**
+     * Computes the same result as indexOf for a whole batch, with a binary search of a fixed
+     * number of steps and no data-dependent branches, which avoids branch mispredictions when
+     * there are many buckets.
+     */
+    @Override
+    public void indexOf(final double[] values, final int count, final int[] indexes) {
+        final double[] bounds = this.boundaries;
+        final double min = this.minValue;
+        final double max = this.maxValue;
+        final int last = this.numOfBuckets - 1;
+        for (int i = 0; i < count; i++) {
+            final double item = values[i];
+            int base = 0;
+            int n = bounds.length;
+            while (n > 1) {
+                final int half = n >>> 1;
+                base = (bounds[base + half] <= item) ? base + half : base;
+                n -= half;
+            }
+            base = (item >= max) ? last : base;
+            indexes[i] = ((item < min) | (item > max)) ? -1 : base;
+        }
+    }
+
     @Override
     public double getLeftBoundary(int index) {
         if ((index < 0) || (index >= this.numOfBuckets))
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import java.io.Serializable;
+import java.security.InvalidParameterException;
+import java.util.List;
+
+/**
+ * A set of cluster centers in the space defined by a list of numeric columns,
+ * as produced by KMeans.  Cluster i is the set of points closest to center i.
+ */
+public class ClusterCenters implements Serializable {
+    public final List<String> columnNames;
+    /**
+     * Number of clusters.
+     */
+    public final int k;
+    /**
+     * The centers, in row-major order: center i is at [i * columns, (i + 1) * columns).
+     */
+    public final double[] centers;
+    /**
+     * Sum of the squared distances of the points to the centers before the last Lloyd
+     * iteration, which is an upper bound of the cost of these centers; NaN if not known.
+     */
+    public final double cost;
+    /**
+     * Number of Lloyd iterations done to compute the centers.
+     */
+    public final int iterations;
+    /**
+     * A point that is subtracted from the points and centers before computing the
+     * closest center: the first center.  Since |c|^2 - 2 x.c loses the precision of
+     * |x - c|^2 when the points are far from the origin relative to their spread,
+     * it is computed on the shifted points.
+     */
+    private final double[] shift;
+    /**
+     * The centers minus shift, in row-major order.
+     */
+    private final double[] shifted;
+    /**
+     * Squared norms of the shifted centers.
+     */
+    private final double[] norms;
+    /**
+     * Largest value in norms.
+     */
+    private final double maxNorm;
+
+    public ClusterCenters(List<String> columnNames, double[] centers, double cost, int iterations) {
+        if (columnNames.isEmpty() || centers.length % columnNames.size() != 0)
+            throw new InvalidParameterException("Centers do not match the number of columns");
+        this.columnNames = columnNames;
+        this.centers = centers;
+        this.k = centers.length / columnNames.size();
+        this.cost = cost;
+        this.iterations = iterations;
+        int d = columnNames.size();
+        this.shift = new double[d];
+        if (this.k > 0)
+            System.arraycopy(centers, 0, this.shift, 0, d);
+        this.shifted = new double[centers.length];
+        this.norms = new double[this.k];
+        double maxNorm = 0;
+        for (int i = 0; i < this.k; i++) {
+            double norm = 0;
+            for (int j = 0; j < d; j++) {
+                double v = centers[i * d + j] - this.shift[j];
+                this.shifted[i * d + j] = v;
+                norm += v * v;
+            }
+            this.norms[i] = norm;
+            maxNorm = Math.max(maxNorm, norm);
+        }
+        this.maxNorm = maxNorm;
+    }
+
+    public int getColumnCount() {
+        return this.columnNames.size();
+    }
+
+    public double[] getCenter(int cluster) {
+        int d = this.getColumnCount();
+        double[] result = new double[d];
+        System.arraycopy(this.centers, cluster * d, result, 0, d);
+        return result;
+    }
+
+    /**
+     * Finds the closest center to each point in a batch.
+     * Since |x - c|^2 = |x|^2 + |c|^2 - 2 x.c, the closest center minimizes |c|^2 - 2 x.c;
+     * this is computed one center at a time over all points in the batch, after
+     * subtracting shift from the points and the centers.  For the points far enough
+     * from shift for the scores to overflow the distances are computed directly.
+     * @param values  Coordinates of the points, in column-major order.
+     * @param stride  Offset between the columns in values.
+     * @param count   Number of points.
+     * @param closest Set to the index of the closest center of each point; -1 if there are
+     *                no centers.  Points whose squared distances to all centers overflow
+     *                are assigned to center 0.
+     * @param score   Buffer of size count.
+     * @param scratch Buffer of size count.
+     */
+    public void closest(final double[] values, final int stride, final int count,
+                        final int[] closest, final double[] score, final double[] scratch) {
+        final int d = this.getColumnCount();
+        final int none = this.k > 0 ? 0 : -1;
+        for (int r = 0; r < count; r++) {
+            closest[r] = none;
+            score[r] = Double.POSITIVE_INFINITY;
+        }
+        for (int i = 0; i < this.k; i++) {
+            final double norm = this.norms[i];
+            for (int r = 0; r < count; r++)
+                scratch[r] = norm;
+            for (int j = 0; j < d; j++) {
+                final double w = -2 * this.shifted[i * d + j];
+                final double s = this.shift[j];
+                final int offset = j * stride;
+                for (int r = 0; r < count; r++)
+                    scratch[r] += w * (values[offset + r] - s);
+            }
+            for (int r = 0; r < count; r++) {
+                if (scratch[r] < score[r]) {
+                    score[r] = scratch[r];
+                    closest[r] = i;
+                }
+            }
+        }
+
+        // The magnitude of a score is at most 2 (|x - shift|^2 + |c - shift|^2).
+        for (int r = 0; r < count; r++)
+            scratch[r] = this.maxNorm;
+        for (int j = 0; j < d; j++) {
+            final double s = this.shift[j];
+            final int offset = j * stride;
+            for (int r = 0; r < count; r++) {
+                final double v = values[offset + r] - s;
+                scratch[r] += v * v;
+            }
+        }
+        for (int r = 0; r < count; r++)
+            if (!(scratch[r] < Double.MAX_VALUE / 4))
+                closest[r] = this.closestExact(values, stride, r);
+    }
+
+    /**
+     * Finds the closest center to point r of a batch by computing the distances.
+     */
+    private int closestExact(final double[] values, final int stride, final int r) {
+        final int d = this.getColumnCount();
+        int result = 0;
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < this.k; i++) {
+            double distance = 0;
+            for (int j = 0; j < d; j++) {
+                final double diff = values[j * stride + r] - this.centers[i * d + j];
+                distance += diff * diff;
+            }
+            if (distance < best) {
+                best = distance;
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the squared distance from each point in a batch to a center.
+     * @param values   Coordinates of the points, in column-major order.
+     * @param stride   Offset between the columns in values.
+     * @param count    Number of points.
+     * @param center   Index of the center for each point, as computed by closest.
+     * @param distance Set to the squared distances.
+     */
+    public void distances(final double[] values, final int stride, final int count,
+                          final int[] center, final double[] distance) {
+        final int d = this.getColumnCount();
+        for (int r = 0; r < count; r++)
+            distance[r] = 0;
+        for (int j = 0; j < d; j++) {
+            final int offset = j * stride;
+            for (int r = 0; r < count; r++) {
+                double diff = values[offset + r] - this.centers[center[r] * d + j];
+                distance[r] += diff * diff;
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import java.io.Serializable;
+
+/**
+ * Per-cluster sums of the points assigned to each of a set of cluster centers.
+ * This is the result of a KMeansSketch; the new centers of a Lloyd iteration are
+ * the means of the clusters.
+ */
+public class ClusterSums implements Serializable {
+    /**
+     * Number of clusters.
+     */
+    public final int k;
+    /**
+     * Number of columns.
+     */
+    public final int columns;
+    /**
+     * Sums of the points in each cluster, in row-major order (k x columns).
+     */
+    public final double[] sums;
+    /**
+     * Number of points in each cluster.
+     */
+    public final long[] counts;
+    /**
+     * Sum of the squared distances of the points to their closest center.
+     */
+    public double cost;
+    /**
+     * Number of rows skipped because they have missing values.
+     */
+    public long missing;
+
+    public ClusterSums(int k, int columns) {
+        this.k = k;
+        this.columns = columns;
+        this.sums = new double[k * columns];
+        this.counts = new long[k];
+        this.cost = 0;
+        this.missing = 0;
+    }
+
+    /**
+     * Adds other to these sums, without allocating.
+     * @param other Sums computed for the same centers; it is not modified.
+     */
+    public void accumulate(ClusterSums other) {
+        for (int i = 0; i < this.sums.length; i++)
+            this.sums[i] += other.sums[i];
+        for (int i = 0; i < this.k; i++)
+            this.counts[i] += other.counts[i];
+        this.cost += other.cost;
+        this.missing += other.missing;
+    }
+
+    /**
+     * Computes the means of the clusters.
+     * @param previous The centers used to compute these sums.  Empty clusters keep
+     *                 their previous center.
+     * @return The new centers, in row-major order.
+     */
+    public double[] getMeans(ClusterCenters previous) {
+        double[] result = new double[this.sums.length];
+        for (int i = 0; i < this.k; i++) {
+            for (int j = 0; j < this.columns; j++) {
+                int index = i * this.columns + j;
+                result[index] = this.counts[i] == 0 ? previous.centers[index] :
+                        this.sums[index] / this.counts[i];
+            }
+        }
+        return result;
+    }
+}
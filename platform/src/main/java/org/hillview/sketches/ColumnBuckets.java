@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import org.hillview.table.api.*;
+
+import javax.annotation.Nullable;
+
+/**
+ * Computes the values and bucket indexes of batches of rows of a column.
+ * For a dictionary-encoded column with a string converter the value and the bucket
+ * of every dictionary code are computed once, so that each row costs an array
+ * lookup instead of a string conversion followed by a bucket search.
+ */
+final class ColumnBuckets {
+    private final ColumnAndConverter column;
+    private final IBucketsDescription buckets;
+    /**
+     * Non-null when the lookup tables are used.
+     */
+    @Nullable
+    private final ICategoryColumn category;
+    private final double[] codeValues;
+    /**
+     * Bucket index of each code; -1 when out of range, MISSING for the missing value.
+     */
+    private final int[] codeBuckets;
+    private final int[] codes;
+
+    static final int MISSING = -2;
+
+    /**
+     * @param column   Column whose values are placed in buckets.
+     * @param buckets  Bucket description.
+     * @param rowCount Number of rows that will be scanned; the lookup tables are only
+     *                 built if the dictionary is not larger than this.
+     */
+    ColumnBuckets(final ColumnAndConverter column, final IBucketsDescription buckets,
+                  final int rowCount) {
+        this.column = column;
+        this.buckets = buckets;
+        if (column.converter != null && column.column instanceof ICategoryColumn &&
+                ((ICategoryColumn)column.column).getCodeCount() <= rowCount) {
+            this.category = (ICategoryColumn)column.column;
+            IStringConverter converter = column.converter;
+            int codeCount = this.category.getCodeCount();
+            this.codeValues = new double[codeCount];
+            this.codeBuckets = new int[codeCount];
+            for (int code = 0; code < codeCount; code++) {
+                String s = this.category.decode(code);
+                if (s == null) {
+                    this.codeBuckets[code] = MISSING;
+                } else {
+                    this.codeValues[code] = converter.asDouble(s);
+                    this.codeBuckets[code] = buckets.indexOf(this.codeValues[code]);
+                }
+            }
+            this.codes = new int[IRowIterator.BATCH_SIZE];
+        } else {
+            this.category = null;
+            this.codeValues = new double[0];
+            this.codeBuckets = new int[0];
+            this.codes = new int[0];
+        }
+    }
+
+    /**
+     * For all i < count sets missing[i] to true if rows[i] is missing; otherwise
+     * sets values[i] to the value of rows[i] and indexes[i] to its bucket index,
+     * or -1 if the value is out of range.  count must not exceed IRowIterator.BATCH_SIZE.
+     */
+    void indexOf(final int[] rows, final int count, final double[] values,
+                 final boolean[] missing, final int[] indexes) {
+        if (this.category == null) {
+            this.column.asDoubles(rows, count, values, missing);
+            this.buckets.indexOf(values, count, indexes);
+            return;
+        }
+        final int[] codes = this.codes;
+        final double[] codeValues = this.codeValues;
+        final int[] codeBuckets = this.codeBuckets;
+        this.category.getCodes(rows, count, codes);
+        for (int i = 0; i < count; i++) {
+            final int code = codes[i];
+            final int index = codeBuckets[code];
+            values[i] = codeValues[code];
+            indexes[i] = index;
+            missing[i] = index == MISSING;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.RecordOrder;
+import org.hillview.table.Schema;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Computes KLL quantiles of several columns in a single scan of the data.
+ */
+public class ColumnQuantilesSketch implements ISketch<ITable, KllQuantiles[]> {
+    private final KllQuantileSketch[] sketches;
+
+    /**
+     * @param columns    The columns; the quantiles of each one are computed in
+     *                   ascending order.
+     * @param schema     The schema of the data.
+     * @param resolution The rank error is about 1/resolution.
+     */
+    public ColumnQuantilesSketch(final List<String> columns, final Schema schema,
+                                 final int resolution) {
+        this.sketches = new KllQuantileSketch[columns.size()];
+        for (int i = 0; i < this.sketches.length; i++) {
+            RecordOrder order = new RecordOrder();
+            order.append(new ColumnSortOrientation(
+                    schema.getDescription(columns.get(i)), true));
+            this.sketches[i] = KllQuantileSketch.withResolution(order, resolution);
+        }
+    }
+
+    @Override
+    public KllQuantiles[] zero() {
+        KllQuantiles[] result = new KllQuantiles[this.sketches.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = this.sketches[i].zero();
+        return result;
+    }
+
+    @Override
+    public KllQuantiles[] add(@Nullable KllQuantiles[] left, @Nullable KllQuantiles[] right) {
+        left = Converters.checkNull(left);
+        right = Converters.checkNull(right);
+        KllQuantiles[] result = new KllQuantiles[this.sketches.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = this.sketches[i].add(left[i], right[i]);
+        return result;
+    }
+
+    @Override
+    public KllQuantiles[] create(final ITable data) {
+        KllCompactor[] compactors = new KllCompactor[this.sketches.length];
+        for (int i = 0; i < compactors.length; i++)
+            compactors[i] = this.sketches[i].compactor(data);
+        IRowIterator it = data.getRowIterator();
+        int[] rows = new int[IRowIterator.BATCH_SIZE];
+        for (int count = it.getNextRows(rows); count > 0; count = it.getNextRows(rows))
+            for (KllCompactor compactor : compactors)
+                for (int i = 0; i < count; i++)
+                    compactor.add(rows[i]);
+        KllQuantiles[] result = new KllQuantiles[this.sketches.length];
+        for (int i = 0; i < result.length; i++) {
+            compactors[i].finish();
+            result[i] = this.sketches[i].toQuantiles(
+                    compactors[i], data.getNumOfRows(), data, data);
+        }
+        return result;
+    }
+}
@@ -1,65 +1,280 @@
 package org.hillview.sketches;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.dataset.api.IJson;
+import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
-import java.util.TreeSet;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 
 /**
  * A class that would hold a the set of distinct strings from a column bounded in size by maxSize.
  * If maxSize == 0 it holds all distinct strings in the column.
+ * The strings are kept in an open addressing hash table, and sorted only when they are read.
+ * When a bounded set sees more than maxSize distinct strings it keeps the maxSize strings
+ * with the smallest hash values, and is marked as truncated.  This is a uniform sample of
+ * the distinct strings, and it can be merged with other samples; once sorted, the sample
+ * gives approximate quantile boundaries of the domain of the strings, which can be used
+ * to bucket columns with many distinct values.  So that these boundaries cover all the
+ * strings, the smallest and largest strings are always tracked, and they replace the
+ * smallest and largest strings of the sample.
  */
 public class DistinctStrings implements IJson {
+    private static final LongHashFunction hashFunction = LongHashFunction.xx();
+
     private final int maxSize;
-    private final TreeSet<String> uniqueStrings;
-    private final boolean bounded;
     private boolean truncated;  // if true we are missing some data
     private long columnSize;
+    /**
+     * Only strings whose hash is at most this value are kept.
+     */
+    private long threshold;
+    /**
+     * Smallest and largest strings added; null if there are none.
+     */
+    @Nullable
+    private String min;
+    @Nullable
+    private String max;
+    /**
+     * Hash table of strings; empty slots are null.  Only the strings are serialized;
+     * see writeObject.
+     */
+    private transient String[] keys;
+    private transient long[] hashes;
+    private transient int size;
+    /**
+     * The strings in sorted order; computed when needed.
+     */
+    @Nullable
+    private transient String[] sorted;
 
     public DistinctStrings(final int maxSize) {
         if (maxSize < 0)
             throw new IllegalArgumentException("size of DistinctString should be positive");
         this.maxSize = maxSize;
-        this.bounded = maxSize != 0;
-        this.uniqueStrings = new TreeSet<String>();
         this.columnSize = 0;
         this.truncated = false;
+        this.threshold = Long.MAX_VALUE;
+        this.keys = new String[16];
+        this.hashes = new long[16];
+        this.size = 0;
+    }
+
+    /**
+     * @return the hash of a string used by this class; it is the same as
+     * IStringColumn.hashCode64 with an unseeded xx hash function.
+     */
+    public static long hash(String string) {
+        return hashFunction.hashChars(string);
+    }
+
+    public static LongHashFunction getHashFunction() {
+        return hashFunction;
     }
 
     public void add(@Nullable String string) {
-        if (this.truncated)
+        if (string == null)
             return;
-        if ((this.bounded) && (this.uniqueStrings.size() == this.maxSize)) {
-            if (!this.uniqueStrings.contains(string))
-                this.truncated = true;
+        this.add(string, hash(string));
+    }
+
+    /**
+     * Adds a string with its hash code.
+     */
+    public void add(final String string, final long hash) {
+        this.addExtreme(string);
+        if (hash > this.threshold)
             return;
+        final int mask = this.keys.length - 1;
+        int slot = (int)hash & mask;
+        while (this.keys[slot] != null) {
+            if (this.hashes[slot] == hash && this.keys[slot].equals(string))
+                return;
+            slot = (slot + 1) & mask;
         }
-        this.uniqueStrings.add(string);
+        this.keys[slot] = string;
+        this.hashes[slot] = hash;
+        this.size++;
+        this.sorted = null;
+        if (this.maxSize > 0 && this.size > 2 * this.maxSize)
+            this.prune();
+        else if (2 * this.size > this.keys.length)
+            this.rehash(this.keys.length * 2);
+    }
+
+    /**
+     * Updates the smallest and largest strings.
+     */
+    private void addExtreme(final String string) {
+        if (this.min == null || string.compareTo(this.min) < 0)
+            this.min = string;
+        if (this.max == null || string.compareTo(this.max) > 0)
+            this.max = string;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldKeys = this.keys;
+        long[] oldHashes = this.hashes;
+        this.keys = new String[capacity];
+        this.hashes = new long[capacity];
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != null && oldHashes[i] <= this.threshold)
+                this.add(oldKeys[i], oldHashes[i]);
+    }
+
+    /**
+     * Keeps only the maxSize strings with the smallest hashes.
+     */
+    private void prune() {
+        if (this.maxSize == 0 || this.size <= this.maxSize)
+            return;
+        long[] present = new long[this.size];
+        int count = 0;
+        for (int i = 0; i < this.keys.length; i++)
+            if (this.keys[i] != null)
+                present[count++] = this.hashes[i];
+        Arrays.sort(present);
+        this.threshold = present[this.maxSize - 1];
+        this.truncated = true;
+        int capacity = this.keys.length;
+        while (capacity / 2 > 2 * this.maxSize && capacity > 16)
+            capacity /= 2;
+        this.rehash(capacity);
     }
 
-    public void setColumnSize(int columnSize) {
+    public void setColumnSize(long columnSize) {
         this.columnSize = columnSize;
     }
 
-    public int size() { return this.uniqueStrings.size(); }
+    public long getColumnSize() {
+        return this.columnSize;
+    }
+
+    /**
+     * @return true if the set holds a sample of the distinct strings.
+     */
+    public boolean isTruncated() {
+        this.prune();
+        return this.truncated;
+    }
+
+    public int size() {
+        this.prune();
+        return this.size;
+    }
+
+    /**
+     * @return the number of distinct strings, or an estimate of it if the set is truncated.
+     */
+    public long estimatedDistinctCount() {
+        this.prune();
+        if (!this.truncated)
+            return this.size;
+        // The hashes kept are the smallest 'size' of the values in a range of 2^64 hashes.
+        double fraction = ((double)this.threshold - (double)Long.MIN_VALUE) / Math.pow(2, 64);
+        return Math.round((this.size - 1) / fraction);
+    }
 
     /**
      * @return the union of two sets. The maxSize is the larger of the two. If one
      * of them allow for unbounded size (maxSize = 0) then so does the union.
      */
     public DistinctStrings union(final DistinctStrings otherSet) {
-        DistinctStrings result = new DistinctStrings(Math.max(this.maxSize, otherSet.maxSize));
+        int max = (this.maxSize == 0 || otherSet.maxSize == 0) ? 0 :
+                Math.max(this.maxSize, otherSet.maxSize);
+        DistinctStrings result = new DistinctStrings(max);
         result.columnSize = this.columnSize + otherSet.columnSize;
         result.truncated = this.truncated || otherSet.truncated;
-
-        for (String item: this.uniqueStrings)
-            result.add(item);
-        for (String item : otherSet.uniqueStrings)
-            result.add(item);
+        result.threshold = Math.min(this.threshold, otherSet.threshold);
+        for (DistinctStrings set : new DistinctStrings[] { this, otherSet }) {
+            if (set.min != null) {
+                result.addExtreme(set.min);
+                result.addExtreme(Converters.checkNull(set.max));
+            }
+            for (int i = 0; i < set.keys.length; i++)
+                if (set.keys[i] != null)
+                    result.add(set.keys[i], set.hashes[i]);
+        }
         return result;
     }
 
+    /**
+     * @return the strings in sorted order.  If the set is truncated the first and last
+     * strings are the smallest and largest strings added.
+     */
+    public String[] getSortedStrings() {
+        this.prune();
+        if (this.sorted == null) {
+            String[] result = new String[this.size];
+            int count = 0;
+            for (String key : this.keys)
+                if (key != null)
+                    result[count++] = key;
+            Arrays.sort(result);
+            if (this.truncated && count > 0) {
+                if (count == 1 && !result[0].equals(this.max))
+                    result = new String[] { null, this.max };
+                result[0] = this.min;
+                result[result.length - 1] = this.max;
+            }
+            this.sorted = result;
+        }
+        return this.sorted;
+    }
+
     public Iterable<String> getStrings() {
-        return this.uniqueStrings;
+        return Arrays.asList(this.getSortedStrings());
+    }
+
+    /**
+     * Writes only the strings kept, which are at most maxSize; the hash table
+     * of a set being built may hold up to twice as many.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        this.prune();
+        out.defaultWriteObject();
+        out.writeInt(this.size);
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != null) {
+                out.writeObject(this.keys[i]);
+                out.writeLong(this.hashes[i]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int count = in.readInt();
+        int capacity = 16;
+        while (capacity < 2 * count)
+            capacity *= 2;
+        this.keys = new String[capacity];
+        this.hashes = new long[capacity];
+        this.size = 0;
+        for (int i = 0; i < count; i++) {
+            String key = (String)in.readObject();
+            this.add(key, in.readLong());
+        }
+    }
+
+    @Override
+    public JsonElement toJsonTree() {
+        // The result looks like the IDistinctStrings typescript interface
+        JsonObject result = new JsonObject();
+        JsonArray strings = new JsonArray();
+        for (String s : this.getSortedStrings())
+            strings.add(s);
+        result.add("uniqueStrings", strings);
+        result.addProperty("truncated", this.truncated);
+        result.addProperty("columnSize", this.columnSize);
+        return result;
     }
 }
@@ -1,9 +1,7 @@
 package org.hillview.sketches;
 
 import org.hillview.dataset.api.ISketch;
-import org.hillview.table.api.ICategoryColumn;
-import org.hillview.table.api.IColumn;
-import org.hillview.table.api.ITable;
+import org.hillview.table.api.*;
 import org.hillview.utils.Converters;
 import org.hillview.utils.JsonList;
 
@@ -11,11 +9,9 @@ import javax.annotation.Nullable;
 
 /**
  * For each of the specified column names it computes the set of
- * all unique strings in the column.  It assumes that there are few
- * distinct strings in each such column; this makes sense when columns
- * are categorical.
- * This sketch is special, because it ignores the table membership set:
- * it just gets all strings in the given columns.
+ * all unique strings in the rows of the table.  If maxSize is not 0
+ * the result for a column with more than maxSize distinct strings is
+ * a sample of maxSize of them; see DistinctStrings.
  */
 public class DistinctStringsSketch implements ISketch<ITable, JsonList<DistinctStrings>> {
     private final int maxSize;
@@ -50,17 +46,59 @@ public class DistinctStringsSketch implements ISketch<ITable, JsonList<DistinctS
         for (int i = 0; i < this.colNames.length; i++) {
             IColumn col = data.getColumn(this.colNames[i]);
             final DistinctStrings ri = result.get(i);
-            ri.setColumnSize(col.sizeInRows());
-            if (col instanceof ICategoryColumn) {
-                ICategoryColumn cc = (ICategoryColumn)col;
-                cc.allDistinctStrings(ri::add);
-            } else {
-                for (int row = 0; row < col.sizeInRows(); row++) {
-                    String s = col.getString(row);
-                    ri.add(s);
+            ri.setColumnSize(data.getNumOfRows());
+            if (col instanceof ICategoryColumn)
+                addCategories((ICategoryColumn)col, data.getMembershipSet(), ri);
+            else
+                addStrings(col, data.getMembershipSet(), ri);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the codes which appear in the rows, stopping early if all of them do,
+     * and adds the corresponding strings.
+     */
+    private static void addCategories(ICategoryColumn col, IMembershipSet members,
+                                      DistinctStrings result) {
+        final int codeCount = col.getCodeCount();
+        final boolean[] seen = new boolean[codeCount];
+        int seenCount = 0;
+        final IRowIterator it = members.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final int[] codes = new int[rows.length];
+        int count = it.getNextRows(rows);
+        while (count > 0 && seenCount < codeCount) {
+            col.getCodes(rows, count, codes);
+            for (int i = 0; i < count; i++) {
+                if (!seen[codes[i]]) {
+                    seen[codes[i]] = true;
+                    seenCount++;
                 }
             }
+            count = it.getNextRows(rows);
+        }
+        for (int code = 0; code < codeCount; code++)
+            if (seen[code])
+                result.add(col.decode(code));
+    }
+
+    private static void addStrings(IColumn col, IMembershipSet members, DistinctStrings result) {
+        final IRowIterator it = members.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final long[] hashes = new long[rows.length];
+        final boolean hashed = col instanceof IStringColumn;
+        int count = it.getNextRows(rows);
+        while (count > 0) {
+            if (hashed)
+                col.hashCodes64(rows, count, DistinctStrings.getHashFunction(), hashes);
+            for (int i = 0; i < count; i++) {
+                String s = col.getString(rows[i]);
+                if (s == null)
+                    continue;
+                result.add(s, hashed ? hashes[i] : DistinctStrings.hash(s));
+            }
+            count = it.getNextRows(rows);
         }
-        return result;
     }
 }
@@ -1,12 +1,9 @@
 package org.hillview.sketches;
 
-import org.eclipse.collections.api.block.HashingStrategy;
-import org.eclipse.collections.impl.map.strategy.mutable.UnifiedMapWithHashingStrategy;
 import org.hillview.dataset.api.ISketch;
-import org.hillview.table.BaseRowSnapshot;
+import org.hillview.table.RowAccessor;
 import org.hillview.table.RowSnapshot;
 import org.hillview.table.Schema;
-import org.hillview.table.VirtualRowSnapshot;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
@@ -58,37 +55,22 @@ public class ExactFreqSketch implements ISketch<ITable, FreqKList> {
 
     @Override
     public FreqKList create(ITable data) {
-        HashingStrategy<BaseRowSnapshot> hs = new HashingStrategy<BaseRowSnapshot>() {
-            @Override
-            public int computeHashCode(BaseRowSnapshot brs) {
-                if (brs instanceof VirtualRowSnapshot) {
-                    return brs.hashCode();
-                } else if (brs instanceof RowSnapshot) {
-                    return brs.computeHashCode(ExactFreqSketch.this.schema);
-                } else throw new RuntimeException("Uknown type encountered");
-            }
-
-            @Override
-            public boolean equals(BaseRowSnapshot brs1, BaseRowSnapshot brs2) {
-                return brs1.compareForEquality(brs2, ExactFreqSketch.this.schema);
-            }
-        };
-        UnifiedMapWithHashingStrategy<BaseRowSnapshot, Integer> hMap = new
-                UnifiedMapWithHashingStrategy<BaseRowSnapshot, Integer>(hs);
-        this.rssList.forEach(rss -> hMap.put(rss, 0));
+        RowAccessor.Lookup lookup = RowAccessor.create(data, this.schema).lookup(this.rssList);
+        int[] counts = new int[this.rssList.size()];
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final int[] indexes = new int[rows.length];
         IRowIterator rowIt = data.getRowIterator();
-        int i = rowIt.getNextRow();
-        VirtualRowSnapshot vrs = new VirtualRowSnapshot(data, this.schema);
-        while (i != -1) {
-            vrs.setRow(i);
-            if (hMap.containsKey(vrs)) {
-                int count = hMap.get(vrs);
-                hMap.put(vrs, count + 1);
-            }
-            i = rowIt.getNextRow();
+        int count = rowIt.getNextRows(rows);
+        while (count > 0) {
+            lookup.indexOf(rows, count, indexes);
+            for (int i = 0; i < count; i++)
+                if (indexes[i] >= 0)
+                    counts[indexes[i]]++;
+            count = rowIt.getNextRows(rows);
         }
         HashMap<RowSnapshot, Integer> hm = new HashMap<RowSnapshot, Integer>(this.rssList.size());
-        this.rssList.forEach(rss -> hm.put(rss, hMap.get(rss)));
+        for (int j = 0; j < counts.length; j++)
+            hm.put(this.rssList.get(j), counts[j]);
         return new FreqKList(data.getNumOfRows(), this.epsilon, hm);
     }
 }
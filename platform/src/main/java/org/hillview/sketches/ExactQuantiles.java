@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes exact quantiles of a numeric column of a distributed dataset with a few rounds
+ * of small sketches.  A BasicColStatSketch finds the range and the number of present values;
+ * then each round runs a HistogramSketch over the ranges which still contain each target rank,
+ * and narrows every range to the bucket containing its rank.  When a range holds at most
+ * candidateLimit values, the values themselves are collected and the exact element is selected.
+ *
+ * The buckets of a round split each range both into equal parts of values and into equal
+ * parts of the bit patterns of the doubles.  The first split makes a round effective for smooth
+ * data; the second bounds the number of rounds by 64 / log2(bucketCount / 2), whatever the
+ * data, since after that many rounds a range holds a single double.
+ */
+public class ExactQuantiles {
+    private final ColumnNameAndConverter col;
+    /**
+     * A range with at most this many values is not narrowed any further.
+     */
+    private final int candidateLimit;
+    /**
+     * Number of buckets used to split each range in one round.
+     */
+    private final int bucketCount;
+
+    public ExactQuantiles(final ColumnNameAndConverter col, final int candidateLimit,
+                          final int bucketCount) {
+        if (candidateLimit <= 0 || bucketCount < 4)
+            throw new IllegalArgumentException("Invalid candidate limit or bucket count");
+        this.col = col;
+        this.candidateLimit = candidateLimit;
+        this.bucketCount = bucketCount;
+    }
+
+    public ExactQuantiles(final ColumnNameAndConverter col) {
+        this(col, 100000, 2048);
+    }
+
+    /**
+     * The range of values which contains the element of a given rank.
+     */
+    private static class Range {
+        /**
+         * Rank of the element, among all present values.
+         */
+        final long rank;
+        double min;
+        /**
+         * Inclusive.
+         */
+        double max;
+        /**
+         * Number of values smaller than min.
+         */
+        long below;
+        /**
+         * Number of values between min and max.
+         */
+        long count;
+
+        Range(long rank, double min, double max, long count) {
+            this.rank = rank;
+            this.min = min;
+            this.max = max;
+            this.below = 0;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Maps a double to a long such that the order of the longs is the order of the doubles.
+     * The same function also maps back.
+     */
+    private static long flip(long bits) {
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static long toKey(double value) {
+        return flip(Double.doubleToLongBits(value));
+    }
+
+    private static double fromKey(long key) {
+        return Double.longBitsToDouble(flip(key));
+    }
+
+    /**
+     * Adds to boundaries the points splitting the range into about bucketCount buckets.
+     * The points are in (min, max], so that even a range of two doubles is split.
+     */
+    private void split(final Range range, final List<Double> boundaries) {
+        final int parts = this.bucketCount / 2;
+        final double width = range.max - range.min;
+        if (!Double.isInfinite(width)) {
+            for (int i = 1; i < parts; i++) {
+                double b = range.min + (width * i) / parts;
+                if (range.min < b && b <= range.max)
+                    boundaries.add(b);
+            }
+        }
+        final long minKey = toKey(range.min);
+        final long keyWidth = toKey(range.max) - minKey;  // unsigned
+        final long step = Math.max(1, Long.divideUnsigned(keyWidth, parts));
+        for (int i = 1; i < parts; i++) {
+            long offset = step * i;
+            if (Long.compareUnsigned(offset, keyWidth) > 0)
+                break;
+            boundaries.add(fromKey(minKey + offset));
+        }
+    }
+
+    /**
+     * @param sorted  A sorted array.
+     * @param strict  If true count the elements smaller than value, else the elements
+     *                smaller than or equal to value.
+     * @return the number of elements of sorted which come before value.
+     */
+    private static int countBefore(final double[] sorted, final double value,
+                                   final boolean strict) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (strict ? sorted[mid] < value : sorted[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Narrows each range to one bucket of a histogram.
+     * @param data    Dataset to scan.
+     * @param ranges  Ranges to narrow.
+     * @param max     Largest value of the data.
+     */
+    private void narrow(final IDataSet<ITable> data, final List<Range> ranges, final double max) {
+        List<Double> points = new ArrayList<Double>();
+        points.add(max);
+        for (Range r : ranges) {
+            points.add(r.min);
+            if (r.max < max)
+                points.add(Math.nextUp(r.max));
+            this.split(r, points);
+        }
+        double[] sorted = new double[points.size()];
+        for (int i = 0; i < sorted.length; i++)
+            sorted[i] = points.get(i);
+        Arrays.sort(sorted);
+        int size = 1;
+        for (int i = 1; i < sorted.length; i++)
+            if (sorted[i] > sorted[size - 1])
+                sorted[size++] = sorted[i];
+        // All buckets are half-open except the last one, which only holds max, so every
+        // range is a union of consecutive buckets.
+        final double[] boundaries = Arrays.copyOf(sorted, size + 1);
+        boundaries[size] = max;
+        final BucketsDescription buckets = new BucketsDescription(boundaries);
+        final Histogram histogram = data.blockingSketch(new HistogramSketch(buckets, this.col));
+
+        final int last = buckets.getNumOfBuckets() - 1;
+        for (Range r : ranges) {
+            long below = r.below;
+            int bucket = countBefore(boundaries, r.min, false) - 1;
+            while (true) {
+                long count = histogram.getCount(bucket);
+                if (below + count > r.rank || bucket == last) {
+                    r.below = below;
+                    r.count = count;
+                    r.min = boundaries[bucket];
+                    r.max = bucket == last ? max : Math.nextDown(boundaries[bucket + 1]);
+                    break;
+                }
+                below += count;
+                bucket++;
+            }
+        }
+    }
+
+    /**
+     * Collects the values which fall in any of a set of ranges, in sorted order.
+     */
+    static class CandidatesSketch implements ISketch<ITable, double[]> {
+        private final ColumnNameAndConverter col;
+        private final double[] mins;
+        private final double[] maxes;
+
+        CandidatesSketch(final ColumnNameAndConverter col, final double[] mins,
+                         final double[] maxes) {
+            this.col = col;
+            this.mins = mins;
+            this.maxes = maxes;
+        }
+
+        @Override
+        public double[] create(final ITable data) {
+            ColumnAndConverter column = data.getColumn(this.col);
+            IRowIterator it = data.getMembershipSet().getIterator();
+            final int[] rows = new int[IRowIterator.BATCH_SIZE];
+            final double[] values = new double[rows.length];
+            final boolean[] missing = new boolean[rows.length];
+            double[] result = new double[16];
+            int size = 0;
+            int count = it.getNextRows(rows);
+            while (count > 0) {
+                column.asDoubles(rows, count, values, missing);
+                for (int i = 0; i < count; i++) {
+                    if (missing[i])
+                        continue;
+                    double v = values[i];
+                    for (int j = 0; j < this.mins.length; j++) {
+                        if (this.mins[j] <= v && v <= this.maxes[j]) {
+                            if (size == result.length)
+                                result = Arrays.copyOf(result, size * 2);
+                            result[size++] = v;
+                            break;
+                        }
+                    }
+                }
+                count = it.getNextRows(rows);
+            }
+            result = Arrays.copyOf(result, size);
+            Arrays.sort(result);
+            return result;
+        }
+
+        @Override
+        public double[] zero() { return new double[0]; }
+
+        @Override
+        public double[] add(@Nullable final double[] left, @Nullable final double[] right) {
+            double[] l = Converters.checkNull(left);
+            double[] r = Converters.checkNull(right);
+            double[] result = new double[l.length + r.length];
+            int i = 0, j = 0, k = 0;
+            while (i < l.length && j < r.length)
+                result[k++] = Double.compare(l[i], r[j]) <= 0 ? l[i++] : r[j++];
+            while (i < l.length)
+                result[k++] = l[i++];
+            while (j < r.length)
+                result[k++] = r[j++];
+            return result;
+        }
+    }
+
+    /**
+     * Computes exact quantiles of the present values of the column.
+     * @param data       Dataset to scan.
+     * @param quantiles  Quantiles to compute, between 0 and 1.  The quantile q is the
+     *                   element of rank ceil(q * n) in sorted order, counting from 1.
+     * @return           The value of each quantile; NaN if the column has no present values.
+     */
+    public double[] quantiles(final IDataSet<ITable> data, final double... quantiles) {
+        for (double q : quantiles)
+            if (q < 0 || q > 1)
+                throw new IllegalArgumentException("Quantile out of range: " + q);
+        final double[] result = new double[quantiles.length];
+        final BasicColStats stats = data.blockingSketch(new BasicColStatSketch(this.col, 0, 1.0));
+        final long present = stats.getPresentCount();
+        if (present == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+
+        final Range[] ranges = new Range[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            long rank = (long)Math.ceil(quantiles[i] * present) - 1;
+            rank = Math.max(0, Math.min(present - 1, rank));
+            ranges[i] = new Range(rank, stats.getMin(), stats.getMax(), present);
+        }
+        while (true) {
+            List<Range> open = new ArrayList<Range>();
+            for (Range r : ranges)
+                if (r.min < r.max && r.count > this.candidateLimit)
+                    open.add(r);
+            if (open.isEmpty())
+                break;
+            this.narrow(data, open, stats.getMax());
+        }
+
+        List<Range> open = new ArrayList<Range>();
+        for (int i = 0; i < ranges.length; i++) {
+            if (ranges[i].min == ranges[i].max)
+                result[i] = ranges[i].min;
+            else
+                open.add(ranges[i]);
+        }
+        if (open.isEmpty())
+            return result;
+        final double[] mins = new double[open.size()];
+        final double[] maxes = new double[open.size()];
+        for (int i = 0; i < mins.length; i++) {
+            mins[i] = open.get(i).min;
+            maxes[i] = open.get(i).max;
+        }
+        final double[] candidates = data.blockingSketch(
+                new CandidatesSketch(this.col, mins, maxes));
+        for (int i = 0; i < ranges.length; i++) {
+            Range r = ranges[i];
+            if (r.min == r.max)
+                continue;
+            int first = countBefore(candidates, r.min, true);
+            result[i] = candidates[first + (int)(r.rank - r.below)];
+        }
+        return result;
+    }
+}
@@ -1,26 +1,26 @@
 package org.hillview.sketches;
 
-import org.eclipse.collections.api.block.HashingStrategy;
-import org.eclipse.collections.impl.map.strategy.mutable.UnifiedMapWithHashingStrategy;
 import org.hillview.dataset.api.ISketch;
-import org.hillview.dataset.api.Pair;
+import org.hillview.table.RowAccessor;
 import org.hillview.table.RowSnapshot;
 import org.hillview.table.Schema;
-import org.hillview.table.VirtualRowSnapshot;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Map;
 
 /** Computes heavy-hitters using the Misra-Gries algorithm, where N is the length on the input
  * table, and k is the number of counters that we maintain. We use the mergeable version of MG, as
  * described in the ACM TODS paper "Mergeable Summaries" by Agarwal et al., which gives a
  * non-trivial error bound. The algorithm ensures that every element of frequency greater than
  * N/(k+1) appears in the list.
+ * Each partition is summarized with the Space-Saving algorithm using k+1 counters, which is
+ * isomorphic to Misra-Gries with k counters: subtracting the minimum Space-Saving count from
+ * all counts produces the Misra-Gries counts (Agarwal et al., Section 3).
  */
 public class FreqKSketch implements ISketch<ITable, FreqKList> {
     /**
@@ -53,95 +53,55 @@ public class FreqKSketch implements ISketch<ITable, FreqKList> {
      * @return The merged sketch, where we first add the frequency vectors, and then subtract the
      * (k+1)^th frequency from the top k. This guarantees a strong error bound.
      */
-    @SuppressWarnings("ConstantConditions")
     @Override
     public FreqKList add(@Nullable FreqKList left, @Nullable FreqKList right) {
-        HashMap<RowSnapshot, Integer> resultMap =
-                new HashMap<RowSnapshot, Integer>(left.hMap);
-        for (RowSnapshot rs : right.hMap.keySet()) {
-            if (resultMap.containsKey(rs))
-                resultMap.put(rs, left.hMap.get(rs) + right.hMap.get(rs));
-            else
-                resultMap.put(rs, right.hMap.get(rs));
-        }
-        List<Pair<RowSnapshot, Integer>> pList =
-                new ArrayList<Pair<RowSnapshot, Integer>>(left.hMap.size());
-        resultMap.forEach((rs, j) -> pList.add(new Pair<RowSnapshot, Integer>(rs, j)));
-        pList.sort((p1, p2) -> Integer.compare(p2.second, p1.second));
+        left = Converters.checkNull(left);
+        right = Converters.checkNull(right);
+        HashMap<RowSnapshot, Integer> resultMap = new HashMap<RowSnapshot, Integer>(left.hMap);
+        right.hMap.forEach((rs, j) -> resultMap.merge(rs, j, Integer::sum));
         int k = 0;
-        if (pList.size() >= (this.maxSize + 1))
-            k = pList.get(this.maxSize).second;
-        HashMap<RowSnapshot,Integer> hm = new HashMap<RowSnapshot, Integer>(this.maxSize);
-        for (int i = 0; i < Math.min(this.maxSize, pList.size()); i++) {
-            if (pList.get(i).second >= (k + 1))
-                hm.put(pList.get(i).first, pList.get(i).second - k);
+        if (resultMap.size() >= (this.maxSize + 1)) {
+            int[] counts = new int[resultMap.size()];
+            int i = 0;
+            for (int count : resultMap.values())
+                counts[i++] = count;
+            Arrays.sort(counts);
+            k = counts[counts.length - this.maxSize - 1];
+        }
+        HashMap<RowSnapshot, Integer> hm = new HashMap<RowSnapshot, Integer>(this.maxSize);
+        for (Map.Entry<RowSnapshot, Integer> e : resultMap.entrySet()) {
+            if (e.getValue() > k)
+                hm.put(e.getKey(), e.getValue() - k);
         }
         return new FreqKList(left.totalRows + right.totalRows, this.epsilon, hm);
     }
 
     /**
-     * Creates the MG sketch, by the Misra-Gries algorithm.
+     * Creates the MG sketch, by running the Space-Saving algorithm with k+1 counters.
      * @param data  Data to sketch.
      * @return A FreqKList.
      */
     @Override
     public FreqKList create(ITable data) {
+        final RowAccessor accessor = RowAccessor.create(data, this.schema);
+        final StreamSummary summary = new StreamSummary(accessor, this.maxSize + 1);
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final long[] hashes = new long[rows.length];
         IRowIterator rowIt = data.getRowIterator();
-        HashingStrategy<Integer> hs = new HashingStrategy<Integer>() {
-            final VirtualRowSnapshot vrs = new VirtualRowSnapshot(data, FreqKSketch.this.schema);
-            final VirtualRowSnapshot vrs1 = new VirtualRowSnapshot(data, FreqKSketch.this.schema);
-
-            @Override
-            public int computeHashCode(Integer index) {
-                this.vrs.setRow(index);
-                return this.vrs.computeHashCode(FreqKSketch.this.schema);
-            }
-
-            @Override
-            public boolean equals(Integer index, Integer otherIndex) {
-                this.vrs.setRow(index);
-                this.vrs1.setRow(otherIndex);
-                return this.vrs.compareForEquality(this.vrs1, FreqKSketch.this.schema);
-            }
-        };
-        UnifiedMapWithHashingStrategy<Integer, Integer> hMap = new
-                UnifiedMapWithHashingStrategy<Integer, Integer>(hs);
-
-        List<Integer> toRemove = new ArrayList<Integer>(this.maxSize);
-        int i = rowIt.getNextRow();
-        /* An optimization to speed up the algorithm is that we batch the decrements together in
-        variable dec. We only perform an actual decrement when the total decrements equal the minimum
-        count among the counts we are currently storing.*/
-        int min = 0; // Minimum count currently in the hashMap
-        int dec = 0; // Accumulated decrements. Should always be less than min.
-        while (i != -1) {
-            if (hMap.containsKey(i)) {
-                int val = hMap.get(i);
-                hMap.put(i, val + 1);
-                if (val == min)
-                    min = Collections.min(hMap.values());
-            } else if (hMap.size() < this.maxSize) {
-                hMap.put(i, 1);
-                min = 1;
-            } else {
-                dec += 1;
-                if (dec == min) {
-                    toRemove.clear();
-                    for (Integer row : hMap.keySet()) {
-                        int count = hMap.get(row) - dec;
-                        if (count == 0)
-                            toRemove.add(row);
-                        else
-                            hMap.put(row, count);
-                    }
-                    toRemove.forEach(hMap::remove);
-                    min = ((!hMap.isEmpty()) ? Collections.min(hMap.values()) : 0);
-                }
-            }
-            i = rowIt.getNextRow();
+        int count = rowIt.getNextRows(rows);
+        while (count > 0) {
+            accessor.hashCodes64(rows, count, hashes);
+            for (int i = 0; i < count; i++)
+                summary.add(rows[i], hashes[i]);
+            count = rowIt.getNextRows(rows);
         }
+        int min = summary.getMinCount();
         HashMap<RowSnapshot,Integer> hm = new HashMap<RowSnapshot, Integer>(this.maxSize);
-        hMap.keySet().forEach(ri -> hm.put(new RowSnapshot(data, ri, this.schema), hMap.get(ri)));
+        for (int counter = 0; counter < summary.size(); counter++) {
+            int mgCount = summary.getCount(counter) - min;
+            if (mgCount > 0)
+                hm.put(new RowSnapshot(data, summary.getRow(counter), this.schema), mgCount);
+        }
         return new FreqKList(data.getNumOfRows(), this.epsilon, hm);
     }
 }
@@ -2,9 +2,9 @@ package org.hillview.sketches;
 
 import org.hillview.dataset.api.ISketch;
 import org.hillview.table.api.*;
-import org.hillview.utils.BlasConversions;
 import org.hillview.utils.Converters;
 import org.jblas.DoubleMatrix;
+import org.jblas.NativeBlas;
 
 import javax.annotation.Nullable;
 import java.security.InvalidParameterException;
@@ -19,6 +19,10 @@ import java.util.logging.Logger;
  */
 public class FullCorrelationSketch implements ISketch<ITable, CorrMatrix> {
     private static final Logger LOG = Logger.getLogger(FullCorrelationSketch.class.getName());
+    /**
+     * Number of rows processed at once; only one block of rows is held in memory.
+     */
+    private static final int BLOCK_ROWS = 4 * IRowIterator.BATCH_SIZE;
     private final List<String> colNames;
 
     public FullCorrelationSketch(List<String> colNames) {
@@ -37,40 +41,114 @@ public class FullCorrelationSketch implements ISketch<ITable, CorrMatrix> {
         int nRows = table.getNumOfRows();
         int nCols = this.colNames.size();
 
-        // Convert the columns to a DoubleMatrix.
-        DoubleMatrix mat = BlasConversions.toDoubleMatrixMissing(table, this.colNames, Double.NaN);
+        // The rows are processed in blocks, which are stored in column-major order
+        // in a buffer of blockRows x nCols values.
+        ColumnAndConverter[] columns = new ColumnAndConverter[nCols];
+        for (int i = 0; i < nCols; i++)
+            columns[i] = new ColumnAndConverter(table.getColumn(this.colNames.get(i)), null);
+        final int blockRows = Math.max(1, Math.min(BLOCK_ROWS, nRows));
+        final double[] block = new double[blockRows * nCols];
+        final boolean[] missing = new boolean[blockRows * nCols];
+        final boolean[] anyMissing = new boolean[blockRows];
+        final int[] rows = new int[Math.min(IRowIterator.BATCH_SIZE, blockRows)];
+        final double[] values = new double[rows.length];
+        final boolean[] isMissing = new boolean[rows.length];
 
-        // The number of non-missing values per column pair
-        corrMatrix.nonMissing = DoubleMatrix.ones(nCols, nCols).mul(nRows);
-        for (int row = 0; row < mat.rows; row++) {
-            for (int i = 0; i < mat.columns; i++) {
-                if (Double.isNaN(mat.get(row, i))) {
-                    mat.put(row, i, 0); // Set the value to 0 so it doesn't contribute.
-                    corrMatrix.nonMissing.put(i, i, corrMatrix.nonMissing.get(i, i) - 1);
-                    for (int j = i; j < mat.columns; j++) {
-                        if (Double.isNaN(mat.get(row, j))) {
-                            corrMatrix.nonMissing.put(i, j, corrMatrix.nonMissing.get(i, j) - 1);
-                            corrMatrix.nonMissing.put(j, i, corrMatrix.nonMissing.get(j, i) - 1);
-                        }
+        // Inner products of the column pairs (column-major), sums of the columns,
+        // and for each column pair the number of rows where both are missing.
+        final double[] gram = new double[nCols * nCols];
+        final double[] sums = new double[nCols];
+        final long[] bothMissing = new long[nCols * nCols];
+
+        IRowIterator iter = table.getMembershipSet().getIterator();
+        int filled = 0;
+        int count = iter.getNextRows(rows);
+        while (count > 0) {
+            for (int i = 0; i < nCols; i++) {
+                columns[i].asDoubles(rows, count, values, isMissing);
+                int offset = i * blockRows + filled;
+                for (int r = 0; r < count; r++) {
+                    double v = values[r];
+                    if (isMissing[r] || Double.isNaN(v)) {
+                        // Set the value to 0 so it doesn't contribute.
+                        block[offset + r] = 0;
+                        missing[offset + r] = true;
+                        anyMissing[filled + r] = true;
+                    } else {
+                        block[offset + r] = v;
                     }
                 }
             }
+            filled += count;
+            if (blockRows - filled < rows.length) {
+                addBlock(block, missing, anyMissing, blockRows, filled, nCols, gram, sums, bothMissing);
+                filled = 0;
+            }
+            count = iter.getNextRows(rows);
         }
+        if (filled > 0)
+            addBlock(block, missing, anyMissing, blockRows, filled, nCols, gram, sums, bothMissing);
 
-        // Since the missing values are set to 0, they don't contribute to the covariance matrix.
-        DoubleMatrix covMat = mat.transpose().mmul(mat);
+        // The number of non-missing values per column pair
+        corrMatrix.nonMissing = new DoubleMatrix(nCols, nCols);
+        for (int i = 0; i < nCols * nCols; i++)
+            corrMatrix.nonMissing.data[i] = nRows - bothMissing[i];
 
         // Normalize by the number of *actual* values processed. (Also for the mean!)
-        covMat.divi(corrMatrix.nonMissing);
-        DoubleMatrix means = mat.columnSums().divRowVector(corrMatrix.nonMissing.diag());
+        for (int i = 0; i < nCols; i++) {
+            for (int j = i; j < nCols; j++)
+                corrMatrix.put(i, j, gram[i + j * nCols] / corrMatrix.nonMissing.get(i, j));
+            corrMatrix.means[i] = sums[i] / corrMatrix.nonMissing.get(i, i);
+        }
+        return corrMatrix;
+    }
 
-        for (int i = 0; i < this.colNames.size(); i++) {
-            for (int j = i; j < this.colNames.size(); j++) {
-                corrMatrix.put(i, j,  covMat.get(i, j));
+    /**
+     * Adds the contribution of a block of rows to the accumulated statistics, and clears
+     * the missing value flags of the block.
+     * @param block     Values of the block in column-major order; missing values are 0.
+     * @param missing   Flags marking the missing values in block.
+     * @param anyMissing For each row of the block, true if any value of the row is missing.
+     * @param blockRows Leading dimension of the block.
+     * @param rowCount  Number of rows in the block that are filled.
+     * @param nCols     Number of columns.
+     * @param gram      Inner products of the column pairs; updated in place.
+     * @param sums      Sums of the columns; updated in place.
+     * @param bothMissing For each column pair, number of rows where both values are missing;
+     *                  updated in place.
+     */
+    private static void addBlock(final double[] block, final boolean[] missing,
+                                 final boolean[] anyMissing, final int blockRows,
+                                 final int rowCount, final int nCols, final double[] gram,
+                                 final double[] sums, final long[] bothMissing) {
+        // gram += block^T * block; missing values are 0, so they don't contribute.
+        NativeBlas.dgemm('T', 'N', nCols, nCols, rowCount, 1.0, block, 0, blockRows,
+                block, 0, blockRows, 1.0, gram, 0, nCols);
+        for (int i = 0; i < nCols; i++) {
+            double sum = 0;
+            int offset = i * blockRows;
+            for (int r = 0; r < rowCount; r++)
+                sum += block[offset + r];
+            sums[i] += sum;
+        }
+        for (int r = 0; r < rowCount; r++) {
+            if (!anyMissing[r])
+                continue;
+            anyMissing[r] = false;
+            for (int i = 0; i < nCols; i++) {
+                if (!missing[i * blockRows + r])
+                    continue;
+                bothMissing[i + i * nCols]++;
+                for (int j = i + 1; j < nCols; j++) {
+                    if (missing[j * blockRows + r]) {
+                        bothMissing[i + j * nCols]++;
+                        bothMissing[j + i * nCols]++;
+                    }
+                }
             }
-            corrMatrix.means[i] = means.get(i);
+            for (int i = 0; i < nCols; i++)
+                missing[i * blockRows + r] = false;
         }
-        return corrMatrix;
     }
 
     @Nullable
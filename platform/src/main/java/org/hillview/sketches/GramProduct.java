@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import java.io.Serializable;
+
+/**
+ * The product of the Gram matrix X^T X of a set of numeric columns X with a
+ * matrix W, together with the first two moments of each column.  This is
+ * the result of a GramProductSketch.
+ */
+public class GramProduct implements Serializable {
+    /**
+     * Number of columns of X.
+     */
+    public final int columns;
+    /**
+     * Number of columns of W.
+     */
+    public final int width;
+    /**
+     * X^T X W, stored in column-major order (columns x width).
+     */
+    public final double[] product;
+    /**
+     * Sums of the present values of each column.
+     */
+    public final double[] sums;
+    /**
+     * Sums of the squares of the present values of each column.
+     */
+    public final double[] sumSquares;
+    /**
+     * Number of present values of each column.
+     */
+    public final long[] present;
+    /**
+     * Total number of rows, including the ones with missing values.
+     */
+    public long rows;
+
+    public GramProduct(int columns, int width) {
+        this.columns = columns;
+        this.width = width;
+        this.product = new double[columns * width];
+        this.sums = new double[columns];
+        this.sumSquares = new double[columns];
+        this.present = new long[columns];
+        this.rows = 0;
+    }
+
+    /**
+     * Adds other to this product, without allocating.
+     * @param other A product computed with the same columns and W; it is not modified.
+     */
+    public void accumulate(GramProduct other) {
+        for (int i = 0; i < this.product.length; i++)
+            this.product[i] += other.product[i];
+        for (int i = 0; i < this.columns; i++) {
+            this.sums[i] += other.sums[i];
+            this.sumSquares[i] += other.sumSquares[i];
+            this.present[i] += other.present[i];
+        }
+        this.rows += other.rows;
+    }
+
+    /**
+     * @return The mean of the present values of column i.
+     */
+    public double getMean(int i) {
+        return this.present[i] == 0 ? 0 : this.sums[i] / this.present[i];
+    }
+
+    /**
+     * @return The standard deviation of the present values of column i.
+     */
+    public double getStdDev(int i) {
+        if (this.present[i] == 0)
+            return 0;
+        double mean = this.getMean(i);
+        return Math.sqrt(Math.max(0, this.sumSquares[i] / this.present[i] - mean * mean));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+import org.jblas.DoubleMatrix;
+import org.jblas.NativeBlas;
+
+import javax.annotation.Nullable;
+import java.security.InvalidParameterException;
+import java.util.List;
+
+/**
+ * Computes the product X^T X W of the Gram matrix of a set of numeric columns X
+ * with a (small) matrix W, in a single pass over the data, without computing
+ * X^T X.  This is the building block of RandomizedPCA.
+ */
+public class GramProductSketch implements ISketch<ITable, GramProduct> {
+    /**
+     * Number of rows processed at once; only one block of rows is held in memory.
+     */
+    private static final int BLOCK_ROWS = 4 * IRowIterator.BATCH_SIZE;
+    private final List<String> colNames;
+    /**
+     * The matrix W, with one row for each column in colNames.
+     */
+    private final DoubleMatrix w;
+    /**
+     * Values that replace the missing values in each column; if null
+     * missing values are replaced by 0.
+     */
+    @Nullable
+    private final double[] fill;
+
+    public GramProductSketch(List<String> colNames, DoubleMatrix w, @Nullable double[] fill) {
+        if (w.rows != colNames.size())
+            throw new InvalidParameterException("Matrix should have one row for each column");
+        this.colNames = colNames;
+        this.w = w;
+        this.fill = fill;
+    }
+
+    @Override
+    public GramProduct create(ITable data) {
+        for (String col : this.colNames) {
+            if ((data.getSchema().getKind(col) != ContentsKind.Double) &&
+                    (data.getSchema().getKind(col) != ContentsKind.Integer))
+                throw new InvalidParameterException("Gram product requires column to be " +
+                        "integer or double: " + col);
+        }
+        final int nCols = this.colNames.size();
+        final int width = this.w.columns;
+        GramProduct result = new GramProduct(nCols, width);
+        ColumnAndConverter[] columns = new ColumnAndConverter[nCols];
+        for (int i = 0; i < nCols; i++)
+            columns[i] = new ColumnAndConverter(data.getColumn(this.colNames.get(i)), null);
+
+        // Blocks of rows are stored in column-major order.
+        final int blockRows = Math.max(1, Math.min(BLOCK_ROWS, data.getNumOfRows()));
+        final double[] block = new double[blockRows * nCols];
+        final double[] projected = new double[blockRows * width];
+        final int[] rows = new int[Math.min(IRowIterator.BATCH_SIZE, blockRows)];
+        final double[] values = new double[rows.length];
+        final boolean[] missing = new boolean[rows.length];
+
+        IRowIterator iter = data.getMembershipSet().getIterator();
+        int filled = 0;
+        int count = iter.getNextRows(rows);
+        while (count > 0) {
+            for (int i = 0; i < nCols; i++) {
+                columns[i].asDoubles(rows, count, values, missing);
+                double replacement = this.fill == null ? 0 : this.fill[i];
+                int offset = i * blockRows + filled;
+                double sum = 0;
+                double sumSquares = 0;
+                long present = 0;
+                for (int r = 0; r < count; r++) {
+                    double v = values[r];
+                    if (missing[r] || Double.isNaN(v)) {
+                        block[offset + r] = replacement;
+                    } else {
+                        block[offset + r] = v;
+                        sum += v;
+                        sumSquares += v * v;
+                        present++;
+                    }
+                }
+                result.sums[i] += sum;
+                result.sumSquares[i] += sumSquares;
+                result.present[i] += present;
+            }
+            filled += count;
+            if (blockRows - filled < rows.length) {
+                this.addBlock(block, projected, blockRows, filled, result);
+                filled = 0;
+            }
+            count = iter.getNextRows(rows);
+        }
+        if (filled > 0)
+            this.addBlock(block, projected, blockRows, filled, result);
+        return result;
+    }
+
+    /**
+     * Adds block^T * block * W to the product.
+     * @param block     Rows of X in column-major order, with leading dimension blockRows.
+     * @param projected Buffer for block * W, with leading dimension blockRows.
+     * @param rowCount  Number of rows in the block that are filled.
+     */
+    private void addBlock(final double[] block, final double[] projected, final int blockRows,
+                          final int rowCount, final GramProduct result) {
+        final int nCols = result.columns;
+        final int width = result.width;
+        NativeBlas.dgemm('N', 'N', rowCount, width, nCols, 1.0, block, 0, blockRows,
+                this.w.data, 0, nCols, 0.0, projected, 0, blockRows);
+        NativeBlas.dgemm('T', 'N', nCols, width, rowCount, 1.0, block, 0, blockRows,
+                projected, 0, blockRows, 1.0, result.product, 0, nCols);
+        result.rows += rowCount;
+    }
+
+    @Override
+    public GramProduct zero() {
+        return new GramProduct(this.colNames.size(), this.w.columns);
+    }
+
+    @Override
+    public GramProduct add(@Nullable GramProduct left, @Nullable GramProduct right) {
+        left = Converters.checkNull(left);
+        right = Converters.checkNull(right);
+        GramProduct result = this.zero();
+        result.accumulate(left);
+        result.accumulate(right);
+        return result;
+    }
+
+    @Override
+    public GramProduct addInPlace(@Nullable GramProduct left, @Nullable GramProduct right) {
+        GramProduct result = Converters.checkNull(left);
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.hillview.dataset.api.IJson;
+import org.hillview.table.RowSnapshot;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The groups of rows with equal values in a set of key columns, with aggregates of
+ * each group.  The accumulators are stored as one primitive array for each column and
+ * statistic, indexed by the group number.  This is the result of a GroupBySketch.
+ * When the number of groups is bounded, the smallest groups are dropped; the counts and
+ * aggregates of the remaining groups may then miss some rows, but each count is smaller
+ * than the true count by at most maxError.
+ */
+public class GroupByResult implements IJson {
+    public final List<String> keyColumns;
+    public final List<AggregateDescription> aggregates;
+    /**
+     * Columns whose numeric values are aggregated.
+     */
+    final String[] numericColumns;
+    /**
+     * Columns whose distinct values are counted.
+     */
+    final String[] distinctColumns;
+    private final int distinctLogSpace;
+    private final long seed;
+
+    private int groupCount;
+    private RowSnapshot[] keys;
+    /**
+     * Number of rows in each group.
+     */
+    long[] counts;
+    // For each numeric column, statistics of its present values in each group.
+    // The variance is kept as the mean and the sum of squared deviations from the mean
+    // (M2), which lose no precision when the values have a large offset.
+    long[][] present;
+    double[][] sums;
+    double[][] means;
+    double[][] m2;
+    double[][] mins;
+    double[][] maxs;
+    /**
+     * For each distinct column, a sketch of its values in each group.
+     */
+    HLogLog[][] distinct;
+    /**
+     * Number of rows in groups which were dropped.
+     */
+    public long droppedRows;
+    /**
+     * Bound on the number of rows missing from the count of each group.
+     */
+    public long maxError;
+    /**
+     * Index of the group with each key; built when results are combined.  Partial
+     * results are merged once per group rather than once per row, so the keys are
+     * looked up as boxed RowSnapshots; they do not belong to a single table that a
+     * RowHashTable could index.
+     */
+    @Nullable
+    private transient HashMap<RowSnapshot, Integer> index;
+
+    public GroupByResult(List<String> keyColumns, List<AggregateDescription> aggregates,
+                         int distinctLogSpace, long seed) {
+        this.keyColumns = keyColumns;
+        this.aggregates = aggregates;
+        this.distinctLogSpace = distinctLogSpace;
+        this.seed = seed;
+        List<String> numeric = new ArrayList<String>();
+        List<String> distinct = new ArrayList<String>();
+        for (AggregateDescription ad : aggregates) {
+            if (ad.kind == AggregateDescription.AggregateKind.Count)
+                continue;
+            List<String> list = ad.kind.isNumeric() ? numeric : distinct;
+            if (!list.contains(ad.columnName))
+                list.add(ad.columnName);
+        }
+        this.numericColumns = numeric.toArray(new String[0]);
+        this.distinctColumns = distinct.toArray(new String[0]);
+        this.groupCount = 0;
+        this.allocate(4);
+        this.droppedRows = 0;
+        this.maxError = 0;
+        this.index = null;
+    }
+
+    private void allocate(int capacity) {
+        int n = this.numericColumns.length;
+        this.keys = new RowSnapshot[capacity];
+        this.counts = new long[capacity];
+        this.present = new long[n][capacity];
+        this.sums = new double[n][capacity];
+        this.means = new double[n][capacity];
+        this.m2 = new double[n][capacity];
+        this.mins = new double[n][capacity];
+        this.maxs = new double[n][capacity];
+        this.distinct = new HLogLog[this.distinctColumns.length][capacity];
+    }
+
+    private void grow() {
+        int capacity = 2 * this.keys.length;
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.counts = Arrays.copyOf(this.counts, capacity);
+        for (int c = 0; c < this.numericColumns.length; c++) {
+            this.present[c] = Arrays.copyOf(this.present[c], capacity);
+            this.sums[c] = Arrays.copyOf(this.sums[c], capacity);
+            this.means[c] = Arrays.copyOf(this.means[c], capacity);
+            this.m2[c] = Arrays.copyOf(this.m2[c], capacity);
+            this.mins[c] = Arrays.copyOf(this.mins[c], capacity);
+            this.maxs[c] = Arrays.copyOf(this.maxs[c], capacity);
+        }
+        for (int d = 0; d < this.distinctColumns.length; d++)
+            this.distinct[d] = Arrays.copyOf(this.distinct[d], capacity);
+    }
+
+    public int getGroupCount() {
+        return this.groupCount;
+    }
+
+    public RowSnapshot getKey(int group) {
+        return this.keys[group];
+    }
+
+    public long getCount(int group) {
+        return this.counts[group];
+    }
+
+    /**
+     * Adds an empty group.
+     * @param key  Values of the key columns of the group, which must be new.
+     * @return The number of the group.
+     */
+    int addGroup(RowSnapshot key) {
+        if (this.groupCount == this.keys.length)
+            this.grow();
+        int group = this.groupCount++;
+        this.keys[group] = key;
+        this.counts[group] = 0;
+        for (int c = 0; c < this.numericColumns.length; c++) {
+            this.present[c][group] = 0;
+            this.sums[c][group] = 0;
+            this.means[c][group] = 0;
+            this.m2[c][group] = 0;
+            this.mins[c][group] = Double.POSITIVE_INFINITY;
+            this.maxs[c][group] = Double.NEGATIVE_INFINITY;
+        }
+        for (int d = 0; d < this.distinctColumns.length; d++)
+            this.distinct[d][group] = new HLogLog(this.distinctLogSpace, this.seed);
+        if (this.index != null)
+            this.index.put(key, group);
+        return group;
+    }
+
+    /**
+     * Adds the groups of other to this result, without modifying other.
+     */
+    public void accumulate(GroupByResult other) {
+        if (this.index == null) {
+            this.index = new HashMap<RowSnapshot, Integer>();
+            for (int g = 0; g < this.groupCount; g++)
+                this.index.put(this.keys[g], g);
+        }
+        for (int og = 0; og < other.groupCount; og++) {
+            Integer existing = this.index.get(other.keys[og]);
+            int g = existing != null ? existing : this.addGroup(other.keys[og]);
+            this.counts[g] += other.counts[og];
+            for (int c = 0; c < this.numericColumns.length; c++) {
+                long otherPresent = other.present[c][og];
+                if (otherPresent == 0)
+                    continue;
+                // Chan et al.'s formula for combining the means and M2 of two sets.
+                long present = this.present[c][g] + otherPresent;
+                double delta = other.means[c][og] - this.means[c][g];
+                double otherWeight = (double)otherPresent / present;
+                this.means[c][g] += delta * otherWeight;
+                this.m2[c][g] += other.m2[c][og] +
+                        delta * delta * this.present[c][g] * otherWeight;
+                this.present[c][g] = present;
+                this.sums[c][g] += other.sums[c][og];
+                this.mins[c][g] = Math.min(this.mins[c][g], other.mins[c][og]);
+                this.maxs[c][g] = Math.max(this.maxs[c][g], other.maxs[c][og]);
+            }
+            for (int d = 0; d < this.distinctColumns.length; d++)
+                this.distinct[d][g] = this.distinct[d][g].union(other.distinct[d][og]);
+        }
+        this.droppedRows += other.droppedRows;
+        this.maxError += other.maxError;
+    }
+
+    /**
+     * @return The numbers of the groups, sorted by decreasing count.
+     */
+    private Integer[] sortedGroups() {
+        Integer[] order = new Integer[this.groupCount];
+        for (int g = 0; g < order.length; g++)
+            order[g] = g;
+        Arrays.sort(order, (a, b) -> Long.compare(this.counts[b], this.counts[a]));
+        return order;
+    }
+
+    /**
+     * Keeps only the maxGroups largest groups.
+     * @param maxGroups Maximum number of groups; if 0 the groups are not bounded.
+     */
+    public void truncate(int maxGroups) {
+        if (maxGroups <= 0 || this.groupCount <= maxGroups)
+            return;
+        Integer[] order = this.sortedGroups();
+        // A dropped group may appear again later; its largest count bounds the rows it loses.
+        this.maxError += this.counts[order[maxGroups]];
+        for (int i = maxGroups; i < order.length; i++)
+            this.droppedRows += this.counts[order[i]];
+
+        RowSnapshot[] oldKeys = this.keys;
+        long[] oldCounts = this.counts;
+        long[][] oldPresent = this.present;
+        double[][] oldSums = this.sums;
+        double[][] oldMeans = this.means;
+        double[][] oldM2 = this.m2;
+        double[][] oldMins = this.mins;
+        double[][] oldMaxs = this.maxs;
+        HLogLog[][] oldDistinct = this.distinct;
+        this.allocate(maxGroups);
+        for (int g = 0; g < maxGroups; g++) {
+            int o = order[g];
+            this.keys[g] = oldKeys[o];
+            this.counts[g] = oldCounts[o];
+            for (int c = 0; c < this.numericColumns.length; c++) {
+                this.present[c][g] = oldPresent[c][o];
+                this.sums[c][g] = oldSums[c][o];
+                this.means[c][g] = oldMeans[c][o];
+                this.m2[c][g] = oldM2[c][o];
+                this.mins[c][g] = oldMins[c][o];
+                this.maxs[c][g] = oldMaxs[c][o];
+            }
+            for (int d = 0; d < this.distinctColumns.length; d++)
+                this.distinct[d][g] = oldDistinct[d][o];
+        }
+        this.groupCount = maxGroups;
+        this.index = null;
+    }
+
+    /**
+     * @param aggregate Index of the aggregate in the list of aggregates.
+     * @param group     Number of the group.
+     * @return The value of the aggregate in the group; NaN if it is not defined because
+     * all values in the group are missing.
+     */
+    public double getValue(int aggregate, int group) {
+        AggregateDescription ad = this.aggregates.get(aggregate);
+        if (ad.kind == AggregateDescription.AggregateKind.Count)
+            return this.counts[group];
+        if (ad.kind == AggregateDescription.AggregateKind.Distinct) {
+            int d = Arrays.asList(this.distinctColumns).indexOf(ad.columnName);
+            return this.distinct[d][group].distinctItemsEstimator();
+        }
+        int c = Arrays.asList(this.numericColumns).indexOf(ad.columnName);
+        long n = this.present[c][group];
+        if (n == 0)
+            return ad.kind == AggregateDescription.AggregateKind.Sum ? 0 : Double.NaN;
+        switch (ad.kind) {
+            case Sum:
+                return this.sums[c][group];
+            case Min:
+                return this.mins[c][group];
+            case Max:
+                return this.maxs[c][group];
+            case Mean:
+                return this.means[c][group];
+            case Variance:
+                return this.m2[c][group] / n;
+            default:
+                throw new RuntimeException("Unexpected aggregate " + ad.kind);
+        }
+    }
+
+    @Override
+    public JsonElement toJsonTree() {
+        JsonObject result = new JsonObject();
+        result.add("keyColumns", IJson.gsonInstance.toJsonTree(this.keyColumns));
+        JsonArray names = new JsonArray();
+        for (AggregateDescription ad : this.aggregates)
+            names.add(ad.toString());
+        result.add("aggregates", names);
+        result.addProperty("droppedRows", this.droppedRows);
+        result.addProperty("maxError", this.maxError);
+        JsonArray rows = new JsonArray();
+        for (int g : this.sortedGroups()) {
+            JsonObject row = new JsonObject();
+            row.addProperty("count", this.counts[g]);
+            Object[] key = new Object[this.keyColumns.size()];
+            for (int i = 0; i < key.length; i++)
+                key[i] = this.keys[g].getObject(this.keyColumns.get(i));
+            row.add("key", IJson.gsonInstance.toJsonTree(key));
+            JsonArray values = new JsonArray();
+            for (int a = 0; a < this.aggregates.size(); a++) {
+                double value = this.getValue(a, g);
+                values.add(Double.isNaN(value) ? JsonNull.INSTANCE : new JsonPrimitive(value));
+            }
+            row.add("values", values);
+            rows.add(row);
+        }
+        result.add("rows", rows);
+        return result;
+    }
+}
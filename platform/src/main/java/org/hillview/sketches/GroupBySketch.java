@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.*;
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+import org.hillview.utils.Randomness;
+
+import javax.annotation.Nullable;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Groups the rows of a table by the values of a set of key columns, and computes
+ * a list of aggregates for each group.  The keys are looked up in a RowHashTable a batch
+ * of rows at a time, using the 64-bit row hashes of a RowAccessor, or, for a single category
+ * column, mapped directly from their dictionary codes; each group is numbered,
+ * and the aggregated columns are read in batches and accumulated into primitive arrays
+ * indexed by the group number.  Distinct values are counted with a small HyperLogLog
+ * sketch in each group.  If maxGroups is positive only the maxGroups largest groups are
+ * kept in each partial result; see GroupByResult for the resulting error.
+ */
+public class GroupBySketch implements ISketch<ITable, GroupByResult> {
+    /**
+     * Log of the number of registers of the HyperLogLog sketch of each group.
+     */
+    public static final int DISTINCT_LOG_SPACE = 10;
+
+    private final List<String> keyColumns;
+    private final List<AggregateDescription> aggregates;
+    private final int maxGroups;
+    private final long seed;
+
+    /**
+     * @param keyColumns Columns whose values define the groups.
+     * @param aggregates Aggregates computed for each group.
+     * @param maxGroups  Maximum number of groups kept; 0 to keep all groups.
+     * @param seed       Seed of the hash function used to count distinct values.
+     */
+    public GroupBySketch(List<String> keyColumns, List<AggregateDescription> aggregates,
+                         int maxGroups, long seed) {
+        if (keyColumns.isEmpty())
+            throw new InvalidParameterException("No key columns specified");
+        for (AggregateDescription ad : aggregates)
+            if (ad.kind != AggregateDescription.AggregateKind.Count && ad.columnName == null)
+                throw new InvalidParameterException("No column specified for " + ad.kind);
+        this.keyColumns = keyColumns;
+        this.aggregates = aggregates;
+        this.maxGroups = maxGroups;
+        this.seed = seed;
+    }
+
+    public GroupBySketch(List<String> keyColumns, List<AggregateDescription> aggregates,
+                         int maxGroups) {
+        this(keyColumns, aggregates, maxGroups, new Randomness().nextLong());
+    }
+
+    @Override
+    public GroupByResult create(ITable data) {
+        GroupByResult result = this.zero();
+        Schema keySchema = data.getSchema().project(new HashSubSchema(this.keyColumns));
+        RowAccessor accessor = RowAccessor.create(data, keySchema);
+        RowHashTable groups = new RowHashTable(accessor, 64);
+        // A single category column is grouped by its dictionary codes, without hashing.
+        IColumn firstKey = data.getColumn(this.keyColumns.get(0));
+        @Nullable ICategoryColumn categoryKey = null;
+        int[] codeGroups = new int[0];
+        if (this.keyColumns.size() == 1 && firstKey instanceof ICategoryColumn) {
+            categoryKey = (ICategoryColumn)firstKey;
+            codeGroups = new int[categoryKey.getCodeCount()];
+            Arrays.fill(codeGroups, -1);
+        }
+
+        IColumn[] numeric = new IColumn[result.numericColumns.length];
+        for (int c = 0; c < numeric.length; c++) {
+            String col = result.numericColumns[c];
+            ContentsKind kind = data.getSchema().getKind(col);
+            if (kind == ContentsKind.String || kind == ContentsKind.Json || kind == ContentsKind.Category)
+                throw new InvalidParameterException("Column " + col + " of kind " + kind +
+                        " cannot be aggregated");
+            numeric[c] = data.getColumn(col);
+        }
+        IColumn[] distinct = new IColumn[result.distinctColumns.length];
+        for (int d = 0; d < distinct.length; d++)
+            distinct[d] = data.getColumn(result.distinctColumns[d]);
+        LongHashFunction hash = LongHashFunction.xx(this.seed);
+
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final long[] hashes = new long[rows.length];
+        final int[] groupIds = new int[rows.length];
+        final double[] values = new double[rows.length];
+        final boolean[] missing = new boolean[rows.length];
+        IRowIterator it = data.getMembershipSet().getIterator();
+        int count = it.getNextRows(rows);
+        while (count > 0) {
+            if (categoryKey != null) {
+                categoryKey.getCodes(rows, count, groupIds);
+                for (int i = 0; i < count; i++) {
+                    int code = groupIds[i];
+                    if (codeGroups[code] < 0)
+                        codeGroups[code] = result.addGroup(new RowSnapshot(data, rows[i], keySchema));
+                    groupIds[i] = codeGroups[code];
+                }
+            } else {
+                accessor.hashCodes64(rows, count, hashes);
+                for (int i = 0; i < count; i++) {
+                    int slot = groups.find(rows[i], hashes[i]);
+                    int group;
+                    if (slot < 0) {
+                        group = result.addGroup(new RowSnapshot(data, rows[i], keySchema));
+                        groups.insert(rows[i], hashes[i], group);
+                    } else {
+                        group = groups.getValue(slot);
+                    }
+                    groupIds[i] = group;
+                }
+            }
+            // The arrays are read after the groups are added, since adding may grow them.
+            final long[] counts = result.counts;
+            for (int i = 0; i < count; i++)
+                counts[groupIds[i]]++;
+            for (int c = 0; c < numeric.length; c++) {
+                numeric[c].asDoubles(rows, count, null, values, missing);
+                final long[] present = result.present[c];
+                final double[] sums = result.sums[c];
+                final double[] means = result.means[c];
+                final double[] m2 = result.m2[c];
+                final double[] mins = result.mins[c];
+                final double[] maxs = result.maxs[c];
+                for (int i = 0; i < count; i++) {
+                    double v = values[i];
+                    if (missing[i] || Double.isNaN(v))
+                        continue;
+                    int g = groupIds[i];
+                    // Welford's update of the mean and M2.
+                    long n = ++present[g];
+                    double delta = v - means[g];
+                    means[g] += delta / n;
+                    m2[g] += delta * (v - means[g]);
+                    sums[g] += v;
+                    if (v < mins[g])
+                        mins[g] = v;
+                    if (v > maxs[g])
+                        maxs[g] = v;
+                }
+            }
+            for (int d = 0; d < distinct.length; d++) {
+                distinct[d].getMissing(rows, count, missing);
+                distinct[d].hashCodes64(rows, count, hash, hashes);
+                final HLogLog[] sketches = result.distinct[d];
+                for (int i = 0; i < count; i++)
+                    if (!missing[i])
+                        sketches[groupIds[i]].addHash(hashes[i]);
+            }
+            count = it.getNextRows(rows);
+        }
+        result.truncate(this.maxGroups);
+        return result;
+    }
+
+    @Override
+    public GroupByResult zero() {
+        return new GroupByResult(this.keyColumns, this.aggregates, DISTINCT_LOG_SPACE, this.seed);
+    }
+
+    @Override
+    public GroupByResult add(@Nullable GroupByResult left, @Nullable GroupByResult right) {
+        GroupByResult result = this.zero();
+        result.accumulate(Converters.checkNull(left));
+        result.accumulate(Converters.checkNull(right));
+        result.truncate(this.maxGroups);
+        return result;
+    }
+
+    @Override
+    public GroupByResult addInPlace(@Nullable GroupByResult left, @Nullable GroupByResult right) {
+        GroupByResult result = Converters.checkNull(left);
+        result.accumulate(Converters.checkNull(right));
+        result.truncate(this.maxGroups);
+        return result;
+    }
+}
@@ -2,22 +2,70 @@ package org.hillview.sketches;
 
 import net.openhft.hashing.LongHashFunction;
 import org.hillview.dataset.api.IJson;
+import org.hillview.table.RowAccessor;
+import org.hillview.table.api.ICategoryColumn;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.Converters;
+import org.hillview.utils.HashUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 
 /**
  * A class that computes an approximation of the number of distinct elements in a column. Elements
- * are identified via their hashcode. The class uses the HyperLogLog algorithm for large estimates
- * and LinearCounting algorithm for small estimates.
+ * are identified via their hashcode.  The class uses the HyperLogLog++ scheme: while few
+ * distinct hashes have been seen they are kept in a sparse list with a much higher precision,
+ * and counted with LinearCounting; afterwards they are kept in a dense array of registers.
+ * The dense estimate uses the improved estimator of Ertl ("New cardinality estimation
+ * algorithms for HyperLogLog sketches", 2017), which corrects the bias of the raw HyperLogLog
+ * estimate for small and large cardinalities without empirical tables.
  */
 public class HLogLog implements IJson {
+    /**
+     * Precision of the hashes in the sparse representation.
+     */
+    private static final int sparsePrecision = 25;
+    /**
+     * Number of bits used by the rank in a sparse entry; the rank is at most 40.
+     */
+    private static final int rankBits = 6;
+
     private final int regNum; //number of registers
     private final int logRegNum;
-    private final byte[] registers;
     private final long seed;
     public long distinctItemCount; // Field so that value is accessible after serializing
 
+    // The representation is not serialized as json; see writeObject for the binary form.
+    /**
+     * Dense registers; null while the sketch is sparse.
+     */
+    @Nullable
+    private transient byte[] registers;
+    /**
+     * Sorted sparse entries, with at most one entry for each index; each entry has the index
+     * of a hash with sparsePrecision bits, followed by its rank.
+     */
+    @Nullable
+    private transient int[] sparse;
+    private transient int sparseSize;
+    /**
+     * Sparse entries which have not been merged into the sparse list yet.
+     */
+    @Nullable
+    private transient int[] buffer;
+    private transient int bufferSize;
+    /**
+     * Direct-mapped cache of recently added sparse entries, indexed by the low bits of the
+     * index; repeated values are skipped without going through the buffer.
+     */
+    @Nullable
+    private transient int[] recent;
+
     /**
      * @param logRegNum the logarithm of the number of registers. should be in 4...16
      *        Going beyond 16 would make the data structure big for no good reason.
@@ -26,36 +74,248 @@ public class HLogLog implements IJson {
     public HLogLog(int logRegNum, long seed) {
         HLogLog.checkSpaceValid(logRegNum);
         this.regNum = 1 << logRegNum;
-        this.registers = new byte[this.regNum];
         this.logRegNum = logRegNum;
         this.seed = seed;
+        this.sparse = new int[0];
+        this.sparseSize = 0;
+        this.allocateBuffers();
+    }
+
+    private void allocateBuffers() {
+        this.buffer = new int[this.sparseLimit()];
+        this.bufferSize = 0;
+        this.recent = new int[Integer.highestOneBit(this.sparseLimit())];
+    }
+
+    /**
+     * Beyond this number of entries the sparse list uses as much memory as the dense
+     * registers, and the sketch switches to the dense representation.
+     */
+    private int sparseLimit() {
+        return Math.max(4, this.regNum / 4);
+    }
+
+    public boolean isSparse() {
+        return this.registers == null;
+    }
+
+    /**
+     * The rank of a hash: the position of the first one bit after the first 'precision' bits.
+     */
+    private static int rank(long itemHash, int precision) {
+        return Long.numberOfLeadingZeros((itemHash << precision) | (1L << (precision - 1))) + 1;
+    }
+
+    private static int sparseEntry(long itemHash) {
+        int index = (int) (itemHash >>> (Long.SIZE - sparsePrecision));
+        return (index << rankBits) | rank(itemHash, sparsePrecision);
     }
 
     /**
      * adds the long 'itemHash' to the data structure.
-     * Uses the first bits to identify the register and then counts trailing zeros
+     * Uses the first bits to identify the register and then counts leading zeros
      * @param itemHash already assumed to be a random hash of the item
      */
     private void add(long itemHash) {
-        int index =  (int) itemHash >>> (Long.SIZE - this.logRegNum);
-        byte zeros = (byte) (Long.numberOfTrailingZeros(itemHash) + 1);
-        if (zeros > this.registers[index])
-            this.registers[index] = zeros;
+        if (this.registers != null) {
+            int index = (int) (itemHash >>> (Long.SIZE - this.logRegNum));
+            byte zeros = (byte) rank(itemHash, this.logRegNum);
+            if (zeros > this.registers[index])
+                this.registers[index] = zeros;
+        } else {
+            int entry = sparseEntry(itemHash);
+            // Valid entries are never 0, since ranks start at 1.
+            int[] cache = Converters.checkNull(this.recent);
+            int slot = (entry >>> rankBits) & (cache.length - 1);
+            if (cache[slot] == entry)
+                return;
+            cache[slot] = entry;
+            int[] buf = Converters.checkNull(this.buffer);
+            buf[this.bufferSize++] = entry;
+            if (this.bufferSize == buf.length)
+                this.flush();
+        }
+    }
+
+    /**
+     * Adds the hash of an item, which must be computed with LongHashFunction.xx(seed),
+     * as in createHLL, for the result to be combined with other sketches.
+     */
+    public void addHash(long itemHash) {
+        this.add(itemHash);
+    }
+
+    /**
+     * Adds count hashes, skipping the ones which are missing.
+     */
+    private void addHashes(final long[] hashes, final int count, @Nullable final boolean[] missing) {
+        if (this.registers == null) {
+            for (int i = 0; i < count; i++)
+                if (missing == null || !missing[i])
+                    this.add(hashes[i]);
+            return;
+        }
+        final byte[] regs = this.registers;
+        final int shift = Long.SIZE - this.logRegNum;
+        for (int i = 0; i < count; i++) {
+            if (missing != null && missing[i])
+                continue;
+            long itemHash = hashes[i];
+            int index = (int) (itemHash >>> shift);
+            byte zeros = (byte) rank(itemHash, this.logRegNum);
+            if (zeros > regs[index])
+                regs[index] = zeros;
+        }
+    }
+
+    /**
+     * Merges two sorted lists of sparse entries into result, keeping the largest rank
+     * for each index.
+     * @return the number of entries in the result.
+     */
+    private static int mergeSparse(final int[] left, final int leftSize,
+                                   final int[] right, final int rightSize, final int[] result) {
+        int i = 0, j = 0, size = 0;
+        while (i < leftSize || j < rightSize) {
+            int entry;
+            if (j == rightSize || (i < leftSize && left[i] <= right[j]))
+                entry = left[i++];
+            else
+                entry = right[j++];
+            // Entries with the same index are adjacent, with increasing ranks.
+            if (size > 0 && (result[size - 1] >>> rankBits) == (entry >>> rankBits))
+                result[size - 1] = entry;
+            else
+                result[size++] = entry;
+        }
+        return size;
+    }
+
+    /**
+     * Merges the buffered entries into the sparse list, and switches to dense
+     * registers if the list is too long.
+     */
+    private void flush() {
+        if (this.registers != null || this.bufferSize == 0)
+            return;
+        int[] buf = Converters.checkNull(this.buffer);
+        int[] list = Converters.checkNull(this.sparse);
+        Arrays.sort(buf, 0, this.bufferSize);
+        int[] merged = new int[this.sparseSize + this.bufferSize];
+        this.sparseSize = mergeSparse(list, this.sparseSize, buf, this.bufferSize, merged);
+        this.sparse = merged;
+        this.bufferSize = 0;
+        if (this.sparseSize > this.sparseLimit())
+            this.toDense();
+    }
+
+    /**
+     * Adds the sparse entries of this sketch to a set of dense registers.
+     */
+    private void addSparseTo(final byte[] regs) {
+        final int[] list = Converters.checkNull(this.sparse);
+        final int extraBits = sparsePrecision - this.logRegNum;
+        final int lowMask = (1 << extraBits) - 1;
+        for (int i = 0; i < this.sparseSize; i++) {
+            int entry = list[i];
+            int sparseIndex = entry >>> rankBits;
+            int index = sparseIndex >>> extraBits;
+            int low = sparseIndex & lowMask;
+            // The bits between the two precisions are part of the dense rank.
+            int zeros = low != 0 ?
+                    Integer.numberOfLeadingZeros(low) - (Integer.SIZE - extraBits) + 1 :
+                    extraBits + (entry & ((1 << rankBits) - 1));
+            if (zeros > regs[index])
+                regs[index] = (byte) zeros;
+        }
+    }
+
+    private void toDense() {
+        byte[] regs = new byte[this.regNum];
+        this.addSparseTo(regs);
+        this.registers = regs;
+        this.sparse = null;
+        this.sparseSize = 0;
+        this.buffer = null;
+        this.bufferSize = 0;
+        this.recent = null;
     }
 
     /**
      * Creates a Hyperloglog data structure from a column and membership set. Uses the hash code
-     * of the objects in the column as identifier.
+     * of the objects in the column as identifier.  For category columns each distinct value
+     * is hashed only once.
      */
     public void createHLL(IColumn column, IMembershipSet memSet) {
-        final IRowIterator myIter = memSet.getIterator();
         LongHashFunction hash = LongHashFunction.xx(this.seed);
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            if (!column.isMissing(currRow)) {
-                this.add(column.hashCode64(currRow, hash));
-             }
-            currRow = myIter.getNextRow();
+        if (column instanceof ICategoryColumn) {
+            this.createFromDictionary((ICategoryColumn) column, memSet, hash);
+            return;
+        }
+        final IRowIterator myIter = memSet.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final long[] hashes = new long[rows.length];
+        final boolean[] missing = new boolean[rows.length];
+        int count = myIter.getNextRows(rows);
+        while (count > 0) {
+            column.getMissing(rows, count, missing);
+            column.hashCodes64(rows, count, hash, hashes);
+            this.addHashes(hashes, count, missing);
+            count = myIter.getNextRows(rows);
+        }
+        this.distinctItemsEstimator();
+    }
+
+    /**
+     * Finds the codes which appear in the rows, and adds the hash of each code's value.
+     * The hashes are the same as the ones of IStringColumn.hashCode64, so the result can be
+     * combined with sketches of string columns.  The scan stops early if all codes appear.
+     */
+    private void createFromDictionary(ICategoryColumn column, IMembershipSet memSet,
+                                      LongHashFunction hash) {
+        final int codeCount = column.getCodeCount();
+        final boolean[] seen = new boolean[codeCount];
+        int seenCount = 0;
+        final IRowIterator myIter = memSet.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final int[] codes = new int[rows.length];
+        int count = myIter.getNextRows(rows);
+        while (count > 0 && seenCount < codeCount) {
+            column.getCodes(rows, count, codes);
+            for (int i = 0; i < count; i++) {
+                int code = codes[i];
+                if (!seen[code]) {
+                    seen[code] = true;
+                    seenCount++;
+                }
+            }
+            count = myIter.getNextRows(rows);
+        }
+        for (int code = 0; code < codeCount; code++) {
+            if (!seen[code])
+                continue;
+            String value = column.decode(code);
+            if (value != null)
+                this.add(hash.hashChars(value));
+        }
+        this.distinctItemsEstimator();
+    }
+
+    /**
+     * Creates a Hyperloglog data structure which counts the distinct combinations of values
+     * of several columns; missing values are part of the combinations.
+     */
+    public void createHLL(RowAccessor accessor, IMembershipSet memSet) {
+        final IRowIterator myIter = memSet.getIterator();
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final long[] hashes = new long[rows.length];
+        int count = myIter.getNextRows(rows);
+        while (count > 0) {
+            accessor.hashCodes64(rows, count, hashes);
+            for (int i = 0; i < count; i++)
+                hashes[i] = HashUtil.murmurHash3(this.seed, hashes[i]);
+            this.addHashes(hashes, count, null);
+            count = myIter.getNextRows(rows);
         }
         this.distinctItemsEstimator();
     }
@@ -63,43 +323,153 @@ public class HLogLog implements IJson {
     public HLogLog union(HLogLog otherHLL) {
         if ((otherHLL.regNum != this.regNum) || (otherHLL.seed != this.seed))
             throw new IllegalArgumentException("attempted union of non matching HLogLog classes");
+        this.flush();
+        otherHLL.flush();
         HLogLog result = new HLogLog(this.logRegNum, this.seed);
-        for (int i = 0; i < this.regNum; i++)
-            result.registers[i] = (byte) Integer.max(this.registers[i], otherHLL.registers[i]);
+        if (this.registers == null && otherHLL.registers == null) {
+            int[] merged = new int[this.sparseSize + otherHLL.sparseSize];
+            result.sparseSize = mergeSparse(Converters.checkNull(this.sparse), this.sparseSize,
+                    Converters.checkNull(otherHLL.sparse), otherHLL.sparseSize, merged);
+            result.sparse = merged;
+            if (result.sparseSize > result.sparseLimit())
+                result.toDense();
+        } else {
+            result.toDense();
+            byte[] regs = Converters.checkNull(result.registers);
+            for (HLogLog h : new HLogLog[] { this, otherHLL }) {
+                if (h.registers == null) {
+                    h.addSparseTo(regs);
+                } else {
+                    for (int i = 0; i < this.regNum; i++)
+                        regs[i] = (byte) Integer.max(regs[i], h.registers[i]);
+                }
+            }
+        }
         result.distinctItemsEstimator();
         return result;
     }
 
+    private static double sigma(double x) {
+        if (x == 1)
+            return Double.POSITIVE_INFINITY;
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1)
+            return 0;
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
     /**
      * @return an estimation of the number of distinct items
      */
     public long distinctItemsEstimator() {
-        double alpha;
-        switch (this.logRegNum) { //set the parameters for the log log estimator
-            case 4: alpha = 0.673;
-                break;
-            case 5: alpha = 0.697;
-                break;
-            case 6: alpha = 0.709;
-                break;
-            default: alpha = 0.7213 / (1 + (1.079 / this.regNum));
+        this.flush();
+        double estimate;
+        if (this.registers == null) {
+            // LinearCounting over the sparse indexes.
+            double m = 1 << sparsePrecision;
+            estimate = m * Math.log(m / (m - this.sparseSize));
+        } else {
+            final int q = Long.SIZE - this.logRegNum;
+            final int[] histogram = new int[q + 2];
+            for (byte r : this.registers)
+                histogram[r]++;
+            final double m = this.regNum;
+            double z = m * tau(1 - histogram[q + 1] / m);
+            for (int k = q; k >= 1; k--)
+                z = 0.5 * (z + histogram[k]);
+            z += m * sigma(histogram[0] / m);
+            estimate = m * m / (2 * Math.log(2) * z);
+        }
+        this.distinctItemCount = Math.round(estimate);
+        return this.distinctItemCount;
+    }
+
+    /**
+     * Writes the sketch compactly: dense registers are packed in 6 bits each, and the
+     * sparse list is written as varint-encoded differences between consecutive entries.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        this.flush();
+        out.defaultWriteObject();
+        out.writeBoolean(this.registers != null);
+        if (this.registers != null) {
+            byte[] regs = this.registers;
+            for (int i = 0; i < regs.length; i += 4) {
+                out.writeByte(regs[i] | (regs[i + 1] << 6));
+                out.writeByte((regs[i + 1] >> 2) | (regs[i + 2] << 4));
+                out.writeByte((regs[i + 2] >> 4) | (regs[i + 3] << 2));
+            }
+        } else {
+            int[] list = Converters.checkNull(this.sparse);
+            out.writeInt(this.sparseSize);
+            int previous = 0;
+            for (int i = 0; i < this.sparseSize; i++) {
+                int delta = list[i] - previous;
+                previous = list[i];
+                while ((delta & ~0x7F) != 0) {
+                    out.writeByte((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                out.writeByte(delta);
+            }
         }
-        double rawEstimate = 0;
-        int zeroRegs = 0;
-        for (int i = 0; i < this.regNum; i++) {
-            rawEstimate += Math.pow(2, -this.registers[i]);
-            if (this.registers[i] == 0)
-                zeroRegs ++;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (in.readBoolean()) {
+            byte[] regs = new byte[this.regNum];
+            for (int i = 0; i < regs.length; i += 4) {
+                int b0 = in.readUnsignedByte();
+                int b1 = in.readUnsignedByte();
+                int b2 = in.readUnsignedByte();
+                regs[i] = (byte) (b0 & 0x3F);
+                regs[i + 1] = (byte) ((b0 >> 6) | ((b1 & 0x0F) << 2));
+                regs[i + 2] = (byte) ((b1 >> 4) | ((b2 & 0x03) << 4));
+                regs[i + 3] = (byte) (b2 >> 2);
+            }
+            this.registers = regs;
+        } else {
+            int size = in.readInt();
+            int[] list = new int[size];
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int delta = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = in.readUnsignedByte();
+                    delta |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                previous += delta;
+                list[i] = previous;
+            }
+            this.sparse = list;
+            this.sparseSize = size;
+            this.allocateBuffers();
         }
-        rawEstimate = 1 / rawEstimate;
-        rawEstimate = rawEstimate * alpha * this.regNum * this.regNum;
-        long result = Math.round(rawEstimate);
-        if ((zeroRegs > 0) && (rawEstimate < (2.5 * this.regNum)))
-            result = Math.round(this.regNum * (Math.log(this.regNum / (double) zeroRegs)));
-        else if (rawEstimate > (Integer.MAX_VALUE / 30 ))
-            result = (long) (- Math.pow(2,32) * Math.log(1 - (rawEstimate /  Math.pow(2,32))));
-        this.distinctItemCount = result;
-        return result;
     }
 
     /**
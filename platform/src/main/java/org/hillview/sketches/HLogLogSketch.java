@@ -1,14 +1,20 @@
 package org.hillview.sketches;
 
 import org.hillview.dataset.api.ISketch;
+import org.hillview.table.HashSubSchema;
+import org.hillview.table.RowAccessor;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 import org.hillview.utils.Randomness;
 
 import javax.annotation.Nullable;
+import java.util.List;
 
 public class HLogLogSketch implements ISketch<ITable, HLogLog> {
-    private final String colName;
+    /**
+     * The sketch counts the distinct combinations of values of these columns.
+     */
+    private final String[] colNames;
     private final long seed; //seed for the hash function of the HLogLog
     /**
      * the log of the #bytes used by each data structure. Should be in 4...16.
@@ -17,13 +23,22 @@ public class HLogLogSketch implements ISketch<ITable, HLogLog> {
     private final int logSpaceSize;
 
     public HLogLogSketch(String colName) {
-        this.colName = colName;
+        this.colNames = new String[] { colName };
         this.seed = new Randomness().nextLong();
         this.logSpaceSize = 12;
     }
 
     public HLogLogSketch(String colName, int logSpaceSize, long seed) {
-        this.colName = colName;
+        this.colNames = new String[] { colName };
+        this.seed = seed;
+        HLogLog.checkSpaceValid(logSpaceSize);
+        this.logSpaceSize = logSpaceSize;
+    }
+
+    public HLogLogSketch(List<String> colNames, int logSpaceSize, long seed) {
+        if (colNames.isEmpty())
+            throw new IllegalArgumentException("No columns specified");
+        this.colNames = colNames.toArray(new String[0]);
         this.seed = seed;
         HLogLog.checkSpaceValid(logSpaceSize);
         this.logSpaceSize = logSpaceSize;
@@ -32,7 +47,13 @@ public class HLogLogSketch implements ISketch<ITable, HLogLog> {
     @Override
     public HLogLog create(final ITable data) {
         HLogLog result = this.getZero();
-        result.createHLL(data.getColumn(this.colName), data.getMembershipSet());
+        if (this.colNames.length == 1) {
+            result.createHLL(data.getColumn(this.colNames[0]), data.getMembershipSet());
+        } else {
+            RowAccessor accessor = RowAccessor.create(
+                    data, data.getSchema().project(new HashSubSchema(this.colNames)));
+            result.createHLL(accessor, data.getMembershipSet());
+        }
         return result;
     }
 
@@ -17,6 +17,9 @@
  */
 
 package org.hillview.sketches;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.*;
 import java.io.Serializable;
@@ -25,7 +28,11 @@ import java.io.Serializable;
  * A 2-dimensional histogram.
  */
 public class HeatMap implements Serializable, IJson {
-    private final long[][] buckets;
+    /**
+     * Counts stored in row-major order: the count of bucket (i, j) is at
+     * index i * bucketDescDim2.getNumOfBuckets() + j.
+     */
+    private final long[] buckets;
     private long missingData; // number of items missing on both columns
     private long outOfRange;
     private final IBucketsDescription bucketDescDim1;
@@ -39,38 +46,71 @@ public class HeatMap implements Serializable, IJson {
                    final IBucketsDescription buckets2) {
         this.bucketDescDim1 = buckets1;
         this.bucketDescDim2 = buckets2;
-        this.buckets = new long[buckets1.getNumOfBuckets()][buckets2.getNumOfBuckets()]; // Automatically initialized to 0
+        this.buckets = new long[buckets1.getNumOfBuckets() * buckets2.getNumOfBuckets()]; // Automatically initialized to 0
         this.histogramMissingD1 = new Histogram(this.bucketDescDim1);
         this.histogramMissingD2 = new Histogram(this.bucketDescDim2);
         rate = 1.0;
     }
 
+    /**
+     * A heat map with the specified counts.
+     * @param buckets Counts in row-major order.
+     */
+    HeatMap(final IBucketsDescription buckets1, final IBucketsDescription buckets2,
+            final long[] buckets, final long missingData, final long outOfRange,
+            final Histogram histogramMissingD1, final Histogram histogramMissingD2) {
+        this(buckets1, buckets2);
+        System.arraycopy(buckets, 0, this.buckets, 0, this.buckets.length);
+        for (long c : buckets)
+            this.totalSize += c;
+        this.missingData = missingData;
+        this.outOfRange = outOfRange;
+        this.histogramMissingD1 = histogramMissingD1;
+        this.histogramMissingD2 = histogramMissingD2;
+    }
+
     public void createHeatMap(final ColumnAndConverter columnD1, final ColumnAndConverter columnD2,
                               final IMembershipSet membershipSet) {
-        final IRowIterator myIter = membershipSet.getIterator();
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            boolean isMissingD1 = columnD1.isMissing(currRow);
-            boolean isMissingD2 = columnD2.isMissing(currRow);
-            if (isMissingD1 || isMissingD2) {
-                if (!isMissingD1)  // only column 2 is missing
-                    this.histogramMissingD2.addValue(columnD1.asDouble(currRow));
-                else if (!isMissingD2) // only column 1 is missing
-                    this.histogramMissingD1.addValue(columnD2.asDouble(currRow));
-                else
-                    this.missingData++; // both are missing
-            } else {
-                double val1 = columnD1.asDouble(currRow);
-                double val2 = columnD2.asDouble(currRow);
-                int index1 = this.bucketDescDim1.indexOf(val1);
-                int index2 = this.bucketDescDim2.indexOf(val2);
-                if ((index1 >= 0) && (index2 >= 0)) {
-                    this.buckets[index1][index2]++;
-                    this.totalSize++;
+        this.createHeatMap(columnD1, columnD2, membershipSet.getIterator(), membershipSet.getSize());
+    }
+
+    private void createHeatMap(final ColumnAndConverter columnD1, final ColumnAndConverter columnD2,
+                               final IRowIterator myIter, final int rowCount) {
+        final ColumnBuckets columnBuckets1 = new ColumnBuckets(columnD1, this.bucketDescDim1, rowCount);
+        final ColumnBuckets columnBuckets2 = new ColumnBuckets(columnD2, this.bucketDescDim2, rowCount);
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final double[] values1 = new double[rows.length];
+        final double[] values2 = new double[rows.length];
+        final boolean[] missing1 = new boolean[rows.length];
+        final boolean[] missing2 = new boolean[rows.length];
+        final int[] indexes1 = new int[rows.length];
+        final int[] indexes2 = new int[rows.length];
+        final int width = this.bucketDescDim2.getNumOfBuckets();
+        int count = myIter.getNextRows(rows);
+        while (count > 0) {
+            columnBuckets1.indexOf(rows, count, values1, missing1, indexes1);
+            columnBuckets2.indexOf(rows, count, values2, missing2, indexes2);
+            for (int i = 0; i < count; i++) {
+                boolean isMissingD1 = missing1[i];
+                boolean isMissingD2 = missing2[i];
+                if (isMissingD1 || isMissingD2) {
+                    if (!isMissingD1)  // only column 2 is missing
+                        this.histogramMissingD2.addValue(values1[i]);
+                    else if (!isMissingD2) // only column 1 is missing
+                        this.histogramMissingD1.addValue(values2[i]);
+                    else
+                        this.missingData++; // both are missing
+                } else {
+                    int index1 = indexes1[i];
+                    int index2 = indexes2[i];
+                    if ((index1 >= 0) && (index2 >= 0)) {
+                        this.buckets[index1 * width + index2]++;
+                        this.totalSize++;
+                    }
+                    else this.outOfRange++;
                 }
-                else this.outOfRange++;
             }
-            currRow = myIter.getNextRow();
+            count = myIter.getNextRows(rows);
         }
         if (this.rate < 1) {
             this.histogramMissingD1.rescale(this.rate);
@@ -78,8 +118,7 @@ public class HeatMap implements Serializable, IJson {
             this.outOfRange = (long) ((double) this.outOfRange / this.rate);
             this.missingData = (long) ((double) this.missingData / this.rate);
             for (int i = 0; i < this.buckets.length; i++)
-                for (int j = 0; j < this.buckets[i].length; j++)
-                    this.buckets[i][j] = (long) ((double) this.buckets[i][j] / this.rate);
+                this.buckets[i] = (long) ((double) this.buckets[i] / this.rate);
         }
     }
 
@@ -97,7 +136,8 @@ public class HeatMap implements Serializable, IJson {
         if (sampleRate >= 1)
             sampleRate = 1;
         this.rate = sampleRate;
-        this.createHeatMap(columnD1, columnD2, membershipSet.sample(sampleRate));
+        this.createHeatMap(columnD1, columnD2, membershipSet.getSampleIterator(sampleRate),
+                (int)(membershipSet.getSize() * sampleRate));
     }
 
     public void createSampleHistogram(
@@ -108,7 +148,9 @@ public class HeatMap implements Serializable, IJson {
         if (sampleRate >= 1)
             sampleRate = 1;
         this.rate = sampleRate;
-        this.createHeatMap(columnD1, columnD2, membershipSet.sample(sampleRate, seed));
+        this.createHeatMap(columnD1, columnD2,
+                membershipSet.getSampleIterator(sampleRate, seed),
+                (int)(membershipSet.getSize() * sampleRate));
     }
 
     public int getNumOfBucketsD1() { return this.bucketDescDim1.getNumOfBuckets(); }
@@ -122,7 +164,9 @@ public class HeatMap implements Serializable, IJson {
     /**
      * @return the index's count
      */
-    public long getCount(final int index1, final int index2) { return this.buckets[index1][index2]; }
+    public long getCount(final int index1, final int index2) {
+        return this.buckets[index1 * this.bucketDescDim2.getNumOfBuckets() + index2];
+    }
 
     /**
      * @param  otherHeatmap with the same bucketDescriptions
@@ -130,9 +174,8 @@ public class HeatMap implements Serializable, IJson {
      */
     public HeatMap union(HeatMap otherHeatmap) {
         HeatMap unionH = new HeatMap(this.bucketDescDim1, this.bucketDescDim2);
-        for (int i = 0; i < unionH.bucketDescDim1.getNumOfBuckets(); i++)
-            for (int j = 0; j < unionH.bucketDescDim2.getNumOfBuckets(); j++)
-                unionH.buckets[i][j] = this.buckets[i][j] + otherHeatmap.buckets[i][j];
+        for (int i = 0; i < unionH.buckets.length; i++)
+            unionH.buckets[i] = this.buckets[i] + otherHeatmap.buckets[i];
         unionH.missingData = this.missingData + otherHeatmap.missingData;
         unionH.outOfRange = this.outOfRange + otherHeatmap.outOfRange;
         unionH.totalSize = this.totalSize + otherHeatmap.totalSize;
@@ -140,4 +183,42 @@ public class HeatMap implements Serializable, IJson {
         unionH.histogramMissingD2 = this.histogramMissingD2.union(otherHeatmap.histogramMissingD2);
         return unionH;
     }
+
+    /**
+     * Adds the counts of otherHeatmap to this heat map, without allocating.
+     * @param otherHeatmap with the same bucketDescriptions; it is not modified.
+     */
+    public void accumulate(HeatMap otherHeatmap) {
+        for (int i = 0; i < this.buckets.length; i++)
+            this.buckets[i] += otherHeatmap.buckets[i];
+        this.missingData += otherHeatmap.missingData;
+        this.outOfRange += otherHeatmap.outOfRange;
+        this.totalSize += otherHeatmap.totalSize;
+        this.histogramMissingD1.accumulate(otherHeatmap.histogramMissingD1);
+        this.histogramMissingD2.accumulate(otherHeatmap.histogramMissingD2);
+    }
+
+    @Override
+    public JsonElement toJsonTree() {
+        // The counts are sent as a matrix, one array for each bucket of the first dimension.
+        final int width = this.bucketDescDim2.getNumOfBuckets();
+        JsonArray matrix = new JsonArray();
+        for (int i = 0; i < this.bucketDescDim1.getNumOfBuckets(); i++) {
+            JsonArray row = new JsonArray();
+            for (int j = 0; j < width; j++)
+                row.add(this.buckets[i * width + j]);
+            matrix.add(row);
+        }
+        JsonObject result = new JsonObject();
+        result.add("buckets", matrix);
+        result.addProperty("missingData", this.missingData);
+        result.addProperty("outOfRange", this.outOfRange);
+        result.add("bucketDescDim1", gsonInstance.toJsonTree(this.bucketDescDim1));
+        result.add("bucketDescDim2", gsonInstance.toJsonTree(this.bucketDescDim2));
+        result.add("histogramMissingD1", gsonInstance.toJsonTree(this.histogramMissingD1));
+        result.add("histogramMissingD2", gsonInstance.toJsonTree(this.histogramMissingD2));
+        result.addProperty("totalSize", this.totalSize);
+        result.addProperty("rate", this.rate);
+        return result;
+    }
 }
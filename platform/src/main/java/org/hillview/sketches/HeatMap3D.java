@@ -18,6 +18,9 @@
 
 package org.hillview.sketches;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.*;
 import java.io.Serializable;
@@ -26,7 +29,12 @@ import java.io.Serializable;
  * A 3-dimensional histogram.
  */
 public class HeatMap3D implements Serializable, IJson {
-    private final long[][][] buckets;
+    /**
+     * Counts stored in row-major order: the count of bucket (i, j, k) is at
+     * index (i * size2 + j) * size3 + k, where size2 and size3 are the
+     * number of buckets in the second and third dimensions.
+     */
+    private final long[] buckets;
     private long eitherMissing; // number of items missing in either of the columns
     private long outOfRange;
     private final IBucketsDescription bucketDescDim1;
@@ -40,35 +48,55 @@ public class HeatMap3D implements Serializable, IJson {
         this.bucketDescDim1 = buckets1;
         this.bucketDescDim2 = buckets2;
         this.bucketDescDim3 = buckets3;
-        this.buckets = new long[buckets1.getNumOfBuckets()][buckets2.getNumOfBuckets()][buckets3.getNumOfBuckets()];
+        this.buckets = new long[buckets1.getNumOfBuckets() * buckets2.getNumOfBuckets() *
+                buckets3.getNumOfBuckets()];
     }
 
     public void createHeatMap(
             final ColumnAndConverter columnD1, final ColumnAndConverter columnD2,
             final ColumnAndConverter columnD3,
             final IMembershipSet membershipSet) {
-        final IRowIterator myIter = membershipSet.getIterator();
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            boolean isMissingD1 = columnD1.isMissing(currRow);
-            boolean isMissingD2 = columnD2.isMissing(currRow);
-            boolean isMissingD3 = columnD3.isMissing(currRow);
-            if (isMissingD1 || isMissingD2 || isMissingD3) {
-                this.eitherMissing++; // At least one of the three is missing.
-            } else {
-                double val1 = columnD1.asDouble(currRow);
-                double val2 = columnD2.asDouble(currRow);
-                double val3 = columnD3.asDouble(currRow);
-                int index1 = this.bucketDescDim1.indexOf(val1);
-                int index2 = this.bucketDescDim2.indexOf(val2);
-                int index3 = this.bucketDescDim3.indexOf(val3);
-                if ((index1 >= 0) && (index2 >= 0) && (index3 >= 0)) {
-                    this.buckets[index1][index2][index3]++;
-                    this.totalPresent++;
+        this.createHeatMap(columnD1, columnD2, columnD3, membershipSet.getIterator(),
+                membershipSet.getSize());
+    }
+
+    private void createHeatMap(
+            final ColumnAndConverter columnD1, final ColumnAndConverter columnD2,
+            final ColumnAndConverter columnD3,
+            final IRowIterator myIter, final int rowCount) {
+        final ColumnBuckets columnBuckets1 = new ColumnBuckets(columnD1, this.bucketDescDim1, rowCount);
+        final ColumnBuckets columnBuckets2 = new ColumnBuckets(columnD2, this.bucketDescDim2, rowCount);
+        final ColumnBuckets columnBuckets3 = new ColumnBuckets(columnD3, this.bucketDescDim3, rowCount);
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final double[] values = new double[rows.length];
+        final boolean[] missing1 = new boolean[rows.length];
+        final boolean[] missing2 = new boolean[rows.length];
+        final boolean[] missing3 = new boolean[rows.length];
+        final int[] indexes1 = new int[rows.length];
+        final int[] indexes2 = new int[rows.length];
+        final int[] indexes3 = new int[rows.length];
+        final int size2 = this.bucketDescDim2.getNumOfBuckets();
+        final int size3 = this.bucketDescDim3.getNumOfBuckets();
+        int count = myIter.getNextRows(rows);
+        while (count > 0) {
+            columnBuckets1.indexOf(rows, count, values, missing1, indexes1);
+            columnBuckets2.indexOf(rows, count, values, missing2, indexes2);
+            columnBuckets3.indexOf(rows, count, values, missing3, indexes3);
+            for (int i = 0; i < count; i++) {
+                if (missing1[i] || missing2[i] || missing3[i]) {
+                    this.eitherMissing++; // At least one of the three is missing.
+                } else {
+                    int index1 = indexes1[i];
+                    int index2 = indexes2[i];
+                    int index3 = indexes3[i];
+                    if ((index1 >= 0) && (index2 >= 0) && (index3 >= 0)) {
+                        this.buckets[(index1 * size2 + index2) * size3 + index3]++;
+                        this.totalPresent++;
+                    }
+                    else this.outOfRange++;
                 }
-                else this.outOfRange++;
             }
-            currRow = myIter.getNextRow();
+            count = myIter.getNextRows(rows);
         }
     }
 
@@ -79,7 +107,8 @@ public class HeatMap3D implements Serializable, IJson {
             final ColumnAndConverter columnD3,
             final IMembershipSet membershipSet, double sampleRate) {
         this.createHeatMap(columnD1, columnD2, columnD3,
-                membershipSet.sample(sampleRate));
+                membershipSet.getSampleIterator(sampleRate),
+                (int)(membershipSet.getSize() * sampleRate));
     }
 
     public void createSampleHistogram(
@@ -88,7 +117,8 @@ public class HeatMap3D implements Serializable, IJson {
             final IMembershipSet membershipSet,
             double sampleRate, long seed) {
         this.createHeatMap(columnD1, columnD2, columnD3,
-                           membershipSet.sample(sampleRate, seed));
+                           membershipSet.getSampleIterator(sampleRate, seed),
+                           (int)(membershipSet.getSize() * sampleRate));
     }
 
     public int getNumOfBucketsD1() { return this.bucketDescDim1.getNumOfBuckets(); }
@@ -102,7 +132,8 @@ public class HeatMap3D implements Serializable, IJson {
     public long getOutOfRange() { return this.outOfRange; }
 
     public long getCount(final int index1, final int index2, final int index3) {
-        return this.buckets[index1][index2][index3];
+        return this.buckets[(index1 * this.bucketDescDim2.getNumOfBuckets() + index2) *
+                this.bucketDescDim3.getNumOfBuckets() + index3];
     }
 
     /**
@@ -111,13 +142,50 @@ public class HeatMap3D implements Serializable, IJson {
      */
     public HeatMap3D union(HeatMap3D otherHeatmap3D) {
         HeatMap3D unionH = new HeatMap3D(this.bucketDescDim1, this.bucketDescDim2, this.bucketDescDim3);
-        for (int i = 0; i < unionH.bucketDescDim1.getNumOfBuckets(); i++)
-            for (int j = 0; j < unionH.bucketDescDim2.getNumOfBuckets(); j++)
-                for (int k = 0; k < unionH.bucketDescDim3.getNumOfBuckets(); k++)
-                    unionH.buckets[i][j][k] = this.buckets[i][j][k] + otherHeatmap3D.buckets[i][j][k];
+        for (int i = 0; i < unionH.buckets.length; i++)
+            unionH.buckets[i] = this.buckets[i] + otherHeatmap3D.buckets[i];
         unionH.eitherMissing = this.eitherMissing + otherHeatmap3D.eitherMissing;
         unionH.outOfRange = this.outOfRange + otherHeatmap3D.outOfRange;
         unionH.totalPresent = this.totalPresent + otherHeatmap3D.totalPresent;
         return unionH;
     }
+
+    /**
+     * Adds the counts of otherHeatmap3D to this heat map, without allocating.
+     * @param otherHeatmap3D with the same bucketDescriptions; it is not modified.
+     */
+    public void accumulate(HeatMap3D otherHeatmap3D) {
+        for (int i = 0; i < this.buckets.length; i++)
+            this.buckets[i] += otherHeatmap3D.buckets[i];
+        this.eitherMissing += otherHeatmap3D.eitherMissing;
+        this.outOfRange += otherHeatmap3D.outOfRange;
+        this.totalPresent += otherHeatmap3D.totalPresent;
+    }
+
+    @Override
+    public JsonElement toJsonTree() {
+        // The counts are sent as a 3-dimensional array of arrays.
+        final int size2 = this.bucketDescDim2.getNumOfBuckets();
+        final int size3 = this.bucketDescDim3.getNumOfBuckets();
+        JsonArray cube = new JsonArray();
+        for (int i = 0; i < this.bucketDescDim1.getNumOfBuckets(); i++) {
+            JsonArray matrix = new JsonArray();
+            for (int j = 0; j < size2; j++) {
+                JsonArray row = new JsonArray();
+                for (int k = 0; k < size3; k++)
+                    row.add(this.buckets[(i * size2 + j) * size3 + k]);
+                matrix.add(row);
+            }
+            cube.add(matrix);
+        }
+        JsonObject result = new JsonObject();
+        result.add("buckets", cube);
+        result.addProperty("eitherMissing", this.eitherMissing);
+        result.addProperty("outOfRange", this.outOfRange);
+        result.add("bucketDescDim1", gsonInstance.toJsonTree(this.bucketDescDim1));
+        result.add("bucketDescDim2", gsonInstance.toJsonTree(this.bucketDescDim2));
+        result.add("bucketDescDim3", gsonInstance.toJsonTree(this.bucketDescDim3));
+        result.addProperty("totalPresent", this.totalPresent);
+        return result;
+    }
 }
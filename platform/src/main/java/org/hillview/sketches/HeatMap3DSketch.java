@@ -75,4 +75,11 @@ public class HeatMap3DSketch implements ISketch<ITable, HeatMap3D> {
     public HeatMap3D add(@Nullable final HeatMap3D left, @Nullable final HeatMap3D right) {
         return Converters.checkNull(left).union(Converters.checkNull(right));
     }
+
+    @Override
+    public HeatMap3D addInPlace(@Nullable final HeatMap3D left, @Nullable final HeatMap3D right) {
+        HeatMap3D result = Converters.checkNull(left);
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
 }
@@ -66,4 +66,11 @@ public class HeatMapSketch implements ISketch<ITable, HeatMap> {
     public HeatMap add(@Nullable final HeatMap left, @Nullable final HeatMap right) {
         return Converters.checkNull(left).union(Converters.checkNull(right));
     }
+
+    @Override
+    public HeatMap addInPlace(@Nullable final HeatMap left, @Nullable final HeatMap right) {
+        HeatMap result = Converters.checkNull(left);
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
 }
@@ -35,6 +35,19 @@ public class Histogram implements Serializable {
         this.buckets = new long[bucketDescription.getNumOfBuckets()];
     }
 
+    /**
+     * A histogram with the specified counts.
+     * @param counts The count of each bucket, followed by the count of values that
+     *               are out of range.
+     */
+    Histogram(final IBucketsDescription bucketDescription, final long[] counts,
+              final long missingData) {
+        this(bucketDescription);
+        System.arraycopy(counts, 0, this.buckets, 0, this.buckets.length);
+        this.outOfRange = counts[this.buckets.length];
+        this.missingData = missingData;
+    }
+
     void addValue(final double val) {
         int index = this.bucketDescription.indexOf(val);
         if (index >= 0)
@@ -57,21 +70,27 @@ public class Histogram implements Serializable {
             throw new RuntimeException("Negative sampling rate");
         if (sampleRate >= 1)
             sampleRate = 1;
-        if (sampleRate < 1)
-            membershipSet = membershipSet.sample(sampleRate);
-        final IRowIterator myIter = membershipSet.getIterator();
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            if (column.isMissing(currRow))
-                this.missingData++;
-            else {
-                double val = column.asDouble(currRow);
-                int index = this.bucketDescription.indexOf(val);
-                if (index >= 0)
-                    this.buckets[index]++;
-                else this.outOfRange++;
+        final IRowIterator myIter = membershipSet.getSampleIterator(sampleRate);
+        final ColumnBuckets columnBuckets = new ColumnBuckets(column, this.bucketDescription,
+                (int)(membershipSet.getSize() * sampleRate));
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final double[] values = new double[rows.length];
+        final boolean[] missing = new boolean[rows.length];
+        final int[] indexes = new int[rows.length];
+        int count = myIter.getNextRows(rows);
+        while (count > 0) {
+            columnBuckets.indexOf(rows, count, values, missing, indexes);
+            for (int i = 0; i < count; i++) {
+                if (missing[i])
+                    this.missingData++;
+                else {
+                    int index = indexes[i];
+                    if (index >= 0)
+                        this.buckets[index]++;
+                    else this.outOfRange++;
+                }
             }
-            currRow = myIter.getNextRow();
+            count = myIter.getNextRows(rows);
         }
         this.rescale(sampleRate);
     }
@@ -98,6 +117,17 @@ public class Histogram implements Serializable {
         return unionH;
     }
 
+    /**
+     * Adds the counts of otherHistogram to this histogram, without allocating.
+     * @param otherHistogram with the same bucketDescription; it is not modified.
+     */
+    public void accumulate(Histogram otherHistogram) {
+        for (int i = 0; i < this.buckets.length; i++)
+            this.buckets[i] += otherHistogram.buckets[i];
+        this.missingData += otherHistogram.missingData;
+        this.outOfRange += otherHistogram.outOfRange;
+    }
+
     public Histogram createCDF() {
         Histogram cdf = new Histogram(this.bucketDescription);
         cdf.buckets[0] = this.buckets[0];
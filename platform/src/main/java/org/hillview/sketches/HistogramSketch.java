@@ -53,6 +53,13 @@ public class HistogramSketch implements ISketch<ITable, Histogram> {
         return Converters.checkNull(left).union(Converters.checkNull(right));
     }
 
+    @Override
+    public Histogram addInPlace(@Nullable final Histogram left, @Nullable final Histogram right) {
+        Histogram result = Converters.checkNull(left);
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
+
     @Override
     public Histogram zero() {
         return new Histogram(this.bucketDesc);
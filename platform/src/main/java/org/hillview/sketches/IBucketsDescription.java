@@ -25,7 +25,7 @@ import java.io.Serializable;
  * All buckets are left-inclusive and right-exclusive,
  * except the right most bucket which is right-inclusive.
  */
-interface IBucketsDescription extends Serializable {
+public interface IBucketsDescription extends Serializable {
     /**
      * Number of buckets; must be greater than 0.
      */
@@ -50,4 +50,12 @@ interface IBucketsDescription extends Serializable {
      * If item is out of range of buckets returns -1
      */
     int indexOf(final double item);
+
+    /**
+     * Batch version of indexOf: sets indexes[i] to indexOf(values[i]) for all i < count.
+     */
+    default void indexOf(final double[] values, final int count, final int[] indexes) {
+        for (int i = 0; i < count; i++)
+            indexes[i] = this.indexOf(values[i]);
+    }
 }
@@ -1,16 +1,20 @@
 package org.hillview.sketches;
 
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.dataset.api.ISketch;
+import org.hillview.table.api.ColumnAndConverter;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
-import org.hillview.utils.Randomness;
+import org.hillview.utils.HashUtil;
 
 import javax.annotation.Nullable;
 import java.security.InvalidParameterException;
 import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 /**
  * Implements the Johnson-Lindenstrauss (JL) sketch. It projects a column of doubles down to low
@@ -21,6 +25,11 @@ import java.util.List;
  * methods assume boundedness for provable guarantees.
  */
 public class JLSketch implements ISketch<ITable, JLProjection>{
+    /**
+     * Multiplier used to combine values into a hash.
+     */
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final LongHashFunction hashFunction = LongHashFunction.xx();
     /**
      * The list of columns that we wish to sketch. Currently, every column is assumed to be of type
      * int or double.
@@ -30,10 +39,24 @@ public class JLSketch implements ISketch<ITable, JLProjection>{
      * The dimension that we wish to project down to.
      */
     private final int lowDim;
+    /**
+     * Seed of the random projection matrix.
+     */
+    private final long seed;
+    /**
+     * If true the columns of a partition are processed in parallel.
+     */
+    private final boolean parallel;
 
-    public JLSketch(List<String> colNames, int lowDim) {
-        this.colNames= colNames;
+    public JLSketch(List<String> colNames, int lowDim, long seed, boolean parallel) {
+        this.colNames = colNames;
         this.lowDim = lowDim;
+        this.seed = seed;
+        this.parallel = parallel;
+    }
+
+    public JLSketch(List<String> colNames, int lowDim) {
+        this(colNames, lowDim, 0, false);
     }
 
     @Nullable
@@ -45,24 +68,51 @@ public class JLSketch implements ISketch<ITable, JLProjection>{
     @Nullable
     @Override
     public JLProjection add(@Nullable JLProjection left, @Nullable JLProjection right) {
+        JLProjection result = this.zero();
+        this.addInPlace(result, left);
+        return this.addInPlace(result, right);
+    }
+
+    @Nullable
+    @Override
+    public JLProjection addInPlace(@Nullable JLProjection left, @Nullable JLProjection right) {
         left = Converters.checkNull(left);
         right = Converters.checkNull(right);
         for (String s: left.colNames) {
             double a[] = left.hMap.get(s);
             double b[] = right.hMap.get(s);
-            double val[] = new double[this.lowDim];
             for (int i = 0; i < this.lowDim; i++)
-                val[i] = a[i] + b[i];
-            left.hMap.put(s, val);
+                a[i] += b[i];
         }
         left.highDim += right.highDim;
         return left;
     }
 
+    /**
+     * A seed that identifies the rows of a table together with their indexes.  It depends
+     * on the sizes and first values of all the columns of the table, and not only on the
+     * sketched ones, so the projection of a column does not depend on which other columns
+     * are sketched.  Partitions that are views of the same columns get the same seed, so
+     * they are projected as the whole table is; tables loaded separately, whose row indexes
+     * all start at 0, get different seeds.
+     */
+    private long tableSeed(ITable data) {
+        long result = this.seed;
+        for (IColumn col : data.getColumns()) {
+            int size = col.sizeInRows();
+            long first = size > 0 ? col.hashCode64(0, hashFunction) : 0;
+            result = HashUtil.murmurHash3(result, (size * GOLDEN) ^ first);
+        }
+        return result;
+    }
+
     /**
      * The sketch of a column is the product with a random matrix of {-1,+1} entries. The same
-     * matrix is applied to every column. Currently, we discard the random bits after processing the
-     * relevant row of the Table.
+     * matrix is applied to every column. The entry of the matrix for a row and a dimension is
+     * derived from a hash of the seed of the table and the row index, so the sketch does not
+     * depend on the order in which rows or partitions are processed.  The rows are processed
+     * in blocks; for each block the random entries are generated once and the columns are
+     * projected independently, possibly in parallel.
      * @param data  Data to sketch.
      * @return A JL projection.
      */
@@ -74,27 +124,85 @@ public class JLSketch implements ISketch<ITable, JLProjection>{
                 throw new InvalidParameterException("Projection Sketch requires column to be " +
                         "integer or double: " + col);
         }
-        JLProjection jlProj = new JLProjection(this.colNames, this.lowDim);
-        long seed = System.nanoTime();
-        Randomness rn = new Randomness(seed);
-        int i, bit;
-        double val;
-        String name;
-        IColumn iCol;
-        IRowIterator rowIt = data.getRowIterator();
-        i = rowIt.getNextRow();
-        while (i != -1) {
-            for (int j = 0; j < this.lowDim; j++) {
-                bit = ((rn.nextInt(2) == 0) ? 1 : -1);
-                for (String colName: this.colNames) {
-                    iCol= data.getColumn(colName);
-                    val = (iCol.isMissing(i) ? 0 : (iCol.asDouble(i, null) * bit));
-                    jlProj.update(colName, j, val);
+        final int nCols = this.colNames.size();
+        final long tableSeed = this.tableSeed(data);
+        final JLProjection jlProj = new JLProjection(this.colNames, this.lowDim);
+        final ColumnAndConverter[] columns = new ColumnAndConverter[nCols];
+        final double[][] projections = new double[nCols][];
+        for (int c = 0; c < nCols; c++) {
+            columns[c] = new ColumnAndConverter(data.getColumn(this.colNames.get(c)), null);
+            projections[c] = jlProj.hMap.get(this.colNames.get(c));
+        }
+
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final double[][] values = new double[nCols][rows.length];
+        final boolean[][] missing = new boolean[nCols][rows.length];
+        // signs[j * rows.length + r] is the entry of the projection matrix for dimension j and
+        // the r-th row of the block.
+        final double[] signs = new double[this.lowDim * rows.length];
+        IRowIterator rowIt = data.getMembershipSet().getIterator();
+        int count = rowIt.getNextRows(rows);
+        while (count > 0) {
+            final int blockSize = count;
+            this.forEachColumn(nCols, c -> {
+                columns[c].asDoubles(rows, blockSize, values[c], missing[c]);
+                for (int r = 0; r < blockSize; r++)
+                    if (missing[c][r])
+                        values[c][r] = 0;
+            });
+
+            // Each hash gives the signs of 64 dimensions.
+            for (int r = 0; r < blockSize; r++) {
+                long bits = 0;
+                for (int j = 0; j < this.lowDim; j++) {
+                    if ((j & 63) == 0)
+                        bits = HashUtil.murmurHash3(tableSeed + (j >>> 6) * GOLDEN, rows[r]);
+                    signs[j * rows.length + r] = ((bits >>> (j & 63)) & 1) == 0 ? 1 : -1;
                 }
             }
-            i = rowIt.getNextRow();
+
+            this.forEachColumn(nCols, c -> {
+                final double[] v = values[c];
+                final double[] p = projections[c];
+                int j = 0;
+                // Four dimensions at a time, so the sums are independent of each other.
+                for (; j + 3 < this.lowDim; j += 4) {
+                    final int b0 = j * rows.length;
+                    final int b1 = b0 + rows.length;
+                    final int b2 = b1 + rows.length;
+                    final int b3 = b2 + rows.length;
+                    double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+                    for (int r = 0; r < blockSize; r++) {
+                        final double x = v[r];
+                        s0 += x * signs[b0 + r];
+                        s1 += x * signs[b1 + r];
+                        s2 += x * signs[b2 + r];
+                        s3 += x * signs[b3 + r];
+                    }
+                    p[j] += s0;
+                    p[j + 1] += s1;
+                    p[j + 2] += s2;
+                    p[j + 3] += s3;
+                }
+                for (; j < this.lowDim; j++) {
+                    final int base = j * rows.length;
+                    double sum = 0;
+                    for (int r = 0; r < blockSize; r++)
+                        sum += v[r] * signs[base + r];
+                    p[j] += sum;
+                }
+            });
+            count = rowIt.getNextRows(rows);
         }
         jlProj.highDim = data.getNumOfRows();
         return jlProj;
     }
+
+    private void forEachColumn(int nCols, IntConsumer action) {
+        if (this.parallel)
+            IntStream.range(0, nCols).parallel().forEach(action);
+        else
+            for (int c = 0; c < nCols; c++)
+                action.accept(c);
+    }
 }
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Randomness;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Clusters the rows of a table in the space defined by a set of numeric columns with
+ * k-means.  The initial centers are chosen with k-means|| (Bahmani et al., Scalable
+ * K-Means++): the first pass samples one row uniformly, and each of the initSteps
+ * following passes samples oversampling * k rows with probability proportional to their
+ * squared distance to the candidates chosen so far; one more pass weights each candidate by
+ * the number of rows closest to it, and the weighted candidates are reduced locally to k
+ * centers with k-means++.  The centers are then refined with Lloyd iterations, one pass
+ * each, until the cost decreases by less than a fraction tolerance or maxIterations passes
+ * are done.  Rows with missing values are ignored.
+ */
+public class KMeans {
+    /**
+     * Default number of sampling passes after the first one.
+     */
+    public static final int INIT_STEPS = 2;
+    /**
+     * Number of rows sampled in each initialization pass, as a multiple of k.
+     */
+    public static final int OVERSAMPLING = 2;
+    /**
+     * Default maximum number of Lloyd iterations.
+     */
+    public static final int MAX_ITERATIONS = 20;
+    /**
+     * Default relative decrease of the cost below which the iterations stop.
+     */
+    public static final double TOLERANCE = 1e-4;
+    /**
+     * Number of Lloyd iterations on the weighted candidates, done locally.
+     */
+    private static final int LOCAL_ITERATIONS = 20;
+    /**
+     * Number of times the weighted candidates are reduced to k centers.
+     */
+    private static final int LOCAL_TRIALS = 5;
+
+    private final List<String> colNames;
+    private final int k;
+    private final int initSteps;
+    private final int maxIterations;
+    private final double tolerance;
+    private final long seed;
+
+    public KMeans(List<String> colNames, int k, int initSteps, int maxIterations,
+                  double tolerance, long seed) {
+        if (colNames.isEmpty())
+            throw new InvalidParameterException("At least one column is needed");
+        if (k < 1)
+            throw new InvalidParameterException("Number of clusters must be positive");
+        if (initSteps < 0 || maxIterations < 1)
+            throw new InvalidParameterException("Invalid number of passes");
+        this.colNames = colNames;
+        this.k = k;
+        this.initSteps = initSteps;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.seed = seed;
+    }
+
+    public KMeans(List<String> colNames, int k) {
+        this(colNames, k, INIT_STEPS, MAX_ITERATIONS, TOLERANCE, 0);
+    }
+
+    /**
+     * Computes the clusters of the data.
+     * @return A stream with a single value: the cluster centers.  There are fewer than
+     * k centers if the data has fewer than k distinct points.
+     */
+    public Observable<ClusterCenters> run(IDataSet<ITable> data) {
+        return this.sample(data, null, 1, 0)
+                .flatMap(first -> this.initialize(data, first.getPoints(), 1));
+    }
+
+    public ClusterCenters blockingRun(IDataSet<ITable> data) {
+        return this.run(data).toBlocking().single();
+    }
+
+    private static <R> Observable<R> runSketch(IDataSet<ITable> data, ISketch<ITable, R> sketch) {
+        return IDataSet.reduce(IDataSet.getValues(data.sketch(sketch)), sketch);
+    }
+
+    private Observable<WeightedSample> sample(IDataSet<ITable> data,
+                                              @Nullable ClusterCenters centers,
+                                              int sampleSize, int step) {
+        KMeansSampleSketch sketch = new KMeansSampleSketch(
+                this.colNames, centers, sampleSize, this.seed + step);
+        return runSketch(data, sketch);
+    }
+
+    /**
+     * Runs the remaining initialization passes.
+     * @param candidates The candidate centers chosen so far, in row-major order.
+     * @param step       Number of sampling passes already done.
+     */
+    private Observable<ClusterCenters> initialize(IDataSet<ITable> data, double[] candidates,
+                                                  int step) {
+        ClusterCenters current = new ClusterCenters(this.colNames, candidates, Double.NaN, 0);
+        if (current.k == 0)
+            // All rows have missing values.
+            return Observable.just(current);
+        if (step <= this.initSteps)
+            return this.sample(data, current, OVERSAMPLING * this.k, step)
+                    .flatMap(s -> {
+                        double[] points = s.getPoints();
+                        double[] all = Arrays.copyOf(candidates, candidates.length + points.length);
+                        System.arraycopy(points, 0, all, candidates.length, points.length);
+                        return this.initialize(data, all, step + 1);
+                    });
+        return runSketch(data, new KMeansSketch(current))
+                .flatMap(sums -> {
+                    double[] start = this.reduceCandidates(candidates, sums.counts);
+                    ClusterCenters centers = new ClusterCenters(this.colNames, start, Double.NaN, 0);
+                    return this.iterate(data, centers);
+                });
+    }
+
+    /**
+     * Runs Lloyd iterations starting from the specified centers.
+     */
+    private Observable<ClusterCenters> iterate(IDataSet<ITable> data, ClusterCenters centers) {
+        return runSketch(data, new KMeansSketch(centers))
+                .flatMap(sums -> {
+                    // sums.cost is the cost of the centers, which bounds the cost of their update.
+                    ClusterCenters next = new ClusterCenters(
+                            this.colNames, sums.getMeans(centers), sums.cost, centers.iterations + 1);
+                    boolean converged = !Double.isNaN(centers.cost) &&
+                            centers.cost - sums.cost <= this.tolerance * centers.cost;
+                    if (converged || next.iterations >= this.maxIterations)
+                        return Observable.just(next);
+                    return this.iterate(data, next);
+                });
+    }
+
+    private static double squaredDistance(double[] points, int i, double[] centers, int c, int d) {
+        double result = 0;
+        for (int j = 0; j < d; j++) {
+            double diff = points[i * d + j] - centers[c * d + j];
+            result += diff * diff;
+        }
+        return result;
+    }
+
+    /**
+     * Chooses k centers among weighted candidates with k-means++, and refines them with
+     * weighted Lloyd iterations.  This is repeated LOCAL_TRIALS times, and the centers with
+     * the smallest weighted cost are kept, since a single k-means++ run occasionally puts
+     * two centers in one cluster.
+     * @param candidates Candidate points, in row-major order.
+     * @param weights    Weight of each candidate.
+     * @return The centers, in row-major order.
+     */
+    private double[] reduceCandidates(double[] candidates, long[] weights) {
+        if (weights.length <= this.k)
+            return candidates;
+        Randomness rn = new Randomness(this.seed);
+        double[] best = candidates;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int trial = 0; trial < LOCAL_TRIALS; trial++) {
+            double[] centers = this.kMeansPlusPlus(candidates, weights, rn);
+            double cost = this.localLloyd(candidates, weights, centers);
+            // The cost may be infinite if squared distances overflow.
+            if (trial == 0 || cost < bestCost) {
+                bestCost = cost;
+                best = centers;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Chooses at most k centers among the candidates with weighted k-means++.
+     * @return The centers, in row-major order; fewer than k if there are fewer than k
+     * distinct candidates with positive weights.
+     */
+    private double[] kMeansPlusPlus(double[] candidates, long[] weights, Randomness rn) {
+        final int d = this.colNames.size();
+        final int m = weights.length;
+        double[] centers = new double[this.k * d];
+        double[] distance = new double[m];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        int chosen = 0;
+        while (chosen < this.k) {
+            // When some squared distances overflow, only those candidates are considered,
+            // with probabilities proportional to their weights.
+            boolean overflow = false;
+            for (int i = 0; i < m; i++)
+                overflow |= weights[i] > 0 && distance[i] == Double.POSITIVE_INFINITY;
+            if (chosen == 0)
+                overflow = false;
+            double total = 0;
+            for (int i = 0; i < m; i++)
+                total += pickWeight(weights[i], distance[i], chosen, overflow);
+            if (total <= 0)
+                break;
+            double r = rn.nextDouble() * total;
+            int pick = -1;
+            for (int i = 0; i < m && r >= 0; i++) {
+                double w = pickWeight(weights[i], distance[i], chosen, overflow);
+                if (w > 0) {
+                    pick = i;
+                    r -= w;
+                }
+            }
+            System.arraycopy(candidates, pick * d, centers, chosen * d, d);
+            for (int i = 0; i < m; i++)
+                distance[i] = Math.min(distance[i], squaredDistance(candidates, i, centers, chosen, d));
+            chosen++;
+        }
+        return Arrays.copyOf(centers, chosen * d);
+    }
+
+    /**
+     * @return The weight of a candidate in a k-means++ step.
+     */
+    private static double pickWeight(long weight, double distance, int chosen, boolean overflow) {
+        if (weight == 0 || chosen == 0)
+            return weight;
+        if (overflow)
+            return distance == Double.POSITIVE_INFINITY ? weight : 0;
+        return weight * distance;
+    }
+
+    /**
+     * Runs weighted Lloyd iterations on the candidates, updating the centers in place.
+     * @return The weighted cost of the final centers.
+     */
+    private double localLloyd(double[] candidates, long[] weights, double[] centers) {
+        final int d = this.colNames.size();
+        final int m = weights.length;
+        final int count = centers.length / d;
+        int[] closest = new int[m];
+        double[] sums = new double[centers.length];
+        double[] counts = new double[count];
+        double cost = 0;
+        for (int iteration = 0; iteration <= LOCAL_ITERATIONS; iteration++) {
+            boolean changed = false;
+            cost = 0;
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < m; i++) {
+                if (weights[i] == 0)
+                    continue;
+                int best = 0;
+                double bestDistance = Double.POSITIVE_INFINITY;
+                for (int c = 0; c < count; c++) {
+                    double dist = squaredDistance(candidates, i, centers, c, d);
+                    if (dist < bestDistance) {
+                        bestDistance = dist;
+                        best = c;
+                    }
+                }
+                if (iteration == 0 || closest[i] != best)
+                    changed = true;
+                closest[i] = best;
+                cost += weights[i] * bestDistance;
+                counts[best] += weights[i];
+                for (int j = 0; j < d; j++)
+                    sums[best * d + j] += weights[i] * candidates[i * d + j];
+            }
+            if (!changed || iteration == LOCAL_ITERATIONS)
+                break;
+            for (int c = 0; c < count; c++)
+                if (counts[c] > 0)
+                    for (int j = 0; j < d; j++)
+                        centers[c * d + j] = sums[c * d + j] / counts[c];
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.NumericBlock;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+import org.hillview.utils.HashUtil;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Samples rows with probability proportional to their squared distance to the closest
+ * of a set of cluster centers, or uniformly if there are no centers; this is one round
+ * of the k-means|| initialization.  Rows with missing values are never sampled.
+ * The weighted sample is computed with the keys log(u) / weight of Efraimidis and
+ * Spirakis, where u is a pseudo-random number obtained by hashing the seed, the
+ * row index and the row contents, so the same data and seed give the same sample.
+ */
+public class KMeansSampleSketch implements ISketch<ITable, WeightedSample> {
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final List<String> colNames;
+    @Nullable
+    private final ClusterCenters centers;
+    private final int sampleSize;
+    private final long seed;
+
+    /**
+     * @param colNames   Columns that define the points.
+     * @param centers    Centers chosen so far; if null rows are sampled uniformly.
+     * @param sampleSize Number of rows to sample.
+     * @param seed       Seed of the pseudo-random numbers.
+     */
+    public KMeansSampleSketch(List<String> colNames, @Nullable ClusterCenters centers,
+                              int sampleSize, long seed) {
+        this.colNames = colNames;
+        this.centers = centers;
+        this.sampleSize = sampleSize;
+        this.seed = seed;
+    }
+
+    @Override
+    public WeightedSample create(ITable data) {
+        final int d = this.colNames.size();
+        WeightedSample result = this.zero();
+        NumericBlock block = new NumericBlock(data, this.colNames);
+        final int[] closest = new int[block.stride];
+        final double[] weight = new double[block.stride];
+        final double[] scratch = new double[block.stride];
+        final long[] hashes = new long[block.stride];
+        final double[] values = block.values;
+        while (block.next() > 0) {
+            final int count = block.count;
+            if (this.centers != null && this.centers.k > 0) {
+                this.centers.closest(values, block.stride, count, closest, weight, scratch);
+                this.centers.distances(values, block.stride, count, closest, weight);
+            } else {
+                for (int r = 0; r < count; r++)
+                    weight[r] = 1;
+            }
+            for (int r = 0; r < count; r++)
+                hashes[r] = block.rows[r];
+            for (int j = 0; j < d; j++) {
+                final int offset = j * block.stride;
+                for (int r = 0; r < count; r++)
+                    hashes[r] = (hashes[r] ^ Double.doubleToLongBits(values[offset + r])) * GOLDEN;
+            }
+            for (int r = 0; r < count; r++) {
+                if (block.missing[r] || weight[r] <= 0)
+                    continue;
+                long bits = HashUtil.murmurHash3(this.seed, hashes[r]);
+                // A uniform number in (0, 1].
+                double u = ((bits >>> 11) + 1) * 0x1.0p-53;
+                double key = Math.log(u) / weight[r];
+                if (result.accepts(key))
+                    result.offer(key, values, r, block.stride);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public WeightedSample zero() {
+        return new WeightedSample(this.sampleSize, this.colNames.size());
+    }
+
+    @Override
+    public WeightedSample add(@Nullable WeightedSample left, @Nullable WeightedSample right) {
+        WeightedSample result = this.zero();
+        result.accumulate(Converters.checkNull(left));
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
+
+    @Override
+    public WeightedSample addInPlace(@Nullable WeightedSample left, @Nullable WeightedSample right) {
+        WeightedSample result = Converters.checkNull(left);
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.NumericBlock;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.security.InvalidParameterException;
+
+/**
+ * One Lloyd iteration of k-means: assigns each row to the closest of a set of
+ * cluster centers and sums the rows in each cluster.  Rows with missing values
+ * are skipped.
+ */
+public class KMeansSketch implements ISketch<ITable, ClusterSums> {
+    private final ClusterCenters centers;
+
+    public KMeansSketch(ClusterCenters centers) {
+        if (centers.k == 0)
+            throw new InvalidParameterException("At least one center is needed");
+        this.centers = centers;
+    }
+
+    @Override
+    public ClusterSums create(ITable data) {
+        final int d = this.centers.getColumnCount();
+        ClusterSums result = this.zero();
+        NumericBlock block = new NumericBlock(data, this.centers.columnNames);
+        final int[] closest = new int[block.stride];
+        final double[] score = new double[block.stride];
+        final double[] distance = new double[block.stride];
+        final double[] values = block.values;
+        final boolean[] missing = block.missing;
+        while (block.next() > 0) {
+            final int count = block.count;
+            this.centers.closest(values, block.stride, count, closest, score, distance);
+            this.centers.distances(values, block.stride, count, closest, distance);
+            for (int r = 0; r < count; r++) {
+                if (missing[r]) {
+                    result.missing++;
+                    continue;
+                }
+                result.counts[closest[r]]++;
+                result.cost += distance[r];
+            }
+            for (int j = 0; j < d; j++) {
+                final int offset = j * block.stride;
+                for (int r = 0; r < count; r++)
+                    if (!missing[r])
+                        result.sums[closest[r] * d + j] += values[offset + r];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ClusterSums zero() {
+        return new ClusterSums(this.centers.k, this.centers.getColumnCount());
+    }
+
+    @Override
+    public ClusterSums add(@Nullable ClusterSums left, @Nullable ClusterSums right) {
+        ClusterSums result = this.zero();
+        result.accumulate(Converters.checkNull(left));
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
+
+    @Override
+    public ClusterSums addInPlace(@Nullable ClusterSums left, @Nullable ClusterSums right) {
+        ClusterSums result = Converters.checkNull(left);
+        result.accumulate(Converters.checkNull(right));
+        return result;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.utils.Randomness;
+
+import java.util.Arrays;
+
+/**
+ * The levels of a KLL quantile sketch (Karnin, Lang and Liberty, "Optimal Quantile
+ * Approximation in Streams").  The items are ints, which are interpreted by an ItemOrder:
+ * row indexes of a table while a partition is being sketched, or references to the rows of
+ * two summaries while they are merged.  Each item of level h stands for 2^(h + shift) items
+ * of the input.  When the levels hold more items than their capacity the lowest full level is
+ * compacted: it is sorted, and every other item, starting at a random offset, moves to the
+ * next level.  Capacities decrease geometrically from the top level down, so the sketch
+ * retains O(k) items, and the rank error of a quantile is about 1.7/k with high probability.
+ * As in the paper, the levels whose capacity would be too small are replaced by a sampler:
+ * when there are too many levels the bottom one is compacted away and the shift grows,
+ * and from then on a single random item out of each block of 2^shift input items is added
+ * to level 0.  Most input items are thus skipped with a single comparison.
+ * All levels except level 0 are kept sorted.
+ */
+class KllCompactor {
+    /**
+     * The order on the items.
+     */
+    interface ItemOrder {
+        int compare(int item, int other);
+        /**
+         * Sorts a prefix of an array of items.  Only the items added one at a time
+         * are sorted, so orders used only to merge sorted levels need not override it.
+         */
+        default void sort(int[] items, int size) {
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++)
+                boxed[i] = items[i];
+            Arrays.sort(boxed, this::compare);
+            for (int i = 0; i < size; i++)
+                items[i] = boxed[i];
+        }
+    }
+
+    private static final double capacityDecay = 2.0 / 3.0;
+    private static final int minCapacity = 8;
+
+    private final int k;
+    private final ItemOrder order;
+    private final Randomness random;
+    /**
+     * Maximum number of levels.  Once the sampler is used at least k * 2^(maxLevels - 1)
+     * items go through it; each block of 2^shift items contributes an independent error
+     * of at most 2^shift to the ranks, so the standard deviation of the relative rank
+     * error due to sampling is at most 1/sqrt(k * 2^(maxLevels - 1)), which is about 1.4/k.
+     */
+    private final int maxLevels;
+    private int[][] levels;
+    private int[] sizes;
+    private int levelCount;
+    private boolean level0Sorted;
+    // Number of items in all levels.
+    private int totalSize;
+    // Capacity of each level and of all levels; they depend on the number of levels.
+    private int[] capacities;
+    private int totalCapacity;
+    // Each item of level 0 stands for 2^shift input items.
+    private int shift;
+    // Position of the next input item in the current block of 2^shift items.
+    private int blockPosition;
+    // Position of the item of the current block which is kept.
+    private int chosen;
+
+    KllCompactor(final int k, final ItemOrder order, final Randomness random) {
+        this.k = k;
+        this.order = order;
+        this.random = random;
+        this.maxLevels = 1 + (int)Math.ceil(Math.log(k / 2.0) / Math.log(2));
+        this.levels = new int[4][];
+        this.sizes = new int[4];
+        this.capacities = new int[0];
+        this.setLevelCount(1);
+        this.levels[0] = new int[this.capacities[0]];
+        this.level0Sorted = true;
+        this.totalSize = 0;
+        this.shift = 0;
+        this.blockPosition = 0;
+        this.chosen = 0;
+    }
+
+    private void setLevelCount(final int levelCount) {
+        this.levelCount = levelCount;
+        this.capacities = new int[levelCount];
+        this.totalCapacity = 0;
+        for (int h = 0; h < levelCount; h++) {
+            int depth = levelCount - 1 - h;
+            this.capacities[h] = Math.max(minCapacity,
+                    (int)Math.ceil(this.k * Math.pow(capacityDecay, depth)));
+            this.totalCapacity += this.capacities[h];
+        }
+    }
+
+    /**
+     * Makes room for more items in a level, creating it if needed.
+     */
+    private void ensureCapacity(final int level, final int extra) {
+        while (level >= this.levels.length) {
+            this.levels = Arrays.copyOf(this.levels, this.levels.length * 2);
+            this.sizes = Arrays.copyOf(this.sizes, this.sizes.length * 2);
+        }
+        if (level >= this.levelCount)
+            this.setLevelCount(level + 1);
+        int size = this.sizes[level] + extra;
+        int[] items = this.levels[level];
+        if (items == null)
+            this.levels[level] = new int[Math.max(size, minCapacity)];
+        else if (items.length < size)
+            this.levels[level] = Arrays.copyOf(items, Math.max(size, items.length * 2));
+    }
+
+    /**
+     * Adds an input item.
+     */
+    void add(final int item) {
+        if (this.shift > 0) {
+            boolean selected = this.blockPosition == this.chosen;
+            if (++this.blockPosition == (1 << this.shift)) {
+                this.blockPosition = 0;
+                this.chosen = this.random.nextInt(1 << this.shift);
+            }
+            if (!selected)
+                return;
+        }
+        int size = this.sizes[0];
+        if (size == this.levels[0].length)
+            this.ensureCapacity(0, 1);
+        this.levels[0][size] = item;
+        this.sizes[0] = size + 1;
+        this.level0Sorted = false;
+        this.totalSize++;
+        if (this.totalSize >= this.totalCapacity)
+            this.compress();
+    }
+
+    /**
+     * Merges a sorted list of items into a level.
+     * @param level A level number; the items stand for 2^(level + getShift()) input items.
+     */
+    void addSorted(final int level, final int[] items, final int size) {
+        if (level == 0)
+            this.sortLevel0();
+        this.ensureCapacity(level, size);
+        this.mergeInto(level, items, 0, 1, size);
+    }
+
+    /**
+     * Merges the items items[start], items[start + step], ... into the sorted level.
+     */
+    private void mergeInto(final int level, final int[] items, final int start,
+                           final int step, final int count) {
+        int[] target = this.levels[level];
+        int size = this.sizes[level];
+        // Merge from the end, so no temporary array is needed.
+        int i = size - 1;
+        int j = count - 1;
+        int out = size + count - 1;
+        while (j >= 0) {
+            int item = items[start + j * step];
+            if (i >= 0 && this.order.compare(target[i], item) > 0) {
+                target[out--] = target[i--];
+            } else {
+                target[out--] = item;
+                j--;
+            }
+        }
+        this.sizes[level] = size + count;
+        this.totalSize += count;
+    }
+
+    /**
+     * Compacts levels until the items fit in the total capacity.
+     */
+    void compress() {
+        while (this.levelCount > this.maxLevels)
+            this.dropBottomLevel();
+        while (this.totalSize >= this.totalCapacity) {
+            int h = 0;
+            while (h < this.levelCount - 1 && this.sizes[h] < this.capacities[h])
+                h++;
+            if (h == this.maxLevels - 1) {
+                this.dropBottomLevel();
+                h--;
+            }
+            this.compact(h);
+        }
+    }
+
+    private void sortLevel0() {
+        if (!this.level0Sorted) {
+            this.order.sort(this.levels[0], this.sizes[0]);
+            this.level0Sorted = true;
+        }
+    }
+
+    private void compact(final int level) {
+        if (level == 0)
+            this.sortLevel0();
+        int[] items = this.levels[level];
+        int size = this.sizes[level];
+        // With an odd number of items the first one stays on this level.
+        int start = size % 2;
+        int promoted = (size - start) / 2;
+        int offset = this.random.nextBoolean() ? 1 : 0;
+        this.ensureCapacity(level + 1, promoted);
+        this.mergeInto(level + 1, items, start + offset, 2, promoted);
+        this.sizes[level] = start;
+        this.totalSize -= size - start;
+    }
+
+    /**
+     * Compacts all items of level 0 to level 1, and makes level 1 the bottom level.
+     */
+    private void dropBottomLevel() {
+        this.compact(0);
+        if (this.sizes[0] == 1) {
+            // The remaining item moves up with probability 1/2.
+            if (this.random.nextBoolean()) {
+                this.ensureCapacity(1, 1);
+                this.mergeInto(1, this.levels[0], 0, 1, 1);
+            }
+            this.sizes[0] = 0;
+            this.totalSize--;
+        }
+        int[] empty = this.levels[0];
+        System.arraycopy(this.levels, 1, this.levels, 0, this.levelCount - 1);
+        System.arraycopy(this.sizes, 1, this.sizes, 0, this.levelCount - 1);
+        this.levels[this.levelCount - 1] = empty;
+        this.sizes[this.levelCount - 1] = 0;
+        this.setLevelCount(this.levelCount - 1);
+        this.level0Sorted = true;
+        this.shift++;
+        this.blockPosition = 0;
+        this.chosen = this.random.nextInt(1 << this.shift);
+    }
+
+    /**
+     * Sorts level 0; after this all levels are sorted.
+     */
+    void finish() {
+        this.sortLevel0();
+    }
+
+    /**
+     * Called on an empty compactor when the number of input items is known in advance.
+     * The sampler starts at the level it would reach anyway after all items have been
+     * added, which avoids compacting the lower levels in the meantime.
+     */
+    void expectItems(final long count) {
+        // The number of items which can be stored in the levels before they must shift.
+        long capacity = (long)this.k << (this.maxLevels - 1);
+        int shift = 0;
+        while ((capacity << (shift + 1)) <= count)
+            shift++;
+        this.setShift(shift);
+    }
+
+    int getShift() {
+        return this.shift;
+    }
+
+    /**
+     * Sets the shift of an empty compactor.
+     */
+    void setShift(final int shift) {
+        this.shift = shift;
+        this.chosen = shift == 0 ? 0 : this.random.nextInt(1 << shift);
+    }
+
+    int getLevelCount() {
+        return this.levelCount;
+    }
+
+    int getLevelSize(final int level) {
+        return this.sizes[level];
+    }
+
+    int[] getLevel(final int level) {
+        return this.levels[level];
+    }
+}
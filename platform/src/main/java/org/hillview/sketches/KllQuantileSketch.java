@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.ISketch;
+import org.hillview.table.*;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+import org.hillview.utils.HashUtil;
+import org.hillview.utils.Randomness;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes approximate quantiles of the rows of a table in a RecordOrder with a KLL
+ * sketch.  The rank of each quantile is within about 1.7/k of the requested one with
+ * high probability, independently of the data size, and the summary holds O(k) rows.
+ * This replaces SampleQuantileSketch, which needs a sample of 5 * resolution^2 rows
+ * for a rank error of 1/resolution.  The columns may have any kind; rows are compared
+ * with a RowAccessor and sorted with a RowSorter.
+ */
+public class KllQuantileSketch implements ISketch<ITable, KllQuantiles> {
+    private final RecordOrder order;
+    private final int k;
+    private final long seed;
+
+    /**
+     * @param order The order on the rows.
+     * @param k     The accuracy parameter.
+     * @param seed  Seed of the random number generator that chooses which rows are kept.
+     */
+    public KllQuantileSketch(final RecordOrder order, final int k, final long seed) {
+        this.order = order;
+        this.k = k;
+        this.seed = seed;
+    }
+
+    /**
+     * A sketch with a rank error of about 1/resolution.
+     */
+    public static KllQuantileSketch withResolution(final RecordOrder order, final int resolution) {
+        return new KllQuantileSketch(order, Math.max(200, 2 * resolution), 0);
+    }
+
+    @Override
+    public KllQuantiles zero() {
+        return new KllQuantiles(this.order);
+    }
+
+    /**
+     * Orders row indexes of a table.
+     */
+    private static class RowOrder implements KllCompactor.ItemOrder {
+        /**
+         * Level 0 is usually small; below this size insertion sort is faster than
+         * the RowSorter.
+         */
+        private static final int insertionSortSize = 32;
+
+        private final RowAccessor accessor;
+        private final RowSorter sorter;
+
+        RowOrder(final ITable table, final RecordOrder order) {
+            this.accessor = RowAccessor.create(table, order);
+            this.sorter = new RowSorter(table, order);
+        }
+
+        @Override
+        public int compare(final int item, final int other) {
+            return this.accessor.compare(item, other);
+        }
+
+        @Override
+        public void sort(final int[] items, final int size) {
+            if (size >= insertionSortSize) {
+                int[] sorted = this.sorter.sort(Arrays.copyOf(items, size));
+                System.arraycopy(sorted, 0, items, 0, size);
+                return;
+            }
+            for (int i = 1; i < size; i++) {
+                int item = items[i];
+                int j = i - 1;
+                for (; j >= 0 && this.accessor.compare(items[j], item) > 0; j--)
+                    items[j + 1] = items[j];
+                items[j + 1] = item;
+            }
+        }
+    }
+
+    /**
+     * Orders rows of two tables; the rows of the left table are represented by their
+     * index, and the rows of the right table by the complement of their index.
+     */
+    private static class MergeOrder implements KllCompactor.ItemOrder {
+        private final RowAccessor left;
+        private final RowAccessor right;
+
+        MergeOrder(final ITable left, final ITable right, final RecordOrder order) {
+            this.left = RowAccessor.create(left, order);
+            this.right = RowAccessor.create(right, order);
+        }
+
+        @Override
+        public int compare(final int item, final int other) {
+            RowAccessor accessor = item >= 0 ? this.left : this.right;
+            RowAccessor otherAccessor = other >= 0 ? this.left : this.right;
+            return accessor.compare(item >= 0 ? item : ~item, otherAccessor,
+                    other >= 0 ? other : ~other);
+        }
+
+    }
+
+    /**
+     * Copies the levels of a compactor to a summary.
+     * @param left  Table containing the rows with non-negative indexes.
+     * @param right Table containing the rows with negative indexes.
+     */
+    KllQuantiles toQuantiles(final KllCompactor compactor, final long count,
+                             final ITable left, final ITable right) {
+        int levels = compactor.getLevelCount();
+        int[] levelStart = new int[levels + 1];
+        for (int h = 0; h < levels; h++)
+            levelStart[h + 1] = levelStart[h] + compactor.getLevelSize(h);
+        int[] rows = new int[levelStart[levels]];
+        for (int h = 0; h < levels; h++)
+            System.arraycopy(compactor.getLevel(h), 0, rows, levelStart[h],
+                    compactor.getLevelSize(h));
+        List<IColumn> columns = new ArrayList<IColumn>();
+        for (ColumnSortOrientation cso : this.order) {
+            String name = cso.columnDescription.name;
+            columns.add(BaseArrayColumn.mergeColumns(
+                    left.getColumn(name), right.getColumn(name), rows, rows.length));
+        }
+        return new KllQuantiles(this.order, new SmallTable(columns), levelStart,
+                compactor.getShift(), count);
+    }
+
+    /**
+     * Derives a seed from the seed of the sketch and a table.  The compactors of different
+     * partitions must make independent random choices for their errors to cancel out, so
+     * their seeds depend on the size and on the first row of the data.
+     */
+    private long partitionSeed(final long seed, final ITable data) {
+        long result = HashUtil.murmurHash3(seed, data.getNumOfRows());
+        int first = data.getMembershipSet().getIterator().getNextRow();
+        if (first >= 0)
+            result = HashUtil.murmurHash3(
+                    result, RowAccessor.create(data, this.order).hashCode64(first));
+        return result;
+    }
+
+    /**
+     * A compactor for the rows of a table.
+     */
+    KllCompactor compactor(final ITable data) {
+        KllCompactor result = new KllCompactor(this.k, new RowOrder(data, this.order),
+                new Randomness(this.partitionSeed(this.seed, data)));
+        result.expectItems(data.getNumOfRows());
+        return result;
+    }
+
+    @Override
+    public KllQuantiles create(final ITable data) {
+        KllCompactor compactor = this.compactor(data);
+        IRowIterator it = data.getRowIterator();
+        int[] rows = new int[IRowIterator.BATCH_SIZE];
+        for (int count = it.getNextRows(rows); count > 0; count = it.getNextRows(rows))
+            for (int i = 0; i < count; i++)
+                compactor.add(rows[i]);
+        compactor.finish();
+        return this.toQuantiles(compactor, data.getNumOfRows(), data, data);
+    }
+
+    @Override
+    public KllQuantiles add(@Nullable KllQuantiles left, @Nullable KllQuantiles right) {
+        left = Converters.checkNull(left);
+        right = Converters.checkNull(right);
+        KllCompactor compactor = new KllCompactor(
+                this.k, new MergeOrder(left.table, right.table, this.order),
+                new Randomness(this.partitionSeed(
+                        this.partitionSeed(this.seed, left.table), right.table)));
+        int shift = Math.min(left.getShift(), right.getShift());
+        compactor.setShift(shift);
+        for (int h = 0; h < left.getLevelCount(); h++) {
+            int start = left.getLevelStart(h);
+            int size = left.getLevelStart(h + 1) - start;
+            int[] items = new int[size];
+            for (int i = 0; i < size; i++)
+                items[i] = start + i;
+            compactor.addSorted(h + left.getShift() - shift, items, size);
+        }
+        for (int h = 0; h < right.getLevelCount(); h++) {
+            int start = right.getLevelStart(h);
+            int size = right.getLevelStart(h + 1) - start;
+            int[] items = new int[size];
+            for (int i = 0; i < size; i++)
+                items[i] = ~(start + i);
+            compactor.addSorted(h + right.getShift() - shift, items, size);
+        }
+        compactor.compress();
+        return this.toQuantiles(compactor, left.getCount() + right.getCount(),
+                left.table, right.table);
+    }
+}
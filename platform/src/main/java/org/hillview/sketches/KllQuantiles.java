@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.table.*;
+import org.hillview.table.api.ColumnAndConverter;
+import org.hillview.table.api.ColumnNameAndConverter;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+
+/**
+ * The result of a KllQuantileSketch: the rows retained by the sketch, projected on the
+ * columns of the order.  The rows are stored level by level; each row of level h stands
+ * for 2^(h + shift) rows of the data.  The rank of a row in the data is estimated by the total weight
+ * of the retained rows which come before it.
+ */
+public class KllQuantiles implements Serializable {
+    public final RecordOrder order;
+    /**
+     * The retained rows; the rows of each level are sorted.
+     */
+    public final SmallTable table;
+    /**
+     * The rows of level h are levelStart[h] ... levelStart[h + 1] - 1.
+     */
+    private final int[] levelStart;
+    private final int shift;
+    /**
+     * The number of rows of the data.
+     */
+    private final long count;
+    /**
+     * The rows of the table in sorted order, and the total weight of all rows up to
+     * each one, inclusive.  Computed when first needed.
+     */
+    @Nullable
+    private transient int[] sortedRows;
+    @Nullable
+    private transient long[] cumulativeWeight;
+
+    public KllQuantiles(final RecordOrder order, final SmallTable table, final int[] levelStart,
+                        final int shift, final long count) {
+        this.order = order;
+        this.table = table;
+        this.levelStart = levelStart;
+        this.shift = shift;
+        this.count = count;
+        this.sortedRows = null;
+        this.cumulativeWeight = null;
+    }
+
+    /**
+     * An empty summary.
+     */
+    public KllQuantiles(final RecordOrder order) {
+        this(order, new SmallTable(order.toSchema()), new int[] { 0 }, 0, 0);
+    }
+
+    public int getLevelCount() {
+        return this.levelStart.length - 1;
+    }
+
+    public int getLevelStart(final int level) {
+        return this.levelStart[level];
+    }
+
+    /**
+     * @return Each row of level 0 stands for 2^shift rows of the data.
+     */
+    public int getShift() {
+        return this.shift;
+    }
+
+    /**
+     * @return The number of rows of the data summarized.
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    private void sort() {
+        if (this.sortedRows != null)
+            return;
+        int size = this.table.getNumOfRows();
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++)
+            rows[i] = i;
+        new RowSorter(this.table, this.order).sort(rows);
+        long[] weight = new long[size];
+        int[] levelOf = new int[size];
+        for (int h = 0; h < this.getLevelCount(); h++)
+            for (int i = this.levelStart[h]; i < this.levelStart[h + 1]; i++)
+                levelOf[i] = h + this.shift;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += 1L << levelOf[rows[i]];
+            weight[i] = total;
+        }
+        this.sortedRows = rows;
+        this.cumulativeWeight = weight;
+    }
+
+    /**
+     * @param q A quantile in [0, 1].
+     * @return A row whose rank in the data is approximately q times the number of rows.
+     */
+    @Nullable
+    public RowSnapshot getRow(final double q) {
+        int index = this.getIndex(q);
+        if (index < 0)
+            return null;
+        return new RowSnapshot(this.table, index);
+    }
+
+    /**
+     * @return The index in the table of the row at quantile q, or -1 if the table is empty.
+     */
+    private int getIndex(final double q) {
+        this.sort();
+        assert this.sortedRows != null;
+        return this.getIndex(q, this.sortedRows.length);
+    }
+
+    /**
+     * @return The index in the table of the row at quantile q among the first end
+     * sorted rows, or -1 if end is 0.
+     */
+    private int getIndex(final double q, final int end) {
+        int[] rows = this.sortedRows;
+        long[] weight = this.cumulativeWeight;
+        assert rows != null && weight != null;
+        if (end == 0)
+            return -1;
+        // The first row such that the weight of the rows before it exceeds q * count.
+        double target = q * weight[end - 1];
+        int lo = 0;
+        int hi = end - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (weight[mid] <= target)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return rows[lo];
+    }
+
+    /**
+     * Computes the boundaries of equi-depth buckets of a column: the values at the
+     * quantiles 1/bucketCount, ..., (bucketCount - 1)/bucketCount of the present values
+     * of the column.  Only meaningful when the column is the only one in the order, sorted
+     * in ascending order.
+     * @param column      The column, which must be convertible to doubles.
+     * @param bucketCount The number of buckets.
+     * @return Sorted boundaries; empty if the column has no present values.
+     */
+    public double[] getBucketBoundaries(final ColumnNameAndConverter column, final int bucketCount) {
+        this.sort();
+        int[] rows = this.sortedRows;
+        assert rows != null;
+        ColumnAndConverter col = new ColumnAndConverter(
+                this.table.getColumn(column.columnName), column.converter);
+        // Missing values are sorted after all others.
+        int present = rows.length;
+        while (present > 0 && col.isMissing(rows[present - 1]))
+            present--;
+        if (present == 0)
+            return new double[0];
+        double[] result = new double[bucketCount - 1];
+        for (int i = 1; i < bucketCount; i++)
+            result[i - 1] = col.asDouble(this.getIndex(i / (double)bucketCount, present));
+        return result;
+    }
+
+    /**
+     * A method that can be used in testing to estimate the quality of the quantiles,
+     * like SampleList.getQuantiles.
+     * @param resolution The desired number of rows.
+     * @return Equally spaced quantiles.
+     */
+    public SmallTable getQuantiles(final int resolution) {
+        if (this.table.getNumOfRows() == 0)
+            return this.table;
+        int[] order = new int[resolution];
+        for (int i = 0; i < resolution; i++)
+            order[i] = this.getIndex((i + 1.0) / (resolution + 1));
+        return this.table.compress(new ArrayRowOrder(order));
+    }
+}
@@ -26,7 +26,6 @@ import org.hillview.utils.Converters;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.SortedMap;
 
 /**
  * Given a data set, the NextKSketch generates the Next K items in Sorted Order (specified by a
@@ -38,16 +37,28 @@ public class NextKSketch implements ISketch<ITable, NextKList> {
     @Nullable
     private final RowSnapshot topRow;
     private final int maxSize;
+    /**
+     * If true each partition is sorted once, and the sorted index is cached and
+     * used to seek directly to topRow.
+     */
+    private final boolean useIndex;
 
     /**
      * @param recordOrder The ordering on rows of the table
      * @param topRow The row to start from, set to null if we want to start from the top row.
      * @param maxSize The parameter K in NextK.
+     * @param useIndex If true, use a cached sorted index of each partition.
      */
-    public NextKSketch(RecordOrder recordOrder, @Nullable RowSnapshot topRow, int maxSize) {
+    public NextKSketch(RecordOrder recordOrder, @Nullable RowSnapshot topRow, int maxSize,
+                       boolean useIndex) {
         this.recordOrder = recordOrder;
         this.topRow = topRow;
         this.maxSize = maxSize;
+        this.useIndex = useIndex;
+    }
+
+    public NextKSketch(RecordOrder recordOrder, @Nullable RowSnapshot topRow, int maxSize) {
+        this(recordOrder, topRow, maxSize, false);
     }
 
     /**
@@ -58,90 +69,64 @@ public class NextKSketch implements ISketch<ITable, NextKList> {
      */
     @Override
     public NextKList create(ITable data) {
-        IndexComparator comp = this.recordOrder.getComparator(data);
-        TreeTopK<Integer> topK = new TreeTopK<Integer>(this.maxSize, comp);
+        if (this.useIndex)
+            return this.createFromIndex(data);
+        RowAccessor accessor = RowAccessor.create(data, this.recordOrder);
+        SortedRowBuffer buffer = new SortedRowBuffer(accessor, this.maxSize);
+        boolean keyed = accessor.hasPrimaryKey();
+        Object[] topValues = (this.topRow == null) ? null : accessor.getValues(this.topRow);
+        long topKey = (topValues != null && keyed) ? accessor.primaryKey(topValues) : 0;
         IRowIterator rowIt = data.getRowIterator();
-        int i = rowIt.getNextRow();
+        int[] rows = new int[IRowIterator.BATCH_SIZE];
         int position = 0;
-        VirtualRowSnapshot vw = new VirtualRowSnapshot(data);
-        while (i >= 0) {
-            vw.setRow(i);
-            if ((this.topRow == null) ||
-                    (this.topRow.compareTo(vw, this.recordOrder) <= 0))
-                topK.push(i);
-            else
-                position++;
-            i = rowIt.getNextRow();
-        }
-        SortedMap<Integer, Integer> topKList = topK.getTopK();
-        IRowOrder rowOrder = new ArrayRowOrder(topKList.keySet());
-        SmallTable topKRows = data.compress(this.recordOrder.toSubSchema(), rowOrder);
-        List<Integer> count = new ArrayList<Integer>();
-        count.addAll(topKList.values());
-        return new NextKList(topKRows, count, position, data.getNumOfRows());
-    }
-
-    /**
-     * Given two Columns left and right, merge them to a single Column, using an Integer
-     * array mergeOrder which represents the order in which elements merge as follows:
-     * -1: left; +1: right; 0: both are equal, so add either but advance in both lists.
-     * @param left       The left column
-     * @param right      The right column
-     * @param mergeOrder The order in which to merge the two columns.
-     * @return The merged column.
-     */
-    private ObjectArrayColumn mergeColumns(final IColumn left,
-                                           final IColumn right,
-                                           final List<Integer> mergeOrder) {
-        final int size = Math.min(this.maxSize, mergeOrder.size());
-        final ObjectArrayColumn merged = new ObjectArrayColumn(left.getDescription(), size);
-        int i = 0, j = 0, k = 0;
-        while (k < size) {
-            if (mergeOrder.get(k) < 0) {
-                merged.set(k, left.getObject(i));
-                i++;
-            } else if (mergeOrder.get(k) > 0) {
-                merged.set(k, right.getObject(j));
-                j++;
-            } else {
-                merged.set(k, right.getObject(j));
-                i++;
-                j++;
+        for (int count = rowIt.getNextRows(rows); count > 0; count = rowIt.getNextRows(rows)) {
+            for (int r = 0; r < count; r++) {
+                int i = rows[r];
+                if (topValues != null) {
+                    int c;
+                    if (keyed) {
+                        long key = accessor.primaryKey(i);
+                        c = key == topKey ? accessor.compare(i, topValues) : (key < topKey ? -1 : 1);
+                    } else {
+                        c = accessor.compare(i, topValues);
+                    }
+                    if (c < 0) {
+                        position++;
+                        continue;
+                    }
+                }
+                buffer.push(i);
             }
-            k++;
         }
-        return merged;
+        int[] topRows = new int[buffer.size()];
+        List<Integer> count = new ArrayList<Integer>(buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            topRows[i] = buffer.getRow(i);
+            count.add(buffer.getCount(i));
+        }
+        SmallTable topKRows = data.compress(this.recordOrder.toSubSchema(), new ArrayRowOrder(topRows));
+        return new NextKList(topKRows, count, position, data.getNumOfRows());
     }
 
     /**
-     * Given two Columns containing counts left and right, merge them to a single Column, using an
-     * Integer array mergeLeft which represents the order in which elements merge.
-     * @param left       The left counts.
-     * @param right      The right counts.
-     * @param mergeOrder The order in which to merge the two columns.
-     * @return The merged counts.
+     * Same as create, but reads the rows starting at topRow from the sorted index
+     * of the table.
      */
-    private List<Integer> mergeCounts(final List<Integer> left,
-                                      final List<Integer> right,
-                                      final List<Integer> mergeOrder) {
-        final int size = Math.min(this.maxSize, mergeOrder.size());
-        final List<Integer> mergedCounts = new ArrayList<Integer>(mergeOrder.size());
-        int i = 0, j = 0, k = 0;
-        while (k < size) {
-            if (mergeOrder.get(k) < 0) {
-                mergedCounts.add(left.get(i));
-                i++;
-            } else if (mergeOrder.get(k) > 0) {
-                mergedCounts.add(right.get(j));
-                j++;
-            } else {
-                mergedCounts.add(left.get(i) + right.get(j));
-                i++;
-                j++;
-            }
-            k++;
+    private NextKList createFromIndex(ITable data) {
+        SortedIndex index = SortedIndexCache.get(data, this.recordOrder);
+        int position = 0;
+        if (this.topRow != null)
+            position = index.lowerBound(index.getAccessor().getValues(this.topRow));
+        List<Integer> rows = new ArrayList<Integer>(this.maxSize);
+        List<Integer> count = new ArrayList<Integer>(this.maxSize);
+        for (int i = position; i < index.size() && rows.size() < this.maxSize; ) {
+            int end = index.endOfRun(i);
+            rows.add(index.getRow(i));
+            count.add(end - i);
+            i = end;
         }
-        return mergedCounts;
+        SmallTable topKRows = data.compress(this.recordOrder.toSubSchema(), new ArrayRowOrder(rows));
+        return new NextKList(topKRows, count, position, data.getNumOfRows());
     }
 
     /**
@@ -156,15 +141,43 @@ public class NextKSketch implements ISketch<ITable, NextKList> {
         right = Converters.checkNull(right);
         if (!left.table.getSchema().equals(right.table.getSchema()))
             throw new RuntimeException("The schemas do not match.");
-        int width = left.table.getSchema().getColumnCount();
-        List<IColumn> mergedCol = new ArrayList<IColumn>(width);
-        List<Integer> mergeOrder = this.recordOrder.getIntMergeOrder(left.table, right.table);
-        for (String colName : left.table.getSchema().getColumnNames()) {
-            IColumn newCol = this.mergeColumns(left.table.getColumn(colName),
-                    right.table.getColumn(colName), mergeOrder);
-            mergedCol.add(newCol);
+        // Merge the two sorted lists; each output row is the index of a row of the
+        // left table, or the complement of the index of a row of the right table.
+        RowAccessor leftRows = RowAccessor.create(left.table, this.recordOrder);
+        RowAccessor rightRows = RowAccessor.create(right.table, this.recordOrder);
+        int leftSize = left.table.getNumOfRows();
+        int rightSize = right.table.getNumOfRows();
+        int[] order = new int[Math.min(this.maxSize, leftSize + rightSize)];
+        List<Integer> mergedCounts = new ArrayList<Integer>(order.length);
+        int size = 0;
+        int i = 0, j = 0;
+        while (size < order.length && (i < leftSize || j < rightSize)) {
+            int c;
+            if (i == leftSize)
+                c = 1;
+            else if (j == rightSize)
+                c = -1;
+            else
+                c = leftRows.compare(i, rightRows, j);
+            if (c < 0) {
+                order[size] = i;
+                mergedCounts.add(left.count.get(i++));
+            } else if (c > 0) {
+                order[size] = ~j;
+                mergedCounts.add(right.count.get(j++));
+            } else {
+                order[size] = i;
+                mergedCounts.add(left.count.get(i++) + right.count.get(j++));
+            }
+            size++;
+        }
+        List<IColumn> mergedCol = new ArrayList<IColumn>(left.table.getSchema().getColumnCount());
+        for (ColumnSortOrientation cso : this.recordOrder) {
+            String colName = cso.columnDescription.name;
+            IColumn lc = left.table.getColumn(colName);
+            IColumn rc = right.table.getColumn(colName);
+            mergedCol.add(BaseArrayColumn.mergeColumns(lc, rc, order, size));
         }
-        List<Integer> mergedCounts = this.mergeCounts(left.count, right.count, mergeOrder);
         final SmallTable mergedTable = new SmallTable(mergedCol);
         return new NextKList(mergedTable, mergedCounts,
                 left.startPosition + right.startPosition,
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.LinAlg;
+import org.hillview.utils.Randomness;
+import org.jblas.DoubleMatrix;
+import rx.Observable;
+
+import javax.annotation.Nullable;
+import java.security.InvalidParameterException;
+import java.util.List;
+
+/**
+ * Computes the top principal components of a set of numeric columns by randomized
+ * subspace iteration, without computing the full correlation matrix C or its
+ * eigendecomposition.  Each pass over the data multiplies C by a matrix with
+ * numComponents + oversampling columns using a GramProductSketch; the first pass
+ * starts from a random matrix, and each further pass refines an orthonormal basis
+ * of the dominant subspace of C.  The components are the eigenvectors of the small
+ * projection of C on the final basis.  The results have the same meaning as the ones of
+ * LinAlg.eigenVectorsVarianceExplained applied to the CorrMatrix of the columns;
+ * missing values are replaced by the mean of their column.
+ */
+public class RandomizedPCA {
+    /**
+     * Default number of extra dimensions of the subspace, which improve accuracy.
+     */
+    public static final int OVERSAMPLING = 10;
+    /**
+     * Default number of passes over the data after the first one.
+     */
+    public static final int ITERATIONS = 2;
+    /**
+     * Columns with smaller standard deviations are considered constant (as in CorrMatrix).
+     */
+    private static final double EPSILON = 1e-6;
+
+    private final List<String> colNames;
+    private final int numComponents;
+    private final int width;
+    private final int iterations;
+    private final long seed;
+
+    public RandomizedPCA(List<String> colNames, int numComponents,
+                         int oversampling, int iterations, long seed) {
+        if (numComponents < 1 || numComponents > colNames.size())
+            throw new InvalidParameterException("Number of components must be between 1 and " +
+                    colNames.size());
+        if (iterations < 1)
+            throw new InvalidParameterException("At least one iteration is needed");
+        this.colNames = colNames;
+        this.numComponents = numComponents;
+        this.width = Math.min(colNames.size(), numComponents + oversampling);
+        this.iterations = iterations;
+        this.seed = seed;
+    }
+
+    public RandomizedPCA(List<String> colNames, int numComponents) {
+        this(colNames, numComponents, OVERSAMPLING, ITERATIONS, 0);
+    }
+
+    /**
+     * Computes the principal components of the data.
+     * @return A stream with a single value: an array of DoubleMatrices. The first one is the
+     * matrix whose rows are the numComponents principal components. The second matrix is a column
+     * vector that contains the fraction of the variance explained by each component.
+     */
+    public Observable<DoubleMatrix[]> run(IDataSet<ITable> data) {
+        Randomness rn = new Randomness(this.seed);
+        DoubleMatrix start = new DoubleMatrix(this.colNames.size(), this.width);
+        for (int i = 0; i < start.data.length; i++)
+            start.data[i] = rn.nextGaussian();
+        return this.pass(data, start, null, 0);
+    }
+
+    public DoubleMatrix[] blockingRun(IDataSet<ITable> data) {
+        return this.run(data).toBlocking().single();
+    }
+
+    /**
+     * Runs one pass over the data, computing C * basis.
+     * @param basis     Orthonormal basis of the current subspace; in the first pass a random matrix.
+     * @param previous  Result of the previous pass, null for the first pass.
+     * @param iteration Number of passes already done.
+     */
+    private Observable<DoubleMatrix[]> pass(IDataSet<ITable> data, DoubleMatrix basis,
+                                            @Nullable GramProduct previous, int iteration) {
+        final int d = this.colNames.size();
+        double[] means = null;
+        DoubleMatrix w = basis;
+        if (previous != null) {
+            // C = S (X^T X / n - m m^T) S, where S is the diagonal matrix of inverse standard
+            // deviations; the pass computes X^T X (S basis).
+            means = new double[d];
+            double[] inverse = inverseStdDevs(previous);
+            w = basis.dup();
+            for (int i = 0; i < d; i++) {
+                means[i] = previous.getMean(i);
+                for (int j = 0; j < this.width; j++)
+                    w.data[i + j * d] *= inverse[i];
+            }
+        }
+        final DoubleMatrix scaled = w;
+        GramProductSketch sketch = new GramProductSketch(this.colNames, scaled, means);
+        return IDataSet.reduce(IDataSet.getValues(data.sketch(sketch)), sketch)
+                .flatMap(product -> {
+                    // In the first pass the missing values were replaced by 0 instead of the
+                    // means; this only changes the starting subspace.
+                    DoubleMatrix cw = this.multiplyCorrelation(product, scaled);
+                    if (iteration < this.iterations) {
+                        LinAlg.orthonormalizeColumns(cw);
+                        return this.pass(data, cw, product, iteration + 1);
+                    }
+                    return Observable.just(this.components(basis, cw, product));
+                });
+    }
+
+    private static double[] inverseStdDevs(GramProduct product) {
+        double[] result = new double[product.columns];
+        for (int i = 0; i < result.length; i++) {
+            double sigma = product.getStdDev(i);
+            result[i] = sigma < EPSILON ? 0 : 1 / sigma;
+        }
+        return result;
+    }
+
+    /**
+     * Given the product X^T X w computed by a pass, computes S (X^T X / n - m m^T) w,
+     * which is C * basis if w = S basis.
+     */
+    private DoubleMatrix multiplyCorrelation(GramProduct product, DoubleMatrix w) {
+        final int d = product.columns;
+        double[] inverse = inverseStdDevs(product);
+        DoubleMatrix result = new DoubleMatrix(d, this.width);
+        double n = Math.max(1, product.rows);
+        for (int j = 0; j < this.width; j++) {
+            double mw = 0;
+            for (int i = 0; i < d; i++)
+                mw += product.getMean(i) * w.data[i + j * d];
+            for (int i = 0; i < d; i++) {
+                int index = i + j * d;
+                result.data[index] = inverse[i] *
+                        (product.product[index] / n - product.getMean(i) * mw);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rayleigh-Ritz step: the components are obtained from the eigenvectors of basis^T C basis.
+     * @param basis Orthonormal basis.
+     * @param cb    C * basis.
+     */
+    private DoubleMatrix[] components(DoubleMatrix basis, DoubleMatrix cb, GramProduct product) {
+        DoubleMatrix small = basis.transpose().mmul(cb);
+        // Symmetrize to remove rounding errors.
+        small.addi(small.transpose()).divi(2);
+        DoubleMatrix[] eigen = LinAlg.largestEigenVectors(small, this.numComponents);
+        DoubleMatrix vectors = eigen[0].mmul(basis.transpose());
+        // The trace of C is the number of non-constant columns.
+        double trace = 0;
+        for (double inverse : inverseStdDevs(product))
+            if (inverse > 0)
+                trace++;
+        DoubleMatrix explained = eigen[1].div(Math.max(1, trace));
+        return new DoubleMatrix[] { vectors, explained };
+    }
+}
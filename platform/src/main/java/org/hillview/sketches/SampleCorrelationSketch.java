@@ -68,12 +68,11 @@ public class SampleCorrelationSketch implements ISketch<ITable, CorrMatrix> {
         for (int l=0; l < this.colNames.size(); l++)
             iCols[l] = data.getColumn(this.colNames.get(l));
         CorrMatrix cm = new CorrMatrix(this.colNames);
-        IMembershipSet sampleData = data.getMembershipSet().sample(this.samplingRate);
-        cm.count = sampleData.getSize();
-        IRowIterator rowIt = sampleData.getIterator();
+        IRowIterator rowIt = data.getMembershipSet().getSampleIterator(this.samplingRate);
         int i = rowIt.getNextRow();
         double valJ, valK;
         while (i != -1) {
+            cm.count++;
             for (int j = 0; j < this.colNames.size(); j++) {
                 valJ = iCols[j].asDouble(i, null);
                 cm.update(j, j, valJ * valJ);
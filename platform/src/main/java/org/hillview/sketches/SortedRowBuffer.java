@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.table.RowAccessor;
+
+/**
+ * Keeps the smallest maxSize distinct rows of a table in the order of a RowAccessor,
+ * with the number of rows equal to each.  This plays the role of TreeTopK for NextK
+ * but stores the rows in primitive arrays sorted by the order: the largest row is the
+ * last one, so rows which do not belong in the buffer are rejected with a single
+ * comparison.  When the order has a primary key the keys of the rows are kept as well,
+ * and most comparisons only look at the keys; the full comparison is only done on ties.
+ * Since maxSize is small (the number of rows displayed) inserting by shifting the
+ * arrays is cheap.
+ */
+class SortedRowBuffer {
+    private final RowAccessor accessor;
+    private final boolean keyed;
+    private final int maxSize;
+    private final int[] rows;
+    private final int[] counts;
+    private final long[] keys;
+    private int size;
+
+    SortedRowBuffer(final RowAccessor accessor, final int maxSize) {
+        this.accessor = accessor;
+        this.keyed = accessor.hasPrimaryKey();
+        this.maxSize = maxSize;
+        this.rows = new int[maxSize];
+        this.counts = new int[maxSize];
+        this.keys = new long[this.keyed ? maxSize : 0];
+        this.size = 0;
+    }
+
+    private int compare(final int row, final long key, final int index) {
+        if (this.keyed) {
+            long other = this.keys[index];
+            if (key != other)
+                return key < other ? -1 : 1;
+        }
+        return this.accessor.compare(row, this.rows[index]);
+    }
+
+    /**
+     * Adds a row of the table.
+     */
+    void push(final int row) {
+        if (this.maxSize == 0)
+            return;
+        final long key = this.keyed ? this.accessor.primaryKey(row) : 0;
+        if (this.size == this.maxSize) {
+            int c = this.compare(row, key, this.size - 1);
+            if (c > 0)
+                return;
+            if (c == 0) {
+                this.counts[this.size - 1]++;
+                return;
+            }
+        }
+        // Find the first element which is not smaller than row.
+        int lo = 0;
+        int hi = this.size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = this.compare(row, key, mid);
+            if (c == 0) {
+                this.counts[mid]++;
+                return;
+            }
+            if (c > 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        int moved = Math.min(this.size, this.maxSize - 1) - lo;
+        System.arraycopy(this.rows, lo, this.rows, lo + 1, moved);
+        System.arraycopy(this.counts, lo, this.counts, lo + 1, moved);
+        if (this.keyed) {
+            System.arraycopy(this.keys, lo, this.keys, lo + 1, moved);
+            this.keys[lo] = key;
+        }
+        this.rows[lo] = row;
+        this.counts[lo] = 1;
+        if (this.size < this.maxSize)
+            this.size++;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The i-th smallest row.
+     */
+    int getRow(final int i) {
+        return this.rows[i];
+    }
+
+    /**
+     * @return The number of rows equal to the i-th smallest row.
+     */
+    int getCount(final int i) {
+        return this.counts[i];
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.table.RowAccessor;
+import org.hillview.table.RowHashTable;
+
+/**
+ * The stream-summary structure of the Space-Saving algorithm (Metwally, Agrawal and
+ * El Abbadi, "Efficient Computation of Frequent and Top-k Elements in Data Streams")
+ * over the rows of a table.  It keeps a fixed number of counters, each monitoring a
+ * distinct row.  Counters with the same count are grouped in a bucket, and the buckets
+ * form a list sorted by count, so both incrementing a counter and finding a counter
+ * with the minimum count take constant time.  All links are stored in primitive arrays.
+ */
+class StreamSummary {
+    private final int capacity;
+    // Maps each monitored row to its counter.
+    private final RowHashTable index;
+
+    // Counters: the monitored row and its hash, the bucket, and the links in the bucket.
+    private final int[] rows;
+    private final long[] hashes;
+    private final int[] counterBucket;
+    private final int[] counterNext;
+    private final int[] counterPrev;
+    private int used;
+
+    // Buckets: the count, the first counter, and the links in the list of buckets.
+    private final int[] bucketCount;
+    private final int[] bucketHead;
+    private final int[] bucketNext;
+    private final int[] bucketPrev;
+    private int minBucket;
+    private int freeBucket;
+
+    StreamSummary(final RowAccessor accessor, final int capacity) {
+        this.capacity = capacity;
+        this.index = new RowHashTable(accessor, capacity);
+        this.rows = new int[capacity];
+        this.hashes = new long[capacity];
+        this.counterBucket = new int[capacity];
+        this.counterNext = new int[capacity];
+        this.counterPrev = new int[capacity];
+        this.used = 0;
+        // Each bucket holds at least one counter, except briefly during an increment.
+        int buckets = capacity + 1;
+        this.bucketCount = new int[buckets];
+        this.bucketHead = new int[buckets];
+        this.bucketNext = new int[buckets];
+        this.bucketPrev = new int[buckets];
+        for (int i = 0; i < buckets; i++)
+            this.bucketNext[i] = i + 1;
+        this.bucketNext[buckets - 1] = -1;
+        this.freeBucket = 0;
+        this.minBucket = -1;
+    }
+
+    /**
+     * Adds an occurrence of a row.
+     * @param row  Row index.
+     * @param hash Hash of the row computed by the accessor.
+     */
+    void add(final int row, final long hash) {
+        int slot = this.index.find(row, hash);
+        if (slot >= 0) {
+            this.increment(this.index.getValue(slot));
+        } else if (this.used < this.capacity) {
+            int counter = this.used++;
+            this.monitor(counter, row, hash);
+            int bucket = this.minBucket;
+            if (bucket < 0 || this.bucketCount[bucket] != 1) {
+                bucket = this.allocateBucket(1, -1, this.minBucket);
+                this.minBucket = bucket;
+            }
+            this.link(counter, bucket);
+        } else {
+            // Replace a counter with the minimum count, which overestimates the new row.
+            int counter = this.bucketHead[this.minBucket];
+            this.index.remove(
+                    this.index.findRepresentative(this.rows[counter], this.hashes[counter]));
+            this.monitor(counter, row, hash);
+            this.increment(counter);
+        }
+    }
+
+    private void monitor(final int counter, final int row, final long hash) {
+        this.rows[counter] = row;
+        this.hashes[counter] = hash;
+        this.index.insert(row, hash, counter);
+    }
+
+    private void increment(final int counter) {
+        final int bucket = this.counterBucket[counter];
+        final int count = this.bucketCount[bucket] + 1;
+        int next = this.bucketNext[bucket];
+        final boolean alone = this.bucketHead[bucket] == counter && this.counterNext[counter] < 0;
+        if (next < 0 || this.bucketCount[next] != count) {
+            if (alone) {
+                // The bucket can move to the next count in place.
+                this.bucketCount[bucket] = count;
+                return;
+            }
+            next = this.allocateBucket(count, bucket, next);
+        }
+        this.unlink(counter);
+        this.link(counter, next);
+        if (alone)
+            this.freeBucket(bucket);
+    }
+
+    private int allocateBucket(final int count, final int prev, final int next) {
+        int bucket = this.freeBucket;
+        this.freeBucket = this.bucketNext[bucket];
+        this.bucketCount[bucket] = count;
+        this.bucketHead[bucket] = -1;
+        this.bucketPrev[bucket] = prev;
+        this.bucketNext[bucket] = next;
+        if (prev >= 0)
+            this.bucketNext[prev] = bucket;
+        if (next >= 0)
+            this.bucketPrev[next] = bucket;
+        return bucket;
+    }
+
+    private void freeBucket(final int bucket) {
+        int prev = this.bucketPrev[bucket];
+        int next = this.bucketNext[bucket];
+        if (prev >= 0)
+            this.bucketNext[prev] = next;
+        else
+            this.minBucket = next;
+        if (next >= 0)
+            this.bucketPrev[next] = prev;
+        this.bucketNext[bucket] = this.freeBucket;
+        this.freeBucket = bucket;
+    }
+
+    private void link(final int counter, final int bucket) {
+        int head = this.bucketHead[bucket];
+        this.counterBucket[counter] = bucket;
+        this.counterPrev[counter] = -1;
+        this.counterNext[counter] = head;
+        if (head >= 0)
+            this.counterPrev[head] = counter;
+        this.bucketHead[bucket] = counter;
+    }
+
+    private void unlink(final int counter) {
+        int prev = this.counterPrev[counter];
+        int next = this.counterNext[counter];
+        if (prev >= 0)
+            this.counterNext[prev] = next;
+        else
+            this.bucketHead[this.counterBucket[counter]] = next;
+        if (next >= 0)
+            this.counterPrev[next] = prev;
+    }
+
+    /**
+     * @return The number of monitored rows.
+     */
+    int size() {
+        return this.used;
+    }
+
+    int getRow(final int counter) {
+        return this.rows[counter];
+    }
+
+    /**
+     * @return The count of a counter, which overestimates the frequency of its row
+     * by at most getMinCount().
+     */
+    int getCount(final int counter) {
+        return this.bucketCount[this.counterBucket[counter]];
+    }
+
+    /**
+     * @return The smallest count if all counters are in use, and 0 otherwise; in that
+     * case the counts are exact.
+     */
+    int getMinCount() {
+        return this.used < this.capacity ? 0 : this.bucketCount[this.minBucket];
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketches;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A weighted random sample of at most capacity points, computed by giving each point
+ * a random key that depends on its weight and keeping the points with the largest keys.
+ * Two samples of disjoint sets of points are combined by keeping the largest keys of both.
+ */
+public class WeightedSample implements Serializable {
+    public final int capacity;
+    /**
+     * Number of coordinates of each point.
+     */
+    public final int columns;
+    /**
+     * Keys of the points in the sample, organized as a min-heap.
+     */
+    private final double[] keys;
+    /**
+     * Coordinates of the points in the sample, in row-major order.
+     */
+    private final double[] points;
+    private int size;
+
+    public WeightedSample(int capacity, int columns) {
+        this.capacity = capacity;
+        this.columns = columns;
+        this.keys = new double[capacity];
+        this.points = new double[capacity * columns];
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return True if a point with this key would be inserted in the sample.
+     */
+    public boolean accepts(double key) {
+        if (this.size < this.capacity)
+            return true;
+        return this.capacity > 0 && key > this.keys[0];
+    }
+
+    /**
+     * Inserts a point in the sample if its key is large enough.
+     * @param key    Key of the point.
+     * @param values Array holding the coordinates of the point.
+     * @param offset Index of the first coordinate in values.
+     * @param stride Distance between consecutive coordinates in values.
+     */
+    public void offer(double key, double[] values, int offset, int stride) {
+        if (!this.accepts(key))
+            return;
+        int index;
+        if (this.size < this.capacity) {
+            index = this.size++;
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (this.keys[parent] <= key)
+                    break;
+                this.move(parent, index);
+                index = parent;
+            }
+        } else {
+            // Replace the smallest key.
+            index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= this.size)
+                    break;
+                if (child + 1 < this.size && this.keys[child + 1] < this.keys[child])
+                    child++;
+                if (key <= this.keys[child])
+                    break;
+                this.move(child, index);
+                index = child;
+            }
+        }
+        this.keys[index] = key;
+        for (int j = 0; j < this.columns; j++)
+            this.points[index * this.columns + j] = values[offset + j * stride];
+    }
+
+    private void move(int from, int to) {
+        this.keys[to] = this.keys[from];
+        System.arraycopy(this.points, from * this.columns, this.points, to * this.columns,
+                this.columns);
+    }
+
+    /**
+     * Adds the points of other to this sample.
+     * @param other Sample of a disjoint set of points; it is not modified.
+     */
+    public void accumulate(WeightedSample other) {
+        for (int i = 0; i < other.size; i++)
+            this.offer(other.keys[i], other.points, i * other.columns, 1);
+    }
+
+    /**
+     * @return The coordinates of the points in the sample, in row-major order, sorted by
+     * decreasing key.  The order does not depend on the order in which points were added.
+     */
+    public double[] getPoints() {
+        Integer[] order = new Integer[this.size];
+        for (int i = 0; i < this.size; i++)
+            order[i] = i;
+        Arrays.sort(order, (i, j) -> Double.compare(this.keys[j], this.keys[i]));
+        double[] result = new double[this.size * this.columns];
+        for (int i = 0; i < this.size; i++)
+            System.arraycopy(this.points, order[i] * this.columns, result, i * this.columns,
+                    this.columns);
+        return result;
+    }
+}
@@ -18,11 +18,14 @@
 
 package org.hillview.table;
 
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IMutableColumn;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
 import java.io.Serializable;
 import java.security.InvalidParameterException;
+import java.util.Arrays;
 import java.util.BitSet;
 
 /**
@@ -49,6 +52,19 @@ public abstract class BaseArrayColumn extends BaseColumn implements Serializable
         Converters.checkNull(this.missing).set(rowIndex);
     }
 
+    /**
+     * Batch version of isMissing for columns which use the missing bitmap.
+     */
+    void getMissingFromBitmap(final int[] rows, final int count, final boolean[] missing) {
+        if (this.missing == null) {
+            Arrays.fill(missing, 0, count, false);
+            return;
+        }
+        final BitSet bits = this.missing;
+        for (int i = 0; i < count; i++)
+            missing[i] = bits.get(rows[i]);
+    }
+
     /**
      * Create an empty column with the specified description.
      * @param description Column description.
@@ -71,4 +87,71 @@ public abstract class BaseArrayColumn extends BaseColumn implements Serializable
                 throw new RuntimeException("Unexpected column kind " + description.toString());
         }
     }
+
+    /**
+     * Given two Columns left and right, merge them to a single array column with the
+     * same description as left.
+     * @param left  The left column
+     * @param right The right column
+     * @param order For each row of the merged column, the index of a row of left,
+     *              or the complement of the index of a row of right.
+     * @param size  The number of rows of the merged column.
+     * @return The merged column.
+     */
+    public static IColumn mergeColumns(final IColumn left, final IColumn right,
+                                       final int[] order, final int size) {
+        ColumnDescription cd = left.getDescription();
+        IMutableColumn result;
+        switch (cd.kind) {
+            case Category:
+                result = new CategoryArrayColumn(cd, size);
+                break;
+            case Json:
+            case String:
+                result = new StringArrayColumn(cd, size);
+                break;
+            case Integer:
+                result = new IntArrayColumn(cd, size);
+                break;
+            case Double:
+                result = new DoubleArrayColumn(cd, size);
+                break;
+            case Date:
+                result = new DateArrayColumn(cd, size);
+                break;
+            case Duration:
+                result = new DurationArrayColumn(cd, size);
+                break;
+            default:
+                throw new RuntimeException("Unexpected column kind " + cd.kind);
+        }
+        for (int i = 0; i < size; i++) {
+            IColumn column = order[i] >= 0 ? left : right;
+            int row = order[i] >= 0 ? order[i] : ~order[i];
+            if (column.isMissing(row)) {
+                result.setMissing(i);
+                continue;
+            }
+            switch (cd.kind) {
+                case Category:
+                case Json:
+                case String:
+                    result.set(i, column.getString(row));
+                    break;
+                case Integer:
+                    result.set(i, column.getInt(row));
+                    break;
+                case Double:
+                    result.set(i, column.getDouble(row));
+                    break;
+                case Date:
+                    result.set(i, column.getDate(row));
+                    break;
+                case Duration:
+                    result.set(i, column.getDuration(row));
+                    break;
+            }
+        }
+        return result;
+    }
 }
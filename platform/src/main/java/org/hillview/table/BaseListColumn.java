@@ -24,6 +24,7 @@ import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 
 /**
@@ -63,6 +64,21 @@ public abstract class BaseListColumn extends BaseColumn implements IAppendableCo
             return false;
     }
 
+    /**
+     * Batch version of isMissing for columns which use the missing bitmaps.
+     */
+    void getMissingFromBitmaps(final int[] rows, final int count, final boolean[] missing) {
+        if (!this.description.allowMissing || this.missing == null) {
+            Arrays.fill(missing, 0, count, false);
+            return;
+        }
+        final ArrayList<BitSet> bits = this.missing;
+        for (int i = 0; i < count; i++) {
+            final int row = rows[i];
+            missing[i] = bits.get(row >> this.LogSegmentSize).get(row & this.SegmentMask);
+        }
+    }
+
     @Override
     public void append(@Nullable Object obj) {
         throw new NotImplementedException();
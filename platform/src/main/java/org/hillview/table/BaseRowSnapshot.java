@@ -38,7 +38,8 @@ public abstract class BaseRowSnapshot implements IRow, Serializable {
                     same = this.getInt(cn) == other.getInt(cn);
                     break;
                 case Double:
-                    same = this.getDouble(cn) == other.getDouble(cn);
+                    same = Double.doubleToLongBits(this.getDouble(cn)) ==
+                            Double.doubleToLongBits(other.getDouble(cn));
                     break;
                 case Duration:
                     same = this.getDuration(cn).equals(other.getDuration(cn));
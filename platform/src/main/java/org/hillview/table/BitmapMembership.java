@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.IntBitmap;
+
+import java.util.function.Predicate;
+
+/**
+ * A membership set stored as a compressed bitmap.  This is best for sets that are
+ * sparse, or which contain long runs of consecutive rows.  Unlike SparseMembership,
+ * the iterator returns the rows in increasing order, so scans over the rows access
+ * the columns sequentially.
+ */
+public class BitmapMembership implements IMembershipSet {
+    private final IntBitmap bitmap;
+    private final int size;
+    private final int max;
+
+    /**
+     * @param bitmap  Rows in the set; must not be mutated after this call.
+     * @param max     Size of the original set that this set is a part of.
+     */
+    public BitmapMembership(final IntBitmap bitmap, final int max) {
+        this.bitmap = bitmap;
+        this.size = bitmap.cardinality();
+        this.max = max;
+    }
+
+    IntBitmap getBitmap() {
+        return this.bitmap;
+    }
+
+    @Override
+    public int getMax() {
+        return this.max;
+    }
+
+    @Override
+    public boolean isMember(final int rowIndex) {
+        return this.bitmap.contains(rowIndex);
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        return new BitmapIterator(this.bitmap);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k) {
+        return MembershipSetBuilder.sample(this, k, 0, false);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k, final long seed) {
+        return MembershipSetBuilder.sample(this, k, seed, true);
+    }
+
+    @Override
+    public IMembershipSet filter(final Predicate<Integer> predicate) {
+        return MembershipSetBuilder.filter(this, predicate);
+    }
+
+    @Override
+    public IMembershipSet union(final IMembershipSet otherMap) {
+        return MembershipSetBuilder.create(
+                this.bitmap.or(MembershipSetBuilder.toBitmap(otherMap)),
+                Math.max(this.max, otherMap.getMax()));
+    }
+
+    @Override
+    public IMembershipSet intersection(final IMembershipSet otherMap) {
+        return MembershipSetBuilder.create(
+                this.bitmap.and(MembershipSetBuilder.toBitmap(otherMap)), this.max);
+    }
+
+    @Override
+    public IMembershipSet setMinus(final IMembershipSet otherMap) {
+        return MembershipSetBuilder.create(
+                this.bitmap.andNot(MembershipSetBuilder.toBitmap(otherMap)), this.max);
+    }
+
+    private static class BitmapIterator implements IRowIterator {
+        private final IntBitmap.IntBitmapIterator iterator;
+
+        private BitmapIterator(final IntBitmap bitmap) {
+            this.iterator = bitmap.getIterator();
+        }
+
+        @Override
+        public int getNextRow() {
+            return this.iterator.getNext();
+        }
+
+        @Override
+        public int getNextRows(final int[] rows) {
+            return this.iterator.getNext(rows);
+        }
+    }
+}
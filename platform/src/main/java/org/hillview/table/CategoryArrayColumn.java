@@ -68,4 +68,27 @@ public class CategoryArrayColumn extends BaseArrayColumn
     public void allDistinctStrings(Consumer<String> action) {
         this.encoding.allDistinctStrings(action);
     }
+
+    @Override
+    public int getCodeCount() {
+        return this.encoding.size();
+    }
+
+    @Override
+    public int getCode(int rowIndex) {
+        return this.data[rowIndex];
+    }
+
+    @Nullable
+    @Override
+    public String decode(int code) {
+        return this.encoding.decode(code);
+    }
+
+    @Override
+    public void getCodes(final int[] rows, final int count, final int[] codes) {
+        final int[] data = this.data;
+        for (int i = 0; i < count; i++)
+            codes[i] = data[rows[i]];
+    }
 }
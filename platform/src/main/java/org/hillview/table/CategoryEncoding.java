@@ -34,6 +34,13 @@ public class CategoryEncoding {
         return encoding;
     }
 
+    /**
+     * @return The number of distinct values encoded; codes are between 0 and size() - 1.
+     */
+    int size() {
+        return this.encoding.size();
+    }
+
     public void allDistinctStrings(Consumer<String> action) {
         this.encoding.keySet().forEach(action);
     }
@@ -43,11 +43,25 @@ public class CategoryListColumn extends BaseListColumn implements ICategoryColum
     @Nullable
     @Override
     public String getString(final int rowIndex) {
+        return this.encoding.decode(this.getCode(rowIndex));
+    }
+
+    @Override
+    public int getCode(final int rowIndex) {
         final int segmentId = rowIndex >> this.LogSegmentSize;
         final int localIndex = rowIndex & this.SegmentMask;
-        int[] segment = this.segments.get(segmentId);
-        int index = segment[localIndex];
-        return this.encoding.decode(index);
+        return this.segments.get(segmentId)[localIndex];
+    }
+
+    @Override
+    public int getCodeCount() {
+        return this.encoding.size();
+    }
+
+    @Nullable
+    @Override
+    public String decode(int code) {
+        return this.encoding.decode(code);
     }
 
     @Override
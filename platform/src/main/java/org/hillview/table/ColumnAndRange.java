@@ -1,7 +1,9 @@
 package org.hillview.table;
 
+import org.hillview.sketches.BucketsDescription;
 import org.hillview.sketches.BucketsDescriptionEqSize;
 import org.hillview.sketches.HistogramSketch;
+import org.hillview.sketches.IBucketsDescription;
 import org.hillview.table.api.ColumnNameAndConverter;
 import org.hillview.table.api.IStringConverter;
 
@@ -18,24 +20,34 @@ public class ColumnAndRange implements Serializable, IJsonRepr {
     public double samplingRate;
     @Nullable
     public String[] bucketBoundaries;  // only used for Categorical columns
+    /**
+     * If not null the buckets are equi-depth buckets with these interior boundaries
+     * (see BucketsDescription.equiDepth), and bucketCount is ignored.
+     */
+    @Nullable
+    public double[] equiDepthBoundaries;
 
     public HistogramParts prepare() {
         IStringConverter converter = null;
         if (this.bucketBoundaries != null)
             converter = new SortedStringsConverter(
                     this.bucketBoundaries, (int)Math.ceil(this.min), (int)Math.floor(this.max));
-        BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(this.min, this.max, this.bucketCount);
+        IBucketsDescription buckets;
+        if (this.equiDepthBoundaries != null)
+            buckets = BucketsDescription.equiDepth(this.min, this.max, this.equiDepthBoundaries);
+        else
+            buckets = new BucketsDescriptionEqSize(this.min, this.max, this.bucketCount);
         ColumnNameAndConverter column = new ColumnNameAndConverter(this.columnName, converter);
         HistogramSketch sketch = new HistogramSketch(buckets, column, this.samplingRate);
         return new HistogramParts(buckets, column, sketch);
     }
 
     public static class HistogramParts {
-        public final BucketsDescriptionEqSize buckets;
+        public final IBucketsDescription buckets;
         public final ColumnNameAndConverter column;
         public final HistogramSketch sketch;
 
-        public HistogramParts(BucketsDescriptionEqSize buckets,
+        public HistogramParts(IBucketsDescription buckets,
                               ColumnNameAndConverter column,
                               HistogramSketch sketch) {
             this.buckets = buckets;
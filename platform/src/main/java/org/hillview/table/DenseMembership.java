@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+
+import java.util.function.Predicate;
+
+/**
+ * A membership set stored as an uncompressed bitset with one bit for each row.
+ * This sits between FullMembership and the sparse representations: it is best when
+ * a large fraction of the rows are present, for example after a non-selective filter.
+ * The iterator returns the rows in increasing order.
+ */
+public class DenseMembership implements IMembershipSet {
+    private final long[] words;
+    private final int size;
+    private final int max;
+
+    /**
+     * @param words  Bitset where bit i is set if row i is a member; must not be
+     *               mutated after this call.
+     * @param max    Size of the original set that this set is a part of.
+     */
+    public DenseMembership(final long[] words, final int max) {
+        if (words.length < wordCount(max))
+            throw new RuntimeException("Bitset too short for " + max + " rows");
+        this.words = words;
+        this.max = max;
+        int size = 0;
+        for (long w : words)
+            size += Long.bitCount(w);
+        this.size = size;
+    }
+
+    static int wordCount(final int max) {
+        return (max + 63) >>> 6;
+    }
+
+    long[] getWords() {
+        return this.words;
+    }
+
+    @Override
+    public int getMax() {
+        return this.max;
+    }
+
+    @Override
+    public boolean isMember(final int rowIndex) {
+        final int word = rowIndex >>> 6;
+        return word < this.words.length && (this.words[word] & (1L << rowIndex)) != 0;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        return new DenseIterator(this.words);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k) {
+        return MembershipSetBuilder.sample(this, k, 0, false);
+    }
+
+    @Override
+    public IMembershipSet sample(final int k, final long seed) {
+        return MembershipSetBuilder.sample(this, k, seed, true);
+    }
+
+    @Override
+    public IMembershipSet filter(final Predicate<Integer> predicate) {
+        return MembershipSetBuilder.filter(this, predicate);
+    }
+
+    @Override
+    public IMembershipSet union(final IMembershipSet otherMap) {
+        if (otherMap instanceof DenseMembership) {
+            final long[] other = ((DenseMembership)otherMap).words;
+            final long[] result = new long[Math.max(this.words.length, other.length)];
+            for (int i = 0; i < result.length; i++)
+                result[i] = (i < this.words.length ? this.words[i] : 0) |
+                        (i < other.length ? other[i] : 0);
+            return MembershipSetBuilder.create(result, Math.max(this.max, otherMap.getMax()));
+        }
+        return MembershipSetBuilder.create(
+                MembershipSetBuilder.toBitmap(this).or(MembershipSetBuilder.toBitmap(otherMap)),
+                Math.max(this.max, otherMap.getMax()));
+    }
+
+    @Override
+    public IMembershipSet intersection(final IMembershipSet otherMap) {
+        final long[] result = new long[this.words.length];
+        if (otherMap instanceof DenseMembership) {
+            final long[] other = ((DenseMembership)otherMap).words;
+            final int common = Math.min(this.words.length, other.length);
+            for (int i = 0; i < common; i++)
+                result[i] = this.words[i] & other[i];
+        } else {
+            final IRowIterator it = otherMap.getIterator();
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                if (this.isMember(row))
+                    result[row >>> 6] |= 1L << row;
+        }
+        return MembershipSetBuilder.create(result, this.max);
+    }
+
+    @Override
+    public IMembershipSet setMinus(final IMembershipSet otherMap) {
+        final long[] result = this.words.clone();
+        if (otherMap instanceof DenseMembership) {
+            final long[] other = ((DenseMembership)otherMap).words;
+            final int common = Math.min(result.length, other.length);
+            for (int i = 0; i < common; i++)
+                result[i] &= ~other[i];
+        } else {
+            final IRowIterator it = otherMap.getIterator();
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                if (row < this.max)
+                    result[row >>> 6] &= ~(1L << row);
+        }
+        return MembershipSetBuilder.create(result, this.max);
+    }
+
+    private static class DenseIterator implements IRowIterator {
+        private final long[] words;
+        private int wordIndex;
+        // Bits of the current word which have not been returned yet.
+        private long word;
+
+        private DenseIterator(final long[] words) {
+            this.words = words;
+            this.wordIndex = 0;
+            this.word = words.length > 0 ? words[0] : 0;
+        }
+
+        @Override
+        public int getNextRow() {
+            while (this.word == 0) {
+                if (++this.wordIndex >= this.words.length)
+                    return -1;
+                this.word = this.words[this.wordIndex];
+            }
+            final int result = (this.wordIndex << 6) + Long.numberOfTrailingZeros(this.word);
+            this.word &= this.word - 1;
+            return result;
+        }
+
+        @Override
+        public int getNextRows(final int[] rows) {
+            int count = 0;
+            while (count < rows.length) {
+                while (this.word == 0) {
+                    if (++this.wordIndex >= this.words.length)
+                        return count;
+                    this.word = this.words[this.wordIndex];
+                }
+                final int base = this.wordIndex << 6;
+                long w = this.word;
+                while (w != 0 && count < rows.length) {
+                    rows[count++] = base + Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                }
+                this.word = w;
+            }
+            return count;
+        }
+    }
+}
@@ -18,9 +18,11 @@
 
 package org.hillview.table;
 
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IDoubleColumn;
 import org.hillview.table.api.IMutableColumn;
+import org.hillview.table.api.IStringConverter;
 
 import javax.annotation.Nullable;
 
@@ -50,6 +52,34 @@ public class DoubleArrayColumn
     @Override
     public double getDouble(final int rowIndex) { return this.data[rowIndex];}
 
+    @Override
+    public void getMissing(final int[] rows, final int count, final boolean[] missing) {
+        this.getMissingFromBitmap(rows, count, missing);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused,
+                          final double[] values, final boolean[] missing) {
+        this.getMissingFromBitmap(rows, count, missing);
+        final double[] data = this.data;
+        for (int i = 0; i < count; i++)
+            values[i] = data[rows[i]];
+    }
+
+    @Override
+    public void hashCodes64(final int[] rows, final int count, final LongHashFunction hash,
+                            final long[] hashes) {
+        if (!this.description.allowMissing) {
+            final double[] data = this.data;
+            for (int i = 0; i < count; i++)
+                hashes[i] = hash.hashLong(Double.doubleToLongBits(data[rows[i]]));
+        } else {
+            for (int i = 0; i < count; i++)
+                hashes[i] = this.hashCode64(rows[i], hash);
+        }
+    }
+
     @Override
     public void set(int rowIndex, @Nullable Object value) {
         if (value == null)
@@ -19,6 +19,7 @@
 package org.hillview.table;
 
 import org.hillview.table.api.IDoubleColumn;
+import org.hillview.table.api.IStringConverter;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
@@ -42,6 +43,22 @@ public class DoubleListColumn
         return this.segments.get(segmentId)[localIndex];
     }
 
+    @Override
+    public void getMissing(final int[] rows, final int count, final boolean[] missing) {
+        this.getMissingFromBitmaps(rows, count, missing);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused,
+                          final double[] values, final boolean[] missing) {
+        this.getMissingFromBitmaps(rows, count, missing);
+        for (int i = 0; i < count; i++) {
+            final int row = rows[i];
+            values[i] = this.segments.get(row >> this.LogSegmentSize)[row & this.SegmentMask];
+        }
+    }
+
     @Override
     void grow() {
         this.segments.add(new double[this.SegmentSize]);
@@ -1,13 +1,15 @@
 package org.hillview.table;
 
 import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.ICategoryColumn;
+import org.hillview.table.api.ICompiledFilter;
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 import org.junit.Assert;
 
 import javax.annotation.Nullable;
-import java.util.Objects;
 
 /**
  * This filter maps a given Table to a Table that only contains the given value in the specified column.
@@ -19,9 +21,7 @@ public class EqualityFilter implements TableFilter {
     private final Object compareValue;
     private final boolean complement;
     @Nullable
-    private IColumn column;
-    @Nullable
-    private ContentsKind compareKind;
+    private transient ICompiledFilter compiled;
 
     /**
      * Make a filter that accepts rows that (do not) have a specified value in the specified column.
@@ -46,27 +46,37 @@ public class EqualityFilter implements TableFilter {
 
     @Override
     public void setTable(ITable table) {
-        this.column = table.getColumn(this.columnName);
-        this.compareKind = column.getDescription().kind;
+        this.compiled = this.compile(table);
+    }
+
+    @Override
+    public ICompiledFilter compile(ITable table) {
+        IColumn column = table.getColumn(this.columnName);
+        ContentsKind compareKind = column.getDescription().kind;
         if (this.compareValue == null)
-            return;
+            return new MissingTest(column, this.complement);
 
-        switch (this.compareKind) {
+        switch (compareKind) {
             case Category:
+                Assert.assertTrue(compareValue instanceof String);
+                if (column instanceof ICategoryColumn)
+                    return new CategoryTest((ICategoryColumn)column, (String)this.compareValue,
+                            this.complement);
+                return new StringTest(column, (String)this.compareValue, this.complement);
             case String:
             case Json:
                 Assert.assertTrue(compareValue instanceof String);
-                break;
+                return new StringTest(column, (String)this.compareValue, this.complement);
             case Integer:
                 Assert.assertTrue(compareValue instanceof Integer);
-                break;
+                return new NumericTest(column, (Integer)this.compareValue, this.complement);
             case Double:
             case Duration:
             case Date:
                 Assert.assertTrue(compareValue instanceof Double);
-                break;
+                return new NumericTest(column, (Double)this.compareValue, this.complement);
             default:
-                throw new RuntimeException("Unexpected kind " + this.compareKind);
+                throw new RuntimeException("Unexpected kind " + compareKind);
         }
     }
 
@@ -75,36 +85,147 @@ public class EqualityFilter implements TableFilter {
      */
     @Override
     public boolean test(int rowIndex) {
-        IColumn column = Converters.checkNull(this.column);
-        ContentsKind compareKind = Converters.checkNull(this.compareKind);
-
-        boolean result;
-        if (column.isMissing(rowIndex)) {
-            result = (this.compareValue == null);
-        } else {
-            if (this.compareValue == null) {
-                result = false;
-            } else {
-                switch (compareKind) {
-                    case Duration:
-                    case Double:
-                    case Date:
-                        result = column.asDouble(rowIndex, null) == (Double) this.compareValue;
-                        break;
-                    case Integer:
-                        result = column.getInt(rowIndex) == (Integer) this.compareValue;
-                        break;
-                    case Category:
-                    case String:
-                    case Json:
-                        result = Objects.equals(column.getString(rowIndex), this.compareValue);
-                        break;
-                    default:
-                        throw new RuntimeException("Unexpected kind " + this.compareKind);
+        return Converters.checkNull(this.compiled).test(rowIndex);
+    }
+
+    @Override
+    public void test(int[] rows, int count, boolean[] result) {
+        Converters.checkNull(this.compiled).test(rows, count, result);
+    }
+
+    /**
+     * Selects the rows that are (not) missing.
+     */
+    static class MissingTest implements ICompiledFilter {
+        private final IColumn column;
+        private final boolean complement;
+
+        MissingTest(IColumn column, boolean complement) {
+            this.column = column;
+            this.complement = complement;
+        }
+
+        @Override
+        public boolean test(int rowIndex) {
+            return this.column.isMissing(rowIndex) != this.complement;
+        }
+
+        @Override
+        public void test(int[] rows, int count, boolean[] result) {
+            this.column.getMissing(rows, count, result);
+            for (int i = 0; i < count; i++)
+                result[i] ^= this.complement;
+        }
+    }
+
+    /**
+     * Compares a numeric, date or duration column with a value, a batch of
+     * primitive doubles at a time.  Integers are represented exactly as doubles.
+     */
+    static class NumericTest implements ICompiledFilter {
+        private final IColumn column;
+        private final double value;
+        private final boolean complement;
+        private double[] values;
+
+        NumericTest(IColumn column, double value, boolean complement) {
+            this.column = column;
+            this.value = value;
+            this.complement = complement;
+            this.values = new double[IRowIterator.BATCH_SIZE];
+        }
+
+        @Override
+        public boolean test(int rowIndex) {
+            boolean result = !this.column.isMissing(rowIndex) &&
+                    this.column.asDouble(rowIndex, null) == this.value;
+            return result != this.complement;
+        }
+
+        @Override
+        public void test(int[] rows, int count, boolean[] result) {
+            if (this.values.length < count)
+                this.values = new double[count];
+            final double[] values = this.values;
+            // result first receives the missing flags
+            this.column.asDoubles(rows, count, null, values, result);
+            final double value = this.value;
+            final boolean complement = this.complement;
+            for (int i = 0; i < count; i++)
+                result[i] = (!result[i] & (values[i] == value)) ^ complement;
+        }
+    }
+
+    /**
+     * Compares a category column with a value by comparing the dictionary codes of the rows
+     * with the code of the value, which is looked up once.
+     */
+    static class CategoryTest implements ICompiledFilter {
+        private final ICategoryColumn column;
+        /**
+         * Code of the value; -1 if the value is not in the dictionary.
+         */
+        private final int code;
+        private final boolean complement;
+        private int[] codes;
+
+        CategoryTest(ICategoryColumn column, String value, boolean complement) {
+            this.column = column;
+            this.complement = complement;
+            this.codes = new int[IRowIterator.BATCH_SIZE];
+            int code = -1;
+            // The code of missing values decodes to null, so it never matches.
+            for (int c = 0; c < column.getCodeCount(); c++) {
+                if (value.equals(column.decode(c))) {
+                    code = c;
+                    break;
                 }
             }
+            this.code = code;
         }
 
-        return this.complement != result;
+        @Override
+        public boolean test(int rowIndex) {
+            return (this.column.getCode(rowIndex) == this.code) != this.complement;
+        }
+
+        @Override
+        public void test(int[] rows, int count, boolean[] result) {
+            if (this.codes.length < count)
+                this.codes = new int[count];
+            final int[] codes = this.codes;
+            this.column.getCodes(rows, count, codes);
+            final int code = this.code;
+            final boolean complement = this.complement;
+            for (int i = 0; i < count; i++)
+                result[i] = (codes[i] == code) ^ complement;
+        }
+    }
+
+    static class StringTest implements ICompiledFilter {
+        private final IColumn column;
+        private final String value;
+        private final boolean complement;
+
+        StringTest(IColumn column, String value, boolean complement) {
+            this.column = column;
+            this.value = value;
+            this.complement = complement;
+        }
+
+        @Override
+        public boolean test(int rowIndex) {
+            boolean result = !this.column.isMissing(rowIndex) &&
+                    this.value.equals(this.column.getString(rowIndex));
+            return result != this.complement;
+        }
+
+        @Override
+        public void test(int[] rows, int count, boolean[] result) {
+            this.column.getMissing(rows, count, result);
+            for (int i = 0; i < count; i++)
+                result[i] = (!result[i] && this.value.equals(this.column.getString(rows[i])))
+                        != this.complement;
+        }
     }
 }
@@ -1,7 +1,10 @@
 package org.hillview.table;
 
+import org.hillview.table.api.ICompiledFilter;
 import org.hillview.table.api.ITable;
 
+import java.util.Arrays;
+
 /**
  * A TableFilter which returns always false.
  */
@@ -13,4 +16,19 @@ public class FalseTableFilter implements TableFilter {
     public boolean test(final int rowIndex) {
         return false;
     }
+
+    @Override
+    public ICompiledFilter compile(final ITable unused) {
+        return new ICompiledFilter() {
+            @Override
+            public boolean test(int rowIndex) {
+                return false;
+            }
+
+            @Override
+            public void test(int[] rows, int count, boolean[] result) {
+                Arrays.fill(result, 0, count, false);
+            }
+        };
+    }
 }
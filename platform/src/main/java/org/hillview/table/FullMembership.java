@@ -20,6 +20,7 @@ package org.hillview.table;
 
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.IntBitmap;
 import org.hillview.utils.IntSet;
 import org.hillview.utils.Randomness;
 
@@ -59,6 +60,13 @@ public class FullMembership implements IMembershipSet {
         return new FullMembershipIterator(this.rowCount);
     }
 
+    @Override
+    public IRowIterator getSampleIterator(final int k, final Randomness random) {
+        if (k >= this.rowCount)
+            return this.getIterator();
+        return new SampledRowIterator.SampledRangeIterator(this.rowCount, k, random);
+    }
+
     /**
      * Samples k items. Generator is seeded using its default method. Sampled items are
      * first placed in a Set. The procedure samples k times with replacement so it
@@ -77,7 +85,7 @@ public class FullMembership implements IMembershipSet {
 
     @Override
     public IMembershipSet filter(Predicate<Integer> predicate) {
-        return new SparseMembership(this, predicate);
+        return MembershipSetBuilder.filter(this, predicate);
     }
 
     /**
@@ -112,17 +120,12 @@ public class FullMembership implements IMembershipSet {
 
     @Override
     public IMembershipSet setMinus(final IMembershipSet otherSet) {
-        if (otherSet instanceof FullMembership) {
-            final IntSet baseMap = new IntSet(Integer.max(0, this.getSize()-otherSet.getSize()));
-            for (int i = otherSet.getSize(); i < this.rowCount; i++)
-                baseMap.add(i);
-            return new SparseMembership(baseMap, this.getMax());
-        }
-        final IntSet baseMap = new IntSet();
-        for (int i = 0; i < this.getSize(); i++)
-            if (!otherSet.isMember(i))
-                baseMap.add(i);
-        return new SparseMembership(baseMap, this.getMax());
+        if (otherSet instanceof FullMembership)
+            return MembershipSetBuilder.create(
+                    IntBitmap.range(otherSet.getSize(), this.rowCount), this.getMax());
+        return MembershipSetBuilder.create(
+                IntBitmap.range(0, this.rowCount).andNot(MembershipSetBuilder.toBitmap(otherSet)),
+                this.getMax());
     }
 
     private IMembershipSet sampleUtil(final Randomness randomGenerator, final int k) {
@@ -156,5 +159,14 @@ public class FullMembership implements IMembershipSet {
             }
             else return - 1;
         }
+
+        @Override
+        public int getNextRows(final int[] rows) {
+            final int count = Math.min(rows.length, this.range - this.cursor);
+            for (int i = 0; i < count; i++)
+                rows[i] = this.cursor + i;
+            this.cursor += count;
+            return count;
+        }
     }
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+
+/**
+ * A virtual column of doubles holding a linear combination of other columns:
+ * the value in a row is the dot product of the values of the source columns in that row
+ * with a vector of weights.  Values are computed on access; a row is missing if any
+ * source value is missing or NaN.
+ * A column which is read many times is cached in an array of doubles.
+ */
+public class LinearProjectionColumn extends BaseColumn implements IDoubleColumn {
+    /**
+     * After this many full scans worth of computed rows the column caches its values.
+     */
+    private static final int cacheAfterScans = 3;
+
+    /**
+     * Buffers that receive the values of a source column for a batch of rows.
+     */
+    private static final class Scratch {
+        double[] values = new double[IRowIterator.BATCH_SIZE];
+        boolean[] missing = new boolean[IRowIterator.BATCH_SIZE];
+
+        void ensureCapacity(final int count) {
+            if (this.values.length < count) {
+                this.values = new double[count];
+                this.missing = new boolean[count];
+            }
+        }
+    }
+
+    /**
+     * Batches are read by several threads, and columns are read in turn, so each thread
+     * keeps one set of buffers that is shared by all the columns.  The buffers are taken
+     * while they are used, since a source column may itself be a LinearProjectionColumn.
+     */
+    private static final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>();
+
+    private static Scratch takeScratch(final int count) {
+        Scratch result = scratch.get();
+        if (result == null)
+            result = new Scratch();
+        else
+            scratch.set(null);
+        result.ensureCapacity(count);
+        return result;
+    }
+
+    private final IColumn[] sources;
+    private final double[] weights;
+    private final int size;
+    /**
+     * Cached values; null until the column is cached.
+     */
+    @Nullable
+    private transient volatile double[] cache;
+    /**
+     * The rows that are missing; set before cache.
+     */
+    @Nullable
+    private transient boolean[] cacheMissing;
+    /**
+     * Approximate number of values computed so far; updates may be lost under contention.
+     */
+    private transient long computed;
+
+    /**
+     * @param description  Description of the column; the kind must be Double.
+     * @param sources      Columns that are combined.
+     * @param weights      One weight for each source column.
+     * @param size         Size of the column in rows.
+     */
+    public LinearProjectionColumn(final ColumnDescription description, final IColumn[] sources,
+                                  final double[] weights, final int size) {
+        super(description);
+        this.checkKind(ContentsKind.Double);
+        if (sources.length != weights.length)
+            throw new RuntimeException("Number of weights " + weights.length +
+                    " does not match number of columns " + sources.length);
+        this.sources = sources;
+        this.weights = weights;
+        this.size = size;
+        this.cache = null;
+        this.computed = 0;
+    }
+
+    @Override
+    public int sizeInRows() { return this.size; }
+
+    private boolean computeMissing(final int rowIndex) {
+        for (IColumn source : this.sources)
+            if (source.isMissing(rowIndex) || Double.isNaN(source.asDouble(rowIndex, null)))
+                return true;
+        return false;
+    }
+
+    /**
+     * @return The projection of a row which is not missing.
+     */
+    private double compute(final int rowIndex) {
+        double result = 0;
+        for (int c = 0; c < this.sources.length; c++)
+            result += this.weights[c] * this.sources[c].asDouble(rowIndex, null);
+        return result;
+    }
+
+    private void countComputed(final int count) {
+        this.computed += count;
+        if (this.computed <= (long)cacheAfterScans * this.size)
+            return;
+        // The cache is built once; concurrent readers wait for it.
+        synchronized (this) {
+            if (this.cache != null)
+                return;
+            double[] values = new double[this.size];
+            boolean[] missing = new boolean[this.size];
+            for (int i = 0; i < this.size; i++) {
+                missing[i] = this.computeMissing(i);
+                if (!missing[i])
+                    values[i] = this.compute(i);
+            }
+            this.cacheMissing = missing;
+            this.cache = values;
+        }
+    }
+
+    @Override
+    public double getDouble(final int rowIndex) {
+        double[] values = this.cache;
+        if (values != null)
+            return values[rowIndex];
+        this.countComputed(1);
+        return this.compute(rowIndex);
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) {
+        if (this.cache != null)
+            return Converters.checkNull(this.cacheMissing)[rowIndex];
+        return this.computeMissing(rowIndex);
+    }
+
+    @Override
+    public double asDouble(final int rowIndex, @Nullable final IStringConverter unused) {
+        if (this.isMissing(rowIndex))
+            throw new MissingException(this, rowIndex);
+        return this.getDouble(rowIndex);
+    }
+
+    @Override
+    public void getMissing(final int[] rows, final int count, final boolean[] missing) {
+        if (this.cache != null) {
+            boolean[] cached = Converters.checkNull(this.cacheMissing);
+            for (int i = 0; i < count; i++)
+                missing[i] = cached[rows[i]];
+            return;
+        }
+        Scratch buffers = takeScratch(count);
+        final double[] sourceValues = buffers.values;
+        final boolean[] sourceMissing = buffers.missing;
+        for (int i = 0; i < count; i++)
+            missing[i] = false;
+        for (IColumn source : this.sources) {
+            source.asDoubles(rows, count, null, sourceValues, sourceMissing);
+            for (int i = 0; i < count; i++) {
+                final double v = sourceValues[i];
+                missing[i] |= sourceMissing[i] | (v != v);
+            }
+        }
+        scratch.set(buffers);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          @Nullable final IStringConverter unused,
+                          final double[] values, final boolean[] missing) {
+        double[] cached = this.cache;
+        if (cached == null) {
+            this.countComputed(count);
+            cached = this.cache;
+        }
+        if (cached != null) {
+            boolean[] cachedMissing = Converters.checkNull(this.cacheMissing);
+            for (int i = 0; i < count; i++) {
+                values[i] = cached[rows[i]];
+                missing[i] = cachedMissing[rows[i]];
+            }
+            return;
+        }
+
+        Scratch buffers = takeScratch(count);
+        final double[] sourceValues = buffers.values;
+        final boolean[] sourceMissing = buffers.missing;
+        for (int i = 0; i < count; i++) {
+            values[i] = 0;
+            missing[i] = false;
+        }
+        for (int c = 0; c < this.sources.length; c++) {
+            this.sources[c].asDoubles(rows, count, null, sourceValues, sourceMissing);
+            final double w = this.weights[c];
+            for (int i = 0; i < count; i++) {
+                // The values of missing rows are unspecified, so they are not used;
+                // NaN values are treated as missing.
+                final double v = sourceValues[i];
+                final boolean m = sourceMissing[i] | (v != v);
+                values[i] += m ? 0 : w * v;
+                missing[i] |= m;
+            }
+        }
+        scratch.set(buffers);
+    }
+}
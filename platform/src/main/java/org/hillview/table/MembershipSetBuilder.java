@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.Converters;
+import org.hillview.utils.IntBitmap;
+
+import javax.annotation.Nullable;
+import java.util.function.Predicate;
+
+/**
+ * Builds membership sets, choosing the representation based on the density of the
+ * result: FullMembership if all rows are present, DenseMembership if at least
+ * 1/denseRatio of the rows are present, and a compressed BitmapMembership otherwise.
+ */
+public class MembershipSetBuilder {
+    /**
+     * Sets with at least max/denseRatio elements are stored as uncompressed bitsets.
+     */
+    static final int denseRatio = 16;
+    private static final int sizeEstimationSampleSize = 20;
+
+    private final int max;
+    @Nullable
+    private final long[] words;
+    @Nullable
+    private final IntBitmap bitmap;
+
+    /**
+     * @param max            Size of the original set that the result is part of.
+     * @param estimatedSize  Estimated number of rows that will be added.  Used to
+     *                       choose the representation used while building.
+     */
+    public MembershipSetBuilder(final int max, final int estimatedSize) {
+        this.max = max;
+        if (isDense(estimatedSize, max)) {
+            this.words = new long[DenseMembership.wordCount(max)];
+            this.bitmap = null;
+        } else {
+            this.words = null;
+            this.bitmap = new IntBitmap();
+        }
+    }
+
+    /**
+     * Adds a row to the set.  Adding rows in increasing order is fastest.
+     */
+    public void add(final int row) {
+        if (this.words != null)
+            this.words[row >>> 6] |= 1L << row;
+        else
+            Converters.checkNull(this.bitmap).add(row);
+    }
+
+    public IMembershipSet build() {
+        if (this.words != null)
+            return create(this.words, this.max);
+        return create(Converters.checkNull(this.bitmap), this.max);
+    }
+
+    private static boolean isDense(final long size, final int max) {
+        return size * denseRatio >= max;
+    }
+
+    /**
+     * @return A membership set with the rows in the bitmap, which is not mutated
+     * by the caller afterwards.
+     */
+    public static IMembershipSet create(final IntBitmap bitmap, final int max) {
+        final int size = bitmap.cardinality();
+        if (size == max)
+            return new FullMembership(max);
+        if (isDense(size, max)) {
+            final long[] words = new long[DenseMembership.wordCount(max)];
+            final IntBitmap.IntBitmapIterator it = bitmap.getIterator();
+            for (int row = it.getNext(); row >= 0; row = it.getNext())
+                words[row >>> 6] |= 1L << row;
+            return new DenseMembership(words, max);
+        }
+        bitmap.runOptimize();
+        return new BitmapMembership(bitmap, max);
+    }
+
+    /**
+     * @return A membership set with the rows in the bitset, which is not mutated
+     * by the caller afterwards.
+     */
+    public static IMembershipSet create(final long[] words, final int max) {
+        int size = 0;
+        for (long w : words)
+            size += Long.bitCount(w);
+        if (size == max)
+            return new FullMembership(max);
+        if (isDense(size, max))
+            return new DenseMembership(words, max);
+        final IntBitmap bitmap = new IntBitmap();
+        for (int i = 0; i < words.length; i++) {
+            long w = words[i];
+            while (w != 0) {
+                bitmap.add((i << 6) + Long.numberOfTrailingZeros(w));
+                w &= w - 1;
+            }
+        }
+        bitmap.runOptimize();
+        return new BitmapMembership(bitmap, max);
+    }
+
+    /**
+     * @return A bitmap with the same elements as the set.  The result may be
+     * shared with the set, so it should not be mutated.
+     */
+    static IntBitmap toBitmap(final IMembershipSet set) {
+        if (set instanceof BitmapMembership)
+            return ((BitmapMembership)set).getBitmap();
+        if (set instanceof FullMembership)
+            return IntBitmap.range(0, set.getSize());
+        final IntBitmap result = new IntBitmap();
+        final IRowIterator it = set.getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+            result.add(row);
+        return result;
+    }
+
+    /**
+     * Estimates the size of a filter applied to an IMembershipSet
+     * @return an approximation of the size, based on a sample of size 20. May return 0.
+     * There are no strict guarantees on the quality of the approximation, but is good enough for
+     * choosing the representation of the result.
+     */
+    public static int estimateSize(final IMembershipSet baseMap,
+                                   final Predicate<Integer> filter) {
+        final IMembershipSet sampleSet = baseMap.sample(sizeEstimationSampleSize);
+        if (sampleSet.getSize() == 0)
+            return 0;
+        int eSize = 0;
+        final IRowIterator iter = sampleSet.getIterator();
+        int curr = iter.getNextRow();
+        while (curr >= 0) {
+            if (filter.test(curr))
+                eSize++;
+            curr = iter.getNextRow();
+        }
+        return (int)(((long)baseMap.getSize() * eSize) / sampleSet.getSize());
+    }
+
+    /**
+     * @return The rows of the set for which the predicate is true.
+     */
+    static IMembershipSet filter(final IMembershipSet set, final Predicate<Integer> predicate) {
+        final MembershipSetBuilder builder = new MembershipSetBuilder(
+                set.getMax(), estimateSize(set, predicate));
+        final IRowIterator it = set.getIterator();
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+            if (predicate.test(row))
+                builder.add(row);
+        return builder.build();
+    }
+
+    /**
+     * Samples k rows from an ordered set without replacement, by choosing k distinct
+     * ranks and keeping the rows with these ranks.
+     */
+    static IMembershipSet sample(final IMembershipSet set, final int k,
+                                 final long seed, final boolean useSeed) {
+        final int size = set.getSize();
+        if (k >= size)
+            return set;
+        final FullMembership ranks = new FullMembership(size);
+        final IMembershipSet chosen = useSeed ? ranks.sample(k, seed) : ranks.sample(k);
+        final MembershipSetBuilder builder = new MembershipSetBuilder(set.getMax(), k);
+        final IRowIterator it = set.getIterator();
+        int rank = 0;
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow(), rank++)
+            if (chosen.isMember(rank))
+                builder.add(row);
+        return builder.build();
+    }
+}
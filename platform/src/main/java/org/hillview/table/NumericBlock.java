@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.*;
+
+import java.security.InvalidParameterException;
+import java.util.List;
+
+/**
+ * Reads a set of numeric columns of a table in batches of rows.
+ * Each batch is stored in column-major order in an array of doubles, together with
+ * a flag for each row that is set if the value of any column is missing, infinite or NaN.
+ */
+public class NumericBlock {
+    /**
+     * Number of columns read.
+     */
+    public final int columns;
+    /**
+     * Maximum number of rows in a batch; the values of column c start at c * stride.
+     */
+    public final int stride;
+    /**
+     * Indexes of the rows in the current batch.
+     */
+    public final int[] rows;
+    /**
+     * Values in the current batch, in column-major order.
+     */
+    public final double[] values;
+    /**
+     * True for the rows in the current batch which have a missing or non-finite value in
+     * some column.
+     */
+    public final boolean[] missing;
+    /**
+     * Number of rows in the current batch.
+     */
+    public int count;
+
+    private final ColumnAndConverter[] sources;
+    private final IRowIterator iterator;
+    private final double[] columnValues;
+    private final boolean[] columnMissing;
+
+    /**
+     * @param table    Table whose rows are read.
+     * @param colNames Columns to read; they must be integer or double columns.
+     */
+    public NumericBlock(ITable table, List<String> colNames) {
+        this.columns = colNames.size();
+        this.sources = new ColumnAndConverter[this.columns];
+        for (int i = 0; i < this.columns; i++) {
+            String col = colNames.get(i);
+            ContentsKind kind = table.getSchema().getKind(col);
+            if (kind != ContentsKind.Double && kind != ContentsKind.Integer)
+                throw new InvalidParameterException("Column should be integer or double: " + col);
+            this.sources[i] = new ColumnAndConverter(table.getColumn(col), null);
+        }
+        this.stride = Math.max(1, Math.min(IRowIterator.BATCH_SIZE, table.getNumOfRows()));
+        this.rows = new int[this.stride];
+        this.values = new double[this.stride * this.columns];
+        this.missing = new boolean[this.stride];
+        this.columnValues = new double[this.stride];
+        this.columnMissing = new boolean[this.stride];
+        this.iterator = table.getMembershipSet().getIterator();
+        this.count = 0;
+    }
+
+    /**
+     * Reads the next batch of rows.
+     * @return The number of rows read; 0 when all rows have been read.
+     */
+    public int next() {
+        this.count = this.iterator.getNextRows(this.rows);
+        for (int r = 0; r < this.count; r++)
+            this.missing[r] = false;
+        for (int c = 0; c < this.columns; c++) {
+            this.sources[c].asDoubles(this.rows, this.count, this.columnValues, this.columnMissing);
+            final int offset = c * this.stride;
+            for (int r = 0; r < this.count; r++) {
+                double v = this.columnValues[r];
+                // v - v is 0 exactly when v is finite.
+                if (this.columnMissing[r] || v - v != 0) {
+                    this.missing[r] = true;
+                    v = 0;
+                }
+                this.values[offset + r] = v;
+            }
+        }
+        return this.count;
+    }
+}
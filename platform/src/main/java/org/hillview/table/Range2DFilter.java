@@ -1,8 +1,11 @@
 package org.hillview.table;
 
+import org.hillview.table.api.ICompiledFilter;
+import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
 
 /**
@@ -11,6 +14,8 @@ import java.io.Serializable;
 public class Range2DFilter implements TableFilter, Serializable {
     final RangeFilter first;
     final RangeFilter second;
+    @Nullable
+    private transient ICompiledFilter compiled;
 
     public Range2DFilter(RangeFilterPair args) {
         this.first = new RangeFilter(Converters.checkNull(args.first));
@@ -18,11 +23,69 @@ public class Range2DFilter implements TableFilter, Serializable {
     }
 
     public void setTable(ITable table) {
-        this.first.setTable(table);
-        this.second.setTable(table);
+        this.compiled = this.compile(table);
     }
 
     public boolean test(int rowIndex) {
-        return this.first.test(rowIndex) && this.second.test(rowIndex);
+        return Converters.checkNull(this.compiled).test(rowIndex);
+    }
+
+    @Override
+    public void test(int[] rows, int count, boolean[] result) {
+        Converters.checkNull(this.compiled).test(rows, count, result);
+    }
+
+    @Override
+    public ICompiledFilter compile(ITable table) {
+        return new Conjunction(this.first.compile(table), this.second.compile(table));
+    }
+
+    /**
+     * Conjunction of two filters evaluated a column at a time: the second filter
+     * is only evaluated on the rows of each batch that pass the first one.
+     */
+    static class Conjunction implements ICompiledFilter {
+        private final ICompiledFilter first;
+        private final ICompiledFilter second;
+        // Rows that pass the first filter, and their positions in the batch.
+        private int[] selected;
+        private int[] positions;
+        private boolean[] secondResult;
+
+        Conjunction(ICompiledFilter first, ICompiledFilter second) {
+            this.first = first;
+            this.second = second;
+            this.allocate(IRowIterator.BATCH_SIZE);
+        }
+
+        private void allocate(int size) {
+            this.selected = new int[size];
+            this.positions = new int[size];
+            this.secondResult = new boolean[size];
+        }
+
+        @Override
+        public boolean test(int rowIndex) {
+            return this.first.test(rowIndex) && this.second.test(rowIndex);
+        }
+
+        @Override
+        public void test(int[] rows, int count, boolean[] result) {
+            if (this.selected.length < count)
+                this.allocate(count);
+            this.first.test(rows, count, result);
+            // Branch-free compaction of the rows which pass the first filter.
+            int passed = 0;
+            for (int i = 0; i < count; i++) {
+                this.selected[passed] = rows[i];
+                this.positions[passed] = i;
+                passed += result[i] ? 1 : 0;
+            }
+            if (passed == 0)
+                return;
+            this.second.test(this.selected, passed, this.secondResult);
+            for (int i = 0; i < passed; i++)
+                result[this.positions[i]] = this.secondResult[i];
+        }
     }
 }
@@ -1,6 +1,8 @@
 package org.hillview.table;
 
-import org.hillview.table.api.ColumnAndConverter;
+import org.hillview.table.api.ICompiledFilter;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.IStringConverter;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
@@ -12,32 +14,90 @@ import java.io.Serializable;
 public class RangeFilter implements TableFilter, Serializable {
     final RangeFilterDescription args;
     @Nullable
-    ColumnAndConverter column;  // not really nullable, but set later.
+    private transient ICompiledFilter compiled;  // not really nullable, but set later.
 
     public RangeFilter(RangeFilterDescription args) {
         this.args = args;
-        this.column = null;
+        this.compiled = null;
     }
 
     @Override
     public void setTable(ITable table) {
+        this.compiled = this.compile(table);
+    }
+
+    public boolean test(int rowIndex) {
+        return Converters.checkNull(this.compiled).test(rowIndex);
+    }
+
+    @Override
+    public void test(int[] rows, int count, boolean[] result) {
+        Converters.checkNull(this.compiled).test(rows, count, result);
+    }
+
+    @Override
+    public ICompiledFilter compile(ITable table) {
         IStringConverter converter = null;
         if (args.bucketBoundaries != null)
             converter = new SortedStringsConverter(
                     args.bucketBoundaries, (int)Math.ceil(args.min), (int)Math.floor(args.max));
-        this.column = new ColumnAndConverter(table.getColumn(this.args.columnName), converter);
+        return new CompiledRange(table.getColumn(this.args.columnName), converter,
+                this.args.min, this.args.max, this.args.complement);
     }
 
-    public boolean test(int rowIndex) {
-        boolean result;
-        if (Converters.checkNull(this.column).isMissing(rowIndex))
-            result = false;
-        else {
-            double d = this.column.asDouble(rowIndex);
-            result = this.args.min <= d && d <= this.args.max;
+    /**
+     * Range filter bound to a column.  Values are fetched a batch at a time
+     * as primitive doubles, without boxing or per-row dispatch on the column kind.
+     */
+    static class CompiledRange implements ICompiledFilter {
+        private final IColumn column;
+        @Nullable
+        private final IStringConverter converter;
+        private final double min;
+        private final double max;
+        private final boolean complement;
+        private double[] values;
+
+        CompiledRange(IColumn column, @Nullable IStringConverter converter,
+                      double min, double max, boolean complement) {
+            this.column = column;
+            this.converter = converter;
+            this.min = min;
+            this.max = max;
+            this.complement = complement;
+            this.values = new double[IRowIterator.BATCH_SIZE];
+        }
+
+        @Override
+        public boolean test(int rowIndex) {
+            boolean result;
+            if (this.column.isMissing(rowIndex))
+                result = false;
+            else {
+                double d = this.column.asDouble(rowIndex, this.converter);
+                result = this.min <= d && d <= this.max;
+            }
+            return result != this.complement;
+        }
+
+        /**
+         * Tests a whole batch; the range check is branch-free so that the JIT can
+         * vectorize it.
+         */
+        @Override
+        public void test(int[] rows, int count, boolean[] result) {
+            if (this.values.length < count)
+                this.values = new double[count];
+            final double[] values = this.values;
+            // result first receives the missing flags
+            this.column.asDoubles(rows, count, this.converter, values, result);
+            final double min = this.min;
+            final double max = this.max;
+            final boolean complement = this.complement;
+            for (int i = 0; i < count; i++) {
+                final double d = values[i];
+                result[i] = (!result[i] & (min <= d) & (d <= max)) ^ complement;
+            }
         }
-        if (this.args.complement)
-            result = !result;
-        return result;
     }
 }
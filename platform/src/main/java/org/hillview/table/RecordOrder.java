@@ -26,7 +26,6 @@ import org.hillview.table.api.IndexComparator;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -95,20 +94,14 @@ public class RecordOrder implements Iterable<ColumnSortOrientation>, Serializabl
     }
 
     /**
-     * Returns an array containing rows indices of a Table in sorted order, using the getComparator
-     * method above. The table and the RecordOrder need to be compatible.
-     * Should only be applied to very small tables.
+     * Returns an array containing rows indices of a Table in sorted order.  The order is
+     * the same as a stable sort with the getComparator method above, but it is computed
+     * by RowSorter on primitive keys. The table and the RecordOrder need to be compatible.
      * @param table The Table we wish to sort.
-     * @return A Comparator that compares two rows based on the Sort Order specified.
+     * @return The row indices of the table in sorted order.
      */
-    public Integer[] getSortedRowOrder(final SmallTable table) {
-        final int size = table.getNumOfRows();
-        final Integer[] order = new Integer[size];
-        for (int i = 0; i < size; i++) {
-            order[i] = i;
-        }
-        Arrays.sort(order, this.getComparator(table));
-        return order;
+    public int[] getSortedRowOrder(final ITable table) {
+        return new RowSorter(table, this).sort();
     }
 
     /**
@@ -0,0 +1,691 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.sketches.ColumnSortOrientation;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+import org.hillview.utils.HashUtil;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accesses a projection of the rows of a table, specified by a Schema or a RecordOrder.
+ * The columns are resolved once into handles specialized for the column kind, so
+ * row operations do not look columns up by name or dispatch on the kind for each field,
+ * as VirtualRowSnapshot does.  Hashing, equality and ordering are consistent with
+ * BaseRowSnapshot.computeHashCode, compareForEquality and compareTo.
+ * Rows of other tables, such as RowSnapshots, are compared as arrays of values
+ * produced by getValues.
+ * The accessor also computes 64-bit hashes of rows, a batch at a time, from the
+ * column hashes produced by IColumn.hashCodes64; these are used as keys of primitive
+ * hash tables such as RowHashTable and Lookup.
+ */
+public class RowAccessor {
+    private static final LongHashFunction hashFunction = LongHashFunction.xx();
+    private static final long hashMultiplier = 0x9E3779B97F4A7C15L;
+
+    private final String[] names;
+    private final Field[] fields;
+    // Column hashes for a batch of rows.
+    private final long[] columnHashes = new long[IRowIterator.BATCH_SIZE];
+
+    private RowAccessor(final ITable table, final List<ColumnDescription> columns,
+                        final boolean[] ascending) {
+        this.names = new String[columns.size()];
+        this.fields = new Field[columns.size()];
+        for (int i = 0; i < this.fields.length; i++) {
+            ColumnDescription cd = columns.get(i);
+            this.names[i] = cd.name;
+            this.fields[i] = Field.create(table.getColumn(cd.name), cd.kind, ascending[i]);
+        }
+    }
+
+    /**
+     * Accessor for the columns of the table in a schema; the order is ascending on all columns.
+     */
+    public static RowAccessor create(final ITable table, final Schema schema) {
+        List<ColumnDescription> columns = new ArrayList<ColumnDescription>();
+        for (String cn : schema.getColumnNames())
+            columns.add(schema.getDescription(cn));
+        boolean[] ascending = new boolean[columns.size()];
+        Arrays.fill(ascending, true);
+        return new RowAccessor(table, columns, ascending);
+    }
+
+    /**
+     * Accessor for the columns of a table in a record order.
+     */
+    public static RowAccessor create(final ITable table, final RecordOrder order) {
+        List<ColumnDescription> columns = new ArrayList<ColumnDescription>();
+        List<Boolean> orientation = new ArrayList<Boolean>();
+        for (ColumnSortOrientation cso : order) {
+            columns.add(cso.columnDescription);
+            orientation.add(cso.isAscending);
+        }
+        boolean[] ascending = new boolean[columns.size()];
+        for (int i = 0; i < ascending.length; i++)
+            ascending[i] = orientation.get(i);
+        return new RowAccessor(table, columns, ascending);
+    }
+
+    /**
+     * @return The values of the accessed columns in a row snapshot; missing values are null.
+     */
+    public Object[] getValues(final BaseRowSnapshot row) {
+        Object[] result = new Object[this.names.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = row.isMissing(this.names[i]) ? null : row.getObject(this.names[i]);
+        return result;
+    }
+
+    /**
+     * Same as BaseRowSnapshot.computeHashCode for the row.
+     */
+    public int hashCode(final int row) {
+        int hashCode = 31;
+        for (Field f : this.fields) {
+            if (f.column.isMissing(row))
+                continue;
+            hashCode = HashUtil.murmurHash3(hashCode, f.hash(row));
+        }
+        return hashCode;
+    }
+
+    /**
+     * Same as BaseRowSnapshot.computeHashCode for a row snapshot with these values.
+     */
+    public static int hashCode(final Object[] values) {
+        int hashCode = 31;
+        for (Object o : values) {
+            if (o == null)
+                continue;
+            hashCode = HashUtil.murmurHash3(hashCode, o.hashCode());
+        }
+        return hashCode;
+    }
+
+    private static long combine(final long hash, final long columnHash) {
+        return (hash ^ columnHash) * hashMultiplier;
+    }
+
+    /**
+     * Computes the 64-bit hash codes of a batch of rows: sets hashes[i] to the
+     * hash of rows[i] for all i < count.  count must be at most IRowIterator.BATCH_SIZE.
+     * An accessor must not be used to hash batches from several threads at once.
+     */
+    public void hashCodes64(final int[] rows, final int count, final long[] hashes) {
+        Arrays.fill(hashes, 0, count, 0);
+        for (Field f : this.fields) {
+            f.column.hashCodes64(rows, count, hashFunction, this.columnHashes);
+            for (int i = 0; i < count; i++)
+                hashes[i] = combine(hashes[i], this.columnHashes[i]);
+        }
+    }
+
+    /**
+     * Same as hashCodes64 for a single row.
+     */
+    public long hashCode64(final int row) {
+        long hash = 0;
+        for (Field f : this.fields)
+            hash = combine(hash, f.column.hashCode64(row, hashFunction));
+        return hash;
+    }
+
+    /**
+     * Same as hashCodes64 for a row of another table with the specified values.
+     */
+    public long hashCode64(final Object[] values) {
+        long hash = 0;
+        for (int i = 0; i < this.fields.length; i++) {
+            long columnHash = values[i] == null ? IColumn.MISSING_HASH_VALUE :
+                    this.fields[i].hash64(values[i]);
+            hash = combine(hash, columnHash);
+        }
+        return hash;
+    }
+
+    public boolean equal(final int row, final int otherRow) {
+        for (Field f : this.fields) {
+            boolean missing = f.column.isMissing(row);
+            boolean otherMissing = f.column.isMissing(otherRow);
+            if (missing || otherMissing) {
+                if (missing != otherMissing)
+                    return false;
+            } else if (!f.equal(row, otherRow)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the row has the specified values.
+     */
+    public boolean equal(final int row, final Object[] values) {
+        for (int i = 0; i < this.fields.length; i++) {
+            Field f = this.fields[i];
+            boolean missing = f.column.isMissing(row);
+            if (missing || values[i] == null) {
+                if (missing != (values[i] == null))
+                    return false;
+            } else if (!f.equal(row, values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares two rows of the table, with the same conventions as compare(row, values).
+     */
+    public int compare(final int row, final int otherRow) {
+        for (Field f : this.fields) {
+            boolean missing = f.column.isMissing(row);
+            boolean otherMissing = f.column.isMissing(otherRow);
+            int c;
+            if (missing && otherMissing)
+                c = 0;
+            else if (missing)
+                c = 1;
+            else if (otherMissing)
+                c = -1;
+            else
+                c = f.compare(row, otherRow);
+            if (c != 0)
+                return f.ascending ? c : -c;
+        }
+        return 0;
+    }
+
+    /**
+     * Compares a row of the table with a row of the table of another accessor
+     * for the same columns, with the same conventions as compare(row, values).
+     */
+    public int compare(final int row, final RowAccessor other, final int otherRow) {
+        for (int i = 0; i < this.fields.length; i++) {
+            Field f = this.fields[i];
+            Field o = other.fields[i];
+            boolean missing = f.column.isMissing(row);
+            boolean otherMissing = o.column.isMissing(otherRow);
+            int c;
+            if (missing && otherMissing)
+                c = 0;
+            else if (missing)
+                c = 1;
+            else if (otherMissing)
+                c = -1;
+            else
+                c = f.compare(row, o.column, otherRow);
+            if (c != 0)
+                return f.ascending ? c : -c;
+        }
+        return 0;
+    }
+
+    /**
+     * True if the first column of the accessor has a primary key; strings do not.
+     */
+    public boolean hasPrimaryKey() {
+        return this.fields.length > 0 && this.fields[0].hasKey();
+    }
+
+    /**
+     * A key of the first column of a row, consistent with the order: if a row
+     * comes before another one then its key is smaller or equal.  Rows with different
+     * keys can be ordered without calling compare; rows with equal keys may differ
+     * (in later columns, or dates and durations which differ by less than one second).
+     * Missing values get the largest key, and keys of descending columns are complemented.
+     * Should only be called if hasPrimaryKey is true.
+     */
+    public long primaryKey(final int row) {
+        Field f = this.fields[0];
+        long key = f.column.isMissing(row) ? Long.MAX_VALUE : f.key(row);
+        return f.ascending ? key : ~key;
+    }
+
+    /**
+     * The primary key of a list of values produced by getValues.
+     */
+    public long primaryKey(final Object[] values) {
+        Field f = this.fields[0];
+        long key = values[0] == null ? Long.MAX_VALUE : f.key(values[0]);
+        return f.ascending ? key : ~key;
+    }
+
+    /**
+     * Compares a row with a list of values.  Missing values come after all
+     * other values before taking into account the orientation.
+     * @return A negative number if the row comes before the values in the order,
+     * zero if they are equal, and a positive number otherwise.
+     */
+    public int compare(final int row, final Object[] values) {
+        for (int i = 0; i < this.fields.length; i++) {
+            Field f = this.fields[i];
+            boolean missing = f.column.isMissing(row);
+            int c;
+            if (missing && values[i] == null)
+                c = 0;
+            else if (missing)
+                c = 1;
+            else if (values[i] == null)
+                c = -1;
+            else
+                c = f.compare(row, values[i]);
+            if (c != 0)
+                return f.ascending ? c : -c;
+        }
+        return 0;
+    }
+
+    /**
+     * Compares two lists of values, produced by getValues, with the same conventions
+     * as compare(row, values).
+     */
+    @SuppressWarnings("unchecked")
+    public int compare(final Object[] values, final Object[] otherValues) {
+        for (int i = 0; i < this.fields.length; i++) {
+            Object v = values[i];
+            Object o = otherValues[i];
+            int c;
+            if (v == null && o == null)
+                c = 0;
+            else if (v == null)
+                c = 1;
+            else if (o == null)
+                c = -1;
+            else
+                c = ((Comparable<Object>)v).compareTo(o);
+            if (c != 0)
+                return this.fields[i].ascending ? c : -c;
+        }
+        return 0;
+    }
+
+    /**
+     * Finds rows of the table in a fixed list of rows of other tables.
+     */
+    public Lookup lookup(final List<? extends BaseRowSnapshot> rows) {
+        return new Lookup(rows);
+    }
+
+    /**
+     * Hash index over a list of row snapshots, keyed by their projection on the
+     * accessed columns.  Uses open addressing with linear probing on the 64-bit
+     * hashes; the values are compared only when the hashes are equal.
+     */
+    public class Lookup {
+        private final Object[][] values;
+        // Hash code of the values in each slot, and the index of the snapshot, or -1.
+        private final long[] hashes;
+        private final int[] indexes;
+        private final int mask;
+        private final long[] batchHashes = new long[IRowIterator.BATCH_SIZE];
+
+        Lookup(final List<? extends BaseRowSnapshot> rows) {
+            final int size = rows.size();
+            final int capacity = Integer.highestOneBit(Math.max(4 * size, 8) - 1) << 1;
+            this.mask = capacity - 1;
+            this.values = new Object[size][];
+            this.hashes = new long[capacity];
+            this.indexes = new int[capacity];
+            Arrays.fill(this.indexes, -1);
+            for (int i = 0; i < size; i++) {
+                this.values[i] = RowAccessor.this.getValues(rows.get(i));
+                long hash = RowAccessor.this.hashCode64(this.values[i]);
+                int slot = slot(hash, this.mask);
+                while (this.indexes[slot] >= 0)
+                    slot = (slot + 1) & this.mask;
+                this.hashes[slot] = hash;
+                this.indexes[slot] = i;
+            }
+        }
+
+        private int indexOf(final int row, final long hash) {
+            for (int slot = slot(hash, this.mask); ; slot = (slot + 1) & this.mask) {
+                int index = this.indexes[slot];
+                if (index < 0)
+                    return -1;
+                if (this.hashes[slot] == hash && RowAccessor.this.equal(row, this.values[index]))
+                    return index;
+            }
+        }
+
+        /**
+         * @return The index in the list of a snapshot equal to the row, or -1 if none.
+         */
+        public int indexOf(final int row) {
+            return this.indexOf(row, RowAccessor.this.hashCode64(row));
+        }
+
+        /**
+         * Batch version of indexOf: sets result[i] to indexOf(rows[i]) for all i < count.
+         */
+        public void indexOf(final int[] rows, final int count, final int[] result) {
+            RowAccessor.this.hashCodes64(rows, count, this.batchHashes);
+            for (int i = 0; i < count; i++)
+                result[i] = this.indexOf(rows[i], this.batchHashes[i]);
+        }
+    }
+
+    /**
+     * Slot of a 64-bit hash in an open addressing table with the specified mask.
+     */
+    static int slot(final long hash, final int mask) {
+        return ((int)(hash >>> 32) ^ (int)hash) & mask;
+    }
+
+    /**
+     * Key of a date, in seconds, ignoring the fractional part.
+     */
+    private static long dateKey(@Nullable final LocalDateTime date) {
+        return Converters.checkNull(date).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static long durationKey(@Nullable final Duration duration) {
+        return Converters.checkNull(duration).getSeconds();
+    }
+
+    /**
+     * Handle on a column, specialized for the column kind.  The methods are
+     * only called on rows which are not missing.
+     */
+    private static abstract class Field {
+        final IColumn column;
+        final boolean ascending;
+
+        Field(final IColumn column, final boolean ascending) {
+            this.column = column;
+            this.ascending = ascending;
+        }
+
+        static Field create(final IColumn column, final ContentsKind kind,
+                            final boolean ascending) {
+            switch (kind) {
+                case Category:
+                case String:
+                case Json:
+                    return new StringField(column, ascending);
+                case Date:
+                    return new DateField(column, ascending);
+                case Integer:
+                    return new IntField(column, ascending);
+                case Double:
+                    return new DoubleField(column, ascending);
+                case Duration:
+                    return new DurationField(column, ascending);
+                default:
+                    throw new RuntimeException("Unexpected kind " + kind);
+            }
+        }
+
+        /**
+         * Same as the hashCode of the value returned by getObject.
+         */
+        abstract int hash(int row);
+        /**
+         * Same as the IColumn.hashCode64 of a row with this value.
+         */
+        abstract long hash64(Object value);
+        abstract boolean equal(int row, int otherRow);
+        abstract boolean equal(int row, Object value);
+        abstract int compare(int row, Object value);
+        abstract int compare(int row, int otherRow);
+        /**
+         * Compares with a row of another column of the same kind.
+         */
+        abstract int compare(int row, IColumn other, int otherRow);
+        boolean hasKey() { return true; }
+        /**
+         * An order-preserving key of the value; see RowAccessor.primaryKey.
+         */
+        abstract long key(int row);
+        abstract long key(Object value);
+    }
+
+    private static class IntField extends Field {
+        IntField(final IColumn column, final boolean ascending) { super(column, ascending); }
+
+        @Override
+        int hash(int row) { return Integer.hashCode(this.column.getInt(row)); }
+
+        @Override
+        long hash64(Object value) {
+            return hashFunction.hashInt((int)value);
+        }
+
+        @Override
+        boolean equal(int row, int otherRow) {
+            return this.column.getInt(row) == this.column.getInt(otherRow);
+        }
+
+        @Override
+        boolean equal(int row, Object value) { return this.column.getInt(row) == (int)value; }
+
+        @Override
+        int compare(int row, Object value) {
+            return Integer.compare(this.column.getInt(row), (int)value);
+        }
+
+        @Override
+        int compare(int row, int otherRow) {
+            return Integer.compare(this.column.getInt(row), this.column.getInt(otherRow));
+        }
+
+        @Override
+        int compare(int row, IColumn other, int otherRow) {
+            return Integer.compare(this.column.getInt(row), other.getInt(otherRow));
+        }
+
+        @Override
+        long key(int row) { return this.column.getInt(row); }
+
+        @Override
+        long key(Object value) { return (int)value; }
+    }
+
+    private static class DoubleField extends Field {
+        DoubleField(final IColumn column, final boolean ascending) { super(column, ascending); }
+
+        @Override
+        int hash(int row) { return Double.hashCode(this.column.getDouble(row)); }
+
+        @Override
+        long hash64(Object value) {
+            return hashFunction.hashLong(Double.doubleToLongBits((double)value));
+        }
+
+        // Values are compared by their bits, so that all NaNs are the same key.
+        @Override
+        boolean equal(int row, int otherRow) {
+            return Double.doubleToLongBits(this.column.getDouble(row)) ==
+                    Double.doubleToLongBits(this.column.getDouble(otherRow));
+        }
+
+        @Override
+        boolean equal(int row, Object value) {
+            return Double.doubleToLongBits(this.column.getDouble(row)) ==
+                    Double.doubleToLongBits((double)value);
+        }
+
+        @Override
+        int compare(int row, Object value) {
+            return Double.compare(this.column.getDouble(row), (double)value);
+        }
+
+        @Override
+        int compare(int row, int otherRow) {
+            return Double.compare(this.column.getDouble(row), this.column.getDouble(otherRow));
+        }
+
+        @Override
+        int compare(int row, IColumn other, int otherRow) {
+            return Double.compare(this.column.getDouble(row), other.getDouble(otherRow));
+        }
+
+        @Override
+        long key(int row) { return RowSorter.doubleKey(this.column.getDouble(row)); }
+
+        @Override
+        long key(Object value) { return RowSorter.doubleKey((double)value); }
+    }
+
+    private static class StringField extends Field {
+        StringField(final IColumn column, final boolean ascending) { super(column, ascending); }
+
+        private String get(int row) {
+            return this.checkNull(this.column.getString(row));
+        }
+
+        private String checkNull(@Nullable String s) {
+            if (s == null)
+                throw new RuntimeException("Unexpected null in column " + this.column.getName());
+            return s;
+        }
+
+        @Override
+        int hash(int row) { return this.get(row).hashCode(); }
+
+        @Override
+        long hash64(Object value) {
+            return hashFunction.hashChars((String)value);
+        }
+
+        @Override
+        boolean equal(int row, int otherRow) { return this.get(row).equals(this.get(otherRow)); }
+
+        @Override
+        boolean equal(int row, Object value) { return this.get(row).equals(value); }
+
+        @Override
+        int compare(int row, Object value) { return this.get(row).compareTo((String)value); }
+
+        @Override
+        int compare(int row, int otherRow) { return this.get(row).compareTo(this.get(otherRow)); }
+
+        @Override
+        int compare(int row, IColumn other, int otherRow) {
+            return this.get(row).compareTo(this.checkNull(other.getString(otherRow)));
+        }
+
+        @Override
+        boolean hasKey() { return false; }
+
+        @Override
+        long key(int row) { throw new UnsupportedOperationException(); }
+
+        @Override
+        long key(Object value) { throw new UnsupportedOperationException(); }
+    }
+
+    private static class DateField extends Field {
+        DateField(final IColumn column, final boolean ascending) { super(column, ascending); }
+
+        @Override
+        int hash(int row) { return this.column.getDate(row).hashCode(); }
+
+        @Override
+        long hash64(Object value) {
+            return hashFunction.hashLong(Double.doubleToRawLongBits(
+                    Converters.toDouble((LocalDateTime)value)));
+        }
+
+        @Override
+        boolean equal(int row, int otherRow) {
+            return this.column.getDate(row).equals(this.column.getDate(otherRow));
+        }
+
+        @Override
+        boolean equal(int row, Object value) { return this.column.getDate(row).equals(value); }
+
+        @Override
+        int compare(int row, Object value) {
+            return this.column.getDate(row).compareTo((LocalDateTime)value);
+        }
+
+        @Override
+        int compare(int row, int otherRow) {
+            return this.column.getDate(row).compareTo(this.column.getDate(otherRow));
+        }
+
+        @Override
+        int compare(int row, IColumn other, int otherRow) {
+            return this.column.getDate(row).compareTo(other.getDate(otherRow));
+        }
+
+        @Override
+        long key(int row) { return dateKey(this.column.getDate(row)); }
+
+        @Override
+        long key(Object value) { return dateKey((LocalDateTime)value); }
+    }
+
+    private static class DurationField extends Field {
+        DurationField(final IColumn column, final boolean ascending) { super(column, ascending); }
+
+        @Override
+        int hash(int row) { return this.column.getDuration(row).hashCode(); }
+
+        @Override
+        long hash64(Object value) {
+            return hashFunction.hashLong(Double.doubleToRawLongBits(
+                    Converters.toDouble((Duration)value)));
+        }
+
+        @Override
+        boolean equal(int row, int otherRow) {
+            return this.column.getDuration(row).equals(this.column.getDuration(otherRow));
+        }
+
+        @Override
+        boolean equal(int row, Object value) { return this.column.getDuration(row).equals(value); }
+
+        @Override
+        int compare(int row, Object value) {
+            return this.column.getDuration(row).compareTo((Duration)value);
+        }
+
+        @Override
+        int compare(int row, int otherRow) {
+            return this.column.getDuration(row).compareTo(this.column.getDuration(otherRow));
+        }
+
+        @Override
+        int compare(int row, IColumn other, int otherRow) {
+            return this.column.getDuration(row).compareTo(other.getDuration(otherRow));
+        }
+
+        @Override
+        long key(int row) { return durationKey(this.column.getDuration(row)); }
+
+        @Override
+        long key(Object value) { return durationKey((Duration)value); }
+    }
+}
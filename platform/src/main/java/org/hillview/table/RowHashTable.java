@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import java.util.Arrays;
+
+/**
+ * A hash table which maps distinct rows of a table, projected on the columns of a
+ * RowAccessor, to integer values, such as counts.  Each key is represented by the
+ * first row inserted with that key and its 64-bit hash, computed by
+ * RowAccessor.hashCodes64.  The table uses open addressing with linear probing on
+ * primitive arrays; rows are compared column-wise only when their hashes are equal.
+ * Entries are addressed by slot numbers, which are invalidated by insertions and
+ * removals.
+ */
+public class RowHashTable {
+    private final RowAccessor accessor;
+    private long[] hashes;
+    // Representative row of each slot, or -1 if the slot is empty.
+    private int[] rows;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param accessor       Accessor used to compare rows.
+     * @param expectedSize   Expected number of keys; the table grows if necessary.
+     */
+    public RowHashTable(final RowAccessor accessor, final int expectedSize) {
+        this.accessor = accessor;
+        this.allocate(Integer.highestOneBit(Math.max(4 * expectedSize, 8) - 1) << 1);
+    }
+
+    private void allocate(final int capacity) {
+        this.hashes = new long[capacity];
+        this.rows = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(this.rows, -1);
+        this.mask = capacity - 1;
+        this.size = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The number of slots; slots are numbered from 0 to slotCount() - 1.
+     */
+    public int slotCount() {
+        return this.rows.length;
+    }
+
+    public boolean isOccupied(final int slot) {
+        return this.rows[slot] >= 0;
+    }
+
+    public int getRow(final int slot) {
+        return this.rows[slot];
+    }
+
+    public int getValue(final int slot) {
+        return this.values[slot];
+    }
+
+    public void setValue(final int slot, final int value) {
+        this.values[slot] = value;
+    }
+
+    /**
+     * @param row   A row of the table.
+     * @param hash  The hash of the row computed by the accessor.
+     * @return The slot holding a row equal to row, or -1 if there is none.
+     */
+    public int find(final int row, final long hash) {
+        for (int slot = RowAccessor.slot(hash, this.mask); ; slot = (slot + 1) & this.mask) {
+            int existing = this.rows[slot];
+            if (existing < 0)
+                return -1;
+            if (this.hashes[slot] == hash && this.accessor.equal(row, existing))
+                return slot;
+        }
+    }
+
+    /**
+     * Same as find for a row which is the representative of its key in the table;
+     * compares row indexes instead of row contents.
+     */
+    public int findRepresentative(final int row, final long hash) {
+        int slot = RowAccessor.slot(hash, this.mask);
+        while (this.rows[slot] != row)
+            slot = (slot + 1) & this.mask;
+        return slot;
+    }
+
+    /**
+     * Inserts a row which is not in the table.
+     * @return The slot where the row was inserted.
+     */
+    public int insert(final int row, final long hash, final int value) {
+        if (2 * (this.size + 1) > this.rows.length)
+            this.rehash(2 * this.rows.length);
+        this.size++;
+        return this.put(row, hash, value);
+    }
+
+    private int put(final int row, final long hash, final int value) {
+        int slot = RowAccessor.slot(hash, this.mask);
+        while (this.rows[slot] >= 0)
+            slot = (slot + 1) & this.mask;
+        this.hashes[slot] = hash;
+        this.rows[slot] = row;
+        this.values[slot] = value;
+        return slot;
+    }
+
+    /**
+     * Removes the entry in a slot.  Uses backward-shift deletion, which moves
+     * the following entries of the probe sequence to fill the hole.
+     */
+    public void remove(int slot) {
+        this.size--;
+        int next = (slot + 1) & this.mask;
+        while (this.rows[next] >= 0) {
+            int home = RowAccessor.slot(this.hashes[next], this.mask);
+            // Move the entry unless its home is cyclically in (slot, next].
+            boolean keep = (slot <= next) ? (slot < home && home <= next) :
+                    (slot < home || home <= next);
+            if (!keep) {
+                this.hashes[slot] = this.hashes[next];
+                this.rows[slot] = this.rows[next];
+                this.values[slot] = this.values[next];
+                slot = next;
+            }
+            next = (next + 1) & this.mask;
+        }
+        this.rows[slot] = -1;
+    }
+
+    private void rehash(final int capacity) {
+        long[] oldHashes = this.hashes;
+        int[] oldRows = this.rows;
+        int[] oldValues = this.values;
+        int oldSize = this.size;
+        this.allocate(capacity);
+        for (int i = 0; i < oldRows.length; i++)
+            if (oldRows[i] >= 0)
+                this.put(oldRows[i], oldHashes[i], oldValues[i]);
+        this.size = oldSize;
+    }
+}
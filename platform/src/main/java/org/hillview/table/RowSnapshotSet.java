@@ -20,11 +20,15 @@ package org.hillview.table;
 
 import org.eclipse.collections.api.block.HashingStrategy;
 import org.eclipse.collections.impl.set.strategy.mutable.UnifiedSetWithHashingStrategy;
+import org.hillview.table.api.ICompiledFilter;
+import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -32,7 +36,6 @@ import java.util.function.Consumer;
  * we are using custom equality and hashcode functions.
  */
 public class RowSnapshotSet implements Serializable {
-    @SuppressWarnings("FieldCanBeLocal")
     private final Schema schema;
     private final UnifiedSetWithHashingStrategy<BaseRowSnapshot> rowSet;
 
@@ -68,26 +71,44 @@ public class RowSnapshotSet implements Serializable {
     static class SetTableFilter implements TableFilter, Serializable {
         private final RowSnapshotSet set;
         @Nullable
-        private VirtualRowSnapshot vrs;
-        @Nullable
-        private ITable table;
+        private transient ICompiledFilter compiled;
 
         SetTableFilter(RowSnapshotSet set) {
             this.set = set;
-            this.table = null;
-            this.vrs = null;
+            this.compiled = null;
         }
 
         @Override
         public void setTable(ITable table) {
-            this.table = table;
-            this.vrs = new VirtualRowSnapshot(table);
+            this.compiled = this.compile(table);
+        }
+
+        @Override
+        public ICompiledFilter compile(ITable table) {
+            List<BaseRowSnapshot> rows = new ArrayList<BaseRowSnapshot>(this.set.rowSet.size());
+            this.set.forEach(rows::add);
+            final RowAccessor.Lookup lookup =
+                    RowAccessor.create(table, this.set.schema).lookup(rows);
+            return new ICompiledFilter() {
+                @Override
+                public boolean test(int rowIndex) {
+                    return lookup.indexOf(rowIndex) >= 0;
+                }
+
+                final int[] indexes = new int[IRowIterator.BATCH_SIZE];
+
+                @Override
+                public void test(int[] rows, int count, boolean[] result) {
+                    lookup.indexOf(rows, count, this.indexes);
+                    for (int i = 0; i < count; i++)
+                        result[i] = this.indexes[i] >= 0;
+                }
+            };
         }
 
         @Override
         public boolean test(int rowIndex) {
-            Converters.checkNull(this.vrs).setRow(rowIndex);
-            return this.set.contains(this.vrs);
+            return Converters.checkNull(this.compiled).test(rowIndex);
         }
     }
 
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.sketches.ColumnSortOrientation;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Sorts rows of a table according to a RecordOrder.  Each column of the order is
+ * converted to an array of long keys whose signed order is the column order:
+ * numeric, date and duration values are encoded directly, and strings are replaced
+ * by their rank in the sorted dictionary of distinct values.  Missing values get the
+ * largest key, and keys of descending columns are complemented.  The rows are then
+ * sorted with a stable least-significant-digit radix sort on the keys, one column at a
+ * time starting from the last one.  If a column cannot be encoded (a date or duration
+ * too large to be represented in nanoseconds), the rows are sorted with a merge sort
+ * using a RowAccessor.  In all cases the result is the same as a stable sort with the
+ * comparator returned by RecordOrder.getComparator.
+ */
+public class RowSorter {
+    /**
+     * Below this size insertion sort is faster than radix sort.
+     */
+    private static final int insertionSortSize = 64;
+    private static final long missingKey = Long.MAX_VALUE;
+
+    private final ITable table;
+    private final RecordOrder order;
+    private final List<ColumnSortOrientation> orientations;
+
+    public RowSorter(final ITable table, final RecordOrder order) {
+        this.table = table;
+        this.order = order;
+        this.orientations = new ArrayList<ColumnSortOrientation>();
+        for (ColumnSortOrientation cso : order)
+            this.orientations.add(cso);
+    }
+
+    /**
+     * @return The rows of the table in sorted order.
+     */
+    public int[] sort() {
+        final IMembershipSet members = this.table.getMembershipSet();
+        final int[] rows = new int[members.getSize()];
+        final IRowIterator it = members.getIterator();
+        int filled = 0;
+        int[] batch = new int[IRowIterator.BATCH_SIZE];
+        for (int count = it.getNextRows(batch); count > 0; count = it.getNextRows(batch)) {
+            System.arraycopy(batch, 0, rows, filled, count);
+            filled += count;
+        }
+        return this.sort(rows);
+    }
+
+    /**
+     * Sorts an array of rows of the table in place.
+     * @return The rows argument.
+     */
+    public int[] sort(final int[] rows) {
+        final int size = rows.length;
+        long[] keys = new long[size];
+        long[] tmpKeys = new long[size];
+        int[] tmpRows = new int[size];
+        for (int c = this.orientations.size() - 1; c >= 0; c--) {
+            ColumnSortOrientation cso = this.orientations.get(c);
+            IColumn column = this.table.getColumn(cso.columnDescription.name);
+            if (!getKeys(column, rows, keys)) {
+                this.comparatorSort(rows);
+                return rows;
+            }
+            if (!cso.isAscending)
+                for (int i = 0; i < size; i++)
+                    keys[i] = ~keys[i];
+            sort(keys, rows, size, tmpKeys, tmpRows);
+        }
+        return rows;
+    }
+
+    /**
+     * Computes the sort keys of a column for the specified rows.
+     * @return False if the column values cannot be encoded.
+     */
+    private static boolean getKeys(final IColumn column, final int[] rows, final long[] keys) {
+        final int size = rows.length;
+        switch (column.getKind()) {
+            case Integer:
+                for (int i = 0; i < size; i++)
+                    keys[i] = column.isMissing(rows[i]) ? missingKey : column.getInt(rows[i]);
+                return true;
+            case Double:
+                for (int i = 0; i < size; i++)
+                    keys[i] = column.isMissing(rows[i]) ? missingKey :
+                            doubleKey(column.getDouble(rows[i]));
+                return true;
+            case Date:
+                try {
+                    for (int i = 0; i < size; i++)
+                        keys[i] = column.isMissing(rows[i]) ? missingKey :
+                                dateKey(column.getDate(rows[i]));
+                } catch (ArithmeticException ex) {
+                    return false;
+                }
+                return true;
+            case Duration:
+                try {
+                    for (int i = 0; i < size; i++)
+                        keys[i] = column.isMissing(rows[i]) ? missingKey :
+                                durationKey(column.getDuration(rows[i]));
+                } catch (ArithmeticException ex) {
+                    return false;
+                }
+                return true;
+            case Category:
+            case String:
+            case Json:
+                stringKeys(column, rows, keys);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * A long whose signed order is the order of Double.compare.
+     */
+    static long doubleKey(final double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits >= 0 ? bits : bits ^ Long.MAX_VALUE;
+    }
+
+    private static long dateKey(@Nullable final LocalDateTime value) {
+        LocalDateTime date = Converters.checkNull(value);
+        return Math.addExact(Math.multiplyExact(date.toEpochSecond(ZoneOffset.UTC), 1000000000L),
+                date.getNano());
+    }
+
+    private static long durationKey(@Nullable final Duration value) {
+        Duration duration = Converters.checkNull(value);
+        return Math.addExact(Math.multiplyExact(duration.getSeconds(), 1000000000L),
+                duration.getNano());
+    }
+
+    /**
+     * Replaces each string by its rank among the distinct strings.
+     */
+    private static void stringKeys(final IColumn column, final int[] rows, final long[] keys) {
+        HashMap<String, Integer> codes = new HashMap<String, Integer>();
+        final int size = rows.length;
+        int[] code = new int[size];
+        for (int i = 0; i < size; i++) {
+            String s = column.isMissing(rows[i]) ? null : column.getString(rows[i]);
+            if (s == null) {
+                code[i] = -1;
+                continue;
+            }
+            Integer c = codes.get(s);
+            if (c == null) {
+                c = codes.size();
+                codes.put(s, c);
+            }
+            code[i] = c;
+        }
+        String[] dictionary = new String[codes.size()];
+        codes.forEach((s, c) -> dictionary[c] = s);
+        Arrays.sort(dictionary);
+        int[] rank = new int[dictionary.length];
+        for (int i = 0; i < dictionary.length; i++)
+            rank[codes.get(dictionary[i])] = i;
+        for (int i = 0; i < size; i++)
+            keys[i] = code[i] < 0 ? missingKey : rank[code[i]];
+    }
+
+    /**
+     * Stable sort of keys in signed order, permuting rows in the same way.
+     */
+    static void sort(final long[] keys, final int[] rows, final int size,
+                     final long[] tmpKeys, final int[] tmpRows) {
+        if (size < insertionSortSize) {
+            for (int i = 1; i < size; i++) {
+                long key = keys[i];
+                int row = rows[i];
+                int j = i - 1;
+                for (; j >= 0 && keys[j] > key; j--) {
+                    keys[j + 1] = keys[j];
+                    rows[j + 1] = rows[j];
+                }
+                keys[j + 1] = key;
+                rows[j + 1] = row;
+            }
+            return;
+        }
+
+        // One histogram of each byte of the keys, with the sign bit flipped.
+        final int[] counts = new int[8 * 256];
+        for (int i = 0; i < size; i++) {
+            long u = keys[i] ^ Long.MIN_VALUE;
+            for (int d = 0; d < 8; d++)
+                counts[(d << 8) | (int)((u >>> (d << 3)) & 0xFF)]++;
+        }
+        long[] srcKeys = keys, dstKeys = tmpKeys;
+        int[] srcRows = rows, dstRows = tmpRows;
+        for (int d = 0; d < 8; d++) {
+            final int base = d << 8;
+            // Skip the digit if all keys have the same value for it.
+            boolean constant = false;
+            for (int b = 0; b < 256; b++) {
+                if (counts[base + b] == size) {
+                    constant = true;
+                    break;
+                }
+                if (counts[base + b] != 0)
+                    break;
+            }
+            if (constant)
+                continue;
+            int offset = 0;
+            for (int b = 0; b < 256; b++) {
+                int count = counts[base + b];
+                counts[base + b] = offset;
+                offset += count;
+            }
+            final int shift = d << 3;
+            for (int i = 0; i < size; i++) {
+                int b = (int)(((srcKeys[i] ^ Long.MIN_VALUE) >>> shift) & 0xFF);
+                int position = counts[base + b]++;
+                dstKeys[position] = srcKeys[i];
+                dstRows[position] = srcRows[i];
+            }
+            long[] k = srcKeys; srcKeys = dstKeys; dstKeys = k;
+            int[] r = srcRows; srcRows = dstRows; dstRows = r;
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, size);
+            System.arraycopy(srcRows, 0, rows, 0, size);
+        }
+    }
+
+    /**
+     * Stable merge sort of the rows, comparing them column by column.
+     */
+    private void comparatorSort(final int[] rows) {
+        RowAccessor accessor = RowAccessor.create(this.table, this.order);
+        int[] tmp = new int[rows.length];
+        int[] src = rows, dst = tmp;
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int low = 0; low < rows.length; low += 2 * width) {
+                int mid = Math.min(low + width, rows.length);
+                int high = Math.min(low + 2 * width, rows.length);
+                int i = low, j = mid, k = low;
+                while (i < mid && j < high)
+                    dst[k++] = accessor.compare(src[j], src[i]) < 0 ? src[j++] : src[i++];
+                while (i < mid)
+                    dst[k++] = src[i++];
+                while (j < high)
+                    dst[k++] = src[j++];
+            }
+            int[] t = src; src = dst; dst = t;
+        }
+        if (src != rows)
+            System.arraycopy(src, 0, rows, 0, rows.length);
+    }
+}
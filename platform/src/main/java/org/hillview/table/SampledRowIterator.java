@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.IRowIterator;
+import org.hillview.utils.Randomness;
+
+/**
+ * An iterator which returns a uniform sample of fixed size of the rows of a base
+ * iterator, without replacement, in the order of the base iterator.  Instead of
+ * materializing the sample it draws, for each sampled row, the number of rows to skip
+ * until the next one (Vitter's sequential sampling).  Nothing proportional to the sample size is allocated.
+ */
+public class SampledRowIterator implements IRowIterator {
+    private final IRowIterator base;
+    private final SkipGenerator skips;
+    private final int[] buffer;
+    private int bufferCount;
+    private int bufferPosition;
+    // Number of rows of the base iterator to skip before the next sampled row.
+    private long skip;
+
+    /**
+     * @param base        Iterator to sample from.
+     * @param size        Number of rows returned by the base iterator.
+     * @param sampleSize  Number of rows to sample.
+     * @param random      Random number generator used for sampling.
+     */
+    public SampledRowIterator(final IRowIterator base, final int size, final int sampleSize,
+                              final Randomness random) {
+        this.base = base;
+        this.skips = new SkipGenerator(size, sampleSize, random);
+        this.buffer = new int[IRowIterator.BATCH_SIZE];
+        this.bufferCount = 0;
+        this.bufferPosition = 0;
+        this.skip = this.skips.next();
+    }
+
+    @Override
+    public int getNextRow() {
+        while (this.skip >= 0) {
+            final long position = this.bufferPosition + this.skip;
+            if (position < this.bufferCount) {
+                this.bufferPosition = (int)position + 1;
+                this.skip = this.skips.next();
+                return this.buffer[(int)position];
+            }
+            this.skip = position - this.bufferCount;
+            this.bufferPosition = 0;
+            this.bufferCount = this.base.getNextRows(this.buffer);
+            if (this.bufferCount == 0)
+                break;
+        }
+        return -1;
+    }
+
+    @Override
+    public int getNextRows(final int[] rows) {
+        int count = 0;
+        while (count < rows.length) {
+            final int row = this.getNextRow();
+            if (row < 0)
+                break;
+            rows[count++] = row;
+        }
+        return count;
+    }
+
+    /**
+     * Sampling iterator over the rows 0 ... range - 1, which computes the sampled rows
+     * directly without enumerating the skipped ones.
+     */
+    static class SampledRangeIterator implements IRowIterator {
+        private final SkipGenerator skips;
+        private long cursor;
+
+        SampledRangeIterator(final int range, final int sampleSize, final Randomness random) {
+            this.skips = new SkipGenerator(range, sampleSize, random);
+            this.cursor = 0;
+        }
+
+        @Override
+        public int getNextRow() {
+            final long skip = this.skips.next();
+            if (skip < 0)
+                return -1;
+            this.cursor += skip;
+            return (int)this.cursor++;
+        }
+
+        @Override
+        public int getNextRows(final int[] rows) {
+            int count = 0;
+            while (count < rows.length) {
+                final long skip = this.skips.next();
+                if (skip < 0)
+                    break;
+                this.cursor += skip;
+                rows[count++] = (int)this.cursor++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Generates the gaps between consecutive elements of a uniform sample of
+     * sampleSize elements out of size.  Uses Vitter's method D ("An efficient algorithm
+     * for sequential random sampling", ACM TOMS 1987), which draws each gap in constant
+     * expected time, while the sample is sparse, and method A otherwise.
+     */
+    private static class SkipGenerator {
+        // Method D is used while remaining > alphaInverse * toSample.
+        private static final int alphaInverse = 13;
+
+        private final Randomness random;
+        // Elements not yet skipped or sampled.
+        private long remaining;
+        // Elements still to be sampled.
+        private long toSample;
+        // Variate carried from one step of method D to the next; NaN if none.
+        private double vPrime;
+
+        SkipGenerator(final int size, final int sampleSize, final Randomness random) {
+            this.random = random;
+            this.remaining = size;
+            this.toSample = Math.min(sampleSize, size);
+            this.vPrime = Double.NaN;
+        }
+
+        /**
+         * @return The number of elements to skip before the next sampled one, or -1
+         * if the sample is complete.
+         */
+        long next() {
+            if (this.toSample <= 0)
+                return -1;
+            final long skip;
+            if (this.toSample == 1)
+                skip = (long)(this.remaining * this.random.nextDouble());
+            else if (this.remaining > alphaInverse * this.toSample)
+                skip = this.skipD();
+            else
+                skip = this.skipA();
+            this.remaining -= skip + 1;
+            this.toSample--;
+            return skip;
+        }
+
+        private double uniform() {
+            // In (0, 1], so that logarithms are finite.
+            return 1 - this.random.nextDouble();
+        }
+
+        private long skipA() {
+            final double v = this.random.nextDouble();
+            long skip = 0;
+            double top = this.remaining - this.toSample;
+            double population = this.remaining;
+            double quotient = top / population;
+            while (quotient > v) {
+                skip++;
+                top--;
+                population--;
+                quotient *= top / population;
+            }
+            return skip;
+        }
+
+        private long skipD() {
+            final long n = this.toSample;
+            final long bigN = this.remaining;
+            final double nInv = 1.0 / n;
+            final double nMin1Inv = 1.0 / (n - 1);
+            final double bigNReal = bigN;
+            final long qu1 = bigN - n + 1;
+            final double qu1Real = qu1;
+            if (Double.isNaN(this.vPrime))
+                this.vPrime = Math.exp(Math.log(this.uniform()) * nInv);
+            while (true) {
+                double x;
+                long skip;
+                while (true) {
+                    x = bigNReal * (1 - this.vPrime);
+                    skip = (long)x;
+                    if (skip < qu1)
+                        break;
+                    this.vPrime = Math.exp(Math.log(this.uniform()) * nInv);
+                }
+                final double u = this.uniform();
+                final double y1 = Math.exp(Math.log(u * bigNReal / qu1Real) * nMin1Inv);
+                this.vPrime = y1 * (1 - x / bigNReal) * (qu1Real / (qu1Real - skip));
+                if (this.vPrime <= 1)
+                    // Accepted by the quick test; vPrime is the variate for the next step.
+                    return skip;
+                double y2 = 1;
+                double top = bigNReal - 1;
+                double bottom;
+                long limit;
+                if (n - 1 > skip) {
+                    bottom = bigNReal - n;
+                    limit = bigN - skip;
+                } else {
+                    bottom = bigNReal - skip - 1;
+                    limit = qu1;
+                }
+                for (long t = bigN - 1; t >= limit; t--) {
+                    y2 = (y2 * top) / bottom;
+                    top--;
+                    bottom--;
+                }
+                if (bigNReal / (bigNReal - x) >= y1 * Math.exp(Math.log(y2) * nMin1Inv)) {
+                    this.vPrime = Math.exp(Math.log(this.uniform()) * nMin1Inv);
+                    return skip;
+                }
+                this.vPrime = Math.exp(Math.log(this.uniform()) * nInv);
+            }
+        }
+    }
+}
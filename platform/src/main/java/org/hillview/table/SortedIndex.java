@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.table.api.ITable;
+
+/**
+ * The rows of a table sorted according to a RecordOrder.  A sorted index answers
+ * positional queries by binary search: where a row snapshot would be inserted in the
+ * order, and which rows follow it.  Indexes are built by RowSorter and shared through
+ * SortedIndexCache.
+ */
+public class SortedIndex {
+    private final RowAccessor accessor;
+    /**
+     * Row indexes of the table in sorted order.
+     */
+    private final int[] rows;
+
+    public SortedIndex(final ITable table, final RecordOrder order) {
+        this.accessor = RowAccessor.create(table, order);
+        this.rows = new RowSorter(table, order).sort();
+    }
+
+    /**
+     * @return The number of rows in the index.
+     */
+    public int size() {
+        return this.rows.length;
+    }
+
+    /**
+     * @return The row of the table at the specified position in the order.
+     */
+    public int getRow(final int position) {
+        return this.rows[position];
+    }
+
+    /**
+     * @return An estimate of the memory used by the index, in bytes.
+     */
+    public long sizeInBytes() {
+        return 4L * this.rows.length + 64;
+    }
+
+    /**
+     * @param values Values of a row, as produced by getAccessor().getValues.
+     * @return The number of rows that are strictly smaller than the values.
+     */
+    public int lowerBound(final Object[] values) {
+        int low = 0, high = this.rows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.accessor.compare(this.rows[mid], values) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @param values Values of a row, as produced by getAccessor().getValues.
+     * @return The number of rows that are smaller than or equal to the values.
+     */
+    public int upperBound(final Object[] values) {
+        int low = 0, high = this.rows.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.accessor.compare(this.rows[mid], values) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return The position after the run of rows equal to the one at position.
+     */
+    public int endOfRun(final int position) {
+        int row = this.rows[position];
+        int end = position + 1;
+        while (end < this.rows.length && this.accessor.compare(this.rows[end], row) == 0)
+            end++;
+        return end;
+    }
+
+    /**
+     * The accessor used to compare rows of the table; it projects the rows on the
+     * columns of the order.
+     */
+    public RowAccessor getAccessor() {
+        return this.accessor;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table;
+
+import org.hillview.sketches.ColumnSortOrientation;
+import org.hillview.table.api.ITable;
+
+import javax.annotation.Nullable;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A process-wide cache of sorted indexes, keyed by table and RecordOrder.  Indexes are
+ * built on first use.  The total size of the cached indexes is bounded by a memory
+ * budget: the least recently used indexes are evicted first.  Indexes are also held
+ * through soft references, so the garbage collector can reclaim them under memory
+ * pressure, and the entries of tables that are no longer reachable are dropped.
+ * The memory use of the cache is logged whenever an index is built or evicted.
+ */
+public final class SortedIndexCache {
+    private static final Logger LOG = Logger.getLogger(SortedIndexCache.class.getName());
+
+    private static final class Key {
+        private final WeakReference<ITable> table;
+        private final int tableHash;
+        private final String order;
+
+        Key(final ITable table, final RecordOrder order) {
+            this.table = new WeakReference<ITable>(table);
+            this.tableHash = System.identityHashCode(table);
+            StringBuilder builder = new StringBuilder();
+            for (ColumnSortOrientation cso : order)
+                builder.append(cso.isAscending ? '+' : '-')
+                       .append(cso.columnDescription.name).append('\0');
+            this.order = builder.toString();
+        }
+
+        boolean isStale() {
+            return this.table.get() == null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || this.getClass() != o.getClass())
+                return false;
+            Key key = (Key)o;
+            ITable table = this.table.get();
+            return table != null && table == key.table.get() && this.order.equals(key.order);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.tableHash + this.order.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final SoftReference<SortedIndex> index;
+        final long bytes;
+
+        Entry(final SortedIndex index) {
+            this.index = new SoftReference<SortedIndex>(index);
+            this.bytes = index.sizeInBytes();
+        }
+    }
+
+    // In access order, so iteration starts from the least recently used entry.
+    private static final LinkedHashMap<Key, Entry> entries =
+            new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private static long budget = Runtime.getRuntime().maxMemory() / 8;
+    private static long memoryUse = 0;
+
+    private SortedIndexCache() {}
+
+    /**
+     * @return The sorted index of the table for the order, building it if necessary.
+     */
+    public static SortedIndex get(final ITable table, final RecordOrder order) {
+        Key key = new Key(table, order);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                SortedIndex index = entry.index.get();
+                if (index != null)
+                    return index;
+                remove(key);
+            }
+        }
+        // Built outside the lock; concurrent requests may build the same index twice.
+        SortedIndex index = new SortedIndex(table, order);
+        synchronized (entries) {
+            Entry entry = new Entry(index);
+            if (entries.put(key, entry) == null)
+                memoryUse += entry.bytes;
+            evict();
+            LOG.info("Built sorted index of " + entry.bytes + " bytes; cache holds " +
+                    entries.size() + " indexes in " + memoryUse + " of " + budget + " bytes");
+        }
+        return index;
+    }
+
+    /**
+     * @return The index of the table for the order if it is cached, or null.
+     */
+    @Nullable
+    public static SortedIndex getIfPresent(final ITable table, final RecordOrder order) {
+        synchronized (entries) {
+            Entry entry = entries.get(new Key(table, order));
+            return entry == null ? null : entry.index.get();
+        }
+    }
+
+    private static void remove(final Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null)
+            memoryUse -= entry.bytes;
+    }
+
+    /**
+     * Drops the entries whose table or index were collected, then evicts the least
+     * recently used indexes until the memory use is within budget.
+     */
+    private static void evict() {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().isStale() || e.getValue().index.get() == null) {
+                memoryUse -= e.getValue().bytes;
+                it.remove();
+            }
+        }
+        it = entries.entrySet().iterator();
+        while (memoryUse > budget && it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            memoryUse -= e.getValue().bytes;
+            it.remove();
+            LOG.info("Evicted sorted index of " + e.getValue().bytes + " bytes; cache holds " +
+                    entries.size() + " indexes in " + memoryUse + " bytes");
+        }
+    }
+
+    /**
+     * @return The estimated memory used by the cached indexes, in bytes.
+     */
+    public static long getMemoryUse() {
+        synchronized (entries) {
+            return memoryUse;
+        }
+    }
+
+    /**
+     * @return The number of cached indexes.
+     */
+    public static int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Sets the maximum memory used by the cached indexes, evicting indexes if necessary.
+     */
+    public static void setBudget(final long bytes) {
+        synchronized (entries) {
+            budget = bytes;
+            evict();
+        }
+    }
+
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+            memoryUse = 0;
+        }
+    }
+}
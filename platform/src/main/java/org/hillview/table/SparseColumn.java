@@ -111,7 +111,7 @@ public class SparseColumn extends BaseColumn
             case Date:
             case Double:
             case Duration:
-                return hash.hashLong(Double.doubleToRawLongBits(this.asDouble(rowIndex, null)));
+                return hash.hashLong(Double.doubleToLongBits(this.asDouble(rowIndex, null)));
             default:
                 throw new RuntimeException("Unexpected kind " + this.description.kind);
         }
@@ -33,7 +33,6 @@ import java.util.function.Predicate;
  */
 public class SparseMembership implements IMembershipSet {
     private final IntSet membershipMap;
-    private static final int sizeEstimationSampleSize = 20;
     private final int max;
 
     /**
@@ -46,7 +45,7 @@ public class SparseMembership implements IMembershipSet {
                             final Predicate<Integer> filter) {
         this.max = baseMap.getMax();
         final IRowIterator baseIterator = baseMap.getIterator();
-        this.membershipMap = new IntSet(this.estimateSize(baseMap, filter));
+        this.membershipMap = new IntSet(MembershipSetBuilder.estimateSize(baseMap, filter));
         int tmp = baseIterator.getNextRow();
         while (tmp >= 0) {
             if (filter.test(tmp))
@@ -98,7 +97,7 @@ public class SparseMembership implements IMembershipSet {
 
     @Override
     public IMembershipSet filter(Predicate<Integer> predicate) {
-        return new SparseMembership(this, predicate);
+        return MembershipSetBuilder.filter(this, predicate);
     }
 
     @Override
@@ -143,6 +142,8 @@ public class SparseMembership implements IMembershipSet {
 
     @Override
     public IMembershipSet union(final IMembershipSet otherSet) {
+        if (otherSet instanceof BitmapMembership || otherSet instanceof DenseMembership)
+            return otherSet.union(this);
         final IntSet unionSet = this.membershipMap.copy();
         final IRowIterator iter = otherSet.getIterator();
         int curr = iter.getNextRow();
@@ -150,11 +151,13 @@ public class SparseMembership implements IMembershipSet {
             unionSet.add(curr);
             curr = iter.getNextRow();
         }
-        return new SparseMembership(unionSet, this.getMax());
+        return new SparseMembership(unionSet, Math.max(this.getMax(), otherSet.getMax()));
     }
 
     @Override
     public IMembershipSet intersection(final IMembershipSet otherSet) {
+        if (otherSet instanceof BitmapMembership || otherSet instanceof DenseMembership)
+            return otherSet.intersection(this);
         final IntSet intersectSet = new IntSet();
         final IRowIterator iter = otherSet.getIterator();
         int curr = iter.getNextRow();
@@ -166,28 +169,6 @@ public class SparseMembership implements IMembershipSet {
         return new SparseMembership(intersectSet, this.getMax());
     }
 
-    /**
-     * Estimates the size of a selectRowsFromFullTable applied to an IMembershipSet
-     * @return an approximation of the size, based on a sample of size 20. May return 0.
-     * There are no strict guarantees on the quality of the approximation, but is good enough for
-     * initialization of a hash table sizes.
-     */
-    private int estimateSize(final IMembershipSet baseMap,
-                             final Predicate<Integer> filter) {
-        final IMembershipSet sampleSet = baseMap.sample(sizeEstimationSampleSize);
-        if (sampleSet.getSize() == 0)
-            return 0;
-        int eSize = 0;
-        final IRowIterator iter = sampleSet.getIterator();
-        int curr = iter.getNextRow();
-        while (curr >= 0) {
-            if (filter.test(curr))
-                eSize++;
-            curr = iter.getNextRow();
-        }
-        return (baseMap.getSize() * eSize) / sampleSet.getSize();
-    }
-
     private class SparseIterator implements IRowIterator {
         final private IntSet.IntSetIterator mySetIterator;
 
@@ -17,6 +17,7 @@
  */
 
 package org.hillview.table;
+import org.hillview.table.api.ICompiledFilter;
 import org.hillview.table.api.ITable;
 
 import java.io.Serializable;
@@ -36,4 +37,34 @@ public interface TableFilter extends Serializable {
      * @param rowIndex Row index in the table.
      */
     boolean test(int rowIndex);
+
+    /**
+     * Batch version of test: sets result[i] to test(rows[i]) for all i < count.
+     */
+    default void test(int[] rows, int count, boolean[] result) {
+        for (int i = 0; i < count; i++)
+            result[i] = this.test(rows[i]);
+    }
+
+    /**
+     * Specializes the filter for a table.  The result holds all the per-table state,
+     * so the same filter can be compiled concurrently for several tables.  The default
+     * implementation calls setTable and delegates to this filter.
+     * @param table: Table on which the compiled filter operates.
+     */
+    default ICompiledFilter compile(ITable table) {
+        this.setTable(table);
+        final TableFilter filter = this;
+        return new ICompiledFilter() {
+            @Override
+            public boolean test(int rowIndex) {
+                return filter.test(rowIndex);
+            }
+
+            @Override
+            public void test(int[] rows, int count, boolean[] result) {
+                filter.test(rows, count, result);
+            }
+        };
+    }
 }
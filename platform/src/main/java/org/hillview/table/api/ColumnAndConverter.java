@@ -52,4 +52,8 @@ public class ColumnAndConverter {
     public double asDouble(int rowIndex) {
         return this.column.asDouble(rowIndex, this.converter);
     }
+
+    public void asDoubles(int[] rows, int count, double[] values, boolean[] missing) {
+        this.column.asDoubles(rows, count, this.converter, values, missing);
+    }
 }
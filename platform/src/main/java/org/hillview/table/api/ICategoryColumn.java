@@ -1,11 +1,41 @@
 package org.hillview.table.api;
 
+import javax.annotation.Nullable;
 import java.util.function.Consumer;
 
+/**
+ * A string column which stores each row as a small integer code into a dictionary
+ * of distinct values.
+ */
 public interface ICategoryColumn extends IStringColumn {
     /**
      * Computes all distinct values in the column.
      * @param action: Action invoked for each distinct string.
      */
     void allDistinctStrings(Consumer<String> action);
+
+    /**
+     * @return The number of codes in the dictionary; all codes are between 0 and
+     * getCodeCount() - 1.
+     */
+    int getCodeCount();
+
+    /**
+     * @return The code of the value in a row.
+     */
+    int getCode(int rowIndex);
+
+    /**
+     * @return The value with the specified code; null for the code of missing values.
+     */
+    @Nullable
+    String decode(int code);
+
+    /**
+     * Batch version of getCode: sets codes[i] to the code of rows[i] for all i < count.
+     */
+    default void getCodes(final int[] rows, final int count, final int[] codes) {
+        for (int i = 0; i < count; i++)
+            codes[i] = this.getCode(rows[i]);
+    }
 }
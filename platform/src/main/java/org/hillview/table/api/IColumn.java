@@ -179,5 +179,41 @@ public interface IColumn extends Serializable {
      */
     long hashCode64(int rowIndex, LongHashFunction hash);
 
+    /* The following methods operate on a batch of rows at once; the batch
+       is described by the first count elements of the rows array, as
+       produced by IRowIterator.getNextRows.  Columns which store
+       primitive values override them to avoid a virtual call per row. */
+
+    /**
+     * Sets missing[i] to true if rows[i] is missing, for all i < count.
+     */
+    default void getMissing(final int[] rows, final int count, final boolean[] missing) {
+        for (int i = 0; i < count; i++)
+            missing[i] = this.isMissing(rows[i]);
+    }
+
+    /**
+     * Batch version of asDouble: sets values[i] to the value in rows[i] converted to
+     * a double, and missing[i] to true if rows[i] is missing; in that case values[i]
+     * is unspecified.
+     */
+    default void asDoubles(final int[] rows, final int count,
+                           @Nullable final IStringConverter converter,
+                           final double[] values, final boolean[] missing) {
+        this.getMissing(rows, count, missing);
+        for (int i = 0; i < count; i++)
+            if (!missing[i])
+                values[i] = this.asDouble(rows[i], converter);
+    }
+
+    /**
+     * Batch version of hashCode64: sets hashes[i] to the hash code of rows[i].
+     */
+    default void hashCodes64(final int[] rows, final int count, final LongHashFunction hash,
+                             final long[] hashes) {
+        for (int i = 0; i < count; i++)
+            hashes[i] = this.hashCode64(rows[i], hash);
+    }
+
     long MISSING_HASH_VALUE = 0;
 }
\ No newline at end of file
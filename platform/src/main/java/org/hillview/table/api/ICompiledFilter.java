@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.table.api;
+
+import org.hillview.table.MembershipSetBuilder;
+import org.hillview.utils.Randomness;
+
+/**
+ * A table filter specialized for a specific table, produced by TableFilter.compile.
+ * It holds all the state needed to evaluate the filter on the table, so each
+ * partition of a dataset uses its own compiled filter.
+ */
+public interface ICompiledFilter {
+    /**
+     * Number of sampled rows used to estimate the selectivity of the filter.
+     */
+    int selectivitySampleSize = 64;
+
+    /**
+     * Tests whether a row is selected or not.
+     * @param rowIndex Row index in the table.
+     */
+    boolean test(int rowIndex);
+
+    /**
+     * Batch version of test: sets result[i] to test(rows[i]) for all i < count.
+     */
+    void test(int[] rows, int count, boolean[] result);
+
+    /**
+     * @return The rows of the membership set selected by the filter.  The filter is
+     * evaluated a batch at a time and the selected rows are written directly into a
+     * bitmap, whose representation is chosen using the estimated selectivity.
+     */
+    default IMembershipSet filter(final IMembershipSet members) {
+        final int[] rows = new int[IRowIterator.BATCH_SIZE];
+        final boolean[] selected = new boolean[rows.length];
+
+        // Estimate the size of the result on a sample of the rows.
+        final IRowIterator sample = members.getSampleIterator(
+                selectivitySampleSize, new Randomness());
+        int count = sample.getNextRows(rows);
+        int estimate = 0;
+        if (count > 0) {
+            this.test(rows, count, selected);
+            int hits = 0;
+            for (int i = 0; i < count; i++)
+                hits += selected[i] ? 1 : 0;
+            estimate = (int)(((long)members.getSize() * hits) / count);
+        }
+
+        final MembershipSetBuilder builder = new MembershipSetBuilder(members.getMax(), estimate);
+        final IRowIterator it = members.getIterator();
+        count = it.getNextRows(rows);
+        while (count > 0) {
+            this.test(rows, count, selected);
+            for (int i = 0; i < count; i++)
+                if (selected[i])
+                    builder.add(rows[i]);
+            count = it.getNextRows(rows);
+        }
+        return builder.build();
+    }
+}
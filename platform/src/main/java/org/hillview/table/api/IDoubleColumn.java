@@ -61,7 +61,7 @@ public interface IDoubleColumn extends IColumn {
     @Override
     default long hashCode64(int rowIndex, LongHashFunction hash) {
         if (isMissing(rowIndex)) return MISSING_HASH_VALUE;
-        return hash.hashLong(Double.doubleToRawLongBits(this.getDouble(rowIndex)));
+        return hash.hashLong(Double.doubleToLongBits(this.getDouble(rowIndex)));
     }
 
     @Override
@@ -19,8 +19,8 @@
 package org.hillview.table.api;
 
 import org.hillview.utils.Randomness;
-import org.hillview.table.SparseMembership;
-import org.hillview.utils.IntSet;
+import org.hillview.table.MembershipSetBuilder;
+import org.hillview.table.SampledRowIterator;
 
 import java.util.function.Predicate;
 
@@ -77,6 +77,37 @@ public interface IMembershipSet extends IRowOrder {
         return this.sample(this.getSampleSize(rate, seed, true), seed);
     }
 
+    /**
+     * @return an iterator over a sample of the set of the same size as sample(rate),
+     * which returns the rows in the same order as getIterator().  Unlike sample(rate)
+     * the sample is not materialized.
+     */
+    default IRowIterator getSampleIterator(double rate) {
+        if (rate >= 1)
+            return this.getIterator();
+        return this.getSampleIterator(this.getSampleSize(rate, 0, false), new Randomness());
+    }
+
+    /**
+     * @return same as getSampleIterator(double rate) but with the seed for randomness
+     * specified by the caller.
+     */
+    default IRowIterator getSampleIterator(double rate, long seed) {
+        if (rate >= 1)
+            return this.getIterator();
+        return this.getSampleIterator(this.getSampleSize(rate, seed, true), new Randomness(seed));
+    }
+
+    /**
+     * @return an iterator over k rows sampled without replacement, or over all rows
+     * if the set has fewer than k rows.
+     */
+    default IRowIterator getSampleIterator(int k, Randomness random) {
+        if (k >= this.getSize())
+            return this.getIterator();
+        return new SampledRowIterator(this.getIterator(), this.getSize(), k, random);
+    }
+
     /**
      * @return a new map which is the union of current map and otherMap.
      */
@@ -85,15 +116,16 @@ public interface IMembershipSet extends IRowOrder {
     IMembershipSet intersection(IMembershipSet otherMap);
 
     default IMembershipSet setMinus(IMembershipSet otherMap) {
-        final IntSet setMinusSet = new IntSet();
+        final MembershipSetBuilder builder =
+                new MembershipSetBuilder(this.getMax(), this.getSize());
         final IRowIterator iter = this.getIterator();
         int curr = iter.getNextRow();
         while (curr >= 0) {
             if (!otherMap.isMember(curr))
-                setMinusSet.add(curr);
+                builder.add(curr);
             curr = iter.getNextRow();
         }
-        return new SparseMembership(setMinusSet, this.getMax());
+        return builder.build();
     }
 
     default int getSampleSize(double rate, long seed, boolean useSeed) {
@@ -26,4 +26,27 @@ public interface IRowIterator {
     // Returns -1 when iteration is completed; else it returns
     // the index of the next row.
     int getNextRow();
+
+    /**
+     * Number of rows that callers of getNextRows typically request at once.
+     */
+    int BATCH_SIZE = 1024;
+
+    /**
+     * Writes the indexes of the next rows in the supplied buffer.  Calls to getNextRow
+     * and getNextRows may be mixed: both advance the same position in the iteration.
+     * @param rows  Buffer that receives the row indexes.
+     * @return      The number of rows written in the buffer; this is 0 only when
+     *              the iteration is completed.
+     */
+    default int getNextRows(final int[] rows) {
+        int count = 0;
+        while (count < rows.length) {
+            final int row = this.getNextRow();
+            if (row < 0)
+                break;
+            rows[count++] = row;
+        }
+        return count;
+    }
 }
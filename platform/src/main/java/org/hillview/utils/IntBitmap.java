@@ -0,0 +1,741 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.utils;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * A compressed set of non-negative integers, in the style of Roaring bitmaps
+ * (http://roaringbitmap.org).  The integers are split into chunks of 2^16 values
+ * according to their high 16 bits; each non-empty chunk is stored in a container
+ * which is a sorted array, a bitmap, or a list of runs, whichever is smaller.
+ * Iteration returns the elements in increasing order.
+ * Containers may be shared between bitmaps, so they are copied before being mutated.
+ */
+public class IntBitmap {
+    /* Maximum number of elements in an array container */
+    private static final int arrayMaxSize = 4096;
+    /* Number of longs in a bitmap container */
+    private static final int bitmapWords = 1 << 10;
+    private static final int chunkSize = 1 << 16;
+
+    private char[] keys;
+    private Container[] containers;
+    private int containerCount;
+
+    public IntBitmap() {
+        this.keys = new char[4];
+        this.containers = new Container[4];
+        this.containerCount = 0;
+    }
+
+    /**
+     * @return A bitmap containing all integers in [start, end).
+     */
+    public static IntBitmap range(final int start, final int end) {
+        final IntBitmap result = new IntBitmap();
+        int current = start;
+        while (current < end) {
+            final int high = current >>> 16;
+            final int chunkEnd = Math.min(end, (high + 1) << 16);
+            final int chunkEndSafe = chunkEnd <= 0 ? end : chunkEnd;  // overflow of the last chunk
+            final RunContainer run = new RunContainer(
+                    new char[] { (char)current, (char)(chunkEndSafe - current - 1) }, 1);
+            result.append((char)high, run);
+            current = chunkEndSafe;
+        }
+        return result;
+    }
+
+    public int cardinality() {
+        int result = 0;
+        for (int i = 0; i < this.containerCount; i++)
+            result += this.containers[i].cardinality();
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return this.containerCount == 0;
+    }
+
+    /**
+     * @return An estimate of the memory used by the bitmap in bytes.
+     */
+    public long sizeInBytes() {
+        long result = 8 * this.keys.length;
+        for (int i = 0; i < this.containerCount; i++)
+            result += this.containers[i].sizeInBytes();
+        return result;
+    }
+
+    public boolean contains(final int value) {
+        final int index = this.findKey((char)(value >>> 16));
+        return index >= 0 && this.containers[index].contains((char)value);
+    }
+
+    /**
+     * @param value Non-negative integer to insert.  Insertion is fastest when
+     *              values are inserted in increasing order.
+     */
+    public void add(final int value) {
+        final char high = (char)(value >>> 16);
+        final char low = (char)value;
+        int index;
+        if (this.containerCount > 0 && this.keys[this.containerCount - 1] == high)
+            index = this.containerCount - 1;
+        else
+            index = this.findKey(high);
+        if (index >= 0) {
+            this.containers[index] = this.containers[index].add(low);
+        } else {
+            index = -index - 1;
+            this.insertAt(index, high, new ArrayContainer().add(low));
+        }
+    }
+
+    /**
+     * Converts each container to the most compact of the three representations.
+     */
+    public void runOptimize() {
+        for (int i = 0; i < this.containerCount; i++)
+            this.containers[i] = this.containers[i].optimize();
+    }
+
+    public IntBitmap and(final IntBitmap other) {
+        final IntBitmap result = new IntBitmap();
+        int i = 0, j = 0;
+        while (i < this.containerCount && j < other.containerCount) {
+            final char k1 = this.keys[i];
+            final char k2 = other.keys[j];
+            if (k1 < k2) {
+                i++;
+            } else if (k1 > k2) {
+                j++;
+            } else {
+                final Container c = and(this.containers[i], other.containers[j]);
+                if (c != null)
+                    result.append(k1, c);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public IntBitmap or(final IntBitmap other) {
+        final IntBitmap result = new IntBitmap();
+        int i = 0, j = 0;
+        while (i < this.containerCount || j < other.containerCount) {
+            if (j >= other.containerCount ||
+                    (i < this.containerCount && this.keys[i] < other.keys[j])) {
+                result.append(this.keys[i], this.containers[i]);
+                i++;
+            } else if (i >= this.containerCount || this.keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j]);
+                j++;
+            } else {
+                result.append(this.keys[i], or(this.containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return A bitmap containing the elements in this which are not in other.
+     */
+    public IntBitmap andNot(final IntBitmap other) {
+        final IntBitmap result = new IntBitmap();
+        int i = 0, j = 0;
+        while (i < this.containerCount) {
+            final char k1 = this.keys[i];
+            while (j < other.containerCount && other.keys[j] < k1)
+                j++;
+            if (j < other.containerCount && other.keys[j] == k1) {
+                final Container c = andNot(this.containers[i], other.containers[j]);
+                if (c != null)
+                    result.append(k1, c);
+            } else {
+                result.append(k1, this.containers[i]);
+            }
+            i++;
+        }
+        return result;
+    }
+
+    public IntBitmapIterator getIterator() {
+        return new IntBitmapIterator();
+    }
+
+    /**
+     * Ordered iterator over an IntBitmap.  Returns -1 when done.
+     * Assumes that the IntBitmap is not mutated.
+     */
+    public class IntBitmapIterator {
+        private int container;
+        // Low bits of the next value to return from the current container.
+        private int nextLow;
+        private final int[] buffer;
+        private int bufferCount;
+        private int bufferPos;
+
+        private IntBitmapIterator() {
+            this.container = 0;
+            this.nextLow = 0;
+            this.buffer = new int[64];
+            this.bufferCount = 0;
+            this.bufferPos = 0;
+        }
+
+        public int getNext() {
+            if (this.bufferPos == this.bufferCount) {
+                this.bufferCount = this.fill(this.buffer, 0);
+                this.bufferPos = 0;
+                if (this.bufferCount == 0)
+                    return -1;
+            }
+            return this.buffer[this.bufferPos++];
+        }
+
+        /**
+         * Writes the next elements in the values array.  It can be mixed with calls
+         * to getNext(): the elements that getNext() has buffered are written first.
+         * @return The number of elements written; 0 when the iteration is completed.
+         */
+        public int getNext(final int[] values) {
+            int count = Math.min(values.length, this.bufferCount - this.bufferPos);
+            if (count > 0) {
+                System.arraycopy(this.buffer, this.bufferPos, values, 0, count);
+                this.bufferPos += count;
+            }
+            return this.fill(values, count);
+        }
+
+        /**
+         * Writes the next elements from the containers in values, starting at index count.
+         * @return The index after the last element written.
+         */
+        private int fill(final int[] values, int count) {
+            while (count < values.length && this.container < IntBitmap.this.containerCount) {
+                final Container c = IntBitmap.this.containers[this.container];
+                final int high = IntBitmap.this.keys[this.container] << 16;
+                final int wanted = values.length - count;
+                final int got = c.fill(this.nextLow, values, count, wanted, high);
+                count += got;
+                if (got < wanted) {
+                    this.container++;
+                    this.nextLow = 0;
+                } else {
+                    this.nextLow = (values[count - 1] & 0xFFFF) + 1;
+                    if (this.nextLow == chunkSize) {
+                        this.container++;
+                        this.nextLow = 0;
+                    }
+                }
+            }
+            return count;
+        }
+    }
+
+    private int findKey(final char key) {
+        return Arrays.binarySearch(this.keys, 0, this.containerCount, key);
+    }
+
+    private void insertAt(final int index, final char key, final Container container) {
+        if (this.containerCount == this.keys.length) {
+            final int newLength = 2 * this.keys.length;
+            this.keys = Arrays.copyOf(this.keys, newLength);
+            this.containers = Arrays.copyOf(this.containers, newLength);
+        }
+        System.arraycopy(this.keys, index, this.keys, index + 1, this.containerCount - index);
+        System.arraycopy(this.containers, index, this.containers, index + 1,
+                this.containerCount - index);
+        this.keys[index] = key;
+        this.containers[index] = container;
+        this.containerCount++;
+    }
+
+    /**
+     * Appends a container with a key larger than all existing keys.  The container
+     * is copied, since it may be shared with another bitmap.
+     */
+    private void append(final char key, final Container container) {
+        this.insertAt(this.containerCount, key, container.copy());
+    }
+
+    @Nullable
+    private static Container and(final Container a, final Container b) {
+        if (a.isFull())
+            return b;
+        if (b.isFull())
+            return a;
+        final Container result;
+        if (a instanceof ArrayContainer)
+            result = ((ArrayContainer)a).filter(b, true);
+        else if (b instanceof ArrayContainer)
+            result = ((ArrayContainer)b).filter(a, true);
+        else
+            result = a.toBitmap().and(b.toBitmap());
+        return result.cardinality() == 0 ? null : result;
+    }
+
+    private static Container or(final Container a, final Container b) {
+        if (a.isFull())
+            return a;
+        if (b.isFull())
+            return b;
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer &&
+                a.cardinality() + b.cardinality() <= arrayMaxSize)
+            return ((ArrayContainer)a).merge((ArrayContainer)b);
+        return a.toBitmap().or(b.toBitmap());
+    }
+
+    @Nullable
+    private static Container andNot(final Container a, final Container b) {
+        if (b.isFull())
+            return null;
+        final Container result;
+        if (a instanceof ArrayContainer)
+            result = ((ArrayContainer)a).filter(b, false);
+        else
+            result = a.toBitmap().andNot(b.toBitmap());
+        return result.cardinality() == 0 ? null : result;
+    }
+
+    /**
+     * Set of 16-bit integers.
+     */
+    private static abstract class Container {
+        abstract int cardinality();
+        abstract boolean contains(char low);
+        /**
+         * Adds low to the container; may return a container with a
+         * different representation.
+         */
+        abstract Container add(char low);
+        abstract BitmapContainer toBitmap();
+        abstract Container copy();
+        abstract long sizeInBytes();
+        /**
+         * Writes in values[offset...] at most max elements of the container
+         * that are greater or equal to from, each or-ed with high.
+         * @return The number of elements written.
+         */
+        abstract int fill(int from, int[] values, int offset, int max, int high);
+
+        boolean isFull() {
+            return this.cardinality() == chunkSize;
+        }
+
+        /**
+         * @return The number of runs of consecutive integers in the container.
+         */
+        int runCount() {
+            final BitmapContainer b = this.toBitmap();
+            int runs = 0;
+            long previousHigh = 0;
+            for (long word : b.words) {
+                // A run starts at each bit which is set and whose predecessor is not set.
+                runs += Long.bitCount(word & ~((word << 1) | previousHigh));
+                previousHigh = word >>> 63;
+            }
+            return runs;
+        }
+
+        Container optimize() {
+            final int card = this.cardinality();
+            final int runs = this.runCount();
+            final long runSize = 4L * runs;
+            final long arraySize = card <= arrayMaxSize ? 2L * card : Long.MAX_VALUE;
+            final long bitmapSize = 8L * bitmapWords;
+            if (runSize < arraySize && runSize < bitmapSize)
+                return this.toBitmap().toRuns(runs);
+            if (arraySize <= bitmapSize)
+                return this.toBitmap().toArray();
+            return this.toBitmap();
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] content;
+        private int card;
+
+        ArrayContainer() {
+            this.content = new char[4];
+            this.card = 0;
+        }
+
+        ArrayContainer(final char[] content, final int card) {
+            this.content = content;
+            this.card = card;
+        }
+
+        @Override
+        int cardinality() { return this.card; }
+
+        @Override
+        long sizeInBytes() { return 2L * this.content.length; }
+
+        @Override
+        boolean contains(final char low) {
+            return Arrays.binarySearch(this.content, 0, this.card, low) >= 0;
+        }
+
+        @Override
+        Container add(final char low) {
+            int index;
+            if (this.card == 0 || this.content[this.card - 1] < low)
+                index = -this.card - 1;
+            else
+                index = Arrays.binarySearch(this.content, 0, this.card, low);
+            if (index >= 0)
+                return this;
+            if (this.card == arrayMaxSize)
+                return this.toBitmap().add(low);
+            index = -index - 1;
+            if (this.card == this.content.length)
+                this.content = Arrays.copyOf(this.content,
+                        Math.min(arrayMaxSize, 2 * this.content.length));
+            System.arraycopy(this.content, index, this.content, index + 1, this.card - index);
+            this.content[index] = low;
+            this.card++;
+            return this;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            final BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < this.card; i++) {
+                final char c = this.content[i];
+                result.words[c >>> 6] |= 1L << c;
+            }
+            result.card = this.card;
+            return result;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(this.content, this.card), this.card);
+        }
+
+        @Override
+        int fill(final int from, final int[] values, final int offset, final int max,
+                 final int high) {
+            int start = Arrays.binarySearch(this.content, 0, this.card, (char)from);
+            if (start < 0)
+                start = -start - 1;
+            final int count = Math.min(max, this.card - start);
+            for (int i = 0; i < count; i++)
+                values[offset + i] = high | this.content[start + i];
+            return count;
+        }
+
+        /**
+         * @return The elements of this container which are (not) in other.
+         */
+        ArrayContainer filter(final Container other, final boolean keepMembers) {
+            final char[] result = new char[this.card];
+            int count = 0;
+            for (int i = 0; i < this.card; i++) {
+                final char c = this.content[i];
+                if (other.contains(c) == keepMembers)
+                    result[count++] = c;
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        ArrayContainer merge(final ArrayContainer other) {
+            final char[] result = new char[this.card + other.card];
+            int i = 0, j = 0, count = 0;
+            while (i < this.card && j < other.card) {
+                final char a = this.content[i];
+                final char b = other.content[j];
+                if (a < b) {
+                    result[count++] = a;
+                    i++;
+                } else if (a > b) {
+                    result[count++] = b;
+                    j++;
+                } else {
+                    result[count++] = a;
+                    i++;
+                    j++;
+                }
+            }
+            while (i < this.card)
+                result[count++] = this.content[i++];
+            while (j < other.card)
+                result[count++] = other.content[j++];
+            return new ArrayContainer(result, count);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int card;
+
+        BitmapContainer() {
+            this.words = new long[bitmapWords];
+            this.card = 0;
+        }
+
+        private BitmapContainer(final long[] words) {
+            this.words = words;
+            int card = 0;
+            for (long w : words)
+                card += Long.bitCount(w);
+            this.card = card;
+        }
+
+        @Override
+        int cardinality() { return this.card; }
+
+        @Override
+        long sizeInBytes() { return 8L * bitmapWords; }
+
+        @Override
+        boolean contains(final char low) {
+            return (this.words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        Container add(final char low) {
+            final long before = this.words[low >>> 6];
+            final long after = before | (1L << low);
+            this.words[low >>> 6] = after;
+            if (before != after)
+                this.card++;
+            return this;
+        }
+
+        @Override
+        BitmapContainer toBitmap() { return this; }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(this.words.clone());
+        }
+
+        @Override
+        int fill(final int from, final int[] values, final int offset, final int max,
+                 final int high) {
+            int count = 0;
+            int wordIndex = from >>> 6;
+            if (wordIndex >= bitmapWords)
+                return 0;
+            long word = this.words[wordIndex] & (-1L << from);
+            while (true) {
+                while (word != 0) {
+                    if (count == max)
+                        return count;
+                    values[offset + count++] =
+                            high | ((wordIndex << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+                wordIndex++;
+                if (wordIndex == bitmapWords)
+                    return count;
+                word = this.words[wordIndex];
+            }
+        }
+
+        BitmapContainer and(final BitmapContainer other) {
+            final long[] result = new long[bitmapWords];
+            for (int i = 0; i < bitmapWords; i++)
+                result[i] = this.words[i] & other.words[i];
+            return new BitmapContainer(result);
+        }
+
+        Container or(final BitmapContainer other) {
+            final long[] result = new long[bitmapWords];
+            for (int i = 0; i < bitmapWords; i++)
+                result[i] = this.words[i] | other.words[i];
+            return new BitmapContainer(result);
+        }
+
+        Container andNot(final BitmapContainer other) {
+            final long[] result = new long[bitmapWords];
+            for (int i = 0; i < bitmapWords; i++)
+                result[i] = this.words[i] & ~other.words[i];
+            final BitmapContainer b = new BitmapContainer(result);
+            if (b.card <= arrayMaxSize)
+                return b.toArray();
+            return b;
+        }
+
+        ArrayContainer toArray() {
+            final char[] content = new char[this.card];
+            int count = 0;
+            for (int i = 0; i < bitmapWords; i++) {
+                long word = this.words[i];
+                while (word != 0) {
+                    content[count++] = (char)((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(content, count);
+        }
+
+        RunContainer toRuns(final int runCount) {
+            final char[] runs = new char[2 * runCount];
+            int run = 0;
+            int current = 0;
+            while (current < chunkSize) {
+                final int start = this.nextSetBit(current);
+                if (start < 0)
+                    break;
+                int end = this.nextClearBit(start);
+                runs[2 * run] = (char)start;
+                runs[2 * run + 1] = (char)(end - start - 1);
+                run++;
+                current = end;
+            }
+            return new RunContainer(runs, run);
+        }
+
+        private int nextSetBit(final int from) {
+            int wordIndex = from >>> 6;
+            if (wordIndex >= bitmapWords)
+                return -1;
+            long word = this.words[wordIndex] & (-1L << from);
+            while (word == 0) {
+                if (++wordIndex == bitmapWords)
+                    return -1;
+                word = this.words[wordIndex];
+            }
+            return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        private int nextClearBit(final int from) {
+            int wordIndex = from >>> 6;
+            if (wordIndex >= bitmapWords)
+                return chunkSize;
+            long word = ~this.words[wordIndex] & (-1L << from);
+            while (word == 0) {
+                if (++wordIndex == bitmapWords)
+                    return chunkSize;
+                word = ~this.words[wordIndex];
+            }
+            return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        }
+    }
+
+    private static final class RunContainer extends Container {
+        // Pairs (start, length - 1), sorted by start.
+        private final char[] runs;
+        private final int runCount;
+        private final int card;
+
+        RunContainer(final char[] runs, final int runCount) {
+            this.runs = runs;
+            this.runCount = runCount;
+            int card = 0;
+            for (int i = 0; i < runCount; i++)
+                card += runs[2 * i + 1] + 1;
+            this.card = card;
+        }
+
+        @Override
+        int cardinality() { return this.card; }
+
+        @Override
+        long sizeInBytes() { return 2L * this.runs.length; }
+
+        @Override
+        int runCount() { return this.runCount; }
+
+        /**
+         * @return The index of the last run which starts at or before low, or -1.
+         */
+        private int findRun(final int low) {
+            int lo = 0, hi = this.runCount - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (this.runs[2 * mid] <= low)
+                    lo = mid + 1;
+                else
+                    hi = mid - 1;
+            }
+            return hi;
+        }
+
+        @Override
+        boolean contains(final char low) {
+            final int run = this.findRun(low);
+            return run >= 0 && low <= this.runs[2 * run] + this.runs[2 * run + 1];
+        }
+
+        @Override
+        Container add(final char low) {
+            if (this.contains(low))
+                return this;
+            return this.toBitmap().add(low);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            final BitmapContainer result = new BitmapContainer();
+            for (int i = 0; i < this.runCount; i++) {
+                final int start = this.runs[2 * i];
+                final int end = start + this.runs[2 * i + 1] + 1;  // exclusive
+                final int firstWord = start >>> 6;
+                final int lastWord = (end - 1) >>> 6;
+                for (int w = firstWord; w <= lastWord; w++) {
+                    long mask = -1L;
+                    if (w == firstWord)
+                        mask &= -1L << start;
+                    if (w == lastWord)
+                        mask &= -1L >>> (63 - ((end - 1) & 63));
+                    result.words[w] |= mask;
+                }
+            }
+            result.card = this.card;
+            return result;
+        }
+
+        @Override
+        Container copy() {
+            // Run containers are never mutated.
+            return this;
+        }
+
+        @Override
+        int fill(final int from, final int[] values, final int offset, final int max,
+                 final int high) {
+            int run = this.findRun(from);
+            int current = from;
+            if (run < 0) {
+                run = 0;
+            } else if (from > this.runs[2 * run] + this.runs[2 * run + 1]) {
+                run++;
+            }
+            int count = 0;
+            for (; run < this.runCount && count < max; run++) {
+                final int start = Math.max(current, this.runs[2 * run]);
+                final int end = this.runs[2 * run] + this.runs[2 * run + 1];  // inclusive
+                for (int v = start; v <= end && count < max; v++)
+                    values[offset + count++] = high | v;
+                current = end + 1;
+            }
+            return count;
+        }
+    }
+}
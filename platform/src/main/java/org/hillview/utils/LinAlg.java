@@ -37,6 +37,21 @@ public class LinAlg {
      * eigenvectors, in the same order.
      */
     public static DoubleMatrix[] eigenVectorsVarianceExplained(DoubleMatrix symmetricMat, int n) {
+        DoubleMatrix[] eigenVecValues = largestEigenVectors(symmetricMat, n);
+        return new DoubleMatrix[]{
+                eigenVecValues[0],
+                eigenVecValues[1].div(symmetricMat.diag().sum())
+        };
+    }
+
+    /**
+     * @param symmetricMat The (symmetric!) matrix of which the eigenvalues have to be computed.
+     * @param n The number of eigenvectors to return.
+     * @return An array of DoubleMatrices. The first one is the matrix whose rows are the n eigenvectors of
+     * symmetricMat corresponding to the n largest eigenvalues. The second matrix is a column vector that contains
+     * these eigenvalues, in the same order.
+     */
+    public static DoubleMatrix[] largestEigenVectors(DoubleMatrix symmetricMat, int n) {
         // Compute eigen{vectors/values} and unpack the result.
         DoubleMatrix[] eigenVecValues = Eigen.symmetricEigenvectors(symmetricMat);
         DoubleMatrix eigenVectors = eigenVecValues[0];
@@ -52,7 +67,43 @@ public class LinAlg {
         // Slice the eigenvector matrix to get the result (it has the vectors as *columns*, we want them as *rows*).
         return new DoubleMatrix[]{
                 eigenVectors.get(new AllRange(), new IndicesRange(largestN)).transpose(),
-                eigenValues.get(new IndicesRange(largestN), 0).div(eigenValues.sum())
+                eigenValues.get(new IndicesRange(largestN), 0)
         };
     }
+
+    /**
+     * Orthonormalizes the columns of a matrix in place, using the modified Gram-Schmidt process
+     * applied twice for numerical stability. Columns that are (numerically) linear combinations of
+     * the previous ones are set to zero.
+     * @param mat Matrix whose columns are orthonormalized.
+     */
+    public static void orthonormalizeColumns(DoubleMatrix mat) {
+        final double[] data = mat.data;
+        final int rows = mat.rows;
+        for (int j = 0; j < mat.columns; j++) {
+            final int cj = j * rows;
+            double original = norm(data, cj, rows);
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < j; i++) {
+                    final int ci = i * rows;
+                    double dot = 0;
+                    for (int r = 0; r < rows; r++)
+                        dot += data[ci + r] * data[cj + r];
+                    for (int r = 0; r < rows; r++)
+                        data[cj + r] -= dot * data[ci + r];
+                }
+            }
+            double norm = norm(data, cj, rows);
+            double scale = (norm <= 1e-10 * original) ? 0 : 1 / norm;
+            for (int r = 0; r < rows; r++)
+                data[cj + r] *= scale;
+        }
+    }
+
+    private static double norm(double[] data, int start, int length) {
+        double sum = 0;
+        for (int r = start; r < start + length; r++)
+            sum += data[r] * data[r];
+        return Math.sqrt(sum);
+    }
 }
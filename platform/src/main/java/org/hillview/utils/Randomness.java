@@ -18,45 +18,125 @@
 
 package org.hillview.utils;
 
-import org.apache.commons.math3.random.MersenneTwister;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Seedable pseudo-random number generator.  Uses the xoroshiro128+ algorithm
+ * (http://xoroshiro.di.unimi.it), which is much faster than the Mersenne Twister
+ * and has a small state; the state is initialized from the seed with SplitMix64.
+ * The same seed always produces the same sequence.  Not thread-safe.
+ */
 public class Randomness {
-    final private MersenneTwister myPrg;
+    private static final AtomicLong seedUniquifier = new AtomicLong(8682522807148012L);
+
+    private long s0;
+    private long s1;
+    private double nextNextGaussian;
+    private boolean haveNextNextGaussian;
 
     public Randomness() {
-        this.myPrg = new MersenneTwister();
+        this(seedUniquifier.addAndGet(0x9E3779B97F4A7C15L) ^ System.nanoTime());
     }
 
     public Randomness(long seed) {
-        this.myPrg = new MersenneTwister(seed);
+        this.setSeed(seed);
+    }
+
+    private static long splitMix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
-    public int nextInt() { return this.myPrg.nextInt(); }
+    public void setSeed(long seed) {
+        this.s0 = splitMix64(seed + 0x9E3779B97F4A7C15L);
+        this.s1 = splitMix64(seed + 2 * 0x9E3779B97F4A7C15L);
+        if (this.s0 == 0 && this.s1 == 0)
+            // The all-zero state is not allowed
+            this.s1 = 1;
+        this.haveNextNextGaussian = false;
+    }
+
+    public long nextLong() {
+        final long s0 = this.s0;
+        long s1 = this.s1;
+        final long result = s0 + s1;
+        s1 ^= s0;
+        this.s0 = Long.rotateLeft(s0, 55) ^ s1 ^ (s1 << 14);
+        this.s1 = Long.rotateLeft(s1, 36);
+        return result;
+    }
 
-    public int nextInt(int range) { return this.myPrg.nextInt(range); }
+    /* The high bits of xoroshiro128+ are the best ones. */
+    public int nextInt() { return (int)(this.nextLong() >>> 32); }
 
-    public double nextDouble() { return this.myPrg.nextDouble(); }
+    /**
+     * returns an int uniformly drawn between 0 (inclusive) and range (exclusive)
+     */
+    public int nextInt(int range) {
+        if (range <= 0)
+            throw new IllegalArgumentException("Range must be positive: " + range);
+        return (int)this.nextLong(range);
+    }
 
-    public void setSeed(long seed) { this.myPrg.setSeed(seed); }
+    /**
+     * returns a double uniformly drawn in [0, 1)
+     */
+    public double nextDouble() { return (this.nextLong() >>> 11) * 0x1.0p-53; }
 
-    public boolean nextBoolean() { return this.myPrg.nextBoolean(); }
+    public boolean nextBoolean() { return this.nextLong() < 0; }
 
     /**
      * @return the next pseudorandom, Gaussian ("normally") distributed double value with mean 0.0
      * and standard deviation 1.0 from this random number generator's sequence.
      */
-    public double nextGaussian() { return this.myPrg.nextGaussian(); }
-
-    public long nextLong() { return this.myPrg.nextLong(); }
+    public double nextGaussian() {
+        // Polar method of Box, Muller and Marsaglia
+        if (this.haveNextNextGaussian) {
+            this.haveNextNextGaussian = false;
+            return this.nextNextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * this.nextDouble() - 1;
+            v2 = 2 * this.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        final double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        this.nextNextGaussian = v2 * multiplier;
+        this.haveNextNextGaussian = true;
+        return v1 * multiplier;
+    }
 
     /**
      * returns a long uniformly drawn between 0 (inclusive) and n (exclusive)
       */
-    public long nextLong(long n) { return this.myPrg.nextLong(n); }
+    public long nextLong(long n) {
+        if (n <= 0)
+            throw new IllegalArgumentException("Range must be positive: " + n);
+        final long mask = n - 1;
+        if ((n & mask) == 0)
+            // The high bits, which are the best ones; two shifts, so that n = 1 gives 0.
+            return (this.nextLong() >>> 1) >>> Long.numberOfLeadingZeros(n);
+        // Reject the values in the last incomplete copy of [0, n)
+        long bits, value;
+        do {
+            bits = this.nextLong() >>> 1;
+            value = bits % n;
+        } while (bits - value + mask < 0);
+        return value;
+    }
 
     /**
      * Generates random bytes and places them into a user-supplied byte array. The number of
      * random bytes produced is equal to the length of the byte array.
      */
-    public void nextBytes(byte[] bytes) { this.myPrg.nextBytes(bytes); }
+    public void nextBytes(byte[] bytes) {
+        int i = 0;
+        while (i < bytes.length) {
+            long bits = this.nextLong();
+            for (int n = Math.min(bytes.length - i, 8); n > 0; n--, bits >>>= 8)
+                bytes[i++] = (byte)bits;
+        }
+    }
 }
@@ -1,10 +1,6 @@
 package org.hillview.utils;
 
-import org.hillview.table.BaseRowSnapshot;
-import org.hillview.table.RecordOrder;
-import org.hillview.table.SmallTable;
-import org.hillview.table.VirtualRowSnapshot;
-import org.hillview.table.api.IRowIterator;
+import org.hillview.table.*;
 import org.hillview.table.api.ITable;
 
 /**
@@ -22,20 +18,13 @@ public class RankInTable {
 
     /**
      * Given a rowSnapshot, compute its rank in a table order according to a given recordOrder.
+     * Uses the sorted index of the table, which is built on first use and cached.
      * @param brs The rowSnapshot whose rank we wish to compute.
-     * @return Its rank in the table, which is the number of rows that are strictly smaller.
+     * @return Its rank in the table, which is the number of rows that are smaller or equal.
      */
-    private int getRank(BaseRowSnapshot brs) {
-        int rank = 0;
-        IRowIterator rowIt = this.table.getRowIterator();
-        VirtualRowSnapshot vrs = new VirtualRowSnapshot(this.table);
-        int i = rowIt.getNextRow();
-        while (i!= -1) {
-            vrs.setRow(i);
-            rank += ((brs.compareTo(vrs, this.ro) >= 0) ? 1: 0);
-            i = rowIt.getNextRow();
-        }
-        return rank;
+    public int getRank(BaseRowSnapshot brs) {
+        SortedIndex index = SortedIndexCache.get(this.table, this.ro);
+        return index.upperBound(index.getAccessor().getValues(brs));
     }
 
     /**
@@ -47,7 +36,7 @@ public class RankInTable {
     public int[] getRank(SmallTable st) {
         int [] rank = new int[st.getNumOfRows()];
         VirtualRowSnapshot vr = new VirtualRowSnapshot(st);
-        for (int j =0; j < st.getNumOfRows(); j++) {
+        for (int j = 0; j < st.getNumOfRows(); j++) {
             vr.setRow(j);
             rank[j] = this.getRank(vr);
         }
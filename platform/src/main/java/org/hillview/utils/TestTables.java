@@ -278,7 +278,8 @@ public class TestTables {
         int start = 0;
         while (start < tableSize) {
             int thisFragSize = Math.min(fragmentSize, tableSize - start);
-            IMembershipSet members = new SparseMembership(start, thisFragSize, tableSize);
+            IMembershipSet members = new BitmapMembership(
+                    IntBitmap.range(start, start + thisFragSize), tableSize);
             tableList.add(bigTable.selectRowsFromFullTable(members));
             start += fragmentSize;
         }
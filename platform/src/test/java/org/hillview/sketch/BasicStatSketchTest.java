@@ -10,6 +10,8 @@ import org.hillview.table.api.ITable;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+
 public class BasicStatSketchTest {
     @Test
     public void StatSketchTest() {
@@ -39,4 +41,41 @@ public class BasicStatSketchTest {
         BasicColStats result1 = mySketch.create(bigTable);
         Assert.assertEquals(result.getMoment(1), result1.getMoment(1), 0.001);
     }
+
+    @Test
+    public void StatSketchAccumulateTest() {
+        final SmallTable left = TestTables.getIntTable(1000, 1);
+        final SmallTable right = TestTables.getIntTable(3000, 1);
+        final String colName = left.getSchema().getColumnNames().iterator().next();
+        final BasicColStatSketch mySketch = new BasicColStatSketch(
+                new ColumnNameAndConverter(colName), 3, 1.0);
+        final BasicColStats l = mySketch.create(left);
+        final BasicColStats r = mySketch.create(right);
+        final BasicColStats union = mySketch.add(l, r);
+        final BasicColStats acc = mySketch.addInPlace(mySketch.addInPlace(mySketch.zero(), l), r);
+        Assert.assertEquals(union.getPresentCount(), acc.getPresentCount());
+        Assert.assertEquals(union.getRowCount(), acc.getRowCount());
+        Assert.assertEquals(union.getMin(), acc.getMin(), 0);
+        Assert.assertEquals(union.getMax(), acc.getMax(), 0);
+        for (int i = 1; i <= 3; i++)
+            Assert.assertEquals(union.getMoment(i), acc.getMoment(i), 1e-9 * Math.abs(union.getMoment(i)));
+        // The right operand is not modified
+        Assert.assertEquals(3000, r.getPresentCount());
+    }
+
+    @Test
+    public void StatSketchReduceTest() {
+        final SmallTable left = TestTables.getIntTable(1000, 1);
+        final SmallTable right = TestTables.getIntTable(3000, 1);
+        final String colName = left.getSchema().getColumnNames().iterator().next();
+        final BasicColStatSketch mySketch = new BasicColStatSketch(
+                new ColumnNameAndConverter(colName), 3, 1.0);
+        final BasicColStats l = mySketch.create(left);
+        final BasicColStats r = mySketch.create(right);
+        // An empty first element must not make reduce accumulate into one of the others.
+        final BasicColStats sum = mySketch.reduce(Arrays.asList(mySketch.zero(), l, r, l));
+        Assert.assertEquals(5000, sum.getPresentCount());
+        Assert.assertEquals(1000, l.getPresentCount());
+        Assert.assertEquals(3000, r.getPresentCount());
+    }
 }
@@ -64,4 +64,24 @@ public class BucketsDescriptionTest {
         BucketsDescription bdEq1 = new BucketsDescription(boundaries1);
         assertFalse(bdEq.equals(bdEq1));
     }
+
+    @Test
+    public void testEquiDepth() {
+        // Repeated and out of range boundaries are dropped.
+        BucketsDescription bd = BucketsDescription.equiDepth(
+                0, 10, new double[] { -1, 0, 0, 0, 2, 2, 5, 10, 11 });
+        assertEquals(3, bd.getNumOfBuckets());
+        assertEquals(0, bd.getLeftBoundary(0), 0);
+        assertEquals(2, bd.getLeftBoundary(1), 0);
+        assertEquals(5, bd.getLeftBoundary(2), 0);
+        assertEquals(10, bd.getRightBoundary(2), 0);
+        assertEquals(0, bd.indexOf(0));
+        assertEquals(1, bd.indexOf(2));
+        assertEquals(2, bd.indexOf(10));
+
+        BucketsDescription point = BucketsDescription.equiDepth(3, 3, new double[] { 3, 3 });
+        assertEquals(1, point.getNumOfBuckets());
+        assertEquals(0, point.indexOf(3));
+        assertEquals(-1, point.indexOf(4));
+    }
 }
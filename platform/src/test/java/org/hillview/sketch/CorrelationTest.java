@@ -3,6 +3,12 @@ package org.hillview.sketch;
 import org.hillview.dataset.api.IDataSet;
 import org.hillview.sketches.CorrMatrix;
 import org.hillview.sketches.FullCorrelationSketch;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.DoubleArrayColumn;
+import org.hillview.table.FullMembership;
+import org.hillview.table.Table;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.BlasConversions;
 import org.hillview.utils.LinAlg;
@@ -82,4 +88,58 @@ public class CorrelationTest {
             }
         }
     }
+
+    @Test
+    public void testMissingCorrelation() {
+        // Spans several row blocks, with missing values in the first column.
+        final int size = 10000;
+        final int cols = 3;
+        java.util.Random rn = new java.util.Random(11);
+        double[][] data = new double[cols][size];
+        List<IColumn> columns = new ArrayList<IColumn>();
+        List<String> colNames = new ArrayList<String>();
+        for (int c = 0; c < cols; c++) {
+            ColumnDescription cd = new ColumnDescription("C" + c, ContentsKind.Double, c == 0);
+            DoubleArrayColumn col = new DoubleArrayColumn(cd, size);
+            for (int r = 0; r < size; r++) {
+                if (c == 0 && (r % 7) == 0) {
+                    col.setMissing(r);
+                } else {
+                    data[c][r] = rn.nextGaussian() + c;
+                    col.set(r, data[c][r]);
+                }
+            }
+            columns.add(col);
+            colNames.add(col.getName());
+        }
+        ITable table = new Table(columns, new FullMembership(size).filter(r -> (r % 5) != 2));
+        CorrMatrix cm = new FullCorrelationSketch(colNames).create(table);
+
+        int rows = 0;
+        int missing = 0;
+        double[] sums = new double[cols];
+        double[][] products = new double[cols][cols];
+        for (int r = 0; r < size; r++) {
+            if ((r % 5) == 2)
+                continue;
+            rows++;
+            if ((r % 7) == 0)
+                missing++;
+            for (int i = 0; i < cols; i++) {
+                sums[i] += data[i][r];
+                for (int j = 0; j < cols; j++)
+                    products[i][j] += data[i][r] * data[j][r];
+            }
+        }
+        for (int i = 0; i < cols; i++) {
+            double present = i == 0 ? rows - missing : rows;
+            Assert.assertEquals(present, cm.nonMissing.get(i, i), 0);
+            Assert.assertEquals(sums[i] / present, cm.means[i], 1e-9);
+            for (int j = i; j < cols; j++) {
+                double pairCount = i == j ? present : rows;
+                Assert.assertEquals(pairCount, cm.nonMissing.get(i, j), 0);
+                Assert.assertEquals(products[i][j] / pairCount, cm.get(i, j), 1e-9);
+            }
+        }
+    }
 }
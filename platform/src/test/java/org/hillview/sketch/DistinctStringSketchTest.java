@@ -1,17 +1,22 @@
 package org.hillview.sketch;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import org.hillview.dataset.ParallelDataSet;
 import org.hillview.sketches.*;
+import org.hillview.table.*;
 import org.hillview.table.api.ColumnNameAndConverter;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
 import org.hillview.utils.JsonList;
 import org.hillview.utils.TestTables;
-import org.hillview.table.SemiExplicitConverter;
-import org.hillview.table.SmallTable;
-import org.hillview.table.Table;
 import org.hillview.table.api.ITable;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.*;
+import java.util.*;
+
 public class DistinctStringSketchTest {
     private SemiExplicitConverter getStringConverter(DistinctStrings ds) {
         SemiExplicitConverter converter = new SemiExplicitConverter();
@@ -55,4 +60,111 @@ public class DistinctStringSketchTest {
         Histogram hist = all.blockingSketch(
                 new HistogramSketch(desc, new ColumnNameAndConverter("Name", converter)));
     }
+
+    private static Table stringTable(int size, int distinct, ContentsKind kind) {
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++)
+            values[i] = i % 10 == 9 ? null : "s" + (i % distinct);
+        ColumnDescription desc = new ColumnDescription("S", kind, true);
+        IColumn col = kind == ContentsKind.Category ? new CategoryArrayColumn(desc, values) :
+                new StringArrayColumn(desc, values);
+        return new Table(Collections.singletonList(col), new FullMembership(size));
+    }
+
+    @Test
+    public void testMembership() {
+        // Only the strings in the rows of the table are returned.
+        for (ContentsKind kind : new ContentsKind[] { ContentsKind.String, ContentsKind.Category }) {
+            Table table = stringTable(1000, 100, kind);
+            ITable filtered = table.selectRowsFromFullTable(
+                    table.getMembershipSet().filter(i -> i % 100 < 20));
+            DistinctStrings ds = new DistinctStringsSketch(0, new String[] { "S" })
+                    .create(filtered).get(0);
+            Assert.assertEquals(filtered.getNumOfRows(), ds.getColumnSize());
+            Assert.assertFalse(ds.isTruncated());
+            Set<String> expected = new TreeSet<String>();
+            for (int i = 0; i < 20; i++)
+                if (i % 10 != 9)
+                    expected.add("s" + i);
+            Assert.assertEquals(new ArrayList<String>(expected),
+                    Arrays.asList(ds.getSortedStrings()));
+        }
+    }
+
+    @Test
+    public void testBounded() {
+        // A bounded set holds a uniform sample of the distinct strings, usable as quantiles.
+        final int distinct = 100000;
+        final int maxSize = 1000;
+        for (ContentsKind kind : new ContentsKind[] { ContentsKind.String, ContentsKind.Category }) {
+            Table table = stringTable(2 * distinct, distinct, kind);
+            ParallelDataSet<ITable> all = TestTables.makeParallel(table, distinct / 7);
+            DistinctStrings ds = all.blockingSketch(
+                    new DistinctStringsSketch(maxSize, new String[] { "S" })).get(0);
+            Assert.assertTrue(ds.isTruncated());
+            Assert.assertEquals(maxSize, ds.size());
+            Assert.assertEquals(2 * distinct, ds.getColumnSize());
+            long present = distinct - distinct / 10;
+            Assert.assertEquals(present, ds.estimatedDistinctCount(), present * 0.1);
+
+            String[] all_strings = new String[(int)present];
+            int count = 0;
+            for (int i = 0; i < distinct; i++)
+                if (i % 10 != 9)
+                    all_strings[count++] = "s" + i;
+            Arrays.sort(all_strings);
+            String[] sample = ds.getSortedStrings();
+            // The sample covers all strings.
+            Assert.assertEquals(all_strings[0], sample[0]);
+            Assert.assertEquals(all_strings[all_strings.length - 1], sample[sample.length - 1]);
+            for (int q = 1; q < 10; q++) {
+                String boundary = sample[q * maxSize / 10];
+                int rank = Arrays.binarySearch(all_strings, boundary);
+                Assert.assertTrue(rank >= 0);
+                Assert.assertEquals(q / 10.0, rank / (double)present, 0.05);
+            }
+        }
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        final int maxSize = 100;
+        DistinctStrings ds = new DistinctStrings(maxSize);
+        // Stop just before the set is pruned, when its hash table is largest.
+        for (int i = 0; i < 2 * maxSize; i++)
+            ds.add("s" + i);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(ds);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        DistinctStrings copy = (DistinctStrings)in.readObject();
+        Assert.assertTrue(copy.isTruncated());
+        Assert.assertEquals(maxSize, copy.size());
+        Assert.assertArrayEquals(ds.getSortedStrings(), copy.getSortedStrings());
+        Assert.assertEquals(ds.estimatedDistinctCount(), copy.estimatedDistinctCount());
+        // Adding to the copy works as adding to the original.
+        for (int i = 0; i < 10 * maxSize; i++) {
+            ds.add("t" + i);
+            copy.add("t" + i);
+        }
+        Assert.assertArrayEquals(ds.getSortedStrings(), copy.getSortedStrings());
+    }
+
+    @Test
+    public void testJson() {
+        Table table = stringTable(100, 5, ContentsKind.String);
+        JsonList<DistinctStrings> list =
+                new DistinctStringsSketch(3, new String[] { "S" }).create(table);
+        JsonArray array = list.toJsonTree().getAsJsonArray();
+        JsonObject ds = array.get(0).getAsJsonObject();
+        Assert.assertEquals(3, ds.size());
+        Assert.assertTrue(ds.get("truncated").getAsBoolean());
+        Assert.assertEquals(100, ds.get("columnSize").getAsLong());
+        JsonArray strings = ds.get("uniqueStrings").getAsJsonArray();
+        Assert.assertEquals(3, strings.size());
+        for (int i = 1; i < strings.size(); i++)
+            Assert.assertTrue(strings.get(i - 1).getAsString().compareTo(
+                    strings.get(i).getAsString()) < 0);
+    }
 }
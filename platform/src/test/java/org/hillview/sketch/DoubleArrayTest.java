@@ -20,7 +20,10 @@ package org.hillview.sketch;
 
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.DoubleArrayColumn;
+import org.hillview.table.FullMembership;
 import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
@@ -103,4 +106,28 @@ public class DoubleArrayTest {
         assertEquals(col.sizeInRows(), this.size);
         this.checkContents(col);
     }
+
+    /* Test for the batch accessors */
+    @Test
+    public void testDoubleArrayBatch() {
+        final DoubleArrayColumn col = generateDoubleArray(this.size, 100);
+        final IMembershipSet set = new FullMembership(this.size).filter(i -> (i % 3) != 0);
+        final IRowIterator it = set.getIterator();
+        final int[] rows = new int[7];
+        final double[] values = new double[rows.length];
+        final boolean[] missing = new boolean[rows.length];
+        int seen = 0;
+        int count = it.getNextRows(rows);
+        while (count > 0) {
+            col.asDoubles(rows, count, null, values, missing);
+            for (int i = 0; i < count; i++) {
+                assertEquals(col.isMissing(rows[i]), missing[i]);
+                if (!missing[i])
+                    assertEquals(col.getDouble(rows[i]), values[i], 1e-9);
+            }
+            seen += count;
+            count = it.getNextRows(rows);
+        }
+        assertEquals(set.getSize(), seen);
+    }
 }
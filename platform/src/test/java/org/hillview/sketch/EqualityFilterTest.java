@@ -6,12 +6,17 @@ import org.hillview.sketches.BasicColStatSketch;
 import org.hillview.sketches.BasicColStats;
 import org.hillview.table.*;
 import org.hillview.table.api.ColumnNameAndConverter;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ICompiledFilter;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.TestTables;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Collections;
+
 public class EqualityFilterTest {
     @Test
     public void testFilterSmallTable() {
@@ -127,4 +132,65 @@ public class EqualityFilterTest {
         // The sketch should have counted 'count' 'name's in the IDataset.
         Assert.assertEquals(count, bcs.getRowCount());
     }
+
+    @Test
+    public void testCompiledFilters() {
+        SmallTable table = TestTables.getMissingIntTable(2000, 1);
+        IColumn col = table.getColumns().iterator().next();
+        int value = col.getInt(col.isMissing(3) ? 4 : 3);
+        IRowIterator it = table.getMembershipSet().getIterator();
+        int[] rows = new int[2000];
+        int count = it.getNextRows(rows);
+        boolean[] result = new boolean[count];
+        for (boolean complement : new boolean[] { false, true }) {
+            for (Integer compare : new Integer[] { value, null }) {
+                EqualityFilter filter = new EqualityFilter(col.getName(), compare, complement);
+                ICompiledFilter compiled = filter.compile(table);
+                compiled.test(rows, count, result);
+                int selected = 0;
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    boolean expected = compare == null ? col.isMissing(row) :
+                            !col.isMissing(row) && col.getInt(row) == compare;
+                    expected ^= complement;
+                    Assert.assertEquals(expected, result[i]);
+                    Assert.assertEquals(expected, compiled.test(row));
+                    if (expected)
+                        selected++;
+                }
+                ITable filtered = new FilterMap(filter).apply(table);
+                Assert.assertEquals(selected, filtered.getNumOfRows());
+            }
+        }
+    }
+
+    @Test
+    public void testCategoryFilter() {
+        String[] data = new String[1000];
+        String[] values = new String[] { "a", "b", "c", null };
+        for (int i = 0; i < data.length; i++)
+            data[i] = values[(i * 7) % values.length];
+        CategoryArrayColumn col = new CategoryArrayColumn(
+                new ColumnDescription("Cat", ContentsKind.Category, true), data);
+        Table table = new Table(Collections.singletonList(col));
+        IRowIterator it = table.getMembershipSet().getIterator();
+        int[] rows = new int[data.length];
+        int count = it.getNextRows(rows);
+        boolean[] result = new boolean[count];
+        for (boolean complement : new boolean[] { false, true }) {
+            for (String compare : new String[] { "b", "absent", null }) {
+                EqualityFilter filter = new EqualityFilter(col.getName(), compare, complement);
+                ICompiledFilter compiled = filter.compile(table);
+                compiled.test(rows, count, result);
+                for (int i = 0; i < count; i++) {
+                    int row = rows[i];
+                    boolean expected = compare == null ? data[row] == null :
+                            compare.equals(data[row]);
+                    expected ^= complement;
+                    Assert.assertEquals(expected, result[i]);
+                    Assert.assertEquals(expected, compiled.test(row));
+                }
+            }
+        }
+    }
 }
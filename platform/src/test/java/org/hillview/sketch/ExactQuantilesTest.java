@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.sketches.ColumnSortOrientation;
+import org.hillview.sketches.ExactQuantiles;
+import org.hillview.sketches.SampleQuantileSketch;
+import org.hillview.table.*;
+import org.hillview.table.api.*;
+import org.hillview.utils.Randomness;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ExactQuantilesTest {
+    private static final double[] quantiles =
+            new double[] { 0, 0.001, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1 };
+
+    private static void checkQuantiles(IDataSet<ITable> data, IColumn column,
+                                       ExactQuantiles exact) {
+        double[] values = new double[column.sizeInRows()];
+        int present = 0;
+        for (int i = 0; i < column.sizeInRows(); i++)
+            if (!column.isMissing(i))
+                values[present++] = column.asDouble(i, null);
+        values = Arrays.copyOf(values, present);
+        Arrays.sort(values);
+        double[] result = exact.quantiles(data, quantiles);
+        for (int i = 0; i < quantiles.length; i++) {
+            int rank = Math.max(0, (int)Math.ceil(quantiles[i] * present) - 1);
+            Assert.assertEquals(values[rank], result[i], 0);
+        }
+    }
+
+    @Test
+    public void testIntColumn() {
+        final int size = 100000;
+        SmallTable table = TestTables.getMissingIntTable(size, 1);
+        IColumn col = table.getColumns().iterator().next();
+        ColumnNameAndConverter name = new ColumnNameAndConverter(col.getName());
+        IDataSet<ITable> data = TestTables.makeParallel(table, size / 7);
+        checkQuantiles(data, col, new ExactQuantiles(name));
+        // Force several narrowing rounds.
+        checkQuantiles(data, col, new ExactQuantiles(name, 10, 16));
+    }
+
+    @Test
+    public void testSkewedDoubles() {
+        // Values spread over many orders of magnitude, with duplicates, signed zeros
+        // and infinities; small buckets force many rounds.
+        final int size = 20000;
+        Randomness random = new Randomness(1);
+        ColumnDescription desc = new ColumnDescription("X", ContentsKind.Double, true);
+        DoubleArrayColumn col = new DoubleArrayColumn(desc, size);
+        for (int i = 0; i < size; i++) {
+            int kind = random.nextInt(20);
+            double v = Math.exp(random.nextGaussian() * 50);
+            if (kind == 0)
+                col.setMissing(i);
+            else if (kind == 1)
+                col.set(i, -0.0);
+            else if (kind == 2)
+                col.set(i, 0.0);
+            else if (kind == 3)
+                col.set(i, 1.5);
+            else if (kind == 4)
+                col.set(i, Double.POSITIVE_INFINITY);
+            else if (kind < 12)
+                col.set(i, v);
+            else
+                col.set(i, -v);
+        }
+        col.set(0, Double.NEGATIVE_INFINITY);
+        Table table = new Table(java.util.Collections.singletonList(col), new FullMembership(size));
+        ColumnNameAndConverter name = new ColumnNameAndConverter("X");
+        IDataSet<ITable> data = TestTables.makeParallel(table, size / 5);
+        checkQuantiles(data, col, new ExactQuantiles(name));
+        checkQuantiles(data, col, new ExactQuantiles(name, 1, 16));
+        checkQuantiles(data, col, new ExactQuantiles(name, 100, 4));
+    }
+
+    @Test
+    public void testEmpty() {
+        SmallTable table = TestTables.getMissingIntTable(100, 1);
+        IColumn col = table.getColumns().iterator().next();
+        IMembershipSet none = table.getMembershipSet().filter(i -> false);
+        ITable empty = table.selectRowsFromFullTable(none);
+        double[] result = new ExactQuantiles(new ColumnNameAndConverter(col.getName()))
+                .quantiles(new LocalDataSet<ITable>(empty), 0.5);
+        Assert.assertTrue(Double.isNaN(result[0]));
+    }
+
+    //@Test
+    public void testExactQuantilePerf() {
+        // Exact median and p99 compared with an approximate SampleQuantileSketch,
+        // on 16 partitions of 125K rows.
+        final int size = 2000000;
+        final int parts = 16;
+        List<IDataSet<ITable>> partitions = new ArrayList<IDataSet<ITable>>();
+        for (int i = 0; i < parts; i++)
+            partitions.add(new LocalDataSet<ITable>(TestTables.getIntTable(size / parts, 1)));
+        IDataSet<ITable> all = new ParallelDataSet<ITable>(partitions);
+        Schema schema = TestTables.getIntTable(1, 1).getSchema();
+        String column = schema.getColumnNames().iterator().next();
+        RecordOrder order = new RecordOrder();
+        order.append(new ColumnSortOrientation(schema.getDescription(column), true));
+        SampleQuantileSketch sample = new SampleQuantileSketch(order, 100, size);
+        ExactQuantiles exact = new ExactQuantiles(new ColumnNameAndConverter(column));
+        System.out.println("SampleQuantileSketch");
+        TestUtil.runPerfTest(k -> all.blockingSketch(sample), 10);
+        System.out.println("ExactQuantiles");
+        TestUtil.runPerfTest(k -> exact.quantiles(all, 0.5, 0.99), 10);
+    }
+}
@@ -5,16 +5,23 @@ import org.hillview.dataset.ParallelDataSet;
 import org.hillview.dataset.api.IDataSet;
 import org.hillview.sketches.FreqKList;
 import org.hillview.sketches.FreqKSketch;
+import org.hillview.table.ColumnDescription;
 import org.hillview.table.HashSubSchema;
+import org.hillview.table.IntArrayColumn;
+import org.hillview.table.RowSnapshot;
 import org.hillview.table.SmallTable;
 import org.hillview.table.Table;
+import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
+import org.hillview.utils.Randomness;
 import org.hillview.utils.TestTables;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 
 public class FreqKTest {
@@ -90,4 +97,73 @@ public class FreqKTest {
         String s = "10: (3-4)\n20: (3-4)\n30: (2-3)\n40: (1-2)\nError bound: 1\n";
         //Assert.assertEquals(fk.create(t).toString(), s);
     }
+
+    private static void checkBound(ITable table, double epsilon, boolean split) {
+        final int size = table.getNumOfRows();
+        HashMap<RowSnapshot, Integer> exact = new HashMap<RowSnapshot, Integer>();
+        for (int i = 0; i < size; i++)
+            exact.merge(new RowSnapshot(table, i), 1, Integer::sum);
+        FreqKSketch fk = new FreqKSketch(table.getSchema(), epsilon);
+        FreqKList result = split ?
+                TestTables.makeParallel(table, size / 7).blockingSketch(fk) :
+                fk.create(table);
+        int maxSize = (int)Math.ceil(1 / epsilon);
+        int error = size / (maxSize + 1);
+        Assert.assertEquals(size, result.totalRows);
+        Assert.assertTrue(result.hMap.size() <= maxSize);
+        result.hMap.forEach((rs, count) -> {
+            Assert.assertTrue(count <= exact.get(rs));
+            Assert.assertTrue(count >= exact.get(rs) - result.getErrBound());
+        });
+        Assert.assertTrue(result.getErrBound() <= error);
+        exact.forEach((rs, count) -> {
+            if (count > error)
+                Assert.assertTrue(result.hMap.containsKey(rs));
+        });
+    }
+
+    @Test
+    public void testMisraGriesBound() {
+        SmallTable skewed = TestTables.getHeavyIntTable(2, 20000, 2.0, 14);
+        SmallTable uniform = TestTables.getIntTable(20000, 2);
+        for (boolean split : new boolean[] { false, true }) {
+            checkBound(skewed, 0.01, split);
+            checkBound(skewed, 0.001, split);
+            checkBound(uniform, 0.01, split);
+            checkBound(uniform, 0.001, split);
+        }
+    }
+
+    /**
+     * A column with a Zipf-like distribution: the frequency of value v decreases
+     * approximately as v^-(1 + alpha).
+     */
+    private static SmallTable paretoTable(int size, double alpha) {
+        ColumnDescription desc = new ColumnDescription("Value", ContentsKind.Integer, false);
+        IntArrayColumn col = new IntArrayColumn(desc, size);
+        Randomness rn = new Randomness(4);
+        for (int i = 0; i < size; i++)
+            col.set(i, (int)Math.min(Integer.MAX_VALUE,
+                    Math.pow(1 - rn.nextDouble(), -1 / alpha)));
+        return new SmallTable(Collections.singletonList(col));
+    }
+
+    //@Test
+    public void testFreqKPerf() {
+        // Heavy hitters with 1000 counters on a partition of 10M rows.
+        final double epsilon = 0.001;
+        final int size = 10000000;
+        SmallTable skewed = paretoTable(size, 0.2);
+        SmallTable uniform = TestTables.getIntTable(size, 1);
+        FreqKSketch fk = new FreqKSketch(skewed.getSchema(), epsilon);
+        System.out.println("Skewed");
+        TestUtil.runPerfTest(k -> fk.create(skewed), 5);
+        FreqKSketch fu = new FreqKSketch(uniform.getSchema(), epsilon);
+        System.out.println("Uniform");
+        TestUtil.runPerfTest(k -> fu.create(uniform), 5);
+        FreqKList left = fk.create(skewed);
+        FreqKList right = fk.create(skewed.compress(skewed.getMembershipSet().sample(0.5)));
+        System.out.println("Merge");
+        TestUtil.runPerfTest(k -> fk.add(left, right), 20);
+    }
 }
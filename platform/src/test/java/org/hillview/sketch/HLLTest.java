@@ -1,16 +1,21 @@
 package org.hillview.sketch;
 
+import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.api.IDataSet;
 import org.hillview.sketches.*;
-import org.hillview.table.FullMembership;
-import org.hillview.table.IntArrayColumn;
-import org.hillview.table.SmallTable;
+import org.hillview.table.*;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.IntArrayGenerator;
 import org.hillview.utils.Randomness;
 import org.hillview.utils.TestTables;
 import org.junit.Test;
 
+import java.util.*;
+
 import static org.junit.Assert.*;
 
 
@@ -43,4 +48,143 @@ public class HLLTest {
         final HLogLog hll = all.blockingSketch(new HLogLogSketch(colName,16,12345678));
         assertTrue(hll.distinctItemsEstimator() > 85000);
     }
+
+    private static HLogLog distinctInts(int from, int to, int logRegNum) {
+        int[] data = new int[to - from];
+        for (int i = 0; i < data.length; i++)
+            data[i] = from + i;
+        IntArrayColumn col = new IntArrayColumn(
+                new ColumnDescription("X", ContentsKind.Integer, false), data);
+        HLogLog hll = new HLogLog(logRegNum, 1);
+        hll.createHLL(col, new FullMembership(data.length));
+        return hll;
+    }
+
+    @Test
+    public void testAccuracy() {
+        // Sparse estimates are almost exact; dense estimates are unbiased at all sizes.
+        for (int size : new int[] { 10, 300, 1000, 3000, 10000, 100000, 1000000 }) {
+            HLogLog hll = distinctInts(0, size, 12);
+            assertEquals(size <= 1000, hll.isSparse());
+            double error = Math.abs(hll.distinctItemCount - size) / (double) size;
+            assertTrue(error < (hll.isSparse() ? 0.005 : 0.05));
+        }
+    }
+
+    @Test
+    public void testUnion() {
+        // Overlapping ranges; sparse with sparse, sparse with dense and dense with dense.
+        HLogLog a = distinctInts(0, 500, 12);
+        HLogLog b = distinctInts(250, 800, 12);
+        HLogLog c = distinctInts(500, 50000, 12);
+        HLogLog ab = a.union(b);
+        assertTrue(ab.isSparse());
+        assertEquals(800, ab.distinctItemCount, 4);
+        HLogLog abc = ab.union(c);
+        assertFalse(abc.isSparse());
+        assertEquals(50000, abc.distinctItemCount, 2500);
+        HLogLog whole = distinctInts(0, 50000, 12);
+        HLogLog split = distinctInts(0, 25000, 12).union(distinctInts(25000, 50000, 12));
+        assertEquals(whole.distinctItemCount, split.distinctItemCount);
+        assertEquals(whole.distinctItemCount, a.union(c).distinctItemCount);
+        // Crossing the sparse limit in a union.
+        HLogLog crossing = distinctInts(0, 700, 12).union(distinctInts(700, 1400, 12));
+        assertFalse(crossing.isSparse());
+        assertEquals(distinctInts(0, 1400, 12).distinctItemCount, crossing.distinctItemCount);
+    }
+
+    @Test
+    public void testSerialization() {
+        for (int size : new int[] { 0, 900, 100000 }) {
+            HLogLog hll = distinctInts(0, size, 12);
+            byte[] bytes = SerializationUtils.serialize(hll);
+            HLogLog copy = SerializationUtils.deserialize(bytes);
+            assertEquals(hll.distinctItemCount, copy.distinctItemCount);
+            assertEquals(hll.distinctItemsEstimator(), copy.distinctItemsEstimator());
+            assertEquals(hll.isSparse(), copy.isSparse());
+            // Registers take 6 bits; sparse entries at most 4 bytes.
+            assertTrue(bytes.length < (hll.isSparse() ? 200 + 4 * size : 200 + 3 * 4096 / 4));
+            HLogLog more = distinctInts(size, size + 2000, 12);
+            assertEquals(hll.union(more).distinctItemCount, copy.union(more).distinctItemCount);
+        }
+    }
+
+    @Test
+    public void testCategoryColumn() {
+        // A category column gives the same estimate as a string column with the same values.
+        final int size = 50000;
+        String[] values = new String[size];
+        Randomness random = new Randomness(2);
+        for (int i = 0; i < size; i++)
+            values[i] = i % 50 == 0 ? null : "v" + random.nextInt(3000);
+        IColumn strings = new StringArrayColumn(
+                new ColumnDescription("S", ContentsKind.String, true), values);
+        IColumn categories = new CategoryArrayColumn(
+                new ColumnDescription("S", ContentsKind.Category, true), values);
+        HLogLog fromStrings = new HLogLog(12, 3);
+        fromStrings.createHLL(strings, new FullMembership(size));
+        HLogLog fromCategories = new HLogLog(12, 3);
+        fromCategories.createHLL(categories, new FullMembership(size));
+        assertEquals(fromStrings.distinctItemCount, fromCategories.distinctItemCount);
+        Set<String> distinct = new HashSet<String>(Arrays.asList(values));
+        distinct.remove(null);
+        assertEquals(distinct.size(), fromCategories.distinctItemCount, distinct.size() * 0.05);
+
+        // Partitions of both kinds can be combined.
+        List<IDataSet<ITable>> parts = new ArrayList<IDataSet<ITable>>();
+        parts.add(new LocalDataSet<ITable>(new Table(Collections.singletonList(strings),
+                new FullMembership(size).filter(i -> i % 2 == 0))));
+        parts.add(new LocalDataSet<ITable>(new Table(Collections.singletonList(categories),
+                new FullMembership(size).filter(i -> i % 2 == 1))));
+        HLogLog mixed = new ParallelDataSet<ITable>(parts).blockingSketch(
+                new HLogLogSketch("S", 12, 3));
+        assertEquals(fromStrings.distinctItemCount, mixed.distinctItemCount);
+    }
+
+    @Test
+    public void testMultiColumn() {
+        final int size = 100000;
+        SmallTable table = TestTables.getIntTable(size, 2);
+        List<String> columns = new ArrayList<String>(table.getSchema().getColumnNames());
+        Set<List<Integer>> pairs = new HashSet<List<Integer>>();
+        IColumn first = table.getColumn(columns.get(0));
+        IColumn second = table.getColumn(columns.get(1));
+        for (int i = 0; i < size; i++)
+            pairs.add(Arrays.asList(first.getInt(i) % 100, second.getInt(i) % 100));
+        IntArrayColumn[] reduced = new IntArrayColumn[2];
+        for (int c = 0; c < 2; c++) {
+            IColumn col = c == 0 ? first : second;
+            reduced[c] = new IntArrayColumn(col.getDescription(), size);
+            for (int i = 0; i < size; i++)
+                reduced[c].set(i, col.getInt(i) % 100);
+        }
+        SmallTable small = new SmallTable(Arrays.asList(reduced[0], reduced[1]));
+        HLogLog hll = TestTables.makeParallel(small, size / 10).blockingSketch(
+                new HLogLogSketch(columns, 12, 4));
+        assertEquals(pairs.size(), hll.distinctItemCount, pairs.size() * 0.05);
+        HLogLog single = new HLogLogSketch(columns.get(0), 12, 4).create(small);
+        assertEquals(100, single.distinctItemCount, 2);
+    }
+
+    //@Test
+    public void testHLLPerf() {
+        // Building the sketch over a category column and over the same strings.
+        final int size = 2000000;
+        String[] values = new String[size];
+        Randomness random = new Randomness(2);
+        for (int i = 0; i < size; i++)
+            values[i] = "value" + random.nextInt(20);
+        IColumn strings = new StringArrayColumn(
+                new ColumnDescription("S", ContentsKind.String, false), values);
+        IColumn categories = new CategoryArrayColumn(
+                new ColumnDescription("S", ContentsKind.Category, false), values);
+        FullMembership full = new FullMembership(size);
+        System.out.println("String column");
+        TestUtil.runPerfTest(k -> new HLogLog(12, 0).createHLL(strings, full), 10);
+        System.out.println("Category column");
+        TestUtil.runPerfTest(k -> new HLogLog(12, 0).createHLL(categories, full), 10);
+        IColumn ints = IntArrayGenerator.getRandIntArray(size, size, "I", random);
+        System.out.println("Int column");
+        TestUtil.runPerfTest(k -> new HLogLog(12, 0).createHLL(ints, full), 10);
+    }
 }
@@ -18,9 +18,13 @@
 
 package org.hillview.sketch;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.PartialResultMonoid;
 import org.hillview.dataset.api.IDataSet;
 import org.hillview.dataset.api.ISketch;
+import org.hillview.dataset.api.PartialResult;
 import org.hillview.sketches.*;
 import org.hillview.table.DoubleArrayColumn;
 import org.hillview.table.FullMembership;
@@ -28,9 +32,12 @@ import org.hillview.table.Table;
 import org.hillview.table.api.ColumnAndConverter;
 import org.hillview.table.api.ColumnNameAndConverter;
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -99,6 +106,68 @@ public class HistogramTest {
         runNTimes(r, runCount, "Dataset histogram (separate thread)", colSize);
     }
 
+    /**
+     * Reference histogram which reads one row at a time.
+     * @return The bucket counts; the last element is the number of missing values.
+     */
+    static long[] rowAtATimeHistogram(BucketsDescriptionEqSize buckDes, ColumnAndConverter column,
+                                      IMembershipSet set) {
+        final IRowIterator it = set.getIterator();
+        final long[] counts = new long[buckDes.getNumOfBuckets() + 1];
+        int row = it.getNextRow();
+        while (row >= 0) {
+            if (column.isMissing(row))
+                counts[counts.length - 1]++;
+            else {
+                int index = buckDes.indexOf(column.asDouble(row));
+                if (index >= 0)
+                    counts[index]++;
+            }
+            row = it.getNextRow();
+        }
+        return counts;
+    }
+
+    //@Test
+    public void testBatchHistogramPerf() {
+        // Compares the row-at-a-time loop with the batch loop used by Histogram.create
+        final int bucketNum = 40;
+        final int mega = 1024 * 1024;
+        final int colSize = 100 * mega;
+        final int runCount = 10;
+
+        BucketsDescriptionEqSize buckDes = new BucketsDescriptionEqSize(0, 100, bucketNum);
+        DoubleArrayColumn col = DoubleArrayTest.generateDoubleArray(colSize, 100);
+        ColumnAndConverter cc = new ColumnAndConverter(col);
+        FullMembership fMap = new FullMembership(colSize);
+        IMembershipSet sparse = fMap.filter(i -> (i % 4) != 0);
+
+        Runnable r = () -> rowAtATimeHistogram(buckDes, cc, fMap);
+        runNTimes(r, runCount, "Row at a time histogram, full membership", colSize);
+        r = () -> new Histogram(buckDes).create(cc, fMap, 1.0);
+        runNTimes(r, runCount, "Batch histogram, full membership", colSize);
+        r = () -> rowAtATimeHistogram(buckDes, cc, sparse);
+        runNTimes(r, runCount, "Row at a time histogram, sparse membership", sparse.getSize());
+        r = () -> new Histogram(buckDes).create(cc, sparse, 1.0);
+        runNTimes(r, runCount, "Batch histogram, sparse membership", sparse.getSize());
+    }
+
+    @Test
+    public void testBatchHistogram() {
+        final int bucketNum = 17;
+        final int colSize = 10000;
+        BucketsDescriptionEqSize buckDes = new BucketsDescriptionEqSize(0, 100, bucketNum);
+        DoubleArrayColumn col = DoubleArrayTest.generateDoubleArray(colSize, 100);
+        ColumnAndConverter cc = new ColumnAndConverter(col);
+        IMembershipSet set = new FullMembership(colSize).filter(i -> (i % 7) != 3);
+        Histogram hist = new Histogram(buckDes);
+        hist.create(cc, set, 1.0);
+        long[] expected = rowAtATimeHistogram(buckDes, cc, set);
+        for (int i = 0; i < bucketNum; i++)
+            assertEquals(expected[i], hist.getCount(i));
+        assertEquals(expected[bucketNum], hist.getMissingData());
+    }
+
     @Test
     public void testHistogram() throws Exception {
         final int bucketNum = 110;
@@ -169,4 +238,112 @@ public class HistogramTest {
         size2 += hist.getMissingHistogramD2().getOutOfRange();
         assertEquals(size + size1 + size2, expectedSize);
     }
+
+    static HeatMap randomHeatMap(IBucketsDescription b1, IBucketsDescription b2, int size, int seed) {
+        HeatMap hm = new HeatMap(b1, b2);
+        DoubleArrayColumn col1 = DoubleArrayTest.generateDoubleArray(size, 100 + seed);
+        DoubleArrayColumn col2 = DoubleArrayTest.generateDoubleArray(size, 50 + seed);
+        hm.createHeatMap(new ColumnAndConverter(col1), new ColumnAndConverter(col2),
+                new FullMembership(size));
+        return hm;
+    }
+
+    @Test
+    public void testAccumulate() {
+        final int colSize = 1000;
+        BucketsDescriptionEqSize b1 = new BucketsDescriptionEqSize(0, 100, 7);
+        BucketsDescriptionEqSize b2 = new BucketsDescriptionEqSize(0, 60, 5);
+        HeatMapSketch sk = new HeatMapSketch(b1, b2, new ColumnNameAndConverter("x"),
+                new ColumnNameAndConverter("y"));
+        HeatMap hm1 = randomHeatMap(b1, b2, colSize, 1);
+        HeatMap hm2 = randomHeatMap(b1, b2, 2 * colSize, 2);
+        HeatMap union = hm1.union(hm2);
+        HeatMap acc = sk.addInPlace(sk.addInPlace(sk.zero(), hm1), hm2);
+        assertEquals(union.toJson(), acc.toJson());
+        basicTestHeatMap(acc, 3 * colSize);
+        // The right operand is unchanged
+        basicTestHeatMap(hm2, 2 * colSize);
+
+        HeatMap3D h3 = new HeatMap3D(b1, b2, b1);
+        DoubleArrayColumn col = DoubleArrayTest.generateDoubleArray(colSize, 100);
+        ColumnAndConverter cc = new ColumnAndConverter(col);
+        h3.createHeatMap(cc, cc, cc, new FullMembership(colSize));
+        HeatMap3D h3Union = h3.union(h3);
+        HeatMap3D h3Acc = h3.union(h3);
+        h3Acc.accumulate(h3);
+        for (int i = 0; i < b1.getNumOfBuckets(); i++)
+            for (int j = 0; j < b2.getNumOfBuckets(); j++)
+                for (int k = 0; k < b1.getNumOfBuckets(); k++)
+                    assertEquals(3 * h3.getCount(i, j, k), h3Acc.getCount(i, j, k));
+        assertEquals(3 * h3.getSize(), h3Acc.getSize());
+        assertEquals(2 * h3.getSize(), h3Union.getSize());
+
+        // The monoid over partial results accumulates into its left operand.
+        PartialResultMonoid<HeatMap> prm = new PartialResultMonoid<HeatMap>(sk);
+        List<PartialResult<HeatMap>> parts = new ArrayList<PartialResult<HeatMap>>();
+        parts.add(new PartialResult<HeatMap>(0.25, hm1));
+        parts.add(new PartialResult<HeatMap>(0.5, hm2));
+        parts.add(new PartialResult<HeatMap>(0.25, hm1));
+        PartialResult<HeatMap> sum = prm.reduce(parts);
+        assertEquals(1.0, sum.deltaDone, 1e-9);
+        basicTestHeatMap(sum.deltaValue, 4 * colSize);
+        basicTestHeatMap(hm1, colSize);
+    }
+
+    @Test
+    public void testHeatMapJson() {
+        BucketsDescriptionEqSize b1 = new BucketsDescriptionEqSize(0, 100, 3);
+        BucketsDescriptionEqSize b2 = new BucketsDescriptionEqSize(0, 60, 4);
+        HeatMap hm = randomHeatMap(b1, b2, 500, 0);
+        JsonObject json = hm.toJsonTree().getAsJsonObject();
+        JsonArray buckets = json.getAsJsonArray("buckets");
+        assertEquals(3, buckets.size());
+        for (int i = 0; i < 3; i++) {
+            JsonArray row = buckets.get(i).getAsJsonArray();
+            assertEquals(4, row.size());
+            for (int j = 0; j < 4; j++)
+                assertEquals(hm.getCount(i, j), row.get(j).getAsLong());
+        }
+        assertEquals(hm.getSize(), json.get("totalSize").getAsLong());
+        assertEquals(hm.getMissingHistogramD1().getCount(0),
+                json.getAsJsonObject("histogramMissingD1").getAsJsonArray("buckets").get(0).getAsLong());
+    }
+
+    /**
+     * @return The number of bytes allocated so far by the current thread.
+     */
+    static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    //@Test
+    public void testAccumulatePerf() {
+        // Compares allocation when summing partial results with add and with addInPlace,
+        // as done for every partial result received by RpcTarget and HillviewServer.
+        final int bucketNum = 100;
+        final int partials = 2000;
+        final int runCount = 5;
+        BucketsDescriptionEqSize b = new BucketsDescriptionEqSize(0, 100, bucketNum);
+        HeatMapSketch sk = new HeatMapSketch(b, b, new ColumnNameAndConverter("x"),
+                new ColumnNameAndConverter("y"));
+        PartialResultMonoid<HeatMap> prm = new PartialResultMonoid<HeatMap>(sk);
+        PartialResult<HeatMap> delta = new PartialResult<HeatMap>(
+                1.0 / partials, randomHeatMap(b, b, 10000, 0));
+        for (int run = 0; run < runCount; run++) {
+            for (int inPlace = 0; inPlace < 2; inPlace++) {
+                long bytes = allocatedBytes();
+                long start = System.nanoTime();
+                PartialResult<HeatMap> acc = prm.zero();
+                for (int i = 0; i < partials; i++)
+                    acc = inPlace == 1 ? prm.addInPlace(acc, delta) : prm.add(acc, delta);
+                long time = System.nanoTime() - start;
+                bytes = allocatedBytes() - bytes;
+                assert acc != null;
+                System.out.println((inPlace == 1 ? "addInPlace" : "add") + "," +
+                        (time / 1000000) + "ms," + (bytes / partials) + " bytes/partial result");
+            }
+        }
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.utils.IntBitmap;
+import org.hillview.utils.IntSet;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+
+public class IntBitmapTest {
+    private static IntBitmap randomBitmap(Random random, int size, int range, IntSet reference) {
+        IntBitmap result = new IntBitmap();
+        for (int i = 0; i < size; i++) {
+            int value = random.nextInt(range);
+            result.add(value);
+            reference.add(value);
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the bitmap contains exactly the elements of the set, in increasing order.
+     */
+    private static void check(IntBitmap bitmap, IntSet expected) {
+        assertEquals(expected.size(), bitmap.cardinality());
+        IntBitmap.IntBitmapIterator it = bitmap.getIterator();
+        int previous = -1;
+        int count = 0;
+        for (int v = it.getNext(); v >= 0; v = it.getNext()) {
+            assertTrue(v > previous);
+            assertTrue(expected.contains(v));
+            previous = v;
+            count++;
+        }
+        assertEquals(expected.size(), count);
+
+        // The batch iterator returns the same elements.
+        it = bitmap.getIterator();
+        int[] buffer = new int[100];
+        previous = -1;
+        count = 0;
+        for (int n = it.getNext(buffer); n > 0; n = it.getNext(buffer)) {
+            for (int i = 0; i < n; i++) {
+                assertTrue(buffer[i] > previous);
+                assertTrue(bitmap.contains(buffer[i]));
+                previous = buffer[i];
+            }
+            count += n;
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void testAddContains() {
+        IntBitmap bitmap = new IntBitmap();
+        for (int i = 0; i < 1000000; i += 3)
+            bitmap.add(i);
+        assertEquals(333334, bitmap.cardinality());
+        assertTrue(bitmap.contains(999999));
+        assertFalse(bitmap.contains(1000));
+        assertFalse(bitmap.contains(2000000));
+        bitmap.runOptimize();
+        assertEquals(333334, bitmap.cardinality());
+        assertTrue(bitmap.contains(3));
+        assertFalse(bitmap.contains(4));
+    }
+
+    @Test
+    public void testRange() {
+        IntBitmap range = IntBitmap.range(100, 200000);
+        assertEquals(200000 - 100, range.cardinality());
+        assertFalse(range.contains(99));
+        assertTrue(range.contains(100));
+        assertTrue(range.contains(65536));
+        assertTrue(range.contains(199999));
+        assertFalse(range.contains(200000));
+        IntSet expected = new IntSet();
+        for (int i = 100; i < 200000; i++)
+            expected.add(i);
+        check(range, expected);
+        // Runs are much smaller than the equivalent bitmap
+        assertTrue(range.sizeInBytes() < 1000);
+        assertEquals(0, IntBitmap.range(5, 5).cardinality());
+    }
+
+    @Test
+    public void testSetOperations() {
+        Random random = new Random(1);
+        // Mix sparse chunks (arrays) and dense chunks (bitmaps).
+        int[] sizes = { 100, 10000, 300000 };
+        for (int size1 : sizes) {
+            for (int size2 : sizes) {
+                IntSet s1 = new IntSet();
+                IntSet s2 = new IntSet();
+                IntBitmap b1 = randomBitmap(random, size1, 500000, s1);
+                IntBitmap b2 = randomBitmap(random, size2, 500000, s2);
+                if (size1 == 10000)
+                    b1.runOptimize();
+                check(b1, s1);
+
+                IntSet union = s1.copy();
+                IntSet inter = new IntSet();
+                IntSet minus = new IntSet();
+                IntSet.IntSetIterator it = s2.getIterator();
+                for (int v = it.getNext(); v >= 0; v = it.getNext()) {
+                    union.add(v);
+                    if (s1.contains(v))
+                        inter.add(v);
+                }
+                it = s1.getIterator();
+                for (int v = it.getNext(); v >= 0; v = it.getNext())
+                    if (!s2.contains(v))
+                        minus.add(v);
+                check(b1.or(b2), union);
+                check(b1.and(b2), inter);
+                check(b1.andNot(b2), minus);
+                // Operands are not modified
+                check(b1, s1);
+                check(b2, s2);
+            }
+        }
+
+        IntBitmap range = IntBitmap.range(0, 300000);
+        IntSet s = new IntSet();
+        IntBitmap b = randomBitmap(random, 1000, 600000, s);
+        IntSet inter = new IntSet();
+        IntSet.IntSetIterator it = s.getIterator();
+        for (int v = it.getNext(); v >= 0; v = it.getNext())
+            if (v < 300000)
+                inter.add(v);
+        check(b.and(range), inter);
+        check(range.and(b), inter);
+        assertEquals(300000 - inter.size(), range.andNot(b).cardinality());
+    }
+}
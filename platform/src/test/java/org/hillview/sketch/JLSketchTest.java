@@ -1,16 +1,25 @@
 package org.hillview.sketch;
 
+import org.hillview.dataset.api.IDataSet;
 import org.hillview.sketches.CorrMatrix;
 import org.hillview.sketches.JLProjection;
 import org.hillview.sketches.JLSketch;
 import org.hillview.sketches.SampleCorrelationSketch;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.DoubleArrayColumn;
+import org.hillview.table.FullMembership;
 import org.hillview.table.SmallTable;
+import org.hillview.table.Table;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ITable;
 import org.hillview.utils.TestTables;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class JLSketchTest {
 
@@ -58,4 +67,82 @@ public class JLSketchTest {
         CorrMatrix cm = ip.add(ip.create(leftTable), ip.create(rightTable));
         //System.out.printf("IP Sketch: " + Arrays.toString(cm.getCorrelationMatrix()[0]) + "\n");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void JLReproducibleTest() {
+        int size = 5000;
+        int numCols = 5;
+        SmallTable small = TestTables.getCorrelatedCols(size, numCols, 10);
+        List<String> cn = new ArrayList<String>(small.getSchema().getColumnNames());
+        List<IColumn> columns = new ArrayList<IColumn>();
+        for (IColumn col : small.getColumns())
+            columns.add(col);
+        // Partitions of a Table keep the row indexes of the whole table.
+        ITable data = new Table(columns, new FullMembership(size));
+        JLSketch sequential = new JLSketch(cn, 70, 5, false);
+        JLProjection expected = sequential.create(data);
+        // The same projection is computed in parallel, over several partitions, and again.
+        JLProjection parallel = new JLSketch(cn, 70, 5, true).create(data);
+        IDataSet<ITable> partitions = TestTables.makeParallel(data, 700);
+        JLProjection partitioned = partitions.blockingSketch(sequential);
+        JLProjection again = sequential.create(data);
+        for (String s : cn) {
+            for (int j = 0; j < 70; j++) {
+                double e = expected.get(s, j);
+                Assert.assertEquals(e, parallel.get(s, j), 0);
+                Assert.assertEquals(e, again.get(s, j), 0);
+                Assert.assertEquals(e, partitioned.get(s, j), 1e-9 * Math.abs(e));
+            }
+        }
+        Assert.assertEquals(size, partitioned.highDim);
+        // A different seed gives a different projection.
+        JLProjection other = new JLSketch(cn, 70, 6, false).create(data);
+        Assert.assertNotEquals(expected.get(cn.get(0), 0), other.get(cn.get(0), 0), 0);
+    }
+
+    @Test
+    public void JLColumnIndependenceTest() {
+        // The projection of a column does not depend on the other columns sketched.
+        SmallTable data = TestTables.getCorrelatedCols(3000, 4, 10);
+        List<String> cn = new ArrayList<String>(data.getSchema().getColumnNames());
+        JLProjection all = new JLSketch(cn, 50).create(data);
+        for (String s : cn) {
+            List<String> one = new ArrayList<String>();
+            one.add(s);
+            JLProjection single = new JLSketch(one, 50).create(data);
+            for (int j = 0; j < 50; j++)
+                Assert.assertEquals(all.get(s, j), single.get(s, j), 0);
+        }
+    }
+
+    //@Test
+    public void JLPerfTest() {
+        // Throughput of the projection of a 1M x 100 table to 100 dimensions.
+        final int size = 1000 * 1000;
+        final int numCols = 100;
+        final int lowDim = 100;
+        Random rn = new Random(1);
+        List<IColumn> columns = new ArrayList<IColumn>();
+        List<String> cn = new ArrayList<String>();
+        for (int c = 0; c < numCols; c++) {
+            DoubleArrayColumn col = new DoubleArrayColumn(
+                    new ColumnDescription("Col" + c, ContentsKind.Double, false), size);
+            for (int i = 0; i < size; i++)
+                col.set(i, rn.nextDouble());
+            columns.add(col);
+            cn.add(col.getName());
+        }
+        SmallTable table = new SmallTable(columns);
+        for (boolean parallel : new boolean[] { false, true }) {
+            JLSketch sketch = new JLSketch(cn, lowDim, 0, parallel);
+            for (int i = 0; i < 3; i++) {
+                long start = System.nanoTime();
+                sketch.create(table);
+                long time = (System.nanoTime() - start) / 1000000;
+                System.out.println((parallel ? "Parallel" : "Sequential") + ": " + time + "ms, " +
+                        String.format("%.2f", (double) size * numCols / (time * 1000)) +
+                        " Mvalues/s");
+            }
+        }
+    }
+}
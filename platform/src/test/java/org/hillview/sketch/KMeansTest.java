@@ -0,0 +1,208 @@
+package org.hillview.sketch;
+
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.maps.ClusterMap;
+import org.hillview.sketches.ClusterCenters;
+import org.hillview.sketches.KMeans;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.DoubleArrayColumn;
+import org.hillview.table.FullMembership;
+import org.hillview.table.Table;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class KMeansTest {
+    /**
+     * Rows are drawn from gaussian blobs around the centers; row i belongs to
+     * blob i % centers.length.  If missingEvery > 0 every missingEvery'th row
+     * has a missing value.
+     */
+    private static Table getBlobTable(int size, double[][] centers, double sigma,
+                                      int missingEvery) {
+        int d = centers[0].length;
+        Random rnd = new Random(42);
+        List<IColumn> columns = new ArrayList<IColumn>();
+        for (int j = 0; j < d; j++) {
+            ColumnDescription desc = new ColumnDescription("X" + j, ContentsKind.Double, true);
+            columns.add(new DoubleArrayColumn(desc, size));
+        }
+        for (int i = 0; i < size; i++) {
+            double[] center = centers[i % centers.length];
+            for (int j = 0; j < d; j++) {
+                DoubleArrayColumn col = (DoubleArrayColumn)columns.get(j);
+                if (missingEvery > 0 && i % missingEvery == 0 && j == 0)
+                    col.setMissing(i);
+                else
+                    col.set(i, center[j] + sigma * rnd.nextGaussian());
+            }
+        }
+        return new Table(columns, new FullMembership(size));
+    }
+
+    private static List<String> columnNames(int d) {
+        List<String> result = new ArrayList<String>();
+        for (int j = 0; j < d; j++)
+            result.add("X" + j);
+        return result;
+    }
+
+    @Test
+    public void testKMeans() {
+        double[][] centers = { { 0, 0 }, { 10, 0 }, { 0, 10 }, { 10, 10 } };
+        int size = 20000;
+        Table table = getBlobTable(size, centers, 1, 101);
+        IDataSet<ITable> data = TestTables.makeParallel(table, 1000);
+        List<String> colNames = columnNames(2);
+        ClusterCenters result = new KMeans(colNames, 4).blockingRun(data);
+        Assert.assertEquals(4, result.k);
+        Assert.assertTrue(result.iterations <= KMeans.MAX_ITERATIONS);
+
+        // Each true center is close to exactly one computed center.
+        int[] blobCluster = new int[centers.length];
+        for (int b = 0; b < centers.length; b++) {
+            int found = -1;
+            for (int c = 0; c < result.k; c++) {
+                double[] center = result.getCenter(c);
+                double dist = Math.hypot(center[0] - centers[b][0], center[1] - centers[b][1]);
+                if (dist < 0.1) {
+                    Assert.assertEquals(-1, found);
+                    found = c;
+                }
+            }
+            Assert.assertNotEquals(-1, found);
+            blobCluster[b] = found;
+        }
+        // The expected cost is close to 2 * sigma^2 per row.
+        double rows = size - ((size - 1) / 101 + 1);
+        Assert.assertEquals(2.0, result.cost / rows, 0.1);
+
+        ITable clustered = new ClusterMap(result, "Cluster").apply(table);
+        IColumn cluster = clustered.getColumn("Cluster");
+        IRowIterator it = clustered.getMembershipSet().getIterator();
+        int row = it.getNextRow();
+        int misplaced = 0;
+        while (row >= 0) {
+            if (row % 101 == 0) {
+                Assert.assertTrue(cluster.isMissing(row));
+            } else {
+                Assert.assertFalse(cluster.isMissing(row));
+                if (cluster.getInt(row) != blobCluster[row % centers.length])
+                    misplaced++;
+            }
+            row = it.getNextRow();
+        }
+        // The blobs overlap very little.
+        Assert.assertTrue(misplaced < size / 1000);
+    }
+
+    @Test
+    public void testReproducible() {
+        double[][] centers = { { 0, 0, 0 }, { 5, 0, 1 }, { 0, 5, 2 } };
+        Table table = getBlobTable(5000, centers, 2, 0);
+        List<String> colNames = columnNames(3);
+        ClusterCenters first = new KMeans(colNames, 3).blockingRun(TestTables.makeParallel(table, 500));
+        ClusterCenters second = new KMeans(colNames, 3).blockingRun(TestTables.makeParallel(table, 700));
+        Assert.assertArrayEquals(first.centers, second.centers, 1e-9);
+    }
+
+    @Test
+    public void testFewPoints() {
+        // Only two distinct points, but three clusters are requested.
+        double[][] centers = { { 1, 2 }, { 3, 4 } };
+        Table table = getBlobTable(100, centers, 0, 0);
+        ClusterCenters result = new KMeans(columnNames(2), 3).blockingRun(
+                TestTables.makeParallel(table, 10));
+        Assert.assertEquals(2, result.k);
+        Assert.assertEquals(0, result.cost, 0);
+        double[] first = result.getCenter(0);
+        double[] second = result.getCenter(1);
+        Assert.assertTrue(Arrays.equals(first, centers[0]) || Arrays.equals(first, centers[1]));
+        Assert.assertTrue(Arrays.equals(second, centers[0]) || Arrays.equals(second, centers[1]));
+        Assert.assertFalse(Arrays.equals(first, second));
+    }
+
+    @Test
+    public void testHugeValues() {
+        // Infinite values are ignored, and values whose squares overflow are clustered.
+        for (double huge : new double[] { 1e200, Double.POSITIVE_INFINITY }) {
+            int size = 51;
+            DoubleArrayColumn col = new DoubleArrayColumn(
+                    new ColumnDescription("X0", ContentsKind.Double, false), size);
+            for (int i = 0; i < size - 1; i++)
+                col.set(i, (double)i);
+            col.set(size - 1, huge);
+            Table table = new Table(Arrays.asList(col), new FullMembership(size));
+            ClusterCenters result = new KMeans(columnNames(1), 3).blockingRun(
+                    TestTables.makeParallel(table, 10));
+            Assert.assertEquals(3, result.k);
+            ITable clustered = new ClusterMap(result, "Cluster").apply(table);
+            IColumn cluster = clustered.getColumn("Cluster");
+            for (int i = 0; i < size - 1; i++) {
+                Assert.assertFalse(cluster.isMissing(i));
+                Assert.assertTrue(cluster.getInt(i) >= 0 && cluster.getInt(i) < result.k);
+            }
+            Assert.assertEquals(Double.isInfinite(huge), cluster.isMissing(size - 1));
+        }
+    }
+
+    @Test
+    public void testLargeOffset() {
+        // Clusters with a small spread far from the origin.
+        double offset = 1e9;
+        double[][] centers = { { offset, offset }, { offset + 6, offset }, { offset, offset + 6 } };
+        int size = 30000;
+        Table table = getBlobTable(size, centers, 1, 0);
+        ClusterCenters result = new KMeans(columnNames(2), 3).blockingRun(
+                TestTables.makeParallel(table, 3000));
+        Assert.assertEquals(3, result.k);
+        Assert.assertEquals(2.0, result.cost / size, 0.2);
+
+        // Every row is assigned to its closest center.
+        ITable clustered = new ClusterMap(result, "Cluster").apply(table);
+        IColumn cluster = clustered.getColumn("Cluster");
+        IColumn x = table.getColumn("X0");
+        IColumn y = table.getColumn("X1");
+        for (int i = 0; i < size; i++) {
+            double[] assigned = result.getCenter(cluster.getInt(i));
+            double dist = Math.hypot(x.getDouble(i) - assigned[0], y.getDouble(i) - assigned[1]);
+            for (int c = 0; c < result.k; c++) {
+                double[] center = result.getCenter(c);
+                Assert.assertTrue(dist <= Math.hypot(
+                        x.getDouble(i) - center[0], y.getDouble(i) - center[1]) + 1e-6);
+            }
+        }
+    }
+
+    //@Test
+    public void testKMeansPerf() {
+        int d = 10;
+        int k = 10;
+        double[][] centers = new double[k][d];
+        Random rnd = new Random(1);
+        for (double[] center : centers)
+            for (int j = 0; j < d; j++)
+                center[j] = 20 * rnd.nextDouble();
+        int size = 10000000;
+        Table table = getBlobTable(size, centers, 1, 0);
+        IDataSet<ITable> data = TestTables.makeParallel(table, size / 20);
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            ClusterCenters result = new KMeans(columnNames(d), k).blockingRun(data);
+            long end = System.nanoTime();
+            // The initialization takes INIT_STEPS + 2 passes.
+            System.out.println("k-means: " + (end - start) / 1000000 + "ms, " +
+                    (result.iterations + KMeans.INIT_STEPS + 2) + " passes, cost per row " +
+                    result.cost / size);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.maps.FilterMap;
+import org.hillview.sketches.BasicColStats;
+import org.hillview.sketches.BucketsDescription;
+import org.hillview.sketches.BucketsDescriptionEqSize;
+import org.hillview.sketches.HeatMap;
+import org.hillview.sketches.HeatMap3D;
+import org.hillview.sketches.Histogram;
+import org.hillview.storage.CsvFileReader;
+import org.hillview.table.*;
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+import org.hillview.utils.TestTables;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the batch kernels used by histograms, range filters and column statistics.
+ */
+public class KernelTest {
+    @Test
+    public void testBucketIndexBatch() {
+        BucketsDescriptionEqSize bd = new BucketsDescriptionEqSize(0.5, 100.5, 100);
+        double[] values = new double[] { 0.5, 0.6, 100.5, 100.4, 70.5, 30.6, -1, 101,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.4999 };
+        int[] indexes = new int[values.length];
+        bd.indexOf(values, values.length, indexes);
+        for (int i = 0; i < values.length; i++)
+            assertEquals(bd.indexOf(values[i]), indexes[i]);
+
+        BucketsDescriptionEqSize point = new BucketsDescriptionEqSize(3, 3, 10);
+        values = new double[] { 2, 3, 4 };
+        point.indexOf(values, values.length, indexes);
+        for (int i = 0; i < values.length; i++)
+            assertEquals(point.indexOf(values[i]), indexes[i]);
+    }
+
+    @Test
+    public void testBoundariesIndexBatch() {
+        BucketsDescription bd = new BucketsDescription(new double[] { -3, -1, 0, 0.5, 2, 7, 7.5 });
+        double[] values = new double[] { -3, -2.5, -1, -0.0, 0, 0.25, 0.5, 1, 2, 6.9, 7, 7.25,
+                7.5, 7.6, -4, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        int[] indexes = new int[values.length];
+        bd.indexOf(values, values.length, indexes);
+        for (int i = 0; i < values.length; i++)
+            assertEquals(bd.indexOf(values[i]), indexes[i]);
+    }
+
+    /**
+     * A category column with the specified number of rows and distinct values;
+     * every 7th row is missing.
+     */
+    private static CategoryArrayColumn categoryColumn(String name, int size, int distinct) {
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++)
+            values[i] = i % 7 == 3 ? null : "v" + ((i * 31 + name.length()) % distinct);
+        return new CategoryArrayColumn(
+                new ColumnDescription(name, ContentsKind.Category, true), values);
+    }
+
+    @Test
+    public void testCategoryBuckets() {
+        // Histograms of dictionary-encoded columns use per-code lookup tables.
+        final int size = 10000;
+        CategoryArrayColumn col1 = categoryColumn("A", size, 500);
+        CategoryArrayColumn col2 = categoryColumn("BB", size, 40);
+        SortedStringsConverter conv1 = new SortedStringsConverter(
+                new String[] { "v1", "v2", "v3", "v4", "v5", "v6", "v7", "v8" }, 10, 90);
+        SortedStringsConverter conv2 = new SortedStringsConverter(
+                new String[] { "v0", "v20", "v39" }, 0, 20);
+        ColumnAndConverter cc1 = new ColumnAndConverter(col1, conv1);
+        ColumnAndConverter cc2 = new ColumnAndConverter(col2, conv2);
+        BucketsDescriptionEqSize buckets1 = new BucketsDescriptionEqSize(20, 80, 13);
+        BucketsDescriptionEqSize buckets2 = new BucketsDescriptionEqSize(0, 20, 5);
+
+        FullMembership full = new FullMembership(size);
+        // The small set does not use the lookup tables, since it has fewer rows than codes.
+        for (IMembershipSet set : new IMembershipSet[] {
+                full, full.filter(i -> i % 3 == 0), full.filter(i -> i % 50 == 0) }) {
+            long[] expected = HistogramTest.rowAtATimeHistogram(buckets1, cc1, set);
+            Histogram hist = new Histogram(buckets1);
+            hist.create(cc1, set, 1.0);
+            long inRange = 0;
+            for (int i = 0; i < buckets1.getNumOfBuckets(); i++) {
+                assertEquals(expected[i], hist.getCount(i));
+                inRange += expected[i];
+            }
+            assertEquals(expected[expected.length - 1], hist.getMissingData());
+            assertEquals(set.getSize() - inRange - hist.getMissingData(), hist.getOutOfRange());
+
+            HeatMap heatMap = new HeatMap(buckets1, buckets2);
+            heatMap.createHeatMap(cc1, cc2, set);
+            HeatMap3D heatMap3D = new HeatMap3D(buckets1, buckets2, buckets1);
+            heatMap3D.createHeatMap(cc1, cc2, cc1, set);
+            long[][] counts = new long[buckets1.getNumOfBuckets()][buckets2.getNumOfBuckets()];
+            long bothMissing = 0;
+            long eitherMissing = 0;
+            IRowIterator it = set.getIterator();
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                if (cc1.isMissing(row) || cc2.isMissing(row)) {
+                    eitherMissing++;
+                    if (cc1.isMissing(row) && cc2.isMissing(row))
+                        bothMissing++;
+                    continue;
+                }
+                int index1 = buckets1.indexOf(cc1.asDouble(row));
+                int index2 = buckets2.indexOf(cc2.asDouble(row));
+                if (index1 >= 0 && index2 >= 0)
+                    counts[index1][index2]++;
+            }
+            for (int i = 0; i < counts.length; i++)
+                for (int j = 0; j < counts[i].length; j++) {
+                    assertEquals(counts[i][j], heatMap.getCount(i, j));
+                    assertEquals(counts[i][j], heatMap3D.getCount(i, j, i));
+                }
+            assertEquals(bothMissing, heatMap.getMissingData());
+            assertEquals(eitherMissing, heatMap3D.getMissingData());
+        }
+    }
+
+    private static void checkRangeFilter(ITable table, TableFilter filter) {
+        filter.setTable(table);
+        IRowIterator it = table.getMembershipSet().getIterator();
+        int[] rows = new int[100];
+        boolean[] result = new boolean[rows.length];
+        int count = it.getNextRows(rows);
+        while (count > 0) {
+            filter.test(rows, count, result);
+            for (int i = 0; i < count; i++)
+                assertEquals(filter.test(rows[i]), result[i]);
+            count = it.getNextRows(rows);
+        }
+    }
+
+    @Test
+    public void testRangeFilterBatch() {
+        SmallTable table = TestTables.getMissingIntTable(1000, 2);
+        String[] cols = table.getSchema().getColumnNames().toArray(new String[0]);
+        for (boolean complement : new boolean[] { false, true }) {
+            RangeFilterDescription first = new RangeFilterDescription();
+            first.columnName = cols[0];
+            first.min = 100;
+            first.max = 700;
+            first.complement = complement;
+            checkRangeFilter(table, new RangeFilter(first));
+
+            RangeFilterDescription second = new RangeFilterDescription();
+            second.columnName = cols[1];
+            second.min = 300;
+            second.max = 900;
+            RangeFilterPair pair = new RangeFilterPair();
+            pair.first = first;
+            pair.second = second;
+            checkRangeFilter(table, new Range2DFilter(pair));
+        }
+    }
+
+    @Test
+    public void testStatsKernel() {
+        SmallTable table = TestTables.getMissingIntTable(5000, 1);
+        IColumn col = table.getColumns().iterator().next();
+        BasicColStats stats = new BasicColStats(3);
+        stats.createStats(new ColumnAndConverter(col), table.getMembershipSet());
+
+        long present = 0;
+        double min = 0, max = 0;
+        double[] sums = new double[3];
+        for (int i = 0; i < col.sizeInRows(); i++) {
+            if (col.isMissing(i))
+                continue;
+            double v = col.getInt(i);
+            if (present == 0 || v < min)
+                min = v;
+            if (present == 0 || v > max)
+                max = v;
+            sums[0] += v;
+            sums[1] += v * v;
+            sums[2] += v * v * v;
+            present++;
+        }
+        assertEquals(present, stats.getPresentCount());
+        assertEquals(col.sizeInRows(), stats.getRowCount());
+        assertEquals(min, stats.getMin(), 0);
+        assertEquals(max, stats.getMax(), 0);
+        assertEquals((int)min, Converters.checkNull(stats.getMinObject()));
+        assertEquals((int)max, Converters.checkNull(stats.getMaxObject()));
+        for (int i = 0; i < 3; i++) {
+            double expected = sums[i] / present;
+            assertEquals(expected, stats.getMoment(i + 1), Math.abs(expected) * 1e-9);
+        }
+    }
+
+    /**
+     * A column containing the DepDelay column of the On_Time sample, repeated
+     * until it has the specified size.
+     */
+    private static DoubleListColumn onTimeColumn(int size) throws IOException {
+        Path path = Paths.get("../data", "On_Time.schema");
+        Schema schema = Schema.readFromJsonFile(path);
+        CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
+        config.allowFewerColumns = false;
+        config.hasHeaderRow = true;
+        config.allowMissingData = false;
+        config.schema = schema;
+        CsvFileReader r = new CsvFileReader(Paths.get("../data", "On_Time_Sample.csv"), config);
+        ITable t = Converters.checkNull(r.read());
+        IColumn sample = t.getColumn("DepDelay");
+
+        DoubleListColumn result = new DoubleListColumn(sample.getDescription());
+        for (int i = 0; i < size; i++) {
+            int row = i % sample.sizeInRows();
+            if (sample.isMissing(row))
+                result.appendMissing();
+            else
+                result.append(sample.getDouble(row));
+        }
+        return result;
+    }
+
+    private static void throughput(String message, Runnable runnable, int elements) {
+        final int runCount = 10;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < runCount; i++) {
+            long start = System.nanoTime();
+            runnable.run();
+            long end = System.nanoTime();
+            best = Math.min(best, end - start);
+        }
+        System.out.println(message + ": " +
+                String.format("%.2f", (elements * 1000.0) / best) + " Melems/s per core");
+    }
+
+    //@Test
+    public void testOnTimeKernelPerf() throws IOException {
+        // Single-threaded throughput of the batch kernels on the On_Time sample data.
+        final int size = 20 * 1024 * 1024;
+        DoubleListColumn col = onTimeColumn(size);
+        ColumnAndConverter cc = new ColumnAndConverter(col);
+        FullMembership full = new FullMembership(size);
+        IMembershipSet dense = full.filter(i -> (i % 8) != 0);
+        BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(-20, 60, 40);
+
+        throughput("Row at a time histogram, full", () ->
+                HistogramTest.rowAtATimeHistogram(buckets, cc, full), size);
+        throughput("Batch histogram, full", () ->
+                new Histogram(buckets).create(cc, full, 1.0), size);
+        throughput("Batch histogram, dense", () ->
+                new Histogram(buckets).create(cc, dense, 1.0), dense.getSize());
+        throughput("Column statistics, full", () ->
+                new BasicColStats(2).createStats(cc, full), size);
+
+        Table table = new Table(java.util.Collections.singletonList(col), full);
+        RangeFilterDescription desc = new RangeFilterDescription();
+        desc.columnName = col.getName();
+        desc.min = 0;
+        desc.max = 10;
+        RangeFilter filter = new RangeFilter(desc);
+        filter.setTable(table);
+        int[] rows = new int[IRowIterator.BATCH_SIZE];
+        boolean[] result = new boolean[rows.length];
+        throughput("Range filter, full", () -> {
+            IRowIterator it = full.getIterator();
+            for (int count = it.getNextRows(rows); count > 0; count = it.getNextRows(rows))
+                filter.test(rows, count, result);
+        }, size);
+    }
+
+    //@Test
+    public void testCategoryHistogramPerf() {
+        // Histogram throughput over a category column, with and without the code lookup tables.
+        final int size = 20 * 1024 * 1024;
+        CategoryArrayColumn col = categoryColumn("Origin", size, 300);
+        String[] boundaries = new String[300];
+        for (int i = 0; i < boundaries.length; i++)
+            boundaries[i] = "v" + i;
+        java.util.Arrays.sort(boundaries);
+        ColumnAndConverter cc = new ColumnAndConverter(col, new SortedStringsConverter(boundaries));
+        FullMembership full = new FullMembership(size);
+        BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(0, 299, 40);
+        throughput("Row at a time category histogram", () ->
+                HistogramTest.rowAtATimeHistogram(buckets, cc, full), size);
+        throughput("Batch category histogram", () ->
+                new Histogram(buckets).create(cc, full, 1.0), size);
+    }
+
+    //@Test
+    public void testMembershipScanPerf() throws IOException {
+        // Histogram throughput over the same rows stored in different membership sets.
+        final int size = 20 * 1024 * 1024;
+        DoubleListColumn col = onTimeColumn(size);
+        ColumnAndConverter cc = new ColumnAndConverter(col);
+        FullMembership full = new FullMembership(size);
+        BucketsDescriptionEqSize buckets = new BucketsDescriptionEqSize(-20, 60, 40);
+        for (int modulo : new int[] { 2, 64 }) {
+            IMembershipSet ordered = full.filter(i -> (i % modulo) == 0);
+            IMembershipSet hashed = new SparseMembership(ordered);
+            String suffix = ", 1/" + modulo + " of rows";
+            throughput("Hash set" + suffix, () ->
+                    new Histogram(buckets).create(cc, hashed, 1.0), hashed.getSize());
+            throughput(ordered.getClass().getSimpleName() + suffix, () ->
+                    new Histogram(buckets).create(cc, ordered, 1.0), ordered.getSize());
+        }
+    }
+
+    //@Test
+    public void testFilterPerf() throws IOException {
+        // Throughput of FilterMap, which evaluates compiled filters into bitmaps.
+        final int size = 20 * 1024 * 1024;
+        DoubleListColumn col = onTimeColumn(size);
+        Table table = new Table(java.util.Collections.singletonList(col), new FullMembership(size));
+        for (double max : new double[] { -5, 10, 1000 }) {
+            RangeFilterDescription desc = new RangeFilterDescription();
+            desc.columnName = col.getName();
+            desc.min = -10;
+            desc.max = max;
+            FilterMap map = new FilterMap(new RangeFilter(desc));
+            ITable result = map.apply(table);
+            throughput("Range filter to " + max + ", selected " + result.getNumOfRows() +
+                    " rows in a " + result.getMembershipSet().getClass().getSimpleName(),
+                    () -> map.apply(table), size);
+        }
+        EqualityFilter equality = new EqualityFilter(col.getName(), 0.0);
+        throughput("Equality filter", () -> new FilterMap(equality).apply(table), size);
+    }
+}
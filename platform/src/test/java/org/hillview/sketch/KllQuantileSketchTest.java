@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.sketches.*;
+import org.hillview.table.*;
+import org.hillview.table.api.ColumnAndConverter;
+import org.hillview.table.api.ColumnNameAndConverter;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class KllQuantileSketchTest {
+    private static RecordOrder ascending(ITable table, String... columns) {
+        RecordOrder order = new RecordOrder();
+        for (String c : columns)
+            order.append(new ColumnSortOrientation(table.getSchema().getDescription(c), true));
+        return order;
+    }
+
+    /**
+     * Returns the largest distance between the requested and the actual rank of
+     * the quantiles, as a fraction of the table size.
+     */
+    private static double maxRankError(ITable table, RecordOrder order, KllQuantiles quantiles) {
+        SortedIndex index = new SortedIndex(table, order);
+        double maxError = 0;
+        for (int i = 1; i < 100; i++) {
+            double q = i / 100.0;
+            RowSnapshot row = Converters.checkNull(quantiles.getRow(q));
+            Object[] values = index.getAccessor().getValues(row);
+            // Any rank in [lower, upper] is correct for this row.
+            double lower = index.lowerBound(values) / (double)index.size();
+            double upper = index.upperBound(values) / (double)index.size();
+            double error = q < lower ? lower - q : (q > upper ? q - upper : 0);
+            maxError = Math.max(maxError, error);
+        }
+        return maxError;
+    }
+
+    @Test
+    public void testRankError() {
+        final int size = 200000;
+        SmallTable table = TestTables.getIntTable(size, 2);
+        List<String> columns = new ArrayList<String>(table.getSchema().getColumnNames());
+        RecordOrder order = ascending(table, columns.get(0), columns.get(1));
+        KllQuantileSketch sketch = KllQuantileSketch.withResolution(order, 100);
+
+        KllQuantiles single = sketch.create(table);
+        Assert.assertEquals(size, single.getCount());
+        Assert.assertTrue(single.table.getNumOfRows() < 3 * 200);
+        Assert.assertTrue(maxRankError(table, order, single) < 0.02);
+
+        IDataSet<ITable> all = TestTables.makeParallel(table, size / 17);
+        KllQuantiles merged = all.blockingSketch(sketch);
+        Assert.assertEquals(size, merged.getCount());
+        Assert.assertTrue(merged.table.getNumOfRows() < 3 * 200);
+        Assert.assertTrue(maxRankError(table, order, merged) < 0.02);
+    }
+
+    @Test
+    public void testSmallTable() {
+        SmallTable table = TestTables.getIntTable(50, 1);
+        String column = table.getSchema().getColumnNames().iterator().next();
+        RecordOrder order = ascending(table, column);
+        KllQuantiles quantiles = KllQuantileSketch.withResolution(order, 100).create(table);
+        // Below the capacity the sketch is exact.
+        Assert.assertEquals(50, quantiles.table.getNumOfRows());
+        Assert.assertEquals(0.0, maxRankError(table, order, quantiles), 0.011);
+        KllQuantiles empty = KllQuantileSketch.withResolution(order, 100).zero();
+        Assert.assertNull(empty.getRow(0.5));
+    }
+
+    @Test
+    public void testColumnQuantiles() {
+        // Dates, strings with many duplicates, and doubles in a single pass.
+        final int size = 100000;
+        Table table = TestUtil.createTable(size);
+        List<String> columns = new ArrayList<String>(table.getSchema().getColumnNames());
+        ColumnQuantilesSketch sketch = new ColumnQuantilesSketch(columns, table.getSchema(), 100);
+        KllQuantiles[] quantiles = TestTables.makeParallel(table, size / 10).blockingSketch(sketch);
+        Assert.assertEquals(columns.size(), quantiles.length);
+        for (int i = 0; i < columns.size(); i++) {
+            Assert.assertEquals(size, quantiles[i].getCount());
+            double error = maxRankError(table, ascending(table, columns.get(i)), quantiles[i]);
+            Assert.assertTrue(error < 0.02);
+        }
+    }
+
+    @Test
+    public void testIndependentPartitions() {
+        // Partitions of the same size holding interleaved values: the errors of their
+        // summaries only cancel out if they make independent random choices.
+        final int parts = 64;
+        final int partSize = 20000;
+        List<IDataSet<ITable>> partitions = new ArrayList<IDataSet<ITable>>();
+        IntArrayColumn all = new IntArrayColumn(
+                new ColumnDescription("X", ContentsKind.Integer, false), parts * partSize);
+        for (int p = 0; p < parts; p++) {
+            IntArrayColumn col = new IntArrayColumn(
+                    new ColumnDescription("X", ContentsKind.Integer, false), partSize);
+            for (int i = 0; i < partSize; i++) {
+                col.set(i, i * parts + p);
+                all.set(p * partSize + i, i * parts + p);
+            }
+            partitions.add(new LocalDataSet<ITable>(
+                    new Table(Collections.singletonList(col), new FullMembership(partSize))));
+        }
+        Table table = new Table(Collections.singletonList(all), new FullMembership(parts * partSize));
+        RecordOrder order = ascending(table, "X");
+        KllQuantileSketch sketch = KllQuantileSketch.withResolution(order, 100);
+        KllQuantiles merged = new ParallelDataSet<ITable>(partitions).blockingSketch(sketch);
+        Assert.assertEquals(parts * partSize, merged.getCount());
+        Assert.assertTrue(maxRankError(table, order, merged) < 0.01);
+
+        // Two partitions do not keep the same positions.
+        KllQuantiles first = partitions.get(0).blockingSketch(sketch);
+        KllQuantiles second = partitions.get(1).blockingSketch(sketch);
+        Assert.assertEquals(first.table.getNumOfRows(), second.table.getNumOfRows());
+        int same = 0;
+        for (int i = 0; i < first.table.getNumOfRows(); i++)
+            if (first.table.getColumn("X").getInt(i) / parts ==
+                    second.table.getColumn("X").getInt(i) / parts)
+                same++;
+        Assert.assertTrue(same < first.table.getNumOfRows());
+    }
+
+    //@Test
+    public void testQuantilePerf() {
+        // Accuracy, summary size and running time compared with SampleQuantileSketch,
+        // on 16 partitions of 125K rows.
+        final int size = 2000000;
+        final int parts = 16;
+        SmallTable table = TestTables.getIntTable(size, 2);
+        List<String> columns = new ArrayList<String>(table.getSchema().getColumnNames());
+        RecordOrder order = ascending(table, columns.get(0), columns.get(1));
+        List<IDataSet<ITable>> partitions = new ArrayList<IDataSet<ITable>>();
+        for (int i = 0; i < parts; i++)
+            partitions.add(new LocalDataSet<ITable>(TestTables.getIntTable(size / parts, 2)));
+        IDataSet<ITable> all = new ParallelDataSet<ITable>(partitions);
+        SampleQuantileSketch sample = new SampleQuantileSketch(order, 100, size);
+        KllQuantileSketch kll = KllQuantileSketch.withResolution(order, 100);
+        System.out.println("Sample: " + sample.create(table).table.getNumOfRows() + " rows");
+        KllQuantiles kq = kll.create(table);
+        System.out.println("KLL: " + kq.table.getNumOfRows() + " rows, rank error " +
+                maxRankError(table, order, kq));
+        System.out.println("SampleQuantileSketch");
+        TestUtil.runPerfTest(k -> all.blockingSketch(sample), 10);
+        System.out.println("KllQuantileSketch");
+        TestUtil.runPerfTest(k -> all.blockingSketch(kll), 10);
+    }
+
+    @Test
+    public void testEquiDepthBuckets() {
+        // A skewed column: a third of the values are 0, the others are exponential.
+        final int size = 100000;
+        final int bucketCount = 10;
+        Random random = new Random(1);
+        DoubleArrayColumn col = new DoubleArrayColumn(
+                new ColumnDescription("Delay", ContentsKind.Double, true), size);
+        double max = 0;
+        for (int i = 0; i < size; i++) {
+            if (i % 10 == 0) {
+                col.setMissing(i);
+                continue;
+            }
+            double v = i % 3 == 0 ? 0 : -100 * Math.log(1 - random.nextDouble());
+            col.set(i, v);
+            max = Math.max(max, v);
+        }
+        Table table = new Table(Collections.singletonList(col), new FullMembership(size));
+        KllQuantileSketch sketch = KllQuantileSketch.withResolution(
+                ascending(table, "Delay"), 10 * bucketCount);
+        KllQuantiles quantiles = TestTables.makeParallel(table, size / 7).blockingSketch(sketch);
+        ColumnNameAndConverter name = new ColumnNameAndConverter("Delay");
+        double[] boundaries = quantiles.getBucketBoundaries(name, bucketCount);
+        Assert.assertEquals(bucketCount - 1, boundaries.length);
+
+        BucketsDescription buckets = BucketsDescription.equiDepth(0, max, boundaries);
+        // The first four buckets, which would hold mostly zeros, are merged into one.
+        Assert.assertEquals(bucketCount - 3, buckets.getNumOfBuckets());
+        Histogram hist = new Histogram(buckets);
+        hist.create(new ColumnAndConverter(col), table.getMembershipSet(), 1.0);
+        long present = size - size / 10;
+        Assert.assertEquals(size / 10, hist.getMissingData());
+        Assert.assertEquals(0, hist.getOutOfRange());
+        Assert.assertEquals(present * 0.4, hist.getCount(0), present * 0.02);
+        for (int i = 1; i < buckets.getNumOfBuckets(); i++)
+            Assert.assertEquals(present / (double)bucketCount, hist.getCount(i), present * 0.02);
+    }
+}
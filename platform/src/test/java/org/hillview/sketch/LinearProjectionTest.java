@@ -4,7 +4,10 @@ import org.hillview.dataset.api.IDataSet;
 import org.hillview.maps.LinearProjectionMap;
 import org.hillview.sketches.BasicColStatSketch;
 import org.hillview.sketches.BasicColStats;
+import org.hillview.table.*;
 import org.hillview.table.api.ColumnNameAndConverter;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.BlasConversions;
 import org.hillview.utils.TestTables;
@@ -15,6 +18,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @SuppressWarnings("ConstantConditions")
@@ -52,7 +56,68 @@ public class LinearProjectionTest {
 
         DoubleMatrix projectedData = BlasConversions.toDoubleMatrix(result, newColNames);
         DoubleMatrix projectedDataCheck = matrix.mmul(projectionMatrix.transpose());
-        Assert.assertEquals(rows * numProjections, projectedData.eq(projectedDataCheck).sum(), Math.ulp(rows * cols));
+        // The projected columns are not computed with BLAS, so the summation order may differ.
+        Assert.assertEquals(0, projectedData.sub(projectedDataCheck).normmax(), 1e-12 * cols);
+    }
+
+    @Test
+    public void testProjectionMissing() {
+        int size = 1000;
+        ColumnDescription desc0 = new ColumnDescription("X", ContentsKind.Double, true);
+        ColumnDescription desc1 = new ColumnDescription("Y", ContentsKind.Integer, true);
+        DoubleArrayColumn x = new DoubleArrayColumn(desc0, size);
+        IntArrayColumn y = new IntArrayColumn(desc1, size);
+        for (int i = 0; i < size; i++) {
+            if (i % 7 == 0)
+                x.setMissing(i);
+            else if (i % 17 == 0)
+                // NaN values are treated as missing.
+                x.set(i, Double.NaN);
+            else
+                x.set(i, i / 2.0);
+            if (i % 11 == 0)
+                y.setMissing(i);
+            else
+                y.set(i, i % 13);
+        }
+        Table table = new Table(Arrays.asList(x, y), new FullMembership(size));
+        DoubleMatrix projectionMatrix = new DoubleMatrix(new double[][] { { 2, -1 } });
+        ITable result = new LinearProjectionMap(Arrays.asList("X", "Y"), projectionMatrix, "LP").apply(table);
+        IColumn lp = result.getColumn("LP0");
+
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++)
+            rows[i] = i;
+        double[] values = new double[size];
+        boolean[] missing = new boolean[size];
+        boolean[] onlyMissing = new boolean[size];
+        // A projection of the projection, whose values are computed from nested batches.
+        LinearProjectionColumn nested = new LinearProjectionColumn(
+                new ColumnDescription("N", ContentsKind.Double, true),
+                new IColumn[] { lp, y }, new double[] { 1, 1 }, size);
+        double[] nestedValues = new double[size];
+        boolean[] nestedMissing = new boolean[size];
+        // Read the column enough times for it to be cached, checking each scan.
+        for (int scan = 0; scan < 5; scan++) {
+            nested.asDoubles(rows, size, null, nestedValues, nestedMissing);
+            lp.asDoubles(rows, size, null, values, missing);
+            lp.getMissing(rows, size, onlyMissing);
+            for (int i = 0; i < size; i++) {
+                boolean m = (i % 7 == 0) || (i % 11 == 0) || (i % 17 == 0);
+                Assert.assertEquals(m, missing[i]);
+                Assert.assertEquals(m, onlyMissing[i]);
+                Assert.assertEquals(m, nestedMissing[i]);
+                Assert.assertEquals(m, lp.isMissing(i));
+                if (!m)
+                    Assert.assertEquals(i, nestedValues[i], 0);
+                if (!m) {
+                    double expected = i - (i % 13);
+                    Assert.assertEquals(expected, values[i], 0);
+                    Assert.assertEquals(expected, lp.getDouble(i), 0);
+                    Assert.assertEquals(expected, lp.asDouble(i, null), 0);
+                }
+            }
+        }
     }
 
     @Test
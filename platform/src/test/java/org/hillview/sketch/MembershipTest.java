@@ -22,14 +22,17 @@ import org.hillview.table.*;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.utils.IntSet;
+import org.hillview.utils.IntBitmap;
 import org.junit.Test;
+
+import java.util.function.Predicate;
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 
 
-/* Tests for the three Membership Classes:
- * FullMembership, LazyMembership, SparseMembership
+/* Tests for the Membership Classes:
+ * FullMembership, SparseMembership, DenseMembership, BitmapMembership
  */
 public class MembershipTest {
     private final int size = 10;
@@ -91,4 +94,233 @@ public class MembershipTest {
             curr = sIter.getNextRow();
         }
     }
+
+    /**
+     * Checks that the set contains exactly the rows in [0, max) satisfying the predicate.
+     * @param ordered  If true the iterator must return rows in increasing order.
+     */
+    private static void checkSet(IMembershipSet set, Predicate<Integer> expected, boolean ordered) {
+        int count = 0;
+        for (int i = 0; i < set.getMax(); i++) {
+            assertEquals(expected.test(i), set.isMember(i));
+            if (expected.test(i))
+                count++;
+        }
+        assertEquals(count, set.getSize());
+        IRowIterator it = set.getIterator();
+        int previous = -1;
+        int seen = 0;
+        for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+            assertTrue(expected.test(row));
+            if (ordered)
+                assertTrue(row > previous);
+            previous = row;
+            seen++;
+        }
+        assertEquals(count, seen);
+        it = set.getIterator();
+        int[] rows = new int[IRowIterator.BATCH_SIZE];
+        seen = 0;
+        for (int n = it.getNextRows(rows); n > 0; n = it.getNextRows(rows)) {
+            for (int i = 0; i < n; i++)
+                assertTrue(set.isMember(rows[i]));
+            seen += n;
+        }
+        assertEquals(count, seen);
+    }
+
+    @Test
+    public void TestRepresentationChoice() {
+        final int max = 100000;
+        final FullMembership full = new FullMembership(max);
+        IMembershipSet all = full.filter(row -> true);
+        assertTrue(all instanceof FullMembership);
+        IMembershipSet dense = full.filter(row -> row % 3 != 0);
+        assertTrue(dense instanceof DenseMembership);
+        checkSet(dense, row -> row % 3 != 0, true);
+        IMembershipSet sparse = full.filter(row -> row % 100 == 0);
+        assertTrue(sparse instanceof BitmapMembership);
+        checkSet(sparse, row -> row % 100 == 0, true);
+        IMembershipSet runs = full.filter(row -> row < 1000 || row > 90000);
+        checkSet(runs, row -> row < 1000 || row > 90000, true);
+
+        // Filtering a sparse set also produces an ordered set.
+        SparseMembership hashed = new SparseMembership(full, row -> row % 10 == 0);
+        IMembershipSet filtered = hashed.filter(row -> row % 20 == 0);
+        checkSet(filtered, row -> row % 20 == 0, true);
+    }
+
+    @Test
+    public void TestOrderedSetOperations() {
+        final int max = 50000;
+        final FullMembership full = new FullMembership(max);
+        Predicate<Integer> p1 = row -> row % 2 == 0;
+        Predicate<Integer> p2 = row -> row % 3 == 0;
+        Predicate<Integer> p3 = row -> row % 500 == 1;
+        Predicate<Integer> p4 = row -> row % 700 == 1;
+        IMembershipSet[] sets = new IMembershipSet[] {
+                full.filter(p1),                    // dense
+                new SparseMembership(full, p2),     // hash set
+                full.filter(p3),                    // bitmap
+                new BitmapMembership(IntBitmap.range(100, 20000), max),
+                full
+        };
+        @SuppressWarnings("unchecked")
+        Predicate<Integer>[] predicates = new Predicate[] {
+                p1, p2, p3, (Predicate<Integer>)(row -> row >= 100 && row < 20000),
+                (Predicate<Integer>)(row -> true)
+        };
+        for (int i = 0; i < sets.length; i++) {
+            for (int j = 0; j < sets.length; j++) {
+                Predicate<Integer> a = predicates[i];
+                Predicate<Integer> b = predicates[j];
+                checkSet(sets[i].union(sets[j]), a.or(b), false);
+                checkSet(sets[i].intersection(sets[j]), a.and(b), false);
+                checkSet(sets[i].setMinus(sets[j]), a.and(b.negate()), false);
+            }
+        }
+        // Set operations between ordered sets produce ordered sets
+        checkSet(sets[0].union(sets[2]), p1.or(p3), true);
+        checkSet(sets[2].intersection(sets[4]), p3, true);
+        checkSet(sets[4].setMinus(sets[0]), p1.negate(), true);
+        checkSet(sets[3].setMinus(sets[2]), p3.negate().and(predicates[3]), true);
+    }
+
+    @Test
+    public void TestUnionMax() {
+        // The union of sets over universes of different sizes covers the larger one.
+        final int small = 1000;
+        final int large = 50000;
+        FullMembership fullSmall = new FullMembership(small);
+        FullMembership fullLarge = new FullMembership(large);
+        IMembershipSet[] smallSets = new IMembershipSet[] {
+                fullSmall.filter(row -> row % 2 == 0),                  // dense
+                new BitmapMembership(IntBitmap.range(10, 20), small),
+                new SparseMembership(fullSmall, row -> row % 3 == 0)
+        };
+        IMembershipSet[] largeSets = new IMembershipSet[] {
+                fullLarge.filter(row -> row % 2 == 0),
+                fullLarge.filter(row -> row % 500 == 1),
+                new SparseMembership(fullLarge, row -> row % 7 == 0)
+        };
+        for (IMembershipSet s : smallSets)
+            for (IMembershipSet l : largeSets) {
+                assertEquals(large, s.union(l).getMax());
+                assertEquals(large, l.union(s).getMax());
+            }
+    }
+
+    @Test
+    public void TestMixedIteration() {
+        // Single rows and batches of rows can be requested from the same iterator.
+        final int max = 100000;
+        final FullMembership full = new FullMembership(max);
+        IMembershipSet[] sets = new IMembershipSet[] {
+                full,
+                full.filter(row -> row % 3 != 0),
+                full.filter(row -> row % 100 == 0),
+                new BitmapMembership(IntBitmap.range(100, 20000), max),
+                new SparseMembership(full, row -> row % 7 == 0)
+        };
+        for (IMembershipSet set : sets) {
+            int[] expected = new int[set.getSize()];
+            IRowIterator it = set.getIterator();
+            int count = 0;
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                expected[count++] = row;
+            assertEquals(expected.length, count);
+
+            it = set.getIterator();
+            int[] buffer = new int[1000];
+            int step = 0;
+            count = 0;
+            while (true) {
+                if (step++ % 3 == 0) {
+                    int row = it.getNextRow();
+                    if (row < 0)
+                        break;
+                    assertEquals(expected[count++], row);
+                } else {
+                    int n = it.getNextRows(buffer);
+                    if (n == 0)
+                        break;
+                    for (int i = 0; i < n; i++)
+                        assertEquals(expected[count++], buffer[i]);
+                }
+            }
+            assertEquals(expected.length, count);
+        }
+    }
+
+    @Test
+    public void TestOrderedSample() {
+        final FullMembership full = new FullMembership(100000);
+        IMembershipSet dense = full.filter(row -> row % 3 != 0);
+        IMembershipSet sparse = full.filter(row -> row % 100 == 0);
+        for (IMembershipSet set : new IMembershipSet[] { dense, sparse }) {
+            IMembershipSet sample = set.sample(200, 17);
+            assertEquals(200, sample.getSize());
+            IMembershipSet again = set.sample(200, 17);
+            IRowIterator it = sample.getIterator();
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                assertTrue(set.isMember(row));
+                assertTrue(again.isMember(row));
+            }
+            assertEquals(set.getSize(), set.sample(set.getSize() + 1).getSize());
+        }
+    }
+
+    @Test
+    public void TestSampleIterator() {
+        final int max = 200000;
+        final FullMembership full = new FullMembership(max);
+        IMembershipSet dense = full.filter(row -> row % 3 != 0);
+        IMembershipSet hashed = new SparseMembership(full, row -> row % 2 == 0);
+        for (IMembershipSet set : new IMembershipSet[] { full, dense, hashed }) {
+            for (double rate : new double[] { 0.001, 0.1, 0.9 }) {
+                IRowIterator it = set.getSampleIterator(rate, 12);
+                IRowIterator again = set.getSampleIterator(rate, 12);
+                IRowIterator batch = set.getSampleIterator(rate, 12);
+                int[] rows = new int[100];
+                int batchCount = batch.getNextRows(rows);
+                int batchPosition = 0;
+                int count = 0;
+                int previous = -1;
+                for (int row = it.getNextRow(); row >= 0; row = it.getNextRow()) {
+                    assertTrue(set.isMember(row));
+                    if (set != hashed)
+                        assertTrue(row > previous);
+                    previous = row;
+                    // Same seed gives the same sample, for both kinds of iteration.
+                    assertEquals(row, again.getNextRow());
+                    if (batchPosition == batchCount) {
+                        batchCount = batch.getNextRows(rows);
+                        batchPosition = 0;
+                    }
+                    assertEquals(row, rows[batchPosition++]);
+                    count++;
+                }
+                assertEquals(-1, again.getNextRow());
+                assertEquals(set.getSampleSize(rate, 12, true), count);
+            }
+            assertEquals(set.getSize(), countRows(set.getSampleIterator(1.0)));
+        }
+        // The sample is spread uniformly over the rows.
+        for (double rate : new double[] { 0.01, 0.5 }) {
+            IRowIterator it = full.getSampleIterator(rate, 3);
+            int[] deciles = new int[10];
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                deciles[row / (max / 10)]++;
+            double expected = rate * max / 10;
+            for (int d : deciles)
+                assertEquals(expected, d, 5 * Math.sqrt(expected));
+        }
+    }
+
+    private static int countRows(IRowIterator it) {
+        int count = 0;
+        while (it.getNextRow() >= 0)
+            count++;
+        return count;
+    }
 }
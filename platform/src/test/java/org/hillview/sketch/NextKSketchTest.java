@@ -33,6 +33,7 @@ import org.hillview.utils.TestTables;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -48,7 +49,7 @@ public class NextKSketchTest {
         for (String colName : leftTable.getSchema().getColumnNames())
             cso.append(new ColumnSortOrientation(leftTable.getSchema().getDescription(colName), true));
         final RowSnapshot topRow = new RowSnapshot(leftTable, 10);
-        Assert.assertEquals(topRow.toString(), "14,4");
+        Assert.assertEquals(topRow.toString(), "11,6");
 
         final NextKSketch nk = new NextKSketch(cso, topRow, maxSize);
         final NextKList leftK = nk.create(leftTable);
@@ -57,14 +58,14 @@ public class NextKSketchTest {
             Assert.assertTrue(leftComp.compare(i, i + 1) <= 0);
         //System.out.println(leftK.toLongString(maxSize));
         Assert.assertEquals(leftK.toLongString(maxSize), "Table, 2 columns, 5 rows\n" +
-                "14,4: 6\n" +
-                "14,5: 5\n" +
-                "14,6: 4\n" +
-                "14,7: 3\n" +
-                "14,8: 5\n");
+                "11,6: 7\n" +
+                "11,7: 2\n" +
+                "11,8: 2\n" +
+                "11,9: 4\n" +
+                "11,10: 5\n");
 
         final RowSnapshot topRow2 = new RowSnapshot(leftTable, 100);
-        Assert.assertEquals(topRow2.toString(), "4,4");
+        Assert.assertEquals(topRow2.toString(), "4,3");
 
         final NextKSketch nk2 = new NextKSketch(cso, topRow2, maxSize);
         final NextKList leftK2 = nk2.create(leftTable);
@@ -72,11 +73,11 @@ public class NextKSketchTest {
         for (int i = 0; i < (leftK2.table.getNumOfRows() - 1); i++)
             Assert.assertTrue(leftComp2.compare(i, i + 1) <= 0);
         Assert.assertEquals(leftK2.toLongString(maxSize), "Table, 2 columns, 5 rows\n" +
-                "4,4: 12\n" +
-                "4,5: 2\n" +
-                "4,6: 5\n" +
-                "4,7: 4\n" +
-                "4,8: 5\n");
+                "4,3: 4\n" +
+                "4,4: 5\n" +
+                "4,5: 1\n" +
+                "4,6: 8\n" +
+                "4,7: 2\n");
         final Table rightTable = TestTables.getRepIntTable(rightSize, numCols);
         final NextKList rightK = nk.create(rightTable);
         IndexComparator rightComp = cso.getComparator(rightK.table);
@@ -84,11 +85,11 @@ public class NextKSketchTest {
             Assert.assertTrue(rightComp.compare(i, i + 1) <= 0);
 
         Assert.assertEquals(rightK.toLongString(maxSize), "Table, 2 columns, 5 rows\n" +
-                "14,4: 6\n" +
-                "14,5: 5\n" +
-                "14,6: 4\n" +
-                "14,7: 3\n" +
-                "14,8: 5\n");
+                "11,6: 7\n" +
+                "11,7: 2\n" +
+                "11,8: 2\n" +
+                "11,9: 4\n" +
+                "11,10: 5\n");
 
         NextKList tK = nk.add(leftK, rightK);
         tK = Converters.checkNull(tK);
@@ -96,11 +97,11 @@ public class NextKSketchTest {
         for (int i = 0; i < (tK.table.getNumOfRows() - 1); i++)
             Assert.assertTrue(tComp.compare(i, i + 1) <= 0);
         Assert.assertEquals(tK.toLongString(maxSize), "Table, 2 columns, 5 rows\n" +
-                "14,4: 12\n" +
-                "14,5: 10\n" +
-                "14,6: 8\n" +
-                "14,7: 6\n" +
-                "14,8: 10\n");
+                "11,6: 14\n" +
+                "11,7: 4\n" +
+                "11,8: 4\n" +
+                "11,9: 8\n" +
+                "11,10: 10\n");
     }
 
     @Test
@@ -111,11 +112,11 @@ public class NextKSketchTest {
         final Table leftTable = TestTables.getRepIntTable(leftSize, numCols);
         final RowSnapshot topRow = new RowSnapshot(leftTable, 10);
         Assert.assertEquals(leftTable.toLongString(5), "Table, 2 columns, 1000 rows\n" +
-                "9,10\n" +
-                "5,4\n" +
-                "8,10\n" +
-                "0,3\n" +
-                "7,8\n");
+                "4,6\n" +
+                "0,4\n" +
+                "11,12\n" +
+                "10,14\n" +
+                "3,11\n");
         RecordOrder cso = new RecordOrder();
         final NextKSketch nk= new NextKSketch(cso, topRow, maxSize);
         final NextKList leftK = nk.create(leftTable);
@@ -139,11 +140,11 @@ public class NextKSketchTest {
         for (int i = 0; i < (nk.table.getNumOfRows() - 1); i++)
             Assert.assertTrue(mComp.compare(i, i + 1) <= 0);
         Assert.assertEquals(nk.toLongString(maxSize), "Table, 3 columns, 5 rows\n" +
-                "44,95,56: 1\n" +
-                "44,95,119: 1\n" +
-                "44,95,126: 1\n" +
-                "44,95,151: 1\n" +
-                "44,96,65: 1\n");
+                "194,112,207: 1\n" +
+                "194,113,111: 1\n" +
+                "194,113,217: 1\n" +
+                "194,114,97: 1\n" +
+                "194,114,110: 1\n");
     }
 
     @Test
@@ -204,4 +205,120 @@ public class NextKSketchTest {
         final NextKList leftK = nk.create(leftTable);
         System.out.println(leftK.toLongString(100));
     }
+
+    private static void checkIndex(ITable table, RecordOrder order, @Nullable RowSnapshot topRow) {
+        NextKList scan = new NextKSketch(order, topRow, 20).create(table);
+        NextKList indexed = new NextKSketch(order, topRow, 20, true).create(table);
+        Assert.assertEquals(scan.startPosition, indexed.startPosition);
+        Assert.assertEquals(scan.totalRows, indexed.totalRows);
+        Assert.assertEquals(scan.toLongString(20), indexed.toLongString(20));
+    }
+
+    @Test
+    public void testSortedIndex() {
+        SmallTable table = TestTables.getMissingIntTable(2000, 2);
+        List<String> columns = new ArrayList<String>(table.getSchema().getColumnNames());
+        for (boolean ascending : new boolean[] { true, false }) {
+            RecordOrder order = new RecordOrder();
+            order.append(new ColumnSortOrientation(
+                    table.getSchema().getDescription(columns.get(1)), ascending));
+            order.append(new ColumnSortOrientation(
+                    table.getSchema().getDescription(columns.get(0)), !ascending));
+            checkIndex(table, order, null);
+            for (int row : new int[] { 0, 7, 99, 1000, 1999 })
+                checkIndex(table, order, new RowSnapshot(table, row));
+        }
+        Table strings = TestTables.testRepTable();
+        RecordOrder order = new RecordOrder();
+        for (String colName : strings.getSchema().getColumnNames())
+            order.append(new ColumnSortOrientation(strings.getSchema().getDescription(colName), true));
+        checkIndex(strings, order, null);
+        checkIndex(strings, order, new RowSnapshot(strings, 5));
+    }
+
+    @Test
+    public void testSortedIndexCache() {
+        SortedIndexCache.clear();
+        SmallTable table = TestTables.getIntTable(1000, 2);
+        RecordOrder order = new RecordOrder();
+        for (String colName : table.getSchema().getColumnNames())
+            order.append(new ColumnSortOrientation(table.getSchema().getDescription(colName), true));
+        SortedIndex index = SortedIndexCache.get(table, order);
+        Assert.assertSame(index, SortedIndexCache.get(table, order));
+        Assert.assertEquals(index.sizeInBytes(), SortedIndexCache.getMemoryUse());
+        SmallTable other = TestTables.getIntTable(1000, 2);
+        Assert.assertNotSame(index, SortedIndexCache.get(other, order));
+        Assert.assertEquals(2, SortedIndexCache.size());
+        // Shrinking the budget evicts the least recently used index.
+        SortedIndexCache.setBudget(index.sizeInBytes());
+        Assert.assertEquals(1, SortedIndexCache.size());
+        Assert.assertNull(SortedIndexCache.getIfPresent(table, order));
+        Assert.assertNotNull(SortedIndexCache.getIfPresent(other, order));
+        SortedIndexCache.setBudget(Runtime.getRuntime().maxMemory() / 8);
+        SortedIndexCache.clear();
+        Assert.assertEquals(0, SortedIndexCache.getMemoryUse());
+    }
+
+    private static void checkMerge(ITable table, RecordOrder order, @Nullable RowSnapshot topRow) {
+        NextKSketch nk = new NextKSketch(order, topRow, 20);
+        NextKList whole = nk.create(table);
+        for (int fragment : new int[] { 1, 7, 100 }) {
+            ParallelDataSet<ITable> all = TestTables.makeParallel(table, table.getNumOfRows() / fragment);
+            NextKList merged = all.blockingSketch(nk);
+            Assert.assertEquals(whole.startPosition, merged.startPosition);
+            Assert.assertEquals(whole.totalRows, merged.totalRows);
+            Assert.assertEquals(whole.count, merged.count);
+            // The columns of the merged table may be in a different order.
+            Assert.assertEquals(whole.table.getNumOfRows(), merged.table.getNumOfRows());
+            for (int i = 0; i < whole.table.getNumOfRows(); i++)
+                for (String col : whole.table.getSchema().getColumnNames())
+                    Assert.assertEquals(whole.table.getColumn(col).getObject(i),
+                            merged.table.getColumn(col).getObject(i));
+        }
+    }
+
+    @Test
+    public void testKeyedNextK() {
+        // Primary keys on dates, strings and doubles, with ties broken by later columns;
+        // the scan is compared with the sorted index, and with the merge of partitions.
+        Table table = TestUtil.createTable(3000);
+        List<String> columns = new ArrayList<String>(table.getSchema().getColumnNames());
+        for (String first : columns) {
+            for (boolean ascending : new boolean[] { true, false }) {
+                RecordOrder order = new RecordOrder();
+                order.append(new ColumnSortOrientation(table.getSchema().getDescription(first), ascending));
+                for (String other : columns)
+                    if (!other.equals(first))
+                        order.append(new ColumnSortOrientation(
+                                table.getSchema().getDescription(other), !ascending));
+                checkIndex(table, order, null);
+                checkMerge(table, order, null);
+                for (int row : new int[] { 0, 1500, 2999 }) {
+                    checkIndex(table, order, new RowSnapshot(table, row));
+                    checkMerge(table, order, new RowSnapshot(table, row));
+                }
+            }
+        }
+        SmallTable missing = TestTables.getMissingIntTable(2000, 2);
+        RecordOrder order = new RecordOrder();
+        for (String colName : missing.getSchema().getColumnNames())
+            order.append(new ColumnSortOrientation(missing.getSchema().getDescription(colName), false));
+        checkMerge(missing, order, null);
+        checkMerge(missing, order, new RowSnapshot(missing, 10));
+    }
+
+    //@Test
+    public void testScrollPerf() {
+        // Scrolling through a partition of 1M rows, 50 rows at a time.
+        SmallTable table = TestTables.getIntTable(1000000, 2);
+        RecordOrder order = new RecordOrder();
+        for (String colName : table.getSchema().getColumnNames())
+            order.append(new ColumnSortOrientation(table.getSchema().getDescription(colName), true));
+        RowSnapshot topRow = new RowSnapshot(table, 500000);
+        for (boolean useIndex : new boolean[] { false, true }) {
+            NextKSketch nk = new NextKSketch(order, topRow, 50, useIndex);
+            System.out.println(useIndex ? "Sorted index" : "Scan");
+            TestUtil.runPerfTest(k -> nk.create(table), 20);
+        }
+    }
 }
@@ -4,9 +4,14 @@ import org.hillview.dataset.api.IDataSet;
 import org.hillview.maps.LinearProjectionMap;
 import org.hillview.sketches.CorrMatrix;
 import org.hillview.sketches.FullCorrelationSketch;
+import org.hillview.sketches.RandomizedPCA;
 import org.hillview.storage.CsvFileReader;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.DoubleArrayColumn;
 import org.hillview.table.Schema;
+import org.hillview.table.SmallTable;
 import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 import org.hillview.utils.LinAlg;
@@ -22,6 +27,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 public class PCATest {
@@ -55,6 +61,62 @@ public class PCATest {
         }
     }
 
+    /**
+     * A table whose columns are noisy linear combinations of a few latent factors,
+     * with decreasing weights.
+     */
+    private static ITable getFactorTable(int size, int numCols, int factors) {
+        Random rnd = new Random(3);
+        double[][] loadings = new double[numCols][factors];
+        for (int j = 0; j < numCols; j++)
+            for (int f = 0; f < factors; f++)
+                loadings[j][f] = rnd.nextGaussian() * (factors - f);
+        List<IColumn> columns = new ArrayList<IColumn>();
+        List<DoubleArrayColumn> cols = new ArrayList<DoubleArrayColumn>();
+        for (int j = 0; j < numCols; j++) {
+            DoubleArrayColumn col = new DoubleArrayColumn(
+                    new ColumnDescription("F" + j, ContentsKind.Double, false), size);
+            cols.add(col);
+            columns.add(col);
+        }
+        double[] latent = new double[factors];
+        for (int i = 0; i < size; i++) {
+            for (int f = 0; f < factors; f++)
+                latent[f] = rnd.nextGaussian();
+            for (int j = 0; j < numCols; j++) {
+                double v = j + 0.1 * rnd.nextGaussian();
+                for (int f = 0; f < factors; f++)
+                    v += loadings[j][f] * latent[f];
+                cols.get(j).set(i, v);
+            }
+        }
+        return new SmallTable(columns);
+    }
+
+    @Test
+    public void testRandomizedPCA() {
+        final int components = 3;
+        ITable table = getFactorTable(20000, 40, components);
+        List<String> colNames = new ArrayList<String>(table.getSchema().getColumnNames());
+        IDataSet<ITable> dataset = TestTables.makeParallel(table, 2000);
+
+        CorrMatrix cm = dataset.blockingSketch(new FullCorrelationSketch(colNames));
+        DoubleMatrix[] exact = LinAlg.eigenVectorsVarianceExplained(
+                new DoubleMatrix(cm.getCorrelationMatrix()), components);
+        DoubleMatrix[] approx = new RandomizedPCA(colNames, components).blockingRun(dataset);
+
+        Assert.assertEquals(components, approx[0].rows);
+        Assert.assertEquals(colNames.size(), approx[0].columns);
+        for (int i = 0; i < components; i++) {
+            DoubleMatrix e = exact[0].getRow(i);
+            DoubleMatrix a = approx[0].getRow(i);
+            Assert.assertEquals(1.0, a.norm2(), 1e-9);
+            // Eigenvectors are only defined up to their sign.
+            Assert.assertEquals(1.0, Math.abs(e.dot(a)), 1e-6);
+            Assert.assertEquals(exact[1].get(i), approx[1].get(i), 1e-6);
+        }
+    }
+
     @Test
     public void testMNIST() throws IOException {
         String dataFolder = "../data";
@@ -95,4 +157,45 @@ public class PCATest {
             System.out.println("Skipped test because " + csvFile + " is not present.");
         }
     }
+
+    //@Test
+    public void testRandomizedPCAPerf() throws IOException {
+        // Compares the exact and the randomized computation of 2 components on the MNIST data
+        String dataFolder = "../data";
+        String csvFile = "mnist.csv";
+        String schemaFile = "mnist.schema";
+        Path path = Paths.get(dataFolder, schemaFile);
+        try {
+            Schema schema = Schema.readFromJsonFile(path);
+            path = Paths.get(dataFolder, csvFile);
+            CsvFileReader.CsvConfiguration config = new CsvFileReader.CsvConfiguration();
+            config.allowFewerColumns = false;
+            config.hasHeaderRow = true;
+            config.allowMissingData = false;
+            config.schema = schema;
+            ITable table = Converters.checkNull(new CsvFileReader(path, config).read());
+            List<String> numericColNames = new ArrayList<String>();
+            for (String colName : table.getSchema().getColumnNames()) {
+                ContentsKind kind = table.getSchema().getDescription(colName).kind;
+                if (kind == ContentsKind.Double || kind == ContentsKind.Integer)
+                    numericColNames.add(colName);
+            }
+            IDataSet<ITable> dataset = TestTables.makeParallel(table, table.getNumOfRows() / 16);
+            for (int i = 0; i < 3; i++) {
+                long start = System.currentTimeMillis();
+                CorrMatrix cm = dataset.blockingSketch(new FullCorrelationSketch(numericColNames));
+                DoubleMatrix[] exact = LinAlg.eigenVectorsVarianceExplained(
+                        new DoubleMatrix(cm.getCorrelationMatrix()), 2);
+                long exactTime = System.currentTimeMillis() - start;
+                start = System.currentTimeMillis();
+                DoubleMatrix[] approx = new RandomizedPCA(numericColNames, 2).blockingRun(dataset);
+                long approxTime = System.currentTimeMillis() - start;
+                System.out.println("Exact: " + exactTime + "ms, randomized: " + approxTime + "ms, " +
+                        "cosines: " + Math.abs(exact[0].getRow(0).dot(approx[0].getRow(0))) + ", " +
+                        Math.abs(exact[0].getRow(1).dot(approx[0].getRow(1))));
+            }
+        } catch (FileNotFoundException|NoSuchFileException e) {
+            System.out.println("Skipped test because " + csvFile + " is not present.");
+        }
+    }
 }
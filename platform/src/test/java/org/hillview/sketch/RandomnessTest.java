@@ -19,13 +19,18 @@
 package org.hillview.sketch;
 
 import org.apache.commons.math3.random.MersenneTwister;
+import org.hillview.utils.Randomness;
 import org.junit.Test;
 import java.util.Random;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 
 public class RandomnessTest {
     private final Random randomPRG = new Random();
     private final MersenneTwister MT_PRG = new MersenneTwister();
+    private final Randomness hillviewPRG = new Randomness();
 
     @Test
     public void testRandomnessPerf() {
@@ -34,6 +39,55 @@ public class RandomnessTest {
 
         TestUtil.runPerfTest((k) -> totalRandom(length), iterationNum);
         TestUtil.runPerfTest((k) -> totalMT(length), iterationNum);
+        TestUtil.runPerfTest((k) -> totalRandomness(length), iterationNum);
+    }
+
+    @Test
+    public void testSeeding() {
+        Randomness r1 = new Randomness(42);
+        Randomness r2 = new Randomness(43);
+        long[] first = new long[100];
+        int same = 0;
+        for (int i = 0; i < first.length; i++) {
+            first[i] = r1.nextLong();
+            if (first[i] == r2.nextLong())
+                same++;
+        }
+        assertEquals(0, same);
+        r1.setSeed(42);
+        for (long l : first)
+            assertEquals(l, r1.nextLong());
+    }
+
+    @Test
+    public void testRanges() {
+        Randomness r = new Randomness(1);
+        final int size = 100000;
+        int[] counts = new int[10];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            counts[r.nextInt(10)]++;
+            double d = r.nextDouble();
+            assertTrue(d >= 0 && d < 1);
+            long l = r.nextLong(1000000000000L);
+            assertTrue(l >= 0 && l < 1000000000000L);
+            sum += r.nextGaussian();
+        }
+        for (int c : counts)
+            assertEquals(size / 10, c, size / 100);
+        assertEquals(0, sum / size, 0.02);
+
+        // Powers of two, including 1.
+        int[] powers = new int[16];
+        for (int i = 0; i < size; i++) {
+            assertEquals(0, r.nextInt(1));
+            assertEquals(0, r.nextLong(1));
+            powers[r.nextInt(16)]++;
+            long l = r.nextLong(1L << 62);
+            assertTrue(l >= 0 && l < (1L << 62));
+        }
+        for (int c : powers)
+            assertEquals(size / 16, c, size / 100);
     }
 
     private void totalRandom(int k) {
@@ -41,6 +95,11 @@ public class RandomnessTest {
             this.randomPRG.nextInt();
     }
 
+    private void totalRandomness(int k) {
+        for (int i = 0; i < k; i++)
+            this.hillviewPRG.nextInt();
+    }
+
     private void totalMT(int k) {
         for (int i = 0; i < k; i++)
             this.MT_PRG.nextInt();
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.sketches.ColumnSortOrientation;
+import org.hillview.sketches.ExactFreqSketch;
+import org.hillview.sketches.FreqKSketch;
+import org.hillview.sketches.NextKSketch;
+import org.hillview.table.*;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.RankInTable;
+import org.hillview.utils.TestTables;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that row accessors agree with the row snapshot operations they replace.
+ */
+public class RowAccessorTest {
+    private static RecordOrder order(Schema schema, boolean... ascending) {
+        RecordOrder ro = new RecordOrder();
+        int i = 0;
+        for (String col : schema.getColumnNames())
+            ro.append(new ColumnSortOrientation(schema.getDescription(col), ascending[i++]));
+        return ro;
+    }
+
+    private static void checkAccessor(ITable table, RecordOrder ro) {
+        Schema schema = ro.toSchema();
+        RowAccessor accessor = RowAccessor.create(table, schema);
+        RowAccessor ordered = RowAccessor.create(table, ro);
+        VirtualRowSnapshot left = new VirtualRowSnapshot(table, schema);
+        VirtualRowSnapshot right = new VirtualRowSnapshot(table, schema);
+        int rows = table.getNumOfRows();
+        for (int i = 0; i < rows; i++) {
+            left.setRow(i);
+            RowSnapshot snapshot = left.materialize();
+            Object[] values = accessor.getValues(snapshot);
+            assertEquals(left.computeHashCode(schema), accessor.hashCode(i));
+            assertEquals(snapshot.computeHashCode(schema), RowAccessor.hashCode(values));
+            assertEquals(accessor.hashCode64(i), accessor.hashCode64(values));
+            for (int j = 0; j < rows; j += 7) {
+                right.setRow(j);
+                boolean equal = left.compareForEquality(right, schema);
+                assertEquals(equal, accessor.equal(i, j));
+                assertEquals(equal, accessor.equal(j, values));
+                int expected = Integer.signum(right.compareTo(snapshot, ro));
+                assertEquals(expected, Integer.signum(ordered.compare(j, values)));
+                assertEquals(expected, Integer.signum(
+                        ordered.compare(ordered.getValues(right), values)));
+            }
+        }
+    }
+
+    @Test
+    public void testAgreement() {
+        Table strings = TestTables.testRepTable();
+        checkAccessor(strings, order(strings.getSchema(), true, false));
+        checkAccessor(strings, order(strings.getSchema(), false, true));
+        SmallTable missing = TestTables.getMissingIntTable(200, 2);
+        checkAccessor(missing, order(missing.getSchema(), true, true));
+        checkAccessor(missing, order(missing.getSchema(), false, true));
+        SmallTable mixed = TestUtil.createSmallTable(100);
+        checkAccessor(mixed, order(mixed.getSchema(), true, false, true));
+    }
+
+    @Test
+    public void testLookup() {
+        SmallTable table = TestTables.getMissingIntTable(300, 2);
+        Schema schema = table.getSchema();
+        List<RowSnapshot> rows = new ArrayList<RowSnapshot>();
+        for (int i = 0; i < 300; i += 3)
+            rows.add(new RowSnapshot(table, i));
+        RowAccessor.Lookup lookup = RowAccessor.create(table, schema).lookup(rows);
+        VirtualRowSnapshot vrs = new VirtualRowSnapshot(table);
+        for (int i = 0; i < table.getNumOfRows(); i++) {
+            vrs.setRow(i);
+            int index = lookup.indexOf(i);
+            boolean found = false;
+            for (RowSnapshot rs : rows)
+                found |= rs.compareForEquality(vrs, schema);
+            assertEquals(found, index >= 0);
+            if (found)
+                assertEquals(true, rows.get(index).compareForEquality(vrs, schema));
+        }
+    }
+
+    @Test
+    public void testBatchHashes() {
+        SmallTable table = TestTables.getMissingIntTable(1000, 3);
+        RowAccessor accessor = RowAccessor.create(table, table.getSchema());
+        int[] rows = new int[IRowIterator.BATCH_SIZE];
+        long[] hashes = new long[rows.length];
+        IRowIterator it = table.getMembershipSet().getIterator();
+        for (int count = it.getNextRows(rows); count > 0; count = it.getNextRows(rows)) {
+            accessor.hashCodes64(rows, count, hashes);
+            for (int i = 0; i < count; i++)
+                assertEquals(accessor.hashCode64(rows[i]), hashes[i]);
+        }
+    }
+
+    @Test
+    public void testRowHashTable() {
+        SmallTable table = TestTables.getMissingIntTable(2000, 2);
+        Schema schema = table.getSchema();
+        RowAccessor accessor = RowAccessor.create(table, schema);
+        // Start small to exercise growth.
+        RowHashTable counts = new RowHashTable(accessor, 1);
+        HashMap<RowSnapshot, Integer> expected = new HashMap<RowSnapshot, Integer>();
+        for (int i = 0; i < table.getNumOfRows(); i++) {
+            long hash = accessor.hashCode64(i);
+            int slot = counts.find(i, hash);
+            if (slot < 0)
+                counts.insert(i, hash, 1);
+            else
+                counts.setValue(slot, counts.getValue(slot) + 1);
+            expected.merge(new RowSnapshot(table, i), 1, Integer::sum);
+        }
+        checkCounts(table, counts, expected);
+        // Remove every other key through find.
+        boolean remove = false;
+        for (int i = 0; i < table.getNumOfRows(); i++) {
+            RowSnapshot rs = new RowSnapshot(table, i);
+            if (!expected.containsKey(rs))
+                continue;
+            if (remove) {
+                counts.remove(counts.find(i, accessor.hashCode64(i)));
+                expected.remove(rs);
+            }
+            remove = !remove;
+        }
+        checkCounts(table, counts, expected);
+    }
+
+    private static void checkCounts(ITable table, RowHashTable counts,
+                                    HashMap<RowSnapshot, Integer> expected) {
+        assertEquals(expected.size(), counts.size());
+        for (int slot = 0; slot < counts.slotCount(); slot++) {
+            if (!counts.isOccupied(slot))
+                continue;
+            int row = counts.getRow(slot);
+            assertEquals(expected.get(new RowSnapshot(table, row)),
+                    (Integer)counts.getValue(slot));
+            assertEquals(slot, counts.find(row, RowAccessor.create(
+                    table, table.getSchema()).hashCode64(row)));
+        }
+    }
+
+    @Test
+    public void testRank() {
+        SmallTable table = TestTables.getMissingIntTable(1000, 2);
+        RecordOrder ro = order(table.getSchema(), true, false);
+        SmallTable queries = TestTables.getMissingIntTable(50, 2);
+        int[] rank = new RankInTable(table, ro).getRank(queries);
+        VirtualRowSnapshot query = new VirtualRowSnapshot(queries);
+        VirtualRowSnapshot row = new VirtualRowSnapshot(table);
+        for (int j = 0; j < queries.getNumOfRows(); j++) {
+            query.setRow(j);
+            int expected = 0;
+            for (int i = 0; i < table.getNumOfRows(); i++) {
+                row.setRow(i);
+                if (query.compareTo(row, ro) >= 0)
+                    expected++;
+            }
+            assertEquals(expected, rank[j]);
+        }
+    }
+
+    //@Test
+    public void testMultiColumnPerf() {
+        // Multi-column NextK and FreqK, which resolve the columns once per partition.
+        SmallTable table = TestTables.getHeavyIntTable(3, 1000000, 2.0, 16);
+        RecordOrder ro = order(table.getSchema(), true, false, true);
+        VirtualRowSnapshot middle = new VirtualRowSnapshot(table);
+        middle.setRow(table.getNumOfRows() / 2);
+        NextKSketch nk = new NextKSketch(ro, middle.materialize(), 20);
+        FreqKSketch fk = new FreqKSketch(table.getSchema(), 0.01);
+        System.out.println("NextK");
+        TestUtil.runPerfTest(k -> nk.create(table), 10);
+        System.out.println("FreqK");
+        TestUtil.runPerfTest(k -> fk.create(table), 10);
+        ExactFreqSketch ef = new ExactFreqSketch(table.getSchema(), fk.create(table));
+        System.out.println("ExactFreq");
+        TestUtil.runPerfTest(k -> ef.create(table), 10);
+    }
+}
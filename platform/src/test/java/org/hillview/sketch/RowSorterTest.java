@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.hillview.sketch;
+
+import org.hillview.sketches.ColumnSortOrientation;
+import org.hillview.table.*;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.utils.Randomness;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks that RowSorter produces the same order as a stable sort with the comparators.
+ */
+public class RowSorterTest {
+    private static final String[] names = { "Int", "Double", "String", "Date", "Duration" };
+
+    private static SmallTable createTable(int size, boolean largeDates) {
+        Randomness rn = new Randomness(5);
+        IntArrayColumn ints = new IntArrayColumn(
+                new ColumnDescription(names[0], ContentsKind.Integer, true), size);
+        DoubleArrayColumn doubles = new DoubleArrayColumn(
+                new ColumnDescription(names[1], ContentsKind.Double, true), size);
+        StringArrayColumn strings = new StringArrayColumn(
+                new ColumnDescription(names[2], ContentsKind.String, true), size);
+        DateArrayColumn dates = new DateArrayColumn(
+                new ColumnDescription(names[3], ContentsKind.Date, false), size);
+        DurationArrayColumn durations = new DurationArrayColumn(
+                new ColumnDescription(names[4], ContentsKind.Duration, true), size);
+        double[] specials = { Double.NaN, -0.0, 0.0, Double.NEGATIVE_INFINITY,
+                Double.POSITIVE_INFINITY, -1.5, Double.MIN_VALUE };
+        LocalDateTime base = LocalDateTime.of(2000, 1, 1, 0, 0);
+        for (int i = 0; i < size; i++) {
+            if (rn.nextInt(10) == 0)
+                ints.setMissing(i);
+            else
+                ints.set(i, rn.nextInt(20) - 10 + (rn.nextBoolean() ? 0 : Integer.MIN_VALUE / 2));
+            if (rn.nextInt(10) == 0)
+                doubles.setMissing(i);
+            else
+                doubles.set(i, rn.nextBoolean() ? specials[rn.nextInt(specials.length)] :
+                        rn.nextGaussian());
+            if (rn.nextInt(10) == 0)
+                strings.setMissing(i);
+            else
+                strings.set(i, Integer.toString(rn.nextInt(30), 7));
+            dates.set(i, base.plusSeconds(rn.nextInt(1000) - 500).plusNanos(rn.nextInt(3)));
+            if (largeDates && i % 17 == 0)
+                dates.set(i, base.plusYears(rn.nextBoolean() ? 500 : -500));
+            if (rn.nextInt(10) == 0)
+                durations.setMissing(i);
+            else
+                durations.set(i, Duration.ofMillis(rn.nextInt(100) - 50));
+        }
+        List<IColumn> columns = new ArrayList<IColumn>();
+        columns.add(ints);
+        columns.add(doubles);
+        columns.add(strings);
+        columns.add(dates);
+        columns.add(durations);
+        return new SmallTable(columns);
+    }
+
+    private static void checkOrder(SmallTable table, RecordOrder order) {
+        int size = table.getNumOfRows();
+        Integer[] expected = new Integer[size];
+        for (int i = 0; i < size; i++)
+            expected[i] = i;
+        Arrays.sort(expected, order.getComparator(table));
+        int[] sorted = order.getSortedRowOrder(table);
+        assertArrayEquals(Arrays.stream(expected).mapToInt(i -> i).toArray(), sorted);
+    }
+
+    private static RecordOrder order(SmallTable table, String[] columns, boolean[] ascending) {
+        RecordOrder ro = new RecordOrder();
+        for (int i = 0; i < columns.length; i++)
+            ro.append(new ColumnSortOrientation(
+                    table.getSchema().getDescription(columns[i]), ascending[i]));
+        return ro;
+    }
+
+    @Test
+    public void testSingleColumns() {
+        for (int size : new int[] { 0, 1, 30, 2000 }) {
+            SmallTable table = createTable(size, false);
+            for (String name : names)
+                for (boolean ascending : new boolean[] { true, false })
+                    checkOrder(table, order(table, new String[] { name },
+                            new boolean[] { ascending }));
+        }
+    }
+
+    @Test
+    public void testMixedOrders() {
+        for (int size : new int[] { 40, 3000 }) {
+            SmallTable table = createTable(size, false);
+            checkOrder(table, order(table, new String[] { "String", "Int", "Double" },
+                    new boolean[] { true, false, true }));
+            checkOrder(table, order(table, new String[] { "Duration", "Date", "String" },
+                    new boolean[] { false, true, false }));
+        }
+    }
+
+    @Test
+    public void testComparatorFallback() {
+        // Dates too far from 1970 to be encoded as nanoseconds.
+        SmallTable table = createTable(1000, true);
+        checkOrder(table, order(table, new String[] { "Date", "Int" },
+                new boolean[] { false, true }));
+        checkOrder(table, order(table, new String[] { "String", "Date" },
+                new boolean[] { true, true }));
+    }
+
+    //@Test
+    public void testSortPerf() {
+        // Sorting a 50000-row sample, the size used by SampleQuantileSketch for 100 buckets.
+        SmallTable table = createTable(50000, false);
+        for (String[] columns : new String[][] { { "Double" }, { "String" }, { "Int", "Date" } }) {
+            boolean[] ascending = new boolean[columns.length];
+            Arrays.fill(ascending, true);
+            RecordOrder ro = order(table, columns, ascending);
+            System.out.println(String.join(",", columns) + " comparator");
+            TestUtil.runPerfTest(k -> {
+                Integer[] rows = new Integer[table.getNumOfRows()];
+                for (int i = 0; i < rows.length; i++)
+                    rows[i] = i;
+                Arrays.sort(rows, ro.getComparator(table));
+            }, 20);
+            System.out.println(String.join(",", columns) + " radix");
+            TestUtil.runPerfTest(k -> ro.getSortedRowOrder(table), 20);
+        }
+    }
+}
@@ -206,8 +206,11 @@ abstract class RpcTarget implements IJson {
         Observable<PartialResult<R>> sketches = data.sketch(sketch);
         // Knows how to add partial results
         PartialResultMonoid<R> prm = new PartialResultMonoid<R>(sketch);
-        // Prefix sum of the partial results
-        Observable<PartialResult<R>> add = sketches.scan(prm::add);
+        // Prefix sum of the partial results.  Each partial sum is serialized before the
+        // next one is computed, so a single accumulator is updated in place; defer creates
+        // a fresh one for each subscription, and skip drops the initial zero.
+        Observable<PartialResult<R>> add = Observable.defer(
+                () -> sketches.scan(prm.zero(), prm::addInPlace).skip(1));
         // Send the partial results back
         SketchResultObserver<R> robs = new SketchResultObserver<R>(
                 sketch.toString(), request, session);
@@ -235,7 +238,10 @@ abstract class RpcTarget implements IJson {
         // publish().autoConnect(2) ensures that the two consumers
         // of this stream pull from the *same* stream, and not from
         // two different copies; the two consumers are lastSketch and progress.
-        Observable<PartialResult<R>> add = sketches.scan(prm::add).publish().autoConnect(2);
+        // The accumulator is updated in place: only the last sum is used as a value.
+        Observable<PartialResult<R>> add = Observable.defer(
+                () -> sketches.scan(prm.zero(), prm::addInPlace).skip(1))
+                .publish().autoConnect(2);
         Observable<PartialResult<S>> lastSketch = add.last()
                 .map(p -> new PartialResult<S>(p.deltaDone, postprocessing.apply(p.deltaValue)));
         Observable<PartialResult<S>> progress = add.map(p -> new PartialResult<S>(p.deltaDone, null));
@@ -272,6 +278,34 @@ abstract class RpcTarget implements IJson {
         this.saveSubscription(session, sub);
     }
 
+    /**
+     * Runs a map that is only known after some other computation, e.g., a series of
+     * sketches, completes, and sends the result directly to the client.
+     * @param data    Dataset to run the map on.
+     * @param map     Stream whose first value is the map to execute.
+     * @param factory Function which knows how to create a new RpcTarget
+     *                out of the resulting IDataSet.  It is the reference
+     *                to this RpcTarget that is returned to the client.
+     * @param request Web socket request, used to send the reply.
+     * @param session Web socket session.
+     */
+    <T, S> void
+    runDeferredMap(IDataSet<T> data, Observable<? extends IMap<T, S>> map,
+                   Function<IDataSet<S>, RpcTarget> factory,
+                   RpcRequest request, Session session) {
+        // Run the map once it is known
+        Observable<PartialResult<IDataSet<S>>> stream = map.first().flatMap(data::map);
+        // Knows how to add partial results
+        PRDataSetMonoid<S> monoid = new PRDataSetMonoid<S>();
+        // Prefix sum of the partial results
+        Observable<PartialResult<IDataSet<S>>> add = stream.scan(monoid::add);
+        // Send the partial results back
+        MapResultObserver<S> robs = new MapResultObserver<S>(
+                "deferred map", request, session, factory);
+        Subscription sub = add.subscribe(robs);
+        this.saveSubscription(session, sub);
+    }
+
     /**
      * Runs a flatmap and sends the result directly to the client.
      * @param data    Dataset to run the map on.
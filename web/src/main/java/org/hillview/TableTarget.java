@@ -22,6 +22,7 @@ import org.hillview.dataset.TripleSketch;
 import org.hillview.dataset.api.IDataSet;
 import org.hillview.dataset.api.IJson;
 import org.hillview.dataset.api.Pair;
+import org.hillview.maps.ClusterMap;
 import org.hillview.maps.ConvertColumnMap;
 import org.hillview.maps.FilterMap;
 import org.hillview.maps.LinearProjectionMap;
@@ -32,8 +33,10 @@ import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IStringConverter;
 import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
+import org.hillview.utils.JsonList;
 import org.hillview.utils.LinAlg;
 import org.jblas.DoubleMatrix;
+import rx.Observable;
 
 import javax.annotation.Nullable;
 import javax.websocket.Session;
@@ -44,6 +47,15 @@ import java.util.function.Function;
 
 @SuppressWarnings("CanBeFinal")
 public final class TableTarget extends RpcTarget {
+    /**
+     * Columns with more distinct strings are described by a sample of this size.
+     */
+    private static final int maxDistinctStrings = 5000;
+    /**
+     * The rank error of the quantiles used as equi-depth boundaries is about
+     * 1/(equiDepthOversampling * bucketCount).
+     */
+    private static final int equiDepthOversampling = 10;
     private final IDataSet<ITable> table;
     TableTarget(IDataSet<ITable> table) {
         this.table = table;
@@ -70,14 +82,14 @@ public final class TableTarget extends RpcTarget {
             Schema schema = nextKArgs.order.toSchema();
             rs = RowSnapshot.parse(schema, nextKArgs.firstRow);
         }
-        NextKSketch nk = new NextKSketch(nextKArgs.order, rs, nextKArgs.rowsOnScreen);
+        NextKSketch nk = new NextKSketch(nextKArgs.order, rs, nextKArgs.rowsOnScreen, true);
         this.runSketch(this.table, nk, request, session);
     }
 
     @HillviewRpc
     void uniqueStrings(RpcRequest request, Session session) {
         String[] columnNames = request.parseArgs(String[].class);
-        DistinctStringsSketch sk = new DistinctStringsSketch(0, columnNames);
+        DistinctStringsSketch sk = new DistinctStringsSketch(maxDistinctStrings, columnNames);
         this.runCompleteSketch(this.table, sk, e->e, request, session);
     }
 
@@ -97,6 +109,34 @@ public final class TableTarget extends RpcTarget {
         this.runSketch(this.table, csk, request, session);
     }
 
+    /**
+     * Computes the range and the histogram of a numeric or date column in a single
+     * pass, without a prior range query; min, max and samplingRate are ignored.
+     */
+    @HillviewRpc
+    void adaptiveHistogram(RpcRequest request, Session session) {
+        ColumnAndRange info = request.parseArgs(ColumnAndRange.class);
+        AdaptiveHistogramSketch sk = new AdaptiveHistogramSketch(
+                new ColumnNameAndConverter(info.columnName), info.bucketCount, info.cdfBucketCount);
+        this.runSketch(this.table, sk, request, session);
+    }
+
+    /**
+     * Computes the ranges and the heat map of two numeric or date columns in a
+     * single pass; the counterpart of range2D followed by heatMap.
+     */
+    @HillviewRpc
+    void adaptiveHeatMap(RpcRequest request, Session session) {
+        ColPair info = request.parseArgs(ColPair.class);
+        ColumnAndRange first = Converters.checkNull(info.first);
+        ColumnAndRange second = Converters.checkNull(info.second);
+        AdaptiveHeatMapSketch sk = new AdaptiveHeatMapSketch(
+                new ColumnNameAndConverter(first.columnName),
+                new ColumnNameAndConverter(second.columnName),
+                first.bucketCount, second.bucketCount);
+        this.runSketch(this.table, sk, request, session);
+    }
+
     @HillviewRpc
     void heatMap(RpcRequest request, Session session) {
         ColPair info = request.parseArgs(ColPair.class);
@@ -255,6 +295,16 @@ public final class TableTarget extends RpcTarget {
         CorrelationMatrixTarget cmt = (CorrelationMatrixTarget) target;
         CorrMatrix cm = cmt.corrMatrix;
         DoubleMatrix[] mats = LinAlg.eigenVectorsVarianceExplained(new DoubleMatrix(cm.getCorrelationMatrix()), info.numComponents);
+        LinearProjectionMap lpm = pcaProjection(cm.columnNames, mats);
+        this.runMap(this.table, lpm, TableTarget::new, request, session);
+    }
+
+    /**
+     * @param mats The principal components (as rows) and the fraction of the variance
+     *             explained by each of them.
+     * @return A map that adds to a table one column for each component.
+     */
+    private static LinearProjectionMap pcaProjection(List<String> colNames, DoubleMatrix[] mats) {
         DoubleMatrix projectionMatrix = mats[0];
         DoubleMatrix varianceExplained = mats[1];
         List<String> newColNames = new ArrayList<String>();
@@ -262,8 +312,50 @@ public final class TableTarget extends RpcTarget {
             int perc = (int) Math.round(varianceExplained.get(i) * 100);
             newColNames.add(String.format("PCA%d (%d%%)", i, perc));
         }
-        LinearProjectionMap lpm = new LinearProjectionMap(cm.columnNames, projectionMatrix, newColNames);
-        this.runMap(this.table, lpm, TableTarget::new, request, session);
+        return new LinearProjectionMap(colNames, projectionMatrix, newColNames);
+    }
+
+    static class RandomizedPCAInfo {
+        @Nullable
+        String[] columnNames;
+        int numComponents;
+    }
+
+    /**
+     * Computes the principal components with RandomizedPCA, which only makes a few
+     * passes over the data and never builds the full correlation matrix, and projects
+     * the table on them.  Preferable to correlationMatrix + projectToEigenVectors for
+     * tables with many columns.
+     */
+    @HillviewRpc
+    void randomizedPCA(RpcRequest request, Session session) {
+        RandomizedPCAInfo info = request.parseArgs(RandomizedPCAInfo.class);
+        List<String> colNames = Arrays.asList(Converters.checkNull(info.columnNames));
+        RandomizedPCA pca = new RandomizedPCA(colNames, info.numComponents);
+        Observable<LinearProjectionMap> map = pca.run(this.table)
+                .map(mats -> pcaProjection(colNames, mats));
+        this.runDeferredMap(this.table, map, TableTarget::new, request, session);
+    }
+
+    static class KMeansInfo {
+        @Nullable
+        String[] columnNames;
+        int numClusters;
+        String newColumnName = "Cluster";
+    }
+
+    /**
+     * Clusters the rows with k-means on the specified numeric columns, and adds to the
+     * table a column with the cluster of each row.
+     */
+    @HillviewRpc
+    void kMeans(RpcRequest request, Session session) {
+        KMeansInfo info = request.parseArgs(KMeansInfo.class);
+        List<String> colNames = Arrays.asList(Converters.checkNull(info.columnNames));
+        KMeans kMeans = new KMeans(colNames, info.numClusters);
+        Observable<ClusterMap> map = kMeans.run(this.table)
+                .map(centers -> new ClusterMap(centers, info.newColumnName));
+        this.runDeferredMap(this.table, map, TableTarget::new, request, session);
     }
 
     static class QuantileInfo {
@@ -276,11 +368,40 @@ public final class TableTarget extends RpcTarget {
     @HillviewRpc
     void quantile(RpcRequest request, Session session) {
         QuantileInfo info = request.parseArgs(QuantileInfo.class);
-        SampleQuantileSketch sk = new SampleQuantileSketch(info.order, info.precision, info.tableSize);
-        Function<SampleList, RowSnapshot> getRow = ql -> ql.getRow(info.position);
+        KllQuantileSketch sk = KllQuantileSketch.withResolution(info.order, info.precision);
+        Function<KllQuantiles, RowSnapshot> getRow = ql -> ql.getRow(info.position);
         this.runCompleteSketch(this.table, sk, getRow, request, session);
     }
 
+    static class EquiDepthInfo {
+        @Nullable
+        ColumnDescription column;
+        int bucketCount;
+    }
+
+    /**
+     * Computes the interior boundaries of equi-depth buckets of a numeric column, to be
+     * sent back in ColumnAndRange.equiDepthBoundaries.
+     */
+    @HillviewRpc
+    void equiDepthBoundaries(RpcRequest request, Session session) {
+        EquiDepthInfo info = request.parseArgs(EquiDepthInfo.class);
+        ColumnDescription column = Converters.checkNull(info.column);
+        RecordOrder order = new RecordOrder();
+        order.append(new ColumnSortOrientation(column, true));
+        KllQuantileSketch sk = KllQuantileSketch.withResolution(
+                order, info.bucketCount * equiDepthOversampling);
+        ColumnNameAndConverter col = new ColumnNameAndConverter(column.name);
+        Function<KllQuantiles, JsonList<Double>> getBoundaries = ql -> {
+            double[] boundaries = ql.getBucketBoundaries(col, info.bucketCount);
+            JsonList<Double> result = new JsonList<Double>(boundaries.length);
+            for (double b : boundaries)
+                result.add(b);
+            return result;
+        };
+        this.runCompleteSketch(this.table, sk, getBoundaries, request, session);
+    }
+
     static class HeavyHittersInfo {
         @Nullable
         Schema columns;
@@ -343,6 +464,29 @@ public final class TableTarget extends RpcTarget {
         this.runSketch(this.table, sketch, request, session);
     }
 
+    static class GroupByInfo {
+        @Nullable
+        String[] keyColumns;
+        @Nullable
+        AggregateDescription[] aggregates;
+        /**
+         * Maximum number of groups returned; 0 for all groups.
+         */
+        int maxGroups = 1000;
+    }
+
+    /**
+     * Groups the rows by the values of the key columns and computes aggregates of each group.
+     */
+    @HillviewRpc
+    void groupBy(RpcRequest request, Session session) {
+        GroupByInfo info = request.parseArgs(GroupByInfo.class);
+        GroupBySketch sketch = new GroupBySketch(
+                Arrays.asList(Converters.checkNull(info.keyColumns)),
+                Arrays.asList(Converters.checkNull(info.aggregates)), info.maxGroups);
+        this.runSketch(this.table, sketch, request, session);
+    }
+
     static class ConvertColumnInfo {
         String colName = "";
         String newColName = "";
@@ -91,12 +91,13 @@ class ReceiveCategory extends Renderer<IDistinctStrings[]> {
             throw "Required " + this.columns.length + " got " + this.values.length;
         for (let i=0; i < this.values.length; i++) {
             let col = this.columns[i];
-            if (this.values[i].truncated) {
-                this.page.reportError("Column " + col + " has too many distinct values; it is not really a category");
-            } else {
-                let ds = new DistinctStrings(this.values[i]);
-                this.cache.setDistinctStrings(col, ds);
-            }
+            // If the column has too many distinct values they are truncated to a sample,
+            // which can still be used as bucket boundaries.
+            if (this.values[i].truncated)
+                this.page.reportError("Column " + col + " has too many distinct values; " +
+                    "a sample of them is used as bucket boundaries");
+            let ds = new DistinctStrings(this.values[i]);
+            this.cache.setDistinctStrings(col, ds);
         }
         this.continuation(this.operation);
     }
@@ -43,6 +43,13 @@ export class HeatMapData {
     totalsize: number;
 }
 
+// JSON representation of Java class AdaptiveHeatMap
+export interface AdaptiveHeatMapData {
+    xRange: BasicColStats;
+    yRange: BasicColStats;
+    heatMap: HeatMapData;
+}
+
 export class AxisData {
     public constructor(public missing: Histogram,
                        public description: ColumnDescription,
@@ -51,6 +58,13 @@ export class AxisData {
                        public bucketCount: number)
     {}
 
+    /**
+     * True if the axis is categorical and its boundaries come from a sample of the strings.
+     */
+    public isSampled(): boolean {
+        return this.distinctStrings != null && this.distinctStrings.truncated;
+    }
+
     public scaleAndAxis(length: number, bottom: boolean): ScaleAndAxis {
         return HistogramViewBase.createScaleAndAxis(
             this.description.kind, this.bucketCount, length,
@@ -403,6 +417,8 @@ export class HeatMapView extends RemoteTableObjectView {
         if (yData.missing.missingData != 0)
             summary += ", " + formatNumber(yData.missing.missingData) + " missing X coordinate";
         summary += ", " + formatNumber(distinct) + " distinct dots";
+        if (xData.isSampled() || yData.isSampled())
+            summary += ", category boundaries from a sample";
         this.summary.textContent = summary;
     }
 
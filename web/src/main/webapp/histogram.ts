@@ -368,8 +368,11 @@ export class HistogramView extends HistogramViewBase {
         if (h.missingData != 0)
             summary = formatNumber(h.missingData) + " missing, ";
         summary += formatNumber(stats.presentCount + stats.missingCount) + " points";
-        if (this.currentData.allStrings != null)
+        if (this.currentData.allStrings != null) {
             summary += ", " + (this.currentData.stats.max - this.currentData.stats.min + 1) + " distinct values";
+            if (this.currentData.allStrings.truncated)
+                summary += " (sampled)";
+        }
         summary += ", " + String(bucketCount) + " buckets";
         this.summary.textContent = summary;
     }
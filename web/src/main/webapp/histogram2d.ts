@@ -414,6 +414,8 @@ export class Histogram2DView extends HistogramViewBase {
         if (yData.missing.missingData != 0)
             summary += ", " + formatNumber(yData.missing.missingData) + " missing X coordinate";
         summary += ", " + String(bucketCount) + " buckets";
+        if (xData.isSampled() || yData.isSampled())
+            summary += ", category boundaries from a sample";
         this.summary.textContent = summary;
     }
 
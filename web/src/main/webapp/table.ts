@@ -497,6 +497,7 @@ export class TableView extends RemoteTableObjectView implements IScrollTarget {
                 this.contextMenu.addItem({text: "Select numeric columns", action: () => this.selectNumericColumns()});
                 this.contextMenu.addItem({text: "Estimate Distinct Elements", action: () => this.hLogLog(cd.name)});
                 this.contextMenu.addItem({text: "PCA...", action: () => this.pca() });
+                this.contextMenu.addItem({text: "Cluster (k-means)...", action: () => this.kMeans() });
                 this.contextMenu.addItem({text: "Filter...", action: () => this.equalityFilter(cd.name)});
                 this.contextMenu.addItem({text: "Convert...", action: () => ColumnConverter.dialog(cd.name, TableView.allColumnNames(this.schema), this)});
 
@@ -659,6 +660,10 @@ export class TableView extends RemoteTableObjectView implements IScrollTarget {
             if (valid) {
                 let pcaDialog = new Dialog("Principal Component Analysis");
                 pcaDialog.addTextField("numComponents", "Number of components", "Integer", "2");
+                // The randomized method does not compute the whole correlation matrix,
+                // which is expensive for many columns.
+                pcaDialog.addSelectField("method", "Method", ["Exact", "Randomized"],
+                    colNames.length > 100 ? "Randomized" : "Exact");
                 pcaDialog.setAction(() => {
                     let numComponents: number = pcaDialog.getFieldValueAsInt("numComponents");
                     if (numComponents < 1 || numComponents > colNames.length) {
@@ -667,6 +672,11 @@ export class TableView extends RemoteTableObjectView implements IScrollTarget {
                                          numComponents + " does not satisfy this.)");
                         return;
                     }
+                    if (pcaDialog.getFieldValue("method") == "Randomized") {
+                        let rr = this.createRandomizedPCARequest(colNames, numComponents);
+                        rr.invoke(new RemoteTableReceiver(this.getPage(), rr));
+                        return;
+                    }
                     let rr = this.createCorrelationMatrixRequest(colNames);
                     rr.invoke(new CorrelationMatrixReceiver(this.getPage(), this, rr, this.order, numComponents));
                 });
@@ -676,6 +686,41 @@ export class TableView extends RemoteTableObjectView implements IScrollTarget {
             }
         }
 
+        private kMeans(): void {
+            let colNames: string[] = [];
+            this.selectedColumns.forEach(col => colNames.push(col));
+            if (colNames.length == 0) {
+                this.reportError("No columns selected");
+                return;
+            }
+            for (let colName of colNames) {
+                let kind = TableView.findColumn(this.schema, colName).kind;
+                if (kind != "Double" && kind != "Integer") {
+                    this.reportError("Only numeric columns can be clustered; '" + colName + "' is not numeric.");
+                    return;
+                }
+            }
+
+            let dialog = new Dialog("K-means clustering");
+            dialog.addTextField("numClusters", "Number of clusters", "Integer", "5");
+            dialog.addTextField("newColumnName", "Cluster column name", "String", "Cluster");
+            dialog.setAction(() => {
+                let numClusters: number = dialog.getFieldValueAsInt("numClusters");
+                if (numClusters == null || numClusters < 1) {
+                    this.reportError("Number of clusters must be positive");
+                    return;
+                }
+                let newColumnName = dialog.getFieldValue("newColumnName");
+                if (TableView.findColumn(this.schema, newColumnName) != null) {
+                    this.reportError("Column '" + newColumnName + "' already exists");
+                    return;
+                }
+                let rr = this.createKMeansRequest(colNames, numClusters, newColumnName);
+                rr.invoke(new RemoteTableReceiver(this.getPage(), rr));
+            });
+            dialog.show();
+        }
+
     private heatMapArray(): void {
         let selectedColumns: string[] = cloneSet(this.selectedColumns);
         let dialog = new HeatMapArrayDialog(selectedColumns, this.getPage(), this.schema, this);
@@ -97,7 +97,8 @@ export interface ColumnSortOrientation {
 
 export interface IDistinctStrings {
     uniqueStrings: string[];
-    // This may be true if there are too many distinct strings in a column.
+    // True if there are too many distinct strings in a column; uniqueStrings is then
+    // a uniform sample of the distinct strings.
     truncated: boolean;
     // Number of values in the column containing the strings.
     columnSize: number;
@@ -128,6 +129,14 @@ export interface BasicColStats {
     missingCount: number;
 }
 
+// JSON representation of Java class AdaptiveHistogram; only the min, max,
+// presentCount and missingCount fields of the range are set.
+export interface AdaptiveHistogram {
+    range: BasicColStats;
+    histogram: Histogram;
+    cdf: Histogram;
+}
+
 // Same as Java class
 export interface ColumnAndRange {
     min: number;
@@ -137,6 +146,29 @@ export interface ColumnAndRange {
     bucketCount: number;
     cdfBucketCount: number;
     bucketBoundaries: string[];
+    // Interior boundaries of equi-depth buckets, computed by the equiDepthBoundaries RPC.
+    equiDepthBoundaries?: number[];
+}
+
+export type AggregateKind = "Count" | "Sum" | "Min" | "Max" | "Mean" | "Variance" | "Distinct";
+
+// Same as Java class
+export interface AggregateDescription {
+    kind: AggregateKind;
+    // Not used for Count.
+    columnName?: string;
+}
+
+// JSON representation of Java class GroupByResult; rows are sorted by decreasing count.
+export interface GroupByResult {
+    keyColumns: string[];
+    // Names of the aggregates, such as "Mean(ArrDelay)".
+    aggregates: string[];
+    // Number of rows in groups that were dropped because of the bound on the number of groups.
+    droppedRows: number;
+    // Bound on the number of rows missing from the count of each group.
+    maxError: number;
+    rows: {count: number, key: any[], values: number[]}[];
 }
 
 export interface FilterDescription {
@@ -224,6 +256,36 @@ export class RemoteTableObject extends RemoteObject {
         });
     }
 
+    public createRandomizedPCARequest(columnNames: string[], dimension: number): RpcRequest {
+        return this.createRpcRequest("randomizedPCA", {
+            columnNames: columnNames,
+            numComponents: dimension
+        });
+    }
+
+    public createKMeansRequest(columnNames: string[], numClusters: number,
+                               newColumnName: string): RpcRequest {
+        return this.createRpcRequest("kMeans", {
+            columnNames: columnNames,
+            numClusters: numClusters,
+            newColumnName: newColumnName
+        });
+    }
+
+    /**
+     * @param keyColumns  Columns whose values define the groups.
+     * @param aggregates  Aggregates computed for each group.
+     * @param maxGroups   Maximum number of (largest) groups returned; 0 for all groups.
+     */
+    public createGroupByRequest(keyColumns: string[], aggregates: AggregateDescription[],
+                                maxGroups: number): RpcRequest {
+        return this.createRpcRequest("groupBy", {
+            keyColumns: keyColumns,
+            aggregates: aggregates,
+            maxGroups: maxGroups
+        });
+    }
+
     public createFilterEqualityRequest(filter: EqualityFilterDescription): RpcRequest {
         return this.createRpcRequest("filterEquality", filter);
     }